@@ -6,7 +6,10 @@
 package iped.search;
 
 import java.io.Closeable;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import iped.data.IItemReader;
 
@@ -22,4 +25,27 @@ public interface IItemSearcher extends Closeable {
 
     String escapeQuery(String string);
 
+    /**
+     * Finds items by exact values of a field in a single call, like many hashes,
+     * paths or names referenced by a database. Implementations may resolve them
+     * without running a query for each value.
+     * 
+     * @param field
+     *            {@link iped.properties.BasicProps#HASH}, a hash algorithm name,
+     *            {@link iped.properties.BasicProps#PATH} or
+     *            {@link iped.properties.BasicProps#NAME}. Names are compared
+     *            ignoring case, like hashes.
+     * @return items found by value, values without items are not in the map
+     */
+    default Map<String, List<IItemReader>> searchByValues(String field, Collection<String> values) {
+        Map<String, List<IItemReader>> result = new HashMap<>();
+        for (String value : values) {
+            List<IItemReader> items = search(escapeQuery(field) + ":\"" + escapeQuery(value) + "\"");
+            if (!items.isEmpty()) {
+                result.put(value, items);
+            }
+        }
+        return result;
+    }
+
 }
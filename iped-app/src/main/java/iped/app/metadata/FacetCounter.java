@@ -0,0 +1,317 @@
+package iped.app.metadata;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.roaringbitmap.RoaringBitmap;
+
+import iped.engine.lucene.GlobalOrdinals;
+import iped.engine.lucene.SegmentDocValues;
+
+/**
+ * Counts values of SORTED and SORTED_SET fields of the docs in a result bitmap.
+ * Global ordinals of each doc are loaded once per field into flat columns, by
+ * segment in parallel, and counted by fork join tasks over ranges of docs.
+ * Counts of the last result are kept by field, so if the next result is a
+ * subset of it, like after adding a filter, just the removed docs are counted
+ * and subtracted.
+ */
+class FacetCounter {
+
+    private static final int MAX_CACHED_COLUMNS = 4;
+
+    /**
+     * Docs counted by each fork join task
+     */
+    private static final int DOCS_PER_TASK = 1 << 18;
+
+    /**
+     * Max ints of counts arrays allocated by tasks, if more would be needed,
+     * tasks increment a shared atomic array
+     */
+    private static final long MAX_TASK_COUNTS = 1 << 24;
+
+    private final int docsPerTask;
+
+    private final long maxTaskCounts;
+
+    private static FacetCounter instance;
+
+    /**
+     * Global ords of each doc. For SORTED_SET fields, ords of doc i are from
+     * offsets[i] to offsets[i + 1], for SORTED fields, offsets is null and ords[i]
+     * is -1 if the doc has no value.
+     */
+    private static class OrdColumn {
+
+        private final int valueCount;
+        private final int[] offsets;
+        private final int[] ords;
+
+        // last counted docs and their counts
+        private RoaringBitmap lastDocs;
+        private int[] lastCounts;
+
+        private OrdColumn(int valueCount, int[] offsets, int[] ords) {
+            this.valueCount = valueCount;
+            this.offsets = offsets;
+            this.ords = ords;
+        }
+
+        private void count(int doc, int[] counts) {
+            if (offsets == null) {
+                int ord = ords[doc];
+                if (ord != -1) {
+                    counts[ord]++;
+                }
+            } else {
+                for (int i = offsets[doc]; i < offsets[doc + 1]; i++) {
+                    counts[ords[i]]++;
+                }
+            }
+        }
+
+        private void count(int doc, AtomicIntegerArray counts) {
+            if (offsets == null) {
+                int ord = ords[doc];
+                if (ord != -1) {
+                    counts.incrementAndGet(ord);
+                }
+            } else {
+                for (int i = offsets[doc]; i < offsets[doc + 1]; i++) {
+                    counts.incrementAndGet(ords[i]);
+                }
+            }
+        }
+    }
+
+    private final SegmentDocValues segmentDocValues;
+
+    private final Map<String, OrdColumn> columns = new LinkedHashMap<String, OrdColumn>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, OrdColumn> eldest) {
+            return size() > MAX_CACHED_COLUMNS;
+        }
+    };
+
+    FacetCounter(SegmentDocValues segmentDocValues, int docsPerTask, long maxTaskCounts) {
+        this.segmentDocValues = segmentDocValues;
+        this.docsPerTask = docsPerTask;
+        this.maxTaskCounts = maxTaskCounts;
+    }
+
+    /**
+     * @return the counter of the given index, a new one if the index was reopened
+     */
+    static synchronized FacetCounter get(SegmentDocValues segmentDocValues) {
+        if (instance == null || instance.segmentDocValues != segmentDocValues) {
+            instance = new FacetCounter(segmentDocValues, DOCS_PER_TASK, MAX_TASK_COUNTS);
+        }
+        return instance;
+    }
+
+    /**
+     * @return counts by global ord of the docs, or null if the field is not a
+     *         SORTED or SORTED_SET field
+     */
+    synchronized int[] count(String field, RoaringBitmap docs) throws IOException {
+        OrdColumn column = getColumn(field);
+        if (column == null) {
+            return null;
+        }
+        int[] counts;
+        RoaringBitmap lastDocs = column.lastDocs;
+        if (lastDocs != null && lastDocs.contains(docs)
+                && lastDocs.getCardinality() - docs.getCardinality() < docs.getCardinality()) {
+            counts = column.lastCounts.clone();
+            int[] removed = count(column, RoaringBitmap.andNot(lastDocs, docs));
+            for (int ord = 0; ord < counts.length; ord++) {
+                counts[ord] -= removed[ord];
+            }
+        } else {
+            counts = count(column, docs);
+        }
+        column.lastDocs = docs.clone();
+        column.lastCounts = counts;
+        return counts.clone();
+    }
+
+    private int[] count(OrdColumn column, RoaringBitmap docs) {
+        int maxDoc = segmentDocValues.getReader().maxDoc();
+        int numTasks = (maxDoc + docsPerTask - 1) / docsPerTask;
+        if ((long) Math.min(numTasks, ForkJoinPool.getCommonPoolParallelism() * 2) * column.valueCount <= maxTaskCounts) {
+            return ForkJoinPool.commonPool().invoke(new CountTask(column, docs, 0, maxDoc));
+        }
+        AtomicIntegerArray counts = new AtomicIntegerArray(column.valueCount);
+        ForkJoinPool.commonPool().invoke(new AtomicCountTask(column, docs, 0, maxDoc, counts));
+        int[] result = new int[column.valueCount];
+        for (int ord = 0; ord < result.length; ord++) {
+            result[ord] = counts.get(ord);
+        }
+        return result;
+    }
+
+    /**
+     * Counts into its own array and sums arrays of its subtasks.
+     */
+    private class CountTask extends RecursiveTask<int[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final OrdColumn column;
+        private final RoaringBitmap docs;
+        private final int start, end;
+
+        private CountTask(OrdColumn column, RoaringBitmap docs, int start, int end) {
+            this.column = column;
+            this.docs = docs;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (end - start <= docsPerTask || docs.rangeCardinality(start, end) <= docsPerTask / 8) {
+                int[] counts = new int[column.valueCount];
+                docs.forEachInRange(start, end - start, doc -> column.count(doc, counts));
+                return counts;
+            }
+            int mid = start + (end - start) / 2;
+            CountTask left = new CountTask(column, docs, start, mid);
+            left.fork();
+            int[] counts = new CountTask(column, docs, mid, end).compute();
+            int[] leftCounts = left.join();
+            for (int ord = 0; ord < counts.length; ord++) {
+                counts[ord] += leftCounts[ord];
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * Counts into an array shared by all tasks, used for fields with too many
+     * values to allocate one array per task.
+     */
+    private class AtomicCountTask extends RecursiveTask<Void> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final OrdColumn column;
+        private final RoaringBitmap docs;
+        private final int start, end;
+        private final AtomicIntegerArray counts;
+
+        private AtomicCountTask(OrdColumn column, RoaringBitmap docs, int start, int end, AtomicIntegerArray counts) {
+            this.column = column;
+            this.docs = docs;
+            this.start = start;
+            this.end = end;
+            this.counts = counts;
+        }
+
+        @Override
+        protected Void compute() {
+            if (end - start <= docsPerTask) {
+                docs.forEachInRange(start, end - start, doc -> column.count(doc, counts));
+                return null;
+            }
+            int mid = start + (end - start) / 2;
+            invokeAll(new AtomicCountTask(column, docs, start, mid, counts),
+                    new AtomicCountTask(column, docs, mid, end, counts));
+            return null;
+        }
+    }
+
+    private OrdColumn getColumn(String field) throws IOException {
+        OrdColumn column = columns.get(field);
+        if (column == null) {
+            column = loadColumn(field);
+            if (column != null) {
+                columns.put(field, column);
+            }
+        }
+        return column;
+    }
+
+    private DocValuesType getDocValuesType(String field) {
+        for (LeafReaderContext context : segmentDocValues.getLeaves()) {
+            FieldInfo fieldInfo = context.reader().getFieldInfos().fieldInfo(field);
+            if (fieldInfo != null) {
+                return fieldInfo.getDocValuesType();
+            }
+        }
+        return null;
+    }
+
+    private OrdColumn loadColumn(String field) throws IOException {
+        DocValuesType type = getDocValuesType(field);
+        if (type != DocValuesType.SORTED && type != DocValuesType.SORTED_SET) {
+            return null;
+        }
+        GlobalOrdinals globalOrds = segmentDocValues.getGlobalOrdinals(field);
+        int maxDoc = segmentDocValues.getReader().maxDoc();
+        int valueCount = (int) globalOrds.getValueCount();
+        if (type == DocValuesType.SORTED) {
+            int[] ords = new int[maxDoc];
+            segmentDocValues.forEachLeaf(context -> {
+                LeafReader leafReader = context.reader();
+                SortedDocValues sdv = DocValues.getSorted(leafReader, field);
+                for (int i = 0; i < leafReader.maxDoc(); i++) {
+                    if (sdv.advanceExact(i)) {
+                        ords[context.docBase + i] = (int) globalOrds.getGlobalOrd(context.ord, sdv.ordValue());
+                    } else {
+                        ords[context.docBase + i] = -1;
+                    }
+                }
+            });
+            return new OrdColumn(valueCount, null, ords);
+        }
+
+        // first pass counts values of each doc, second one fills ords
+        int[] offsets = new int[maxDoc + 1];
+        segmentDocValues.forEachLeaf(context -> {
+            LeafReader leafReader = context.reader();
+            SortedSetDocValues ssdv = DocValues.getSortedSet(leafReader, field);
+            int doc;
+            while ((doc = ssdv.nextDoc()) != SortedSetDocValues.NO_MORE_DOCS) {
+                // docValueCount() is not implemented by all codecs
+                int numOrds = 0;
+                while (ssdv.nextOrd() != SortedSetDocValues.NO_MORE_ORDS) {
+                    numOrds++;
+                }
+                offsets[context.docBase + doc + 1] = numOrds;
+            }
+        });
+        for (int i = 0; i < maxDoc; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] ords = new int[offsets[maxDoc]];
+        segmentDocValues.forEachLeaf(context -> {
+            LeafReader leafReader = context.reader();
+            SortedSetDocValues ssdv = DocValues.getSortedSet(leafReader, field);
+            int doc;
+            while ((doc = ssdv.nextDoc()) != SortedSetDocValues.NO_MORE_DOCS) {
+                int pos = offsets[context.docBase + doc];
+                long ord;
+                while ((ord = ssdv.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
+                    ords[pos++] = (int) globalOrds.getGlobalOrd(context.ord, ord);
+                }
+            }
+        });
+        return new OrdColumn(valueCount, offsets, ords);
+    }
+
+}
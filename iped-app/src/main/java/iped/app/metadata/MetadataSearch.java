@@ -14,6 +14,7 @@
 import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.NumericUtils;
+import org.roaringbitmap.RoaringBitmap;
 
 import iped.app.ui.App;
 import iped.app.ui.Messages;
@@ -604,33 +605,43 @@ else if (isDouble)
             }
             list.addAll(l);
         } else if (docValues != null) {
-            valueCount = new int[docValues.getValueCount()];
-            for (IItemId item : ipedResult.getIterator()) {
-                int doc = App.get().appCase.getLuceneId(item);
-                boolean adv = docValues.advanceExact(doc);
-                if (adv) {
-                    int ord = docValues.ordValue();
-                    valueCount[ord]++;
+            // counted in parallel by FacetCounter if possible
+            valueCount = countOrds(field);
+            if (valueCount == null) {
+                valueCount = new int[docValues.getValueCount()];
+                for (IItemId item : ipedResult.getIterator()) {
+                    int doc = App.get().appCase.getLuceneId(item);
+                    boolean adv = docValues.advanceExact(doc);
+                    if (adv) {
+                        int ord = docValues.ordValue();
+                        valueCount[ord]++;
+                    }
                 }
             }
         } else if (docValuesSet != null) {
-            valueCount = new int[(int) docValuesSet.getValueCount()];
-            for (IItemId item : ipedResult.getIterator()) {
-                if (isTimeEvent && item instanceof TimeItemId) {
-                    TimeItemId timeId = (TimeItemId) item;
-                    String eventSet = timeId.getTimeEventValue(eventDocValuesSet);
-                    long[] ords = getEventOrdsFromEventSet(docValuesSet, eventSet);
-                    for (long ord : ords) {
-                        valueCount[(int) ord]++;
-                    }
-                } else {
-                    int doc = App.get().appCase.getLuceneId(item);
-                    boolean adv = docValuesSet.advanceExact(doc);
-                    long ord, prevOrd = -1;
-                    while (adv && (ord = docValuesSet.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
-                        if (prevOrd != ord)
+            if (!isTimeEvent) {
+                // counted in parallel by FacetCounter if possible
+                valueCount = countOrds(getSortedSetField(field));
+            }
+            if (valueCount == null) {
+                valueCount = new int[(int) docValuesSet.getValueCount()];
+                for (IItemId item : ipedResult.getIterator()) {
+                    if (isTimeEvent && item instanceof TimeItemId) {
+                        TimeItemId timeId = (TimeItemId) item;
+                        String eventSet = timeId.getTimeEventValue(eventDocValuesSet);
+                        long[] ords = getEventOrdsFromEventSet(docValuesSet, eventSet);
+                        for (long ord : ords) {
                             valueCount[(int) ord]++;
-                        prevOrd = ord;
+                        }
+                    } else {
+                        int doc = App.get().appCase.getLuceneId(item);
+                        boolean adv = docValuesSet.advanceExact(doc);
+                        long ord, prevOrd = -1;
+                        while (adv && (ord = docValuesSet.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
+                            if (prevOrd != ord)
+                                valueCount[(int) ord]++;
+                            prevOrd = ord;
+                        }
                     }
                 }
             }
@@ -699,6 +710,36 @@ else if (ord < logScaleHalf) {
         return list;
     }
 
+    /**
+     * @return counts of result items by global ord of the doc values field, or
+     *         null if the result can't be counted by {@link FacetCounter}
+     */
+    private int[] countOrds(String dvField) throws IOException {
+        RoaringBitmap docs = getResultDocIds();
+        if (docs == null) {
+            return null;
+        }
+        return FacetCounter.get(App.get().appCase.getSegmentDocValues()).count(dvField, docs);
+    }
+
+    private RoaringBitmap getResultDocIds() {
+        if (ipedResult.getLength() > 0 && ipedResult.getItem(0) instanceof TimeItemId) {
+            // timeline results may have many items of the same doc
+            return null;
+        }
+        if (ipedResult instanceof MultiSearchResult && ipedResult.getIPEDSource() == App.get().appCase) {
+            RoaringBitmap docs = ((MultiSearchResult) ipedResult).getDocIdBitSet();
+            if (docs != null && docs.getCardinality() == ipedResult.getLength()) {
+                return docs;
+            }
+        }
+        RoaringBitmap docs = new RoaringBitmap();
+        for (IItemId item : ipedResult.getIterator()) {
+            docs.add(App.get().appCase.getLuceneId(item));
+        }
+        return docs.getCardinality() == ipedResult.getLength() ? docs : null;
+    }
+
     public boolean isCategory() {
         return isCategory;
     }
@@ -56,7 +56,6 @@
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.BooleanClause.Occur;
@@ -96,6 +95,8 @@
 import iped.app.ui.ColumnsManager;
 import iped.app.ui.themes.ThemeManager;
 import iped.data.IItemId;
+import iped.engine.data.IPEDSource;
+import iped.engine.lucene.SegmentDocValues;
 import iped.engine.search.QueryBuilder;
 import iped.engine.task.index.IndexItem;
 import iped.exception.ParseException;
@@ -648,8 +649,7 @@ public void showSelection() {
             Date min = null;
             Date max = null;
 
-            LeafReader reader = resultsProvider.getIPEDSource().getLeafReader();
-            timeStampValues = reader.getSortedSetDocValues(BasicProps.TIMESTAMP);
+            SegmentDocValues segmentDocValues = ((IPEDSource) resultsProvider.getIPEDSource()).getSegmentDocValues();
             TreeSet<Integer> luceneIds = new TreeSet<Integer>();
 
             int[] selected = resultsTable.getSelectedRows();
@@ -661,16 +661,15 @@ public void showSelection() {
                 luceneIds.add(luceneId);
             }
 
-            SortedSetDocValues timeStampValues = reader.getSortedSetDocValues(BasicProps.TIMESTAMP);
+            // ids are sorted, so the values just move forward through the segments
+            SortedSetDocValues timeStampValues = segmentDocValues.getSortedSetDocValues(BasicProps.TIMESTAMP);
+            if (timeStampValues == null) {
+                return;
+            }
 
             for (Iterator iterator = luceneIds.iterator(); iterator.hasNext();) {
                 Integer docId = (Integer) iterator.next();
-                boolean adv = false;
-                try {
-                    adv = timeStampValues.advanceExact(docId);
-                } catch (IllegalArgumentException e) {
-                    adv = timeStampValues.advanceExact(docId);
-                }
+                boolean adv = timeStampValues.advanceExact(docId);
 
                 long ord, prevOrd = -1;
                 while (adv && (ord = timeStampValues.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
@@ -712,9 +711,9 @@ public void run() {
             ColumnsManager cm = (ColumnsManager) ((App) resultsProvider).getColumnsManager();
             String[] columnsArray = cm.fieldGroups[cm.fieldGroups.length - 1];
             synchronized (timeEventColumnNamesList) {
-                LeafReader reader = resultsProvider.getIPEDSource().getLeafReader();
+                SegmentDocValues segmentDocValues = ((IPEDSource) resultsProvider.getIPEDSource()).getSegmentDocValues();
                 try {
-                    SortedSetDocValues timeEventGroupValues = reader.getSortedSetDocValues(BasicProps.TIME_EVENT);
+                    SortedSetDocValues timeEventGroupValues = segmentDocValues.getSortedSetDocValues(BasicProps.TIME_EVENT);
                     if (timeEventGroupValues != null) {
                         TermsEnum te = timeEventGroupValues.termsEnum();
                         ordToEventName = new String[(int) timeEventGroupValues.getValueCount()];
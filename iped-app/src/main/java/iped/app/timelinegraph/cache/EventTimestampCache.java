@@ -6,7 +6,6 @@
 import java.util.HashSet;
 import java.util.Map;
 
-import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.index.TermsEnum;
@@ -24,6 +23,8 @@
 
 import iped.app.timelinegraph.DateUtil;
 import iped.app.timelinegraph.IpedChartsPanel;
+import iped.engine.data.IPEDSource;
+import iped.engine.lucene.SegmentDocValues;
 import iped.viewers.api.IMultiSearchResultProvider;
 
 public class EventTimestampCache implements Runnable {
@@ -47,7 +48,9 @@ public EventTimestampCache(IpedChartsPanel ipedChartsPanel, IMultiSearchResultPr
     }
 
     public void run() {
-        LeafReader reader = resultsProvider.getIPEDSource().getLeafReader();
+        // global ordinals views, iterated segment by segment and parsing each value
+        // just once
+        SegmentDocValues segmentDocValues = ((IPEDSource) resultsProvider.getIPEDSource()).getSegmentDocValues();
 
         IndexTimeStampCache timeStampCache = (IndexTimeStampCache) this.timeStampCache;
 
@@ -55,9 +58,12 @@ public void run() {
         try {
             String eventField = ipedChartsPanel.getTimeEventColumnName(eventType).trim();
             if (eventField != null) {
-                timeStampValues = reader.getSortedDocValues(eventField);
+                timeStampValues = segmentDocValues.getSortedDocValues(eventField);
                 if (timeStampValues == null) {
-                    SortedSetDocValues values = reader.getSortedSetDocValues(eventField);
+                    SortedSetDocValues values = segmentDocValues.getSortedSetDocValues(eventField);
+                    if (values == null) {
+                        return;
+                    }
                     TermsEnum tenum = values.termsEnum();
                     Long emptyValueOrd = getEmptyOrd(tenum);
                     if (emptyValueOrd == null) {
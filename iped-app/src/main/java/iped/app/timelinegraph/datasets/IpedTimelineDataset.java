@@ -2,6 +2,7 @@
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
@@ -22,7 +23,7 @@
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.SortedSetDocValues;
-import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.BytesRef;
 import org.apache.pdfbox.io.RandomAccessBufferedFileInputStream;
 import org.jfree.chart.event.PlotChangeEvent;
 import org.jfree.chart.util.Args;
@@ -59,6 +60,7 @@
 import iped.engine.data.IPEDMultiSource;
 import iped.engine.data.IPEDSource;
 import iped.engine.data.MultiBitmapBookmarks;
+import iped.engine.lucene.SegmentDocValues;
 import iped.engine.search.MultiSearchResult;
 import iped.search.IMultiSearchResult;
 import iped.viewers.api.IMultiSearchResultProvider;
@@ -1046,70 +1048,40 @@ public List<IItemId> getItems(int item, int seriesId) {
         try {
             MultiSearchResult resultSet = (MultiSearchResult) csf.get();
             List<IItemId> result = new ArrayList<IItemId>();
-            LeafReader reader = resultsProvider.getIPEDSource().getLeafReader();
+            SegmentDocValues segmentDocValues = srcCase.getSegmentDocValues();
             String eventField = ipedChartsPanel.getTimeEventColumnName(eventType);
-            SortedSetDocValues values = reader.getSortedSetDocValues(eventField);
-            if (values != null) {
-                for (int i = 0; i < resultSet.getLength(); i++) {
-                    IItemId itemId = resultSet.getItem(i);
-                    int doc = srcCase.getLuceneId(itemId);
-                    boolean adv = values.advanceExact(doc);
-                    if (adv = false) {
-                        values = reader.getSortedSetDocValues(eventField);
-                        adv = values.advanceExact(doc);
-                        if (!adv) {
-                            continue;
-                        }
-                    }
-                    boolean found = false;
-                    if (doc != DocIdSetIterator.NO_MORE_DOCS) {
-                        int ord = (int) values.nextOrd();
-                        while (ord != SortedSetDocValues.NO_MORE_ORDS) {
-                            String timeStr = EventTimestampCache.cloneBr(values.lookupOrd(ord));
-                            if (timeStr.isEmpty()) {
-                                continue;
-                            }
-                            Date date = DateUtil.ISO8601DateParse(timeStr);
-                            if (!(date.before(t.getStart()) || date.after(t.getEnd()))) {
-                                found = true;
-                            }
-                            ord = (int) values.nextOrd();
-                        }
-                    }
-                    if (found) {
-                        result.add(itemId);
-                    }
+            SortedSetDocValues values = segmentDocValues.getSortedSetDocValues(eventField);
+            SortedDocValues svalues = values == null ? segmentDocValues.getSortedDocValues(eventField) : null;
+            if (values == null && svalues == null) {
+                return result;
+            }
+            // doc values just move forward, so items are looked up in doc order
+            long[] docAndIndex = new long[resultSet.getLength()];
+            for (int i = 0; i < docAndIndex.length; i++) {
+                docAndIndex[i] = ((long) srcCase.getLuceneId(resultSet.getItem(i)) << 32) | i;
+            }
+            Arrays.sort(docAndIndex);
+            boolean[] found = new boolean[docAndIndex.length];
+            for (long entry : docAndIndex) {
+                int doc = (int) (entry >> 32);
+                int i = (int) entry;
+                if (doc < 0) {
+                    continue;
                 }
-            } else {
-                SortedDocValues svalues = reader.getSortedDocValues(eventField);
-                for (int i = 0; i < resultSet.getLength(); i++) {
-                    IItemId itemId = resultSet.getItem(i);
-                    int doc = srcCase.getLuceneId(itemId);
-                    boolean adv = svalues.advanceExact(doc);
-                    if (adv = false) {
-                        svalues = reader.getSortedDocValues(eventField);
-                        adv = svalues.advanceExact(doc);
-                        if (!adv) {
-                            continue;
+                if (values != null) {
+                    if (values.advanceExact(doc)) {
+                        long ord;
+                        while (!found[i] && (ord = values.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
+                            found[i] = isInPeriod(values.lookupOrd(ord), t);
                         }
                     }
-                    boolean found = false;
-                    if (doc != DocIdSetIterator.NO_MORE_DOCS) {
-                        int ord = (int) svalues.ordValue();
-                        if (ord != SortedSetDocValues.NO_MORE_ORDS) {
-                            String timeStr = EventTimestampCache.cloneBr(svalues.lookupOrd(ord));
-                            if (timeStr.isEmpty()) {
-                                continue;
-                            }
-                            Date date = DateUtil.ISO8601DateParse(timeStr);
-                            if (!(date.before(t.getStart()) || date.after(t.getEnd()))) {
-                                found = true;
-                            }
-                        }
-                    }
-                    if (found) {
-                        result.add(itemId);
-                    }
+                } else if (svalues.advanceExact(doc)) {
+                    found[i] = isInPeriod(svalues.lookupOrd(svalues.ordValue()), t);
+                }
+            }
+            for (int i = 0; i < found.length; i++) {
+                if (found[i]) {
+                    result.add(resultSet.getItem(i));
                 }
             }
             return result;
@@ -1120,6 +1092,15 @@ public List<IItemId> getItems(int item, int seriesId) {
         return null;
     }
 
+    private static boolean isInPeriod(BytesRef value, TimePeriod t) {
+        String timeStr = EventTimestampCache.cloneBr(value);
+        if (timeStr.isEmpty()) {
+            return false;
+        }
+        Date date = DateUtil.ISO8601DateParse(timeStr);
+        return date != null && !(date.before(t.getStart()) || date.after(t.getEnd()));
+    }
+
     public void addValue(Count count, TimePeriod t, String eventType) {
         accumulator.addValue(count, t, eventType);
     }
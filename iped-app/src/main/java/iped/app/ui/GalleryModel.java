@@ -18,24 +18,36 @@
  */
 package iped.app.ui;
 
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.function.Predicate;
 
 import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
 import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
 import javax.swing.table.AbstractTableModel;
 
 import org.apache.commons.io.input.CloseShieldInputStream;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
 import org.apache.lucene.util.BytesRef;
 import org.apache.tika.mime.MediaType;
 import org.slf4j.Logger;
@@ -75,21 +87,204 @@ public class GalleryModel extends AbstractTableModel {
     private boolean logRendering = false;
     private ImageThumbTask imgThumbTask;
 
-    private static final int maxCacheSize = 1000;
-    public final Map<IItemId, GalleryValue> cache = new LinkedHashMap<IItemId, GalleryValue>() {
-        private static final long serialVersionUID = 1L;
+    /**
+     * Max bytes of decoded images kept in cache
+     */
+    private static final long maxCacheBytes = Math.min(256 << 20, Runtime.getRuntime().maxMemory() / 8);
+
+    /**
+     * Pages of rows loaded ahead of the visible ones in the scroll direction
+     */
+    private static final int prefetchPages = 2;
+
+    /**
+     * Stored fields used to render cells, other ones are not loaded. Thumbnails
+     * are read from their doc values, or from the stored field for items indexed
+     * before them.
+     */
+    private static final Set<String> galleryFields = new HashSet<>(Arrays.asList(IndexItem.NAME, IndexItem.PATH,
+            IndexItem.CONTENTTYPE, IndexItem.HASH, IndexItem.ISDIR, IndexItem.TYPE, IndexItem.LENGTH,
+            ImageThumbTask.HAS_THUMB, VideoThumbTask.ANIMATION_FRAMES_PROP));
+    private static final Set<String> galleryFieldsWithThumb = new HashSet<>(galleryFields);
+
+    static {
+        galleryFieldsWithThumb.add(IndexItem.THUMB);
+    }
+
+    /**
+     * LRU cache of rendered values, bounded by decoded images size
+     */
+    static class ValueCache {
+
+        private final LinkedHashMap<IItemId, GalleryValue> map = new LinkedHashMap<>(16, 0.75f, true);
+        private final long maxBytes;
+        private long bytes = 0;
+
+        ValueCache(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        static long sizeOf(GalleryValue value) {
+            BufferedImage image = value.image;
+            return image != null ? (long) image.getWidth() * image.getHeight() * 4 : 256;
+        }
+
+        GalleryValue get(IItemId id) {
+            return map.get(id);
+        }
+
+        boolean containsKey(IItemId id) {
+            return map.containsKey(id);
+        }
+
+        void put(IItemId id, GalleryValue value) {
+            GalleryValue old = map.put(id, value);
+            if (old != null) {
+                bytes -= sizeOf(old);
+            }
+            bytes += sizeOf(value);
+            Iterator<GalleryValue> it = map.values().iterator();
+            while (bytes > maxBytes && map.size() > 1 && it.hasNext()) {
+                bytes -= sizeOf(it.next());
+                it.remove();
+            }
+        }
+
+        void removeIf(Predicate<IItemId> filter) {
+            Iterator<Map.Entry<IItemId, GalleryValue>> it = map.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<IItemId, GalleryValue> entry = it.next();
+                if (filter.test(entry.getKey())) {
+                    bytes -= sizeOf(entry.getValue());
+                    it.remove();
+                }
+            }
+        }
+
+        void clear() {
+            map.clear();
+            bytes = 0;
+        }
+
+        int size() {
+            return map.size();
+        }
+
+        long getBytes() {
+            return bytes;
+        }
+    }
+
+    private final ValueCache cache = new ValueCache(maxCacheBytes);
 
-        protected boolean removeEldestEntry(Map.Entry<IItemId,GalleryValue> eldest) {
-            return size() > maxCacheSize;
+    static class CellRequest {
+
+        final IItemId id;
+        final int row, col;
+        private final int generation;
+
+        private CellRequest(IItemId id, int row, int col, int generation) {
+            this.id = id;
+            this.row = row;
+            this.col = col;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * Cell requests, visible cells are added to the head and prefetched ones to
+     * the tail. Requests out of the current window of rows or made for a previous
+     * result are discarded.
+     */
+    static class CellRequests {
+
+        private final LinkedBlockingDeque<CellRequest> requests = new LinkedBlockingDeque<>();
+        private final Set<IItemId> pendingIds = ConcurrentHashMap.newKeySet();
+
+        // rows of visible cells plus prefetched ones
+        private volatile int windowFirstRow = 0, windowLastRow = Integer.MAX_VALUE;
+        // incremented when the result changes
+        private volatile int generation = 0;
+
+        void addVisible(IItemId id, int row, int col) {
+            if (pendingIds.add(id)) {
+                requests.addFirst(new CellRequest(id, row, col, generation));
+            }
+        }
+
+        void addPrefetch(IItemId id, int row, int col) {
+            if (pendingIds.add(id)) {
+                requests.addLast(new CellRequest(id, row, col, generation));
+            }
+        }
+
+        /**
+         * Sets the rows of visible and prefetched cells and discards requests out of
+         * them.
+         */
+        void setWindow(int firstRow, int lastRow) {
+            windowFirstRow = firstRow;
+            windowLastRow = lastRow;
+            requests.removeIf(request -> {
+                if (!isInWindow(request)) {
+                    pendingIds.remove(request.id);
+                    return true;
+                }
+                return false;
+            });
         }
-    };
+
+        /**
+         * Discards all requests, the ones being processed are not current anymore.
+         */
+        void reset() {
+            generation++;
+            windowFirstRow = 0;
+            windowLastRow = Integer.MAX_VALUE;
+            requests.clear();
+            pendingIds.clear();
+        }
+
+        boolean isCurrent(CellRequest request) {
+            return request.generation == generation;
+        }
+
+        private boolean isInWindow(CellRequest request) {
+            return request.row >= windowFirstRow && request.row <= windowLastRow;
+        }
+
+        /**
+         * Waits for the next request of the current result and window, it must be
+         * passed to {@link #done(CellRequest)} after processed.
+         */
+        CellRequest take() throws InterruptedException {
+            while (true) {
+                CellRequest request = requests.takeFirst();
+                if (isCurrent(request) && isInWindow(request)) {
+                    return request;
+                }
+                pendingIds.remove(request.id);
+            }
+        }
+
+        void done(CellRequest request) {
+            pendingIds.remove(request.id);
+        }
+
+        int size() {
+            return requests.size();
+        }
+    }
+
+    private final CellRequests cellRequests = new CellRequests();
+    private int lastFirstVisibleRow = -1;
 
     private static final GalleryValue emptyValue = new GalleryValue("", null, null);
 
     private ErrorIcon errorIcon = new ErrorIcon();
     private static final BufferedImage errorImg = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_BINARY);
     public static final ImageIcon unsupportedIcon = new ImageIcon();
-    private ExecutorService executor;
+    private boolean workersStarted = false;
     private ExternalImageConverter externalImageConverter;
 
     private volatile boolean blurFilter;
@@ -183,161 +378,271 @@ public Object getValueAt(final int row, final int col) {
             }
         }
 
-        if (executor == null) {
-            executor = Executors.newFixedThreadPool(galleryThreads);
-            // do not use executor above in constructor below, it causes deadlock see #313
+        if (!workersStarted) {
+            // do not use workers in constructor below, it causes deadlock see #313
             externalImageConverter = new ExternalImageConverter();
+            for (int i = 0; i < galleryThreads; i++) {
+                Thread worker = new Thread(this::processRequests, "GalleryWorker-" + i); //$NON-NLS-1$
+                worker.setDaemon(true);
+                worker.start();
+            }
+            workersStarted = true;
+        }
+
+        updateWindow();
+
+        cellRequests.addVisible(id, row, col);
+
+        return new GalleryValue("...", null, id);
+    }
+
+    /**
+     * Updates the window of visible and prefetched rows, discards requests out of
+     * it and requests cells of next pages in the scroll direction. Called from
+     * the EDT.
+     */
+    private void updateWindow() {
+        GalleryTable gallery = App.get().gallery;
+        Rectangle visible = gallery.getVisibleRect();
+        int firstRow = gallery.rowAtPoint(new Point(0, visible.y));
+        int lastRow = gallery.rowAtPoint(new Point(0, visible.y + visible.height - 1));
+        if (firstRow == -1) {
+            return;
+        }
+        if (lastRow == -1) {
+            lastRow = getRowCount() - 1;
+        }
+        if (firstRow == lastFirstVisibleRow) {
+            return;
+        }
+        boolean scrollingDown = firstRow >= lastFirstVisibleRow;
+        lastFirstVisibleRow = firstRow;
+
+        int prefetchRows = (lastRow - firstRow + 1) * prefetchPages;
+        int prefetchFirst, prefetchLast;
+        if (scrollingDown) {
+            prefetchFirst = lastRow + 1;
+            prefetchLast = Math.min(lastRow + prefetchRows, getRowCount() - 1);
+            cellRequests.setWindow(firstRow, prefetchLast);
+        } else {
+            prefetchFirst = Math.max(firstRow - prefetchRows, 0);
+            prefetchLast = firstRow - 1;
+            cellRequests.setWindow(prefetchFirst, lastRow);
+        }
+
+        int length = App.get().ipedResult.getLength();
+        for (int i = 0; i <= prefetchLast - prefetchFirst; i++) {
+            // nearest rows first
+            int row = scrollingDown ? prefetchFirst + i : prefetchLast - i;
+            for (int col = 0; col < colCount; col++) {
+                int idx = row * colCount + col;
+                if (idx >= length) {
+                    break;
+                }
+                IItemId id = App.get().ipedResult.getItem(App.get().resultsTable.convertRowIndexToModel(idx));
+                synchronized (cache) {
+                    if (cache.containsKey(id)) {
+                        continue;
+                    }
+                }
+                cellRequests.addPrefetch(id, row, col);
+            }
         }
+    }
 
-        executor.execute(new Runnable() {
+    /**
+     * Resets the window state when the result, its order or the number of columns
+     * change, so pending requests of the previous rows and columns are discarded
+     * instead of updating cells now showing other items.
+     */
+    @Override
+    public void fireTableChanged(TableModelEvent e) {
+        if (e.getFirstRow() == TableModelEvent.HEADER_ROW
+                || (e.getFirstRow() == 0 && e.getLastRow() == Integer.MAX_VALUE)) {
+            cellRequests.reset();
+            lastFirstVisibleRow = -1;
+        }
+        super.fireTableChanged(e);
+    }
+
+    private void fireCellUpdated(CellRequest request) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
             public void run() {
+                if (cellRequests.isCurrent(request)) {
+                    App.get().galleryModel.fireTableCellUpdated(request.row, request.col);
+                }
+            }
+        });
+    }
 
-                BufferedImage image = null;
-                InputStream stream = null;
-                Document doc = null;
-                GalleryValue value = new GalleryValue("", null, id);
-                try {
+    private void processRequests() {
+        while (true) {
+            CellRequest request;
+            try {
+                request = cellRequests.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                boolean cached;
+                synchronized (cache) {
+                    cached = cache.containsKey(request.id);
+                }
+                if (!cached) {
+                    GalleryValue value = loadValue(request.id);
                     synchronized (cache) {
-                        if (cache.containsKey(id)) {
-                            return;
-                        }
+                        cache.put(request.id, value);
                     }
+                }
+                // also when cached by a request of a previous result
+                fireCellUpdated(request);
+            } finally {
+                cellRequests.done(request);
+            }
+        }
+    }
 
-                    if (!App.get().gallery.getVisibleRect().intersects(App.get().gallery.getCellRect(row, col, false))) {
-                        return;
-                    }
+    private Document getDocument(int docId) throws IOException {
+        return App.get().appCase.getSearcher().doc(docId, galleryFields);
+    }
+
+    private GalleryValue loadValue(IItemId id) {
+
+        BufferedImage image = null;
+        InputStream stream = null;
+        Document doc = null;
+        GalleryValue value = new GalleryValue("", null, id);
+        try {
+            int docId = App.get().appCase.getLuceneId(id);
+            List<LeafReaderContext> leaves = App.get().appCase.getReader().leaves();
+            LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docId, leaves));
+            BinaryDocValues thumbValues = leaf.reader().getBinaryDocValues(IndexItem.THUMB);
+            doc = App.get().appCase.getSearcher().doc(docId,
+                    thumbValues != null ? galleryFields : galleryFieldsWithThumb);
+            value.name = doc.get(IndexItem.NAME);
+
+            if (logRendering) {
+                String path = doc.get(IndexItem.PATH);
+                LOGGER.info("Gallery rendering " + path); //$NON-NLS-1$
+            }
 
-                    int docId = App.get().appCase.getLuceneId(id);
-                    doc = App.get().appCase.getSearcher().doc(docId);
-                    value.name = doc.get(IndexItem.NAME);
+            final String mediaType = doc.get(IndexItem.CONTENTTYPE);
+
+            BytesRef bytesRef;
+            if (thumbValues != null && thumbValues.advanceExact(docId - leaf.docBase)) {
+                bytesRef = thumbValues.binaryValue();
+            } else if (thumbValues != null) {
+                // items of an old index merged with new ones have just the stored field
+                bytesRef = null;
+                if (Boolean.valueOf(doc.get(ImageThumbTask.HAS_THUMB))) {
+                    bytesRef = App.get().appCase.getSearcher().doc(docId, Collections.singleton(IndexItem.THUMB))
+                            .getBinaryValue(IndexItem.THUMB);
+                }
+            } else {
+                bytesRef = doc.getBinaryValue(IndexItem.THUMB);
+            }
+            if (bytesRef != null && ((!isSupportedVideo(mediaType) && !isAnimationImage(doc, mediaType)) || App.get().useVideoThumbsInGallery)) {
+                if (bytesRef.length > 0) {
+                    image = ImageIO.read(new ByteArrayInputStream(bytesRef.bytes, bytesRef.offset, bytesRef.length));
+                } else {
+                    image = errorImg;
+                }
+            }
 
-                    if (logRendering) {
-                        String path = doc.get(IndexItem.PATH);
-                        LOGGER.info("Gallery rendering " + path); //$NON-NLS-1$
-                    }
+            if (image == null) {
+                String hash = doc.get(IndexItem.HASH);
+                if (image == null && hash != null && !hash.isEmpty()) {
+                    image = getViewImage(docId, hash,
+                            isSupportedVideo(mediaType) || isAnimationImage(doc, mediaType));
+                }
 
-                    final String mediaType = doc.get(IndexItem.CONTENTTYPE);
+                if (Boolean.valueOf(doc.get(IndexItem.ISDIR))) {
+                    value.unsupportedType = true;
+                    value.icon = IconManager.getFolderIconGallery();
 
-                    BytesRef bytesRef = doc.getBinaryValue(IndexItem.THUMB);
-                    if (bytesRef != null && ((!isSupportedVideo(mediaType) && !isAnimationImage(doc, mediaType)) || App.get().useVideoThumbsInGallery)) {
-                        byte[] thumb = bytesRef.bytes;
-                        if (thumb.length > 0) {
-                            image = ImageIO.read(new ByteArrayInputStream(thumb));
-                        } else {
-                            image = errorImg;
-                        }
-                    }
+                } else if (image == null && !isSupportedImage(mediaType) && !isSupportedVideo(mediaType)) {
+                    value.unsupportedType = true;
+                    String type = doc.get(IndexItem.TYPE);
+                    String contentType = doc.get(IndexItem.CONTENTTYPE);
+                    value.icon = IconManager.getFileIconGallery(contentType, type);
+                }
 
-                    if (image == null) {
-                        String hash = doc.get(IndexItem.HASH);
-                        if (image == null && hash != null && !hash.isEmpty()) {
-                            image = getViewImage(docId, hash,
-                                    isSupportedVideo(mediaType) || isAnimationImage(doc, mediaType));
-                        }
-
-                        if (Boolean.valueOf(doc.get(IndexItem.ISDIR))) {
-                            value.unsupportedType = true;
-                            value.icon = IconManager.getFolderIconGallery();
-
-                        } else if (image == null && !isSupportedImage(mediaType) && !isSupportedVideo(mediaType)) {
-                            value.unsupportedType = true;
-                            String type = doc.get(IndexItem.TYPE);
-                            String contentType = doc.get(IndexItem.CONTENTTYPE);
-                            value.icon = IconManager.getFileIconGallery(contentType, type);
-                        }
-
-                        if (image == null && value.icon == null && stream == null && isSupportedImage(mediaType)) {
-                            stream = App.get().appCase.getItemByLuceneID(docId).getBufferedInputStream();
-                        }
-
-                        if (stream != null) {
-                            stream.mark(10000000);
-                        }
-
-                        if (image == null && stream != null && imgThumbTask.getImageThumbConfig().isExtractThumb()
-                                && mediaType.equals("image/jpeg")) { //$NON-NLS-1$
-                            image = ImageMetadataUtil.getThumb(CloseShieldInputStream.wrap(stream));
-                            stream.reset();
-                        }
-
-                        if (image == null && stream != null) {
-                            image = ImageUtil.getSubSampledImage(stream, thumbSize);
-                            stream.reset();
-                        }
-
-                        if (image == null && stream != null) {
-                            String sizeStr = doc.get(IndexItem.LENGTH);
-                            Long size = sizeStr == null ? null : Long.parseLong(sizeStr);
-                            image = externalImageConverter.getImage(stream, thumbSize, false, size);
-                        }
-                    }
+                if (image == null && value.icon == null && stream == null && isSupportedImage(mediaType)) {
+                    stream = App.get().appCase.getItemByLuceneID(docId).getBufferedInputStream();
+                }
 
-                    if (image == null || image == errorImg) {
-                        if (value.icon == null)
-                            value.icon = errorIcon;
-                    } else {
-                        // Resize image only if it is too large (> 2x the desired thumbSize)
-                        if (image.getWidth() > thumbSize * 2 || image.getHeight() > thumbSize * 2) {
-                            image = ImageUtil.resizeImage(image, thumbSize, thumbSize);
-                        }
-
-                        if (blurFilter) {
-                            image = ImageUtil.blur(image, thumbSize, blurIntensity);
-                        }
-                        if (grayFilter) {
-                            image = ImageUtil.grayscale(image);
-                        }
-                    }
+                if (stream != null) {
+                    stream.mark(10000000);
+                }
 
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    value.icon = errorIcon;
+                if (image == null && stream != null && imgThumbTask.getImageThumbConfig().isExtractThumb()
+                        && mediaType.equals("image/jpeg")) { //$NON-NLS-1$
+                    image = ImageMetadataUtil.getThumb(CloseShieldInputStream.wrap(stream));
+                    stream.reset();
+                }
 
-                } finally {
-                    try {
-                        if (stream != null) {
-                            stream.close();
-                        }
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
+                if (image == null && stream != null) {
+                    image = ImageUtil.getSubSampledImage(stream, thumbSize);
+                    stream.reset();
                 }
 
-                if (image != errorImg) {
-                    value.image = image;
+                if (image == null && stream != null) {
+                    String sizeStr = doc.get(IndexItem.LENGTH);
+                    Long size = sizeStr == null ? null : Long.parseLong(sizeStr);
+                    image = externalImageConverter.getImage(stream, thumbSize, false, size);
                 }
+            }
 
-                synchronized (cache) {
-                    cache.put(id, value);
+            if (image == null || image == errorImg) {
+                if (value.icon == null)
+                    value.icon = errorIcon;
+            } else {
+                // Resize image only if it is too large (> 2x the desired thumbSize)
+                if (image.getWidth() > thumbSize * 2 || image.getHeight() > thumbSize * 2) {
+                    image = ImageUtil.resizeImage(image, thumbSize, thumbSize);
                 }
 
-                SwingUtilities.invokeLater(new Runnable() {
-                    @Override
-                    public void run() {
-                        App.get().galleryModel.fireTableCellUpdated(row, col);
-                    }
-                });
+                if (blurFilter) {
+                    image = ImageUtil.blur(image, thumbSize, blurIntensity);
+                }
+                if (grayFilter) {
+                    image = ImageUtil.grayscale(image);
+                }
             }
-        });
 
-        return new GalleryValue("...", null, id);
+        } catch (Exception e) {
+            e.printStackTrace();
+            value.icon = errorIcon;
+
+        } finally {
+            try {
+                if (stream != null) {
+                    stream.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        if (image != errorImg) {
+            value.image = image;
+        }
+        return value;
     }
 
     public void clearVideoThumbsInCache() {
         synchronized (cache) {
-            Iterator<IItemId> it = cache.keySet().iterator();
-            while (it.hasNext()) {
-                IItemId id = it.next();
+            cache.removeIf(id -> {
                 int docId = App.get().appCase.getLuceneId(id);
                 try {
-                    Document doc = App.get().appCase.getSearcher().doc(docId);
+                    Document doc = getDocument(docId);
                     String mediaType = doc.get(IndexItem.CONTENTTYPE);
-                    if (isSupportedVideo(mediaType) || isAnimationImage(doc, mediaType)) {
-                        it.remove();
-                    }
+                    return isSupportedVideo(mediaType) || isAnimationImage(doc, mediaType);
                 } catch (Exception e) {
+                    return false;
                 }
-            }
+            });
         }
     }
 
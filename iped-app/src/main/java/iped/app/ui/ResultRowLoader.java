@@ -0,0 +1,159 @@
+package iped.app.ui;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DocumentStoredFieldVisitor;
+import org.apache.lucene.search.IndexSearcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import iped.engine.datasource.SleuthkitReader;
+import iped.search.IMultiSearchResult;
+
+/**
+ * Loads stored fields of result table rows, just the ones of the loaded
+ * columns, in blocks of consecutive rows. Recently used blocks are kept in a
+ * LRU cache and the next blocks in the scroll direction are loaded in
+ * background, so scrolling does not wait for stored fields decompression.
+ */
+class ResultRowLoader {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(ResultRowLoader.class);
+
+    private static final int BLOCK_ROWS = 64;
+
+    private static final int MAX_CACHED_BLOCKS = 64;
+
+    private static final int PREFETCH_BLOCKS = 2;
+
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "ResultRowPrefetcher"); //$NON-NLS-1$
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<Integer, Document[]> blocks = new LinkedHashMap<Integer, Document[]>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Document[]> eldest) {
+            return size() > MAX_CACHED_BLOCKS;
+        }
+    };
+
+    // what cached blocks were loaded from, blocks are discarded if any changes
+    private IMultiSearchResult result;
+    private IndexSearcher searcher;
+    private String[] fields;
+    private Set<String> fieldsToLoad;
+    private int generation = 0;
+
+    private int lastBlock = -1;
+
+    /**
+     * Discards cached rows, must be called if the rows of the current result
+     * change.
+     */
+    synchronized void clear() {
+        blocks.clear();
+        generation++;
+        lastBlock = -1;
+    }
+
+    private synchronized void checkSource(IMultiSearchResult result, IndexSearcher searcher, String[] fields) {
+        if (result != this.result || searcher != this.searcher || fields != this.fields) {
+            this.result = result;
+            this.searcher = searcher;
+            this.fields = fields;
+            fieldsToLoad = new HashSet<>(Arrays.asList(fields));
+            // used to format FAT access dates
+            fieldsToLoad.add(SleuthkitReader.IN_FAT_FS);
+            clear();
+        }
+    }
+
+    Document getDocument(int row) throws IOException {
+        App app = App.get();
+        checkSource(app.ipedResult, app.appCase.getSearcher(), ResultTableModel.fields);
+
+        int block = row / BLOCK_ROWS;
+        Document[] docs;
+        int gen;
+        int prevBlock;
+        synchronized (this) {
+            docs = blocks.get(block);
+            gen = generation;
+            prevBlock = lastBlock;
+            lastBlock = block;
+        }
+        if (docs == null) {
+            docs = loadBlock(block, gen);
+        }
+        if (prevBlock != -1 && block != prevBlock) {
+            prefetch(block, block > prevBlock ? 1 : -1, gen);
+        }
+        return docs[row - block * BLOCK_ROWS];
+    }
+
+    private Document[] loadBlock(int block, int gen) throws IOException {
+        IMultiSearchResult result;
+        IndexSearcher searcher;
+        Set<String> fieldsToLoad;
+        synchronized (this) {
+            result = this.result;
+            searcher = this.searcher;
+            fieldsToLoad = this.fieldsToLoad;
+        }
+        int start = block * BLOCK_ROWS;
+        int end = Math.min(start + BLOCK_ROWS, result.getLength());
+        // read docs in index order, stored fields are compressed in blocks of docs
+        long[] docIdAndRow = new long[Math.max(0, end - start)];
+        for (int row = start; row < end; row++) {
+            int docId = App.get().appCase.getLuceneId(result.getItem(row));
+            docIdAndRow[row - start] = ((long) docId << 32) | (row - start);
+        }
+        Arrays.sort(docIdAndRow);
+        Document[] docs = new Document[BLOCK_ROWS];
+        for (long value : docIdAndRow) {
+            int docId = (int) (value >>> 32);
+            DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor(fieldsToLoad);
+            searcher.getIndexReader().document(docId, visitor);
+            docs[(int) value] = visitor.getDocument();
+        }
+        synchronized (this) {
+            if (gen == generation) {
+                blocks.put(block, docs);
+            }
+        }
+        return docs;
+    }
+
+    private void prefetch(int block, int direction, int gen) {
+        prefetchExecutor.execute(() -> {
+            for (int i = 1; i <= PREFETCH_BLOCKS; i++) {
+                int next = block + i * direction;
+                synchronized (this) {
+                    if (gen != generation || next < 0 || next * BLOCK_ROWS >= result.getLength()
+                            || blocks.containsKey(next)) {
+                        continue;
+                    }
+                }
+                try {
+                    loadBlock(next, gen);
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.warn("Error prefetching result rows: {}", e.toString()); //$NON-NLS-1$
+                    return;
+                }
+            }
+        });
+    }
+
+}
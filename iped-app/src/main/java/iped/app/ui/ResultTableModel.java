@@ -216,8 +216,13 @@ public IMultiSearchResult getSearchResult() {
         return App.get().ipedResult;
     }
 
-    private Document doc;
-    private int lastDocRead = -1;
+    private ResultRowLoader rowLoader = new ResultRowLoader();
+
+    @Override
+    public void fireTableDataChanged() {
+        rowLoader.clear();
+        super.fireTableDataChanged();
+    }
 
     @Override
     public Object getValueAt(int row, int col) {
@@ -231,17 +236,14 @@ public Object getValueAt(int row, int col) {
         String value = ""; //$NON-NLS-1$
 
         IItemId item = App.get().ipedResult.getItem(row);
-        int docId = App.get().appCase.getLuceneId(item);
-
-        if (docId != lastDocRead) {
-            try {
-                doc = app.appCase.getSearcher().doc(docId);
-            } catch (IOException e) {
-                e.printStackTrace();
-                return Messages.getString("ResultTableModel.Error"); //$NON-NLS-1$
-            }
+
+        Document doc;
+        try {
+            doc = rowLoader.getDocument(row);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Messages.getString("ResultTableModel.Error"); //$NON-NLS-1$
         }
-        lastDocRead = docId;
 
         try {
             int fCol = col - fixedCols.length;
@@ -21,11 +21,13 @@
 import java.io.IOException;
 import java.text.Collator;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.SortedDocValues;
@@ -36,6 +38,8 @@
 
 import iped.data.IItemId;
 import iped.engine.localization.CategoryLocalization;
+import iped.engine.lucene.GlobalOrdinals;
+import iped.engine.lucene.SegmentDocValues;
 import iped.engine.search.TimelineResults.TimeItemId;
 import iped.engine.task.index.IndexItem;
 import iped.engine.util.Util;
@@ -129,9 +133,13 @@ private void loadDocValues(String indexedField) {
                     sndv = atomicReader.getSortedNumericDocValues(indexedField);
                 }
             }
+            String dvField = indexedField;
             if (ndv == null && sndv == null) {
                 String prefix = ExtraProperties.LOCATIONS.equals(field) ? IndexItem.GEO_SSDV_PREFIX : "";
                 ssdv = atomicReader.getSortedSetDocValues(prefix + indexedField);
+                if (ssdv != null) {
+                    dvField = prefix + indexedField;
+                }
                 if (isCategory) {
                     localizedCategoryOrds = getLocalizedCategoryOrd(ssdv);
                 }
@@ -140,68 +148,95 @@ private void loadDocValues(String indexedField) {
                 sdv = atomicReader.getSortedDocValues(indexedField);
             }
 
-            loadOrds(sdv, ssdv, ndv, sndv);
+            loadOrds(dvField, sdv, ssdv, ndv, sndv);
 
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    private void loadOrds(SortedDocValues sdv, SortedSetDocValues ssdv, NumericDocValues ndv, SortedNumericDocValues sndv) throws IOException {
+    /**
+     * Fills ords arrays by segment in parallel, mapping segment ords of sorted
+     * fields to global ords.
+     */
+    private void loadOrds(String dvField, SortedDocValues sdv, SortedSetDocValues ssdv, NumericDocValues ndv, SortedNumericDocValues sndv) throws IOException {
+        SegmentDocValues segmentDocValues = App.get().appCase.getSegmentDocValues();
         int maxDoc = App.get().appCase.getLeafReader().maxDoc();
+        GlobalOrdinals globalOrds = sdv != null || ssdv != null ? segmentDocValues.getGlobalOrdinals(dvField) : null;
         if (sdv != null) {
             sdvOrds = new int[maxDoc];
-            for (int i = 0; i < maxDoc; i++) {
-                if (sdv.advanceExact(i)) {
-                    sdvOrds[i] = sdv.ordValue();
-                } else {
-                    sdvOrds[i] = -1;
-                }
-            }
         }
         if (ndv != null) {
             ndvOrds = new long[maxDoc];
-            for (int i = 0; i < maxDoc; i++) {
-                if (ndv.advanceExact(i)) {
-                    ndvOrds[i] = ndv.longValue();
-                } else {
-                    ndvOrds[i] = Long.MIN_VALUE;
-                }
-            }
         }
         if (ssdv != null) {
-            int[] empty = new int[0];
             ssdvOrds = new int[maxDoc][];
-            for (int i = 0; i < maxDoc; i++) {
-                if (ssdv.advanceExact(i)) {
-                    ArrayList<Integer> ords = new ArrayList<>();
-                    int ord;
-                    while ((ord = (int) ssdv.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
-                        ords.add(ord);
+        }
+        if (sndv != null) {
+            sndvOrds = new long[maxDoc][];
+        }
+        segmentDocValues.forEachLeaf(context -> {
+            int seg = context.ord;
+            LeafReader leafReader = context.reader();
+            int docBase = context.docBase;
+            int leafMaxDoc = leafReader.maxDoc();
+            if (sdvOrds != null) {
+                SortedDocValues leafSdv = DocValues.getSorted(leafReader, dvField);
+                for (int i = 0; i < leafMaxDoc; i++) {
+                    if (leafSdv.advanceExact(i)) {
+                        sdvOrds[docBase + i] = (int) globalOrds.getGlobalOrd(seg, leafSdv.ordValue());
+                    } else {
+                        sdvOrds[docBase + i] = -1;
                     }
-                    ssdvOrds[i] = new int[ords.size()];
-                    for (int j = 0; j < ords.size(); j++) {
-                        ssdvOrds[i][j] = ords.get(j);
+                }
+            }
+            if (ndvOrds != null) {
+                NumericDocValues leafNdv = DocValues.getNumeric(leafReader, dvField);
+                for (int i = 0; i < leafMaxDoc; i++) {
+                    if (leafNdv.advanceExact(i)) {
+                        ndvOrds[docBase + i] = leafNdv.longValue();
+                    } else {
+                        ndvOrds[docBase + i] = Long.MIN_VALUE;
                     }
-                } else {
-                    ssdvOrds[i] = empty;
                 }
             }
-        }
-        if (sndv != null) {
-            long[] empty = new long[0];
-            sndvOrds = new long[maxDoc][];
-            for (int i = 0; i < maxDoc; i++) {
-                if (sndv.advanceExact(i)) {
-                    sndvOrds[i] = new long[sndv.docValueCount()];
-                    for (int j = 0; j < sndv.docValueCount(); j++) {
-                        sndvOrds[i][j] = sndv.nextValue();
+            if (ssdvOrds != null) {
+                int[] empty = new int[0];
+                int[] buffer = new int[16];
+                SortedSetDocValues leafSsdv = DocValues.getSortedSet(leafReader, dvField);
+                for (int i = 0; i < leafMaxDoc; i++) {
+                    if (leafSsdv.advanceExact(i)) {
+                        // docValueCount() is not implemented by all codecs
+                        int numOrds = 0;
+                        long ord;
+                        while ((ord = leafSsdv.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
+                            if (numOrds == buffer.length) {
+                                buffer = Arrays.copyOf(buffer, numOrds * 2);
+                            }
+                            buffer[numOrds++] = (int) globalOrds.getGlobalOrd(seg, ord);
+                        }
+                        ssdvOrds[docBase + i] = Arrays.copyOf(buffer, numOrds);
+                    } else {
+                        ssdvOrds[docBase + i] = empty;
                     }
-                } else {
-                    sndvOrds[i] = empty;
                 }
             }
-        }
+            if (sndvOrds != null) {
+                long[] empty = new long[0];
+                SortedNumericDocValues leafSndv = DocValues.getSortedNumeric(leafReader, dvField);
+                for (int i = 0; i < leafMaxDoc; i++) {
+                    if (leafSndv.advanceExact(i)) {
+                        long[] values = new long[leafSndv.docValueCount()];
+                        for (int j = 0; j < values.length; j++) {
+                            values[j] = leafSndv.nextValue();
+                        }
+                        sndvOrds[docBase + i] = values;
+                    } else {
+                        sndvOrds[docBase + i] = empty;
+                    }
+                }
+            }
+        });
     }
 
     public static int[] getLocalizedCategoryOrd(SortedSetDocValues ssdv) throws IOException {
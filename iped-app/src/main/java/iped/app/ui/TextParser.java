@@ -24,6 +24,7 @@
 import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.io.RandomAccessFile;
+import java.io.Reader;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.FileChannel;
@@ -39,10 +40,12 @@
 
 import iped.data.IItem;
 import iped.engine.config.ConfigurationManager;
+import iped.engine.data.IPEDSource;
 import iped.engine.io.ParsingReader;
 import iped.engine.task.ParsingTask;
 import iped.engine.task.index.IndexItem;
 import iped.engine.task.index.IndexTask;
+import iped.engine.util.TextStore;
 import iped.io.IStreamSource;
 import iped.parsers.util.MetadataUtil;
 import iped.utils.LocalizedFormat;
@@ -60,6 +63,7 @@ public class TextParser extends CancelableWorker implements ITextParser {
     private IStreamSource content;
     volatile int id;
     private IItem item;
+    private IPEDSource source;
     private IProgressMonitor progressMonitor;
 
     private static Object lock = new Object();
@@ -91,6 +95,8 @@ public TextParser(IStreamSource content, String contentType, TemporaryResources
             parsingTask = this;
 
             id = item.getId();
+            // source of the item being loaded, the selected one may change before parsing
+            source = App.get().getLastSelectedSource();
 
             this.addPropertyChangeListener(new TextParserListener(this));
 
@@ -196,7 +202,7 @@ public Void doInBackground() {
     private ParseContext getTikaContext(IItem item) throws Exception {
         ParsingTask expander = new ParsingTask(item, App.get().getAutoParser());
         expander.init(ConfigurationManager.get());
-        ParseContext context = expander.getTikaContext(App.get().getLastSelectedSource());
+        ParseContext context = expander.getTikaContext(source);
         expander.setExtractEmbedded(false);
         return context;
     }
@@ -219,29 +225,50 @@ private FileChannel getFileChannel(File tmpFile) throws FileNotFoundException {
         return new RandomAccessFile(tmpFile, "rw").getChannel();
     }
 
+    /**
+     * @return reader of the text stored while processing, or null if it was not
+     *         stored or if it is not the text indexed for the item
+     */
+    private Reader getStoredTextReader() throws IOException {
+        TextStore textStore = source != null ? source.getTextStore() : null;
+        if (textStore == null) {
+            return null;
+        }
+        Long textSize = (Long) item.getExtraAttribute(TEXT_SIZE);
+        if (textSize != null && textStore.getTextSize(item.getId()) != textSize) {
+            return null;
+        }
+        return textStore.getTextReader(item.getId());
+    }
+
     public void parseText() {
-        ParsingReader textReader = null;
+        Reader textReader = null;
+        ParsingReader parsingReader = null;
         try {
 
-            // this can cause ConcurrentModificationException if another viewer access
-            // metadata at same time
-            // Metadata metadata = item.getMetadata();
-            Metadata metadata = MetadataUtil.clone(item.getMetadata());
-
-            ParsingTask.fillMetadata(item, metadata);
-
-            ParseContext context = getTikaContext(item);
-            InputStream is = item.getTikaStream();
-
             CountInputStream cis = null;
-            if (item.getLength() != null && !App.get().getAutoParser().hasSpecificParser(metadata)) {
-                progressMonitor.setMaximum(item.getLength());
-                cis = new CountInputStream(is);
-                is = cis;
-            }
+            textReader = getStoredTextReader();
+            if (textReader == null) {
+                // this can cause ConcurrentModificationException if another viewer access
+                // metadata at same time
+                // Metadata metadata = item.getMetadata();
+                Metadata metadata = MetadataUtil.clone(item.getMetadata());
+
+                ParsingTask.fillMetadata(item, metadata);
+
+                ParseContext context = getTikaContext(item);
+                InputStream is = item.getTikaStream();
+
+                if (item.getLength() != null && !App.get().getAutoParser().hasSpecificParser(metadata)) {
+                    progressMonitor.setMaximum(item.getLength());
+                    cis = new CountInputStream(is);
+                    is = cis;
+                }
 
-            textReader = new ParsingReader((Parser) App.get().getAutoParser(), is, metadata, context);
-            textReader.startBackgroundParsing();
+                parsingReader = new ParsingReader((Parser) App.get().getAutoParser(), is, metadata, context);
+                parsingReader.startBackgroundParsing();
+                textReader = parsingReader;
+            }
 
             tmp.dispose();
             File tmpFile = tmp.createTemporaryFile();
@@ -385,8 +412,8 @@ public void parseText() {
         } catch (Throwable e) {
             e.printStackTrace();
         }
-        if (this.isCancelled() && textReader != null) {
-            textReader.closeAndInterruptParsingTask(false);
+        if (this.isCancelled() && parsingReader != null) {
+            parsingReader.closeAndInterruptParsingTask(false);
         }
 
     }
@@ -0,0 +1,160 @@
+package iped.app.metadata;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import iped.engine.lucene.SegmentDocValues;
+
+public class FacetCounterTest {
+
+    private static final String SORTED = "sorted";
+    private static final String SORTED_SET = "sortedSet";
+    private static final String NUMERIC = "numeric";
+
+    /**
+     * Small tasks, so counting forks many of them
+     */
+    private static final int DOCS_PER_TASK = 1000;
+
+    private File tmpDir;
+    private Directory directory;
+    private DirectoryReader reader;
+    private SegmentDocValues segmentDocValues;
+    private Random random = new Random(0);
+
+    @Before
+    public void setUp() throws IOException {
+        tmpDir = Files.createTempDirectory("facetcounter").toFile();
+        directory = FSDirectory.open(tmpDir.toPath());
+        IndexWriterConfig config = new IndexWriterConfig();
+        // keeps segments, so there are many of them
+        config.setMergePolicy(NoMergePolicy.INSTANCE);
+        try (IndexWriter writer = new IndexWriter(directory, config)) {
+            for (int numDocs : new int[] { 5000, 10, 12000, 1, 3000 }) {
+                for (int i = 0; i < numDocs; i++) {
+                    Document doc = new Document();
+                    doc.add(new NumericDocValuesField(NUMERIC, random.nextInt(100)));
+                    if (random.nextInt(10) != 0) {
+                        doc.add(new SortedDocValuesField(SORTED, new BytesRef("value" + random.nextInt(500))));
+                    }
+                    int numValues = random.nextInt(4);
+                    for (int j = 0; j < numValues; j++) {
+                        doc.add(new SortedSetDocValuesField(SORTED_SET, new BytesRef("set" + random.nextInt(2000))));
+                    }
+                    writer.addDocument(doc);
+                }
+                writer.commit();
+            }
+        }
+        reader = DirectoryReader.open(directory);
+        assertTrue(reader.leaves().size() > 1);
+        segmentDocValues = new SegmentDocValues(reader, null);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        reader.close();
+        directory.close();
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    /**
+     * Counts values of the docs one by one, like MetadataSearch does when the
+     * result can't be counted by FacetCounter.
+     */
+    private int[] countSequentially(String field, RoaringBitmap docs) throws IOException {
+        if (SORTED.equals(field)) {
+            SortedDocValues values = MultiDocValues.getSortedValues(reader, field);
+            int[] counts = new int[values.getValueCount()];
+            for (int doc : docs) {
+                if (values.advanceExact(doc)) {
+                    counts[values.ordValue()]++;
+                }
+            }
+            return counts;
+        }
+        SortedSetDocValues values = MultiDocValues.getSortedSetValues(reader, field);
+        int[] counts = new int[(int) values.getValueCount()];
+        for (int doc : docs) {
+            if (values.advanceExact(doc)) {
+                long ord;
+                while ((ord = values.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
+                    counts[(int) ord]++;
+                }
+            }
+        }
+        return counts;
+    }
+
+    private RoaringBitmap randomDocs(RoaringBitmap from, int percent) {
+        RoaringBitmap docs = new RoaringBitmap();
+        for (int doc : from) {
+            if (random.nextInt(100) < percent) {
+                docs.add(doc);
+            }
+        }
+        return docs;
+    }
+
+    private void assertSameCounts(FacetCounter counter) throws IOException {
+        RoaringBitmap all = new RoaringBitmap();
+        all.add(0L, reader.maxDoc());
+        RoaringBitmap half = randomDocs(all, 50);
+        // subset of the last result, counted by subtracting removed docs
+        RoaringBitmap filtered = randomDocs(half, 70);
+        // few docs, counted without splitting into tasks
+        RoaringBitmap sparse = randomDocs(all, 1);
+        RoaringBitmap[] results = { all, half, filtered, sparse, new RoaringBitmap(), all, filtered };
+        for (String field : new String[] { SORTED, SORTED_SET }) {
+            for (RoaringBitmap docs : results) {
+                assertArrayEquals(field, countSequentially(field, docs), counter.count(field, docs));
+            }
+        }
+        // numeric fields are counted by MetadataSearch
+        assertNull(counter.count(NUMERIC, all));
+        assertNull(counter.count("missing", all));
+    }
+
+    @Test
+    public void testTaskCountArrays() throws IOException {
+        assertSameCounts(new FacetCounter(segmentDocValues, DOCS_PER_TASK, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testSharedAtomicCounts() throws IOException {
+        // too many values for per task arrays
+        assertSameCounts(new FacetCounter(segmentDocValues, DOCS_PER_TASK, 0));
+    }
+
+    @Test
+    public void testDefaultTaskSizes() throws IOException {
+        assertSameCounts(FacetCounter.get(segmentDocValues));
+    }
+
+}
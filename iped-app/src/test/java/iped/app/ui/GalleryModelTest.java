@@ -0,0 +1,176 @@
+package iped.app.ui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import iped.app.ui.GalleryModel.CellRequest;
+import iped.app.ui.GalleryModel.CellRequests;
+import iped.app.ui.GalleryModel.ValueCache;
+import iped.data.IItemId;
+import iped.engine.data.ItemId;
+
+public class GalleryModelTest {
+
+    private static GalleryValue newValue(IItemId id, int imageSize) {
+        GalleryValue value = new GalleryValue("item" + id.getId(), null, id);
+        value.image = new BufferedImage(imageSize, imageSize, BufferedImage.TYPE_INT_RGB);
+        return value;
+    }
+
+    private static IItemId id(int id) {
+        return new ItemId(0, id);
+    }
+
+    @Test
+    public void testCacheEvictsByBytes() {
+        long imageBytes = 100 * 100 * 4;
+        ValueCache cache = new ValueCache(imageBytes * 3);
+        for (int i = 0; i < 3; i++) {
+            cache.put(id(i), newValue(id(i), 100));
+        }
+        assertEquals(3, cache.size());
+        assertEquals(imageBytes * 3, cache.getBytes());
+
+        // least recently used is evicted, not the one just read
+        assertNotNull(cache.get(id(0)));
+        cache.put(id(3), newValue(id(3), 100));
+        assertEquals(3, cache.size());
+        assertEquals(imageBytes * 3, cache.getBytes());
+        assertNull(cache.get(id(1)));
+        assertTrue(cache.containsKey(id(0)));
+
+        // a larger image evicts as many values as needed
+        cache.put(id(4), newValue(id(4), 120));
+        assertEquals(120 * 120 * 4 + imageBytes, cache.getBytes());
+        assertEquals(2, cache.size());
+        assertTrue(cache.containsKey(id(4)));
+        assertTrue(cache.containsKey(id(3)));
+    }
+
+    @Test
+    public void testCacheKeepsValueLargerThanLimit() {
+        ValueCache cache = new ValueCache(1000);
+        cache.put(id(0), newValue(id(0), 10));
+        cache.put(id(1), newValue(id(1), 100));
+        assertEquals(1, cache.size());
+        assertTrue(cache.containsKey(id(1)));
+        assertEquals(100 * 100 * 4, cache.getBytes());
+    }
+
+    @Test
+    public void testCacheReplaceAndRemove() {
+        ValueCache cache = new ValueCache(Long.MAX_VALUE);
+        cache.put(id(0), newValue(id(0), 100));
+        cache.put(id(0), newValue(id(0), 10));
+        // values without image are counted with a small size
+        cache.put(id(1), new GalleryValue("", null, id(1)));
+        assertEquals(10 * 10 * 4 + 256, cache.getBytes());
+
+        cache.removeIf(id -> id.getId() == 0);
+        assertEquals(1, cache.size());
+        assertEquals(256, cache.getBytes());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+    }
+
+    private static List<Integer> takeAll(CellRequests requests) throws InterruptedException {
+        List<Integer> ids = new ArrayList<>();
+        while (requests.size() > 0) {
+            CellRequest request = requests.take();
+            ids.add(request.id.getId());
+            requests.done(request);
+        }
+        return ids;
+    }
+
+    @Test
+    public void testVisibleBeforePrefetched() throws InterruptedException {
+        CellRequests requests = new CellRequests();
+        requests.addPrefetch(id(10), 10, 0);
+        requests.addPrefetch(id(11), 11, 0);
+        requests.addVisible(id(1), 1, 0);
+        requests.addVisible(id(2), 2, 0);
+        // already pending
+        requests.addVisible(id(10), 10, 0);
+        assertEquals(4, requests.size());
+        assertEquals(List.of(2, 1, 10, 11), takeAll(requests));
+    }
+
+    @Test
+    public void testWindowDiscardsRequests() throws InterruptedException {
+        CellRequests requests = new CellRequests();
+        for (int row = 0; row < 10; row++) {
+            requests.addPrefetch(id(row), row, 0);
+        }
+        requests.setWindow(3, 5);
+        assertEquals(3, requests.size());
+
+        // discarded ones can be requested again
+        requests.addPrefetch(id(8), 8, 0);
+        requests.addPrefetch(id(4), 4, 0);
+        assertEquals(4, requests.size());
+
+        // the request of row 8 is out of the window and skipped
+        assertEquals(3, requests.take().id.getId());
+        assertEquals(4, requests.take().id.getId());
+        assertEquals(5, requests.take().id.getId());
+        requests.addVisible(id(9), 9, 0);
+        requests.setWindow(9, 9);
+        assertEquals(9, requests.take().id.getId());
+        assertEquals(0, requests.size());
+    }
+
+    @Test
+    public void testResetDiscardsRequestsOfOldResult() throws InterruptedException {
+        CellRequests requests = new CellRequests();
+        requests.setWindow(0, 1);
+        requests.addVisible(id(0), 0, 0);
+        requests.addVisible(id(1), 1, 0);
+        CellRequest processing = requests.take();
+        assertTrue(requests.isCurrent(processing));
+
+        requests.reset();
+        assertEquals(0, requests.size());
+        // results of the request taken before must not update cells
+        assertFalse(requests.isCurrent(processing));
+        requests.done(processing);
+
+        // the window was reset too
+        requests.addVisible(id(1), 50, 0);
+        CellRequest request = requests.take();
+        assertEquals(1, request.id.getId());
+        assertTrue(requests.isCurrent(request));
+    }
+
+    @Test
+    public void testTakeWaitsForCurrentRequest() throws Exception {
+        CellRequests requests = new CellRequests();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<CellRequest> future = executor.submit(requests::take);
+            requests.setWindow(0, 0);
+            requests.addPrefetch(id(5), 5, 0);
+            requests.addPrefetch(id(0), 0, 0);
+            CellRequest request = future.get(10, TimeUnit.SECONDS);
+            assertEquals(0, request.id.getId());
+            assertEquals(0, request.row);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -31,26 +31,25 @@
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.Iterator;
+import java.util.Random;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class Benchmark {
+
+    private static final int RUNS = 10;
+
     public static void main(String[] args) throws IOException, InterruptedException {
         String[] words = { "Christmas", "Cains", "Marley", "spectre", "Ebenezer", "double-ironed", "supernatural",
                 "SPIRITS", "Ding", "Ali Baba" };
 
         long t0 = System.currentTimeMillis();
 
-        BufferedReader fr = new BufferedReader(
-                new InputStreamReader(Benchmark.class.getResourceAsStream("christmas.txt")));
-        String text = "";
-        String line = fr.readLine();
-        while (line != null) {
-            text += line + "\n";
-            line = fr.readLine();
-        }
+        String text = readText(words);
+        byte[] bytes = text.getBytes("windows-1252");
 
         System.out.println("Starting benchmark");
         long t1 = System.currentTimeMillis();
@@ -60,11 +59,10 @@ public static void main(String[] args) throws IOException, InterruptedException
             finder.add(word.getBytes("windows-1252"), word.getBytes("windows-1252"));
         finder.prepare();
 
-        Iterator<SearchResult> it = finder.search(text.getBytes("windows-1252"));
-        while (it.hasNext())
-            it.next();
-
-        long t2 = System.currentTimeMillis();
+        ByteDFA.Builder builder = new ByteDFA.Builder();
+        for (int i = 0; i < words.length; i++)
+            builder.add(words[i].getBytes("windows-1252"), i);
+        ByteDFA dfa = builder.build();
 
         String pattern = "";
         for (String word : words) {
@@ -73,14 +71,79 @@ public static void main(String[] args) throws IOException, InterruptedException
             pattern += word;
         }
         Pattern p = Pattern.compile(pattern);
-        Matcher m = p.matcher(text);
-        while (m.find())
-            continue;
 
-        long t3 = System.currentTimeMillis();
+        long t2 = System.currentTimeMillis();
+
+        // warm up and check all find the same number of matches
+        int acMatches = 0, dfaMatches = 0, regexMatches = 0;
+        for (int run = 0; run < RUNS; run++) {
+            acMatches = searchAhoCorasick(finder, bytes);
+            dfaMatches = searchDFA(dfa, bytes);
+            regexMatches = searchRegex(p, text);
+        }
 
+        long t3 = System.nanoTime();
+        for (int run = 0; run < RUNS; run++)
+            searchAhoCorasick(finder, bytes);
+        long t4 = System.nanoTime();
+        for (int run = 0; run < RUNS; run++)
+            searchDFA(dfa, bytes);
+        long t5 = System.nanoTime();
+        for (int run = 0; run < RUNS; run++)
+            searchRegex(p, text);
+        long t6 = System.nanoTime();
+
+        System.out.println("Text size: " + bytes.length + " bytes");
         System.out.println("File reading: " + Long.toString(t1 - t0) + "ms");
-        System.out.println("Aho-Corasick: " + Long.toString(t2 - t1) + "ms");
-        System.out.println("Java-regexp: " + Long.toString(t3 - t2) + "ms");
+        System.out.println("Building automata: " + Long.toString(t2 - t1) + "ms");
+        System.out.println("Aho-Corasick: " + (t4 - t3) / RUNS / 1000000 + "ms, matches: " + acMatches);
+        System.out.println("ByteDFA: " + (t5 - t4) / RUNS / 1000000 + "ms, matches: " + dfaMatches);
+        System.out.println("Java-regexp: " + (t6 - t5) / RUNS / 1000000 + "ms, matches: " + regexMatches);
+    }
+
+    private static String readText(String[] words) throws IOException {
+        InputStream is = Benchmark.class.getResourceAsStream("christmas.txt");
+        StringBuilder text = new StringBuilder();
+        if (is != null) {
+            try (BufferedReader fr = new BufferedReader(new InputStreamReader(is))) {
+                String line;
+                while ((line = fr.readLine()) != null)
+                    text.append(line).append('\n');
+            }
+        } else {
+            // random text with some words, if the book is not available
+            Random random = new Random(0);
+            while (text.length() < 1 << 24) {
+                if (random.nextInt(100) == 0)
+                    text.append(words[random.nextInt(words.length)]);
+                else
+                    text.append((char) ('a' + random.nextInt(26)));
+                if (random.nextInt(6) == 0)
+                    text.append(' ');
+            }
+        }
+        return text.toString();
+    }
+
+    private static int searchAhoCorasick(AhoCorasick finder, byte[] bytes) {
+        int matches = 0;
+        Iterator<SearchResult> it = finder.search(bytes);
+        while (it.hasNext())
+            matches += it.next().getOutputs().size();
+        return matches;
+    }
+
+    private static int searchDFA(ByteDFA dfa, byte[] bytes) {
+        int[] matches = new int[1];
+        dfa.scan(bytes, 0, bytes.length, dfa.getInitialState(), 0, (output, end) -> matches[0]++);
+        return matches[0];
+    }
+
+    private static int searchRegex(Pattern p, String text) {
+        int matches = 0;
+        Matcher m = p.matcher(text);
+        while (m.find())
+            matches++;
+        return matches;
     }
 }
@@ -0,0 +1,204 @@
+package org.arabidopsis.ahocorasick;
+
+import java.util.Arrays;
+
+/**
+ * Aho-Corasick automaton compiled to a deterministic automaton stored in flat
+ * int arrays, with all failure transitions resolved. Each input byte costs a
+ * single array lookup and matches are reported as int outputs to a
+ * {@link MatchListener}, so searching does not allocate objects.
+ *
+ * The state is returned by {@link #scan}, so a search can continue across
+ * buffers without keeping overlapping bytes.
+ */
+public class ByteDFA {
+
+    /**
+     * Receives the outputs of patterns found while scanning.
+     */
+    public interface MatchListener {
+
+        /**
+         * @param output
+         *            output of the pattern found
+         * @param end
+         *            offset after the last byte of the pattern found
+         */
+        void match(int output, long end);
+    }
+
+    /**
+     * Next state by current state * 256 + input byte. Negative values (~next)
+     * mean the next state has outputs.
+     */
+    private final int[] delta;
+
+    /**
+     * Outputs of each state are outputs[outputStart[state]] until
+     * outputs[outputStart[state + 1] - 1]
+     */
+    private final int[] outputStart;
+
+    private final int[] outputs;
+
+    private final int maxPatternLength;
+
+    private ByteDFA(int[] delta, int[] outputStart, int[] outputs, int maxPatternLength) {
+        this.delta = delta;
+        this.outputStart = outputStart;
+        this.outputs = outputs;
+        this.maxPatternLength = maxPatternLength;
+    }
+
+    public int getInitialState() {
+        return 0;
+    }
+
+    public int getNumStates() {
+        return outputStart.length - 1;
+    }
+
+    public int getMaxPatternLength() {
+        return maxPatternLength;
+    }
+
+    /**
+     * Scans len bytes of buf starting at off.
+     *
+     * @param state
+     *            state returned by the previous scan, or the initial state
+     * @param bufOffset
+     *            offset of buf[off] in the whole input, used to compute match
+     *            offsets
+     * @return the state after the last byte scanned
+     */
+    public int scan(byte[] buf, int off, int len, int state, long bufOffset, MatchListener listener) {
+        final int[] delta = this.delta;
+        final int end = off + len;
+        for (int i = off; i < end; i++) {
+            int next = delta[(state << 8) | (buf[i] & 0xFF)];
+            if (next < 0) {
+                next = ~next;
+                long matchEnd = bufOffset + (i - off) + 1;
+                for (int j = outputStart[next]; j < outputStart[next + 1]; j++) {
+                    listener.match(outputs[j], matchEnd);
+                }
+            }
+            state = next;
+        }
+        return state;
+    }
+
+    public static class Builder {
+
+        private int[] trie = new int[256 * 64];
+        private int[][] stateOutputs = new int[64][];
+        private int numStates = 1;
+        private int maxPatternLength = 0;
+
+        public Builder() {
+            Arrays.fill(trie, -1);
+        }
+
+        /**
+         * Adds a pattern, it will be reported with the specified output when found.
+         */
+        public Builder add(byte[] pattern, int output) {
+            if (pattern.length == 0) {
+                throw new IllegalArgumentException("Empty pattern"); //$NON-NLS-1$
+            }
+            int state = 0;
+            for (byte b : pattern) {
+                int idx = (state << 8) | (b & 0xFF);
+                if (trie[idx] == -1) {
+                    // newState() may reallocate trie
+                    int next = newState();
+                    trie[idx] = next;
+                }
+                state = trie[idx];
+            }
+            stateOutputs[state] = append(stateOutputs[state], output);
+            maxPatternLength = Math.max(maxPatternLength, pattern.length);
+            return this;
+        }
+
+        private int newState() {
+            if (numStates << 8 == trie.length) {
+                int oldLen = trie.length;
+                trie = Arrays.copyOf(trie, oldLen * 2);
+                Arrays.fill(trie, oldLen, trie.length, -1);
+                stateOutputs = Arrays.copyOf(stateOutputs, stateOutputs.length * 2);
+            }
+            return numStates++;
+        }
+
+        private static int[] append(int[] array, int value) {
+            if (array == null) {
+                return new int[] { value };
+            }
+            int[] result = Arrays.copyOf(array, array.length + 1);
+            result[array.length] = value;
+            return result;
+        }
+
+        public ByteDFA build() {
+            int[] delta = Arrays.copyOf(trie, numStates << 8);
+            int[] fail = new int[numStates];
+            int[] queue = new int[numStates];
+            int head = 0, tail = 0;
+
+            for (int b = 0; b < 256; b++) {
+                int s = delta[b];
+                if (s == -1) {
+                    delta[b] = 0;
+                } else {
+                    fail[s] = 0;
+                    queue[tail++] = s;
+                }
+            }
+            // breadth first, so fail states are already complete when used
+            while (head < tail) {
+                int state = queue[head++];
+                int f = fail[state];
+                if (stateOutputs[f] != null) {
+                    int[] own = stateOutputs[state];
+                    for (int o : stateOutputs[f]) {
+                        own = append(own, o);
+                    }
+                    stateOutputs[state] = own;
+                }
+                for (int b = 0; b < 256; b++) {
+                    int idx = (state << 8) | b;
+                    int s = delta[idx];
+                    if (s == -1) {
+                        delta[idx] = delta[(f << 8) | b];
+                    } else {
+                        fail[s] = delta[(f << 8) | b];
+                        queue[tail++] = s;
+                    }
+                }
+            }
+
+            int[] outputStart = new int[numStates + 1];
+            int total = 0;
+            for (int s = 0; s < numStates; s++) {
+                outputStart[s] = total;
+                total += stateOutputs[s] != null ? stateOutputs[s].length : 0;
+            }
+            outputStart[numStates] = total;
+            int[] outputs = new int[total];
+            for (int s = 0; s < numStates; s++) {
+                if (stateOutputs[s] != null) {
+                    System.arraycopy(stateOutputs[s], 0, outputs, outputStart[s], stateOutputs[s].length);
+                }
+            }
+            for (int i = 0; i < delta.length; i++) {
+                if (stateOutputs[delta[i]] != null) {
+                    delta[i] = ~delta[i];
+                }
+            }
+            return new ByteDFA(delta, outputStart, outputs, maxPatternLength);
+        }
+    }
+
+}
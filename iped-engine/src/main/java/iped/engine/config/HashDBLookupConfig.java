@@ -21,8 +21,10 @@ public class HashDBLookupConfig extends AbstractTaskConfig<Pair<Boolean, String>
     public static final String NSRL_CONFIG_FILE = "NSRLConfig.json";
     private static final String ENABLE_PARAM = "enableHashDBLookup";
     private static final String EXCLUDE_KNOWN = "excludeKnown";
+    private static final String USE_INDEX = "useMemoryMappedIndex";
 
     private boolean excludeKnown;
+    private boolean useIndex;
     private String nsrlConfig;
 
     public String getNsrlConfig() {
@@ -64,6 +66,10 @@ public void processTaskConfig(Path resource) throws IOException {
             if (value != null) {
                 setExcludeKnown(Boolean.valueOf(value.trim()));
             }
+            value = properties.getProperty(USE_INDEX);
+            if (value != null) {
+                setUseIndex(Boolean.valueOf(value.trim()));
+            }
         } else if (resource.endsWith(NSRL_CONFIG_FILE)) {
             this.nsrlConfig = new String(Files.readAllBytes(resource), StandardCharsets.UTF_8);
         }
@@ -78,6 +84,14 @@ public void setExcludeKnown(boolean excludeKnown) {
         this.excludeKnown = excludeKnown;
     }
 
+    public boolean isUseIndex() {
+        return useIndex;
+    }
+
+    public void setUseIndex(boolean useIndex) {
+        this.useIndex = useIndex;
+    }
+
     @Override
     public Pair<Boolean, String> getConfiguration() {
         return Pair.of(excludeKnown, nsrlConfig);
@@ -26,6 +26,10 @@ public class IndexTaskConfig extends AbstractTaskPropertiesConfig {
     private int maxTokenLength = 255;
     private int[] extraCharsToIndexArray;
     private int commitIntervalSeconds = 1800;
+    private int numIndexPartitions = 1;
+    private int ramBufferSizeMB = 0;
+    private boolean storeExtractedText = false;
+    private int liveItemRegistryMaxMemoryMB = 256;
 
     @Override
     public String getTaskEnableProperty() {
@@ -95,6 +99,26 @@ public void processProperties(UTF8Properties properties) {
             commitIntervalSeconds = Integer.parseInt(value.trim());
         }
 
+        value = properties.getProperty("numIndexPartitions"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            numIndexPartitions = Math.max(1, Integer.parseInt(value.trim()));
+        }
+
+        value = properties.getProperty("ramBufferSizeMB"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty() && !value.trim().equalsIgnoreCase("auto")) { //$NON-NLS-1$
+            ramBufferSizeMB = Integer.parseInt(value.trim());
+        }
+
+        value = properties.getProperty("storeExtractedText"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            storeExtractedText = Boolean.valueOf(value.trim());
+        }
+
+        value = properties.getProperty("liveItemRegistryMaxMemoryMB"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            liveItemRegistryMaxMemoryMB = Math.max(0, Integer.parseInt(value.trim()));
+        }
+
     }
 
     private int[] convertExtraCharsToIndex(String chars) {
@@ -173,4 +197,32 @@ public int getCommitIntervalSeconds() {
         return commitIntervalSeconds;
     }
 
+    public int getNumIndexPartitions() {
+        return numIndexPartitions;
+    }
+
+    /**
+     * @return RAM buffer size of each index writer, or 0 to compute it from heap
+     *         size and number of workers
+     */
+    public int getRAMBufferSizeMB() {
+        return ramBufferSizeMB;
+    }
+
+    /**
+     * @return true if extracted texts should be kept in the case text store, to
+     *         be viewed without parsing items again
+     */
+    public boolean isStoreExtractedText() {
+        return storeExtractedText;
+    }
+
+    /**
+     * @return memory limit of the registry of hashes, paths and names of items
+     *         indexed while processing, 0 if it is disabled
+     */
+    public int getLiveItemRegistryMaxMemoryMB() {
+        return liveItemRegistryMaxMemoryMB;
+    }
+
 }
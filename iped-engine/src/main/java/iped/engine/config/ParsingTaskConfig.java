@@ -28,6 +28,9 @@ public class ParsingTaskConfig extends AbstractTaskPropertiesConfig {
     private boolean processImagesInPDFs = false;
     private String phoneParsersToUse;
     private String internalParsersList;
+    private boolean enableParseCache = false;
+    private String parseCachePath;
+    private int maxParseCacheSizeMB = 10240;
 
     @Override
     public String getTaskEnableProperty() {
@@ -115,6 +118,21 @@ public void processProperties(UTF8Properties properties) {
             internalParsersList = value.trim();
         }
 
+        value = properties.getProperty("enableParseCache"); //$NON-NLS-1$
+        if (value != null) {
+            enableParseCache = Boolean.valueOf(value.trim());
+        }
+
+        value = properties.getProperty("parseCachePath"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            parseCachePath = value.trim();
+        }
+
+        value = properties.getProperty("maxParseCacheSizeMB"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            maxParseCacheSizeMB = Integer.valueOf(value.trim());
+        }
+
     }
 
     public boolean isEnableExternalParsing() {
@@ -169,6 +187,22 @@ public String getInternalParsersList() {
         return internalParsersList;
     }
 
+    public boolean isEnableParseCache() {
+        return enableParseCache;
+    }
+
+    /**
+     * @return path of the parse results cache, or null to use the default one in
+     *         the case folder
+     */
+    public String getParseCachePath() {
+        return parseCachePath;
+    }
+
+    public int getMaxParseCacheSizeMB() {
+        return maxParseCacheSizeMB;
+    }
+
     public void setInternalParsersList(String internalParsersList) {
         this.internalParsersList = internalParsersList;
     }
@@ -0,0 +1,125 @@
+package iped.engine.core;
+
+import java.util.Comparator;
+import java.util.TreeMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import iped.data.IItem;
+import iped.engine.data.CaseData;
+
+/**
+ * Work stealing scheduler that starts costly items first. Items with estimated
+ * processing cost above a threshold are kept in a priority queue ordered by
+ * cost, and are taken by workers before other items. Other items keep flowing
+ * through the work stealing deques, so cheap items are processed by the
+ * remaining workers while the costly ones are running. Costly subitems are
+ * always enqueued, so they can be started by other workers instead of delaying
+ * the processing of their parent.
+ *
+ * Costs are estimated by {@link ItemCostEstimator} using item size, media type
+ * and the processing times of previous items reported by tasks.
+ */
+public class CostAwareProcessingQueues extends WorkStealingProcessingQueues {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(CostAwareProcessingQueues.class);
+
+    /** 30s */
+    private static final long COSTLY_ITEM_MIN_COST = 30 * 1000000L;
+
+    private static class CostItem {
+
+        private final IItem item;
+        private final long cost;
+
+        private CostItem(IItem item, long cost) {
+            this.item = item;
+            this.cost = cost;
+        }
+    }
+
+    private static final Comparator<CostItem> HIGHER_COST_FIRST = Comparator.comparingLong((CostItem c) -> c.cost)
+            .reversed();
+
+    private final ItemCostEstimator estimator = new ItemCostEstimator();
+
+    private final TreeMap<Integer, PriorityBlockingQueue<CostItem>> costlyItems = new TreeMap<>();
+
+    private final AtomicInteger costlyItemsCount = new AtomicInteger();
+
+    private final LongAdder costlyItemsTaken = new LongAdder();
+
+    public CostAwareProcessingQueues(CaseData caseData, int numWorkers) {
+        super(caseData, numWorkers);
+        for (Integer priority : priorities) {
+            costlyItems.put(priority, new PriorityBlockingQueue<>(11, HIGHER_COST_FIRST));
+        }
+    }
+
+    private boolean isCostly(long cost) {
+        return cost >= COSTLY_ITEM_MIN_COST;
+    }
+
+    @Override
+    protected void push(Level level, int idx, IItem item, boolean addFirst) {
+        long cost = estimator.estimateCost(item);
+        if (isCostly(cost)) {
+            costlyItems.get(level.priority).add(new CostItem(item, cost));
+            costlyItemsCount.incrementAndGet();
+        } else {
+            super.push(level, idx, item, addFirst);
+        }
+    }
+
+    @Override
+    protected IItem pollItem(Level level, int self) {
+        // cheap check to avoid contention on the priority queue
+        if (costlyItemsCount.get() > 0) {
+            CostItem costItem = costlyItems.get(level.priority).poll();
+            if (costItem != null) {
+                costlyItemsCount.decrementAndGet();
+                costlyItemsTaken.increment();
+                LOGGER.debug("Taking costly item {} with estimated cost {}s", costItem.item.getPath(), //$NON-NLS-1$
+                        costItem.cost / 1000000);
+                return costItem.item;
+            }
+        }
+        return super.pollItem(level, self);
+    }
+
+    @Override
+    public IItem peekItemFromCurrentQueue() {
+        Level level = getCurrentLevel();
+        CostItem costItem = costlyItems.get(level.priority).peek();
+        if (costItem != null) {
+            return costItem.item;
+        }
+        return super.peekItemFromCurrentQueue();
+    }
+
+    @Override
+    public boolean isToEnqueueSubitem(IItem subitem, int numWorkers) {
+        return isCostly(estimator.estimateCost(subitem)) || super.isToEnqueueSubitem(subitem, numWorkers);
+    }
+
+    @Override
+    public void addProcessingTime(IItem item, long time) {
+        estimator.addProcessingTime(item, time);
+    }
+
+    @Override
+    public void itemProcessed(IItem item) {
+        estimator.addProcessedItem(item);
+    }
+
+    @Override
+    public void logStatistics() {
+        super.logStatistics();
+        LOGGER.info("Cost aware queues: costly items started first: {}", costlyItemsTaken.sum()); //$NON-NLS-1$
+    }
+
+}
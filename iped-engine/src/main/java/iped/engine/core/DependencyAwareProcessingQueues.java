@@ -0,0 +1,266 @@
+package iped.engine.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import iped.data.IItem;
+import iped.engine.data.CaseData;
+import iped.engine.search.ItemSearcher;
+import iped.search.IItemSearcher;
+
+/**
+ * Scheduler that overlaps processing priorities. Items of later priorities
+ * depend just on items of lower priorities of the same data source, like chat
+ * databases that link media files of the same extraction. When the current
+ * queue has no items left, but some are still being processed, idle workers
+ * take items of later priorities whose data source has no items of lower
+ * priorities queued or being processed, instead of waiting for all items of the
+ * case. Before such items are processed, the item searcher is reopened from the
+ * index writer, so it finds the items they depend on.
+ *
+ * Queues still change at the same barrier of {@link LinkedListProcessingQueues}
+ * when all items of the current queue were processed, then items released
+ * earlier were already processed.
+ */
+public class DependencyAwareProcessingQueues extends LinkedListProcessingQueues {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(DependencyAwareProcessingQueues.class);
+
+    /**
+     * Max items scanned in later queues to find a released one
+     */
+    private static final int MAX_SCANNED_ITEMS = 10000;
+
+    private static final String NO_DATASOURCE = ""; //$NON-NLS-1$
+
+    // data source -> priority -> items queued or being processed
+    private final Map<String, Map<Integer, Integer>> pendingItems = new HashMap<>();
+
+    // queued items and the priority they were accounted in
+    private final IdentityHashMap<IItem, Integer> accountedItems = new IdentityHashMap<>();
+
+    // data source -> max released priority
+    private final Map<String, Integer> releasedPriorities = new HashMap<>();
+
+    // data source -> searcher generation needed to process its released items
+    private final Map<String, Integer> releaseGenerations = new HashMap<>();
+
+    private boolean producerFinished = false;
+
+    private int releaseGeneration = 0;
+
+    private final Object searcherLock = new Object();
+
+    private int searcherGeneration = 0;
+
+    private Supplier<ItemSearcher> searcherFactory;
+
+    private final List<IItemSearcher> replacedSearchers = new ArrayList<>();
+
+    private long earlyReleasedItems = 0;
+
+    public DependencyAwareProcessingQueues(CaseData caseData) {
+        super(caseData);
+    }
+
+    /**
+     * Sets the factory of searchers over the items indexed so far, used to
+     * refresh the searcher before processing released items.
+     */
+    public void setSearcherFactory(Supplier<ItemSearcher> searcherFactory) {
+        this.searcherFactory = searcherFactory;
+    }
+
+    private static String getDataSourceKey(IItem item) {
+        if (item.getDataSource() == null || item.getDataSource().getUUID() == null) {
+            return NO_DATASOURCE;
+        }
+        return item.getDataSource().getUUID();
+    }
+
+    private void addPending(String dataSource, int priority, int delta) {
+        pendingItems.computeIfAbsent(dataSource, k -> new HashMap<>()).merge(priority, delta, Integer::sum);
+    }
+
+    @Override
+    protected void enqueue(IItem item, int queuePriority, boolean addFirst, boolean blockIfFull)
+            throws InterruptedException {
+        if (!item.isQueueEnd()) {
+            // accounted before, the item could be taken and processed right after enqueued
+            synchronized (this) {
+                String dataSource = getDataSourceKey(item);
+                Integer prevPriority = accountedItems.put(item, queuePriority);
+                if (prevPriority != null) {
+                    // re-enqueued
+                    addPending(dataSource, prevPriority, -1);
+                }
+                addPending(dataSource, queuePriority, 1);
+            }
+        }
+        super.enqueue(item, queuePriority, addFirst, blockIfFull);
+    }
+
+    @Override
+    public void itemProcessed(IItem item) {
+        synchronized (this) {
+            Integer priority = accountedItems.remove(item);
+            if (priority != null) {
+                addPending(getDataSourceKey(item), priority, -1);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void producerFinished() {
+        producerFinished = true;
+    }
+
+    /**
+     * @return true if all items of the data source with lower priorities were
+     *         processed
+     */
+    private boolean isReleased(String dataSource, int priority) {
+        Integer released = releasedPriorities.get(dataSource);
+        if (released != null && released >= priority) {
+            return true;
+        }
+        if (!producerFinished) {
+            return false;
+        }
+        Map<Integer, Integer> pending = pendingItems.get(dataSource);
+        if (pending != null) {
+            for (Map.Entry<Integer, Integer> entry : pending.entrySet()) {
+                if (entry.getKey() < priority && entry.getValue() > 0) {
+                    return false;
+                }
+            }
+        }
+        releasedPriorities.put(dataSource, priority);
+        releaseGenerations.put(dataSource, ++releaseGeneration);
+        LOGGER.info("Released items with priority {} of data source {}", priority, dataSource); //$NON-NLS-1$
+        return true;
+    }
+
+    @Override
+    public boolean isToProcessNow(IItem item, int priority) {
+        if (super.isToProcessNow(item, priority)) {
+            return true;
+        }
+        Integer generation;
+        synchronized (this) {
+            String dataSource = getDataSourceKey(item);
+            if (!isReleased(dataSource, priority)) {
+                return false;
+            }
+            generation = releaseGenerations.get(dataSource);
+        }
+        refreshSearcher(generation);
+        return true;
+    }
+
+    @Override
+    public synchronized IItem pollFirstFromCurrentQueue() throws InterruptedException {
+        IItem item = super.pollFirstFromCurrentQueue();
+        if (item != null && item.isQueueEnd()) {
+            IItem released = pollReleasedItem();
+            if (released != null) {
+                // queue end is the only item in current queue
+                addLastToCurrentQueue(item);
+                return released;
+            }
+        }
+        return item;
+    }
+
+    private IItem pollReleasedItem() {
+        Integer current = currentQueuePriority;
+        if (current == null || !producerFinished) {
+            return null;
+        }
+        int scanned = 0;
+        for (Integer priority : priorities.tailSet(current, false)) {
+            Iterator<IItem> it = getQueue(priority).iterator();
+            while (it.hasNext() && scanned++ < MAX_SCANNED_ITEMS) {
+                IItem item = it.next();
+                if (!item.isQueueEnd() && isReleased(getDataSourceKey(item), priority)) {
+                    it.remove();
+                    earlyReleasedItems++;
+                    return item;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public IItem takeItem(Worker worker) throws InterruptedException {
+        IItem item = super.takeItem(worker);
+        if (!item.isQueueEnd()) {
+            Integer priority;
+            synchronized (this) {
+                priority = accountedItems.get(item);
+            }
+            if (priority != null) {
+                isToProcessNow(item, priority);
+            }
+        }
+        return item;
+    }
+
+    /**
+     * Reopens the searcher from the index writer, if it was not reopened after
+     * the release with the specified generation.
+     */
+    private void refreshSearcher(Integer generation) {
+        if (searcherFactory == null || generation == null) {
+            return;
+        }
+        synchronized (searcherLock) {
+            if (searcherGeneration >= generation) {
+                return;
+            }
+            int newGeneration;
+            synchronized (this) {
+                newGeneration = releaseGeneration;
+            }
+            String key = IItemSearcher.class.getName();
+            IItemSearcher prevSearcher = (IItemSearcher) caseData.getCaseObject(key);
+            caseData.putCaseObject(key, searcherFactory.get());
+            if (prevSearcher != null) {
+                // could be in use by items being processed, closed at next queue change
+                replacedSearchers.add(prevSearcher);
+            }
+            searcherGeneration = newGeneration;
+        }
+    }
+
+    @Override
+    public Integer changeToNextQueue() {
+        synchronized (searcherLock) {
+            for (IItemSearcher searcher : replacedSearchers) {
+                try {
+                    searcher.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Error closing item searcher", e); //$NON-NLS-1$
+                }
+            }
+            replacedSearchers.clear();
+        }
+        return super.changeToNextQueue();
+    }
+
+    @Override
+    public synchronized void logStatistics() {
+        LOGGER.info("Items started before their processing queue: {}", earlyReleasedItems); //$NON-NLS-1$
+    }
+
+}
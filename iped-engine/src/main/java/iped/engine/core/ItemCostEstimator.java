@@ -0,0 +1,121 @@
+package iped.engine.core;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.mime.MediaType;
+
+import iped.data.IItem;
+
+/**
+ * Estimates the processing cost of items, in microseconds, using the time
+ * spent by tasks processing previous items of the same media type. Items of
+ * media types without enough history use the global average, or a default
+ * throughput at the beginning of processing.
+ *
+ * Most items are enqueued before their signature is detected, so items without
+ * a declared media type are accounted by the type detected from their
+ * extension.
+ */
+public class ItemCostEstimator {
+
+    /** about 50MB/s */
+    private static final double DEFAULT_MICROS_PER_BYTE = 1.0 / 50;
+
+    private static final int MIN_SAMPLES = 20;
+
+    private static class Stats {
+
+        private final LongAdder time = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder count = new LongAdder();
+
+    }
+
+    private final ConcurrentHashMap<MediaType, Stats> statsPerType = new ConcurrentHashMap<>();
+
+    private final Stats unknownTypeStats = new Stats();
+
+    private final Stats globalStats = new Stats();
+
+    private final ConcurrentHashMap<String, MediaType> typePerExtension = new ConcurrentHashMap<>();
+
+    /**
+     * @return the declared or detected media type of the item, or the type
+     *         detected from its extension, null if it has no extension.
+     */
+    MediaType getMediaType(IItem item) {
+        MediaType type = item.getMediaType();
+        if (type != null) {
+            return type;
+        }
+        String ext = item.getExt();
+        if (ext == null || ext.isEmpty()) {
+            return null;
+        }
+        return typePerExtension.computeIfAbsent(ext.toLowerCase(), e -> detectByExtension(e));
+    }
+
+    private static MediaType detectByExtension(String ext) {
+        Metadata metadata = new Metadata();
+        metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, "file." + ext); //$NON-NLS-1$
+        try {
+            return TikaConfig.getDefaultConfig().getMimeRepository().detect(null, metadata).getBaseType();
+        } catch (IOException e) {
+            return MediaType.OCTET_STREAM;
+        }
+    }
+
+    private Stats getStats(IItem item) {
+        MediaType type = getMediaType(item);
+        if (type == null) {
+            return unknownTypeStats;
+        }
+        return statsPerType.computeIfAbsent(type, t -> new Stats());
+    }
+
+    private static long getLength(IItem item) {
+        Long len = item.getLength();
+        return len != null && len > 0 ? len : 0;
+    }
+
+    public void addProcessingTime(IItem item, long time) {
+        getStats(item).time.add(time);
+        globalStats.time.add(time);
+    }
+
+    public void addProcessedItem(IItem item) {
+        long len = getLength(item);
+        Stats stats = getStats(item);
+        stats.count.increment();
+        stats.bytes.add(len);
+        globalStats.count.increment();
+        globalStats.bytes.add(len);
+    }
+
+    /**
+     * @return the estimated time in microseconds to process the item.
+     */
+    public long estimateCost(IItem item) {
+        long len = getLength(item);
+        MediaType type = getMediaType(item);
+        Stats stats = type != null ? statsPerType.get(type) : unknownTypeStats;
+        if (stats == null || stats.count.sum() < MIN_SAMPLES) {
+            stats = globalStats;
+        }
+        long count = stats.count.sum();
+        if (count < MIN_SAMPLES) {
+            return (long) (len * DEFAULT_MICROS_PER_BYTE);
+        }
+        long time = stats.time.sum();
+        long bytes = stats.bytes.sum();
+        double timePerItem = (double) time / count;
+        double timePerByte = bytes > 0 ? (double) time / bytes : 0;
+        return (long) Math.max(timePerItem, timePerByte * len);
+    }
+
+}
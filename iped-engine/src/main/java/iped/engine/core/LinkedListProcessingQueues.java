@@ -0,0 +1,134 @@
+package iped.engine.core;
+
+import java.util.LinkedList;
+import java.util.TreeMap;
+
+import iped.data.IItem;
+import iped.engine.data.CaseData;
+
+/**
+ * Default scheduler, uses one shared LinkedList per priority guarded by this
+ * object monitor.
+ */
+public class LinkedListProcessingQueues extends ProcessingQueues {
+
+    private TreeMap<Integer, LinkedList<IItem>> queues;
+
+    private int totalItemsBeingProcessed = 0;
+
+    public LinkedListProcessingQueues(CaseData caseData) {
+        super(caseData);
+        initQueues();
+    }
+
+    private void initQueues() {
+        queues = new TreeMap<Integer, LinkedList<IItem>>();
+        for (Integer priority : priorities)
+            queues.put(priority, new LinkedList<IItem>());
+    }
+
+    @Override
+    protected void enqueue(IItem item, int queuePriority, boolean addFirst, boolean blockIfFull)
+            throws InterruptedException {
+
+        LinkedList<IItem> queue = queues.get(queuePriority);
+        boolean sleep = false;
+        while (true) {
+            if (sleep) {
+                sleep = false;
+                Thread.sleep(1000);
+            }
+            synchronized (this) {
+                if (blockIfFull && queuePriority == 0 && queue.size() >= maxQueueSize) {
+                    sleep = true;
+                    continue;
+                } else {
+                    if (addFirst) {
+                        queue.addFirst(item);
+                    } else {
+                        queue.addLast(item);
+                    }
+                    break;
+                }
+            }
+        }
+
+    }
+
+    @Override
+    public IItem takeItem(Worker worker) throws InterruptedException {
+        IItem item = null;
+        boolean sleep = false;
+        while (item == null) {
+            if (sleep) {
+                // this should be very rare
+                sleep = false;
+                Thread.sleep(100);
+            }
+            synchronized (this) {
+                item = pollFirstFromCurrentQueue();
+                if (item == null) {
+                    sleep = true;
+                    continue;
+                }
+                if (!item.isQueueEnd()) {
+                    incItemsBeingProcessed();
+                }
+            }
+        }
+        return item;
+    }
+
+    @Override
+    public synchronized int getItemsBeingProcessed() {
+        return totalItemsBeingProcessed;
+    }
+
+    @Override
+    public synchronized void incItemsBeingProcessed() {
+        totalItemsBeingProcessed++;
+    }
+
+    @Override
+    public synchronized void decItemsBeingProcessed() {
+        totalItemsBeingProcessed--;
+    }
+
+    @Override
+    public synchronized boolean isNoItemInQueueOrBeingProcessed() {
+        return totalItemsBeingProcessed == 0 && getItemQueue().size() == 0;
+    }
+
+    public synchronized IItem pollFirstFromCurrentQueue() throws InterruptedException {
+        return getItemQueue().pollFirst();
+    }
+
+    @Override
+    public synchronized void addLastToCurrentQueue(IItem item) throws InterruptedException {
+        getItemQueue().addLast(item);
+    }
+
+    @Override
+    public synchronized IItem peekItemFromCurrentQueue() {
+        return getItemQueue().peek();
+    }
+
+    @Override
+    public synchronized int getCurrentQueueSize() {
+        return getItemQueue().size();
+    }
+
+    protected LinkedList<IItem> getQueue(int priority) {
+        return queues.get(priority);
+    }
+
+    /**
+     * Obtém fila de arquivos de evidência do caso.
+     *
+     * @return fila de arquivos.
+     */
+    private LinkedList<IItem> getItemQueue() {
+        return queues.get(currentQueuePriority);
+    }
+
+}
@@ -28,7 +28,12 @@
 import java.nio.file.StandardOpenOption;
 import java.security.Security;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -75,10 +80,12 @@
 import iped.engine.localization.Messages;
 import iped.engine.lucene.ConfiguredFSDirectory;
 import iped.engine.lucene.CustomIndexDeletionPolicy;
+import iped.engine.lucene.IndexPartitions;
 import iped.engine.lucene.analysis.AppAnalyzer;
 import iped.engine.search.IPEDSearcher;
 import iped.engine.search.IndexerSimilarity;
 import iped.engine.search.ItemSearcher;
+import iped.engine.search.LiveItemRegistry;
 import iped.engine.search.LuceneSearchResult;
 import iped.engine.sleuthkit.SleuthkitClient;
 import iped.engine.sleuthkit.SleuthkitInputStreamFactory;
@@ -88,6 +95,7 @@
 import iped.engine.task.index.ElasticSearchIndexTask;
 import iped.engine.task.index.IndexItem;
 import iped.engine.task.index.IndexTask;
+import iped.engine.util.TextStore;
 import iped.engine.util.UIPropertyListenerProvider;
 import iped.engine.util.Util;
 import iped.exception.IPEDException;
@@ -138,6 +146,8 @@ public class Manager {
     private ItemProducer counter, producer;
     private Worker[] workers;
     private IndexWriter writer;
+    // writers of index partitions besides the main one, empty if disabled
+    private IndexWriter[] partitionWriters = new IndexWriter[0];
 
     public Statistics stats;
     public volatile Exception exception;
@@ -201,7 +211,7 @@ public Manager(List<File> sources, File output, File palavras) {
         this.palavrasChave = palavras;
 
         this.caseData = new CaseData();
-        this.processingQueues = new ProcessingQueues(caseData);
+        this.processingQueues = ProcessingQueues.createInstance(caseData);
 
         for (File source : sources) {
             if (source.getName().toLowerCase().endsWith(Bookmarks.EXT)) {
@@ -241,6 +251,14 @@ public IndexWriter getIndexWriter() {
         return this.writer;
     }
 
+    /**
+     * @return the writer where documents of the worker are added
+     */
+    IndexWriter getPartitionWriter(int worker) {
+        int partition = worker % (partitionWriters.length + 1);
+        return partition == 0 ? writer : partitionWriters[partition - 1];
+    }
+
     public void process() throws Exception {
 
         stats.printSystemInfo();
@@ -280,6 +298,10 @@ public void process() throws Exception {
                 return;
             }
 
+            // items of previous processing are not registered, lookups must search them
+            LiveItemRegistry.getInstance().clear(!args.isAppendIndex() && !args.isContinue() && !args.isRestart(),
+                    (long) indexConfig.getLiveItemRegistryMaxMemoryMB() << 20);
+
             initWorkers();
 
             initSleuthkitServers();
@@ -318,6 +340,8 @@ public void process() throws Exception {
 
         updateImagePaths();
 
+        saveCaseIdMaps();
+
         shutDownSleuthkitServers();
 
         deleteTempDir();
@@ -356,6 +380,13 @@ private void interruptProcessing() {
             }
         }
         ParsingReader.shutdownTasks();
+        for (IndexWriter partitionWriter : partitionWriters) {
+            try {
+                partitionWriter.rollback();
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+        }
         if (writer != null) {
             try {
                 writer.rollback();
@@ -407,7 +438,7 @@ private void changeTempDir() throws UnsupportedEncodingException, IOException {
 
     private void loadExistingData() throws IOException {
 
-        try (IndexReader reader = DirectoryReader.open(writer, true, true)) {
+        try (IndexReader reader = IndexPartitions.openReader(writer, true, true)) {
             stats.previousIndexedFiles = reader.numDocs();
         }
 
@@ -418,6 +449,10 @@ private void loadExistingData() throws IOException {
     }
 
     private IndexWriterConfig getIndexWriterConfig() {
+        return getIndexWriterConfig(1);
+    }
+
+    private IndexWriterConfig getIndexWriterConfig(int numWriters) {
         IndexWriterConfig conf = new IndexWriterConfig(AppAnalyzer.get());
         conf.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
 
@@ -429,7 +464,7 @@ private IndexWriterConfig getIndexWriterConfig() {
             mergeScheduler.setMaxMergesAndThreads(8, 4);
         }
         conf.setMergeScheduler(mergeScheduler);
-        conf.setRAMBufferSizeMB(64);
+        conf.setRAMBufferSizeMB(getRAMBufferSizeMB(numWriters));
         TieredMergePolicy tieredPolicy = new TieredMergePolicy();
         /*
          * Seta tamanho máximo dos subíndices. Padrão é 5GB. Poucos subíndices grandes
@@ -445,6 +480,19 @@ private IndexWriterConfig getIndexWriterConfig() {
         return conf;
     }
 
+    /**
+     * RAM buffer of each index writer. If not configured, it uses up to 10% of max
+     * heap or 32MB per worker, whichever is smaller, shared by all writers.
+     */
+    private int getRAMBufferSizeMB(int numWriters) {
+        if (indexConfig.getRAMBufferSizeMB() > 0) {
+            return indexConfig.getRAMBufferSizeMB();
+        }
+        long maxHeapMB = Runtime.getRuntime().maxMemory() >> 20;
+        long totalMB = Math.max(64, Math.min(maxHeapMB / 10, 32L * localConfig.getNumThreads()));
+        return (int) Math.max(16, totalMB / numWriters);
+    }
+
     private void removeEvidence(String evidenceName, EvidenceStatus status) throws Exception {
         Level CONSOLE = Level.getLevel("MSG"); //$NON-NLS-1$
         LOGGER.log(CONSOLE, "Removing evidence '{}' from case...", evidenceName);
@@ -529,7 +577,7 @@ private void openIndex() throws IOException {
         boolean newIndex = !indexDir.exists();
         LOGGER.info((newIndex ? "Creating" : "Opening") + " index: {}", indexDir.getAbsoluteFile());
         Directory directory = ConfiguredFSDirectory.open(indexDir);
-        IndexWriterConfig config = getIndexWriterConfig();
+        IndexWriterConfig config = getIndexWriterConfig(getNumIndexPartitions());
         
         if (args.isRestart()) {
             List<IndexCommit> commits = DirectoryReader.listCommits(directory);
@@ -542,6 +590,8 @@ private void openIndex() throws IOException {
             writer.commit();
         }
 
+        openIndexPartitions();
+
         if (args.isRestart()) {
             try (IPEDSource ipedCase = new IPEDSource(output.getParentFile(), writer)) {
                 ipedCase.clearOldBookmarks();
@@ -554,8 +604,90 @@ private void openIndex() throws IOException {
 
     }
 
+    /**
+     * Opens the extra index partitions, so workers add documents to several
+     * writers, each one with its own RAM buffer, flushes and merges. They are
+     * merged into the main index at the end of processing.
+     */
+    private void openIndexPartitions() throws IOException {
+        int numPartitions = getNumIndexPartitions();
+        if (numPartitions <= 1) {
+            return;
+        }
+        LOGGER.info("Using {} index partitions, RAM buffer of {}MB each", numPartitions, //$NON-NLS-1$
+                getRAMBufferSizeMB(numPartitions));
+        partitionWriters = new IndexWriter[numPartitions - 1];
+        for (int i = 0; i < partitionWriters.length; i++) {
+            Directory directory = ConfiguredFSDirectory.open(IndexPartitions.getPartitionDir(indexDir, i + 1));
+            partitionWriters[i] = IndexPartitions.openWriter(directory, getIndexWriterConfig(numPartitions),
+                    args.isRestart());
+        }
+        IndexPartitions.register(writer, partitionWriters);
+    }
+
+    private int getNumIndexPartitions() {
+        if (args.getEvidenceToRemove() != null) {
+            return 1;
+        }
+        return IndexPartitions.getNumPartitions(indexDir, indexConfig.getNumIndexPartitions());
+    }
+
+    /**
+     * Adds segments of index partitions to the main index and deletes them.
+     */
+    private void mergeIndexPartitions() throws IOException {
+        if (partitionWriters.length == 0) {
+            return;
+        }
+        LOGGER.info("Merging index partitions..."); //$NON-NLS-1$
+        IndexWriter[] otherWriters = partitionWriters;
+        partitionWriters = new IndexWriter[0];
+        IndexPartitions.merge(writer, otherWriters, indexDir);
+    }
+
+    /**
+     * Runs an index operation over all partition writers in parallel.
+     */
+    private void forEachPartition(IndexWriterOperation operation) throws Exception {
+        List<IndexWriter> writers = new ArrayList<>();
+        writers.add(writer);
+        writers.addAll(Arrays.asList(partitionWriters));
+        if (writers.size() == 1) {
+            operation.run(writer);
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(writers.size());
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (IndexWriter w : writers) {
+                futures.add(executor.submit(() -> {
+                    operation.run(w);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw (Exception) e.getCause();
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private interface IndexWriterOperation {
+        void run(IndexWriter writer) throws Exception;
+    }
+
     private void initWorkers() throws Exception {
 
+        if (processingQueues instanceof DependencyAwareProcessingQueues) {
+            ((DependencyAwareProcessingQueues) processingQueues)
+                    .setSearcherFactory(() -> new ItemSearcher(output.getParentFile(), writer));
+        }
+
         workers = new Worker[localConfig.getNumThreads()];
         for (int k = 0; k < workers.length; k++) {
             workers[k] = new Worker(k, caseData, writer, output, this);
@@ -573,6 +705,7 @@ private void initWorkers() throws Exception {
     private void monitorProcessing() throws Exception {
 
         boolean someWorkerAlive = true;
+        boolean producerFinished = false;
         long start = System.currentTimeMillis();
 
         while (someWorkerAlive) {
@@ -594,6 +727,10 @@ private void monitorProcessing() throws Exception {
             UIPropertyListenerProvider.getInstance().firePropertyChange("update", 0, 0);
 
             boolean changeToNextQueue = !producer.isAlive();
+            if (changeToNextQueue && !producerFinished) {
+                processingQueues.producerFinished();
+                producerFinished = true;
+            }
             for (int k = 0; k < workers.length; k++) {
                 if (workers[k].exception != null && exception == null) {
                     exception = workers[k].exception;
@@ -649,7 +786,7 @@ public void run() {
                     long start = System.currentTimeMillis() / 1000;
                     UIPropertyListenerProvider.getInstance().firePropertyChange("mensagem", "", Messages.getString("Manager.CommitStarted"));
                     LOGGER.info("Prepare commit started...");
-                    writer.prepareCommit();
+                    forEachPartition(IndexWriter::prepareCommit);
 
                     // commit other control data
                     IndexTask.saveExtraAttributes(output);
@@ -658,6 +795,7 @@ public void run() {
 
                     LOGGER.info("Commiting sqlite storages...");
                     ExportFileTask.commitStorage(output);
+                    TextStore.commit(output);
 
                     GraphTask.commit();
 
@@ -665,7 +803,7 @@ public void run() {
 
                     ElasticSearchIndexTask.commit();
 
-                    writer.commit();
+                    forEachPartition(IndexWriter::commit);
 
                     long end = System.currentTimeMillis() / 1000;
                     UIPropertyListenerProvider.getInstance().firePropertyChange("mensagem", "", Messages.getString("Manager.CommitFinished"));
@@ -680,10 +818,10 @@ public void run() {
                     }
                     try {
                         LOGGER.error("Error commiting. Rollback commit started...");
-                        writer.rollback();
+                        forEachPartition(IndexWriter::rollback);
                         LOGGER.error("Rollback commit finished.");
 
-                    } catch (IOException e1) {
+                    } catch (Exception e1) {
                         e1.printStackTrace();
                     }
                 }
@@ -706,6 +844,8 @@ private void finishProcessing() throws Exception {
             workers[k].finish();
         }
 
+        mergeIndexPartitions();
+
         if (indexConfig.isForceMerge()) {
             UIPropertyListenerProvider.getInstance().firePropertyChange("mensagem", "", Messages.getString("Manager.Optimizing")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
             LOGGER.info("Optimizing Index..."); //$NON-NLS-1$
@@ -750,6 +890,20 @@ private void updateImagePaths() {
         }
     }
 
+    /**
+     * Opens the final index once, so id maps are saved for its commit and the
+     * first opening of the case just loads them.
+     */
+    private void saveCaseIdMaps() {
+        LOGGER.info("Saving LuceneId to ID mapping..."); //$NON-NLS-1$
+        try {
+            IPEDSource ipedCase = new IPEDSource(output.getParentFile(), null, false);
+            ipedCase.close();
+        } catch (Exception e) {
+            LOGGER.warn("Error saving LuceneId to ID mapping", e); //$NON-NLS-1$
+        }
+    }
+
     public void deleteTempDir() {
         LOGGER.info("Deleting temp folder {}", localConfig.getIndexerTemp()); //$NON-NLS-1$
         IOUtil.deleteDirectory(localConfig.getIndexerTemp());
@@ -1,36 +1,72 @@
 package iped.engine.core;
 
-import java.util.LinkedList;
-import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import iped.data.IItem;
+import iped.engine.config.ConfigurationManager;
+import iped.engine.config.LocalConfig;
 import iped.engine.data.CaseData;
 import iped.engine.util.Util;
 
-public class ProcessingQueues {
+/**
+ * Base class of the processing queues schedulers. Items are kept in one queue
+ * per processing priority (see {@link QueuesProcessingOrder}) and workers just
+ * take items from the current priority queue. The queue end item is used as a
+ * sentinel to detect when the current queue was fully processed.
+ *
+ * Concrete implementations decide how items are stored and dispatched to
+ * workers, see {@link LinkedListProcessingQueues},
+ * {@link WorkStealingProcessingQueues}, {@link CostAwareProcessingQueues} and
+ * {@link DependencyAwareProcessingQueues}.
+ */
+public abstract class ProcessingQueues {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(ProcessingQueues.class);
+
+    public static final String WORK_STEALING = "workStealing"; //$NON-NLS-1$
 
-    private static final int QUEUE_SIZE = 100000;
+    public static final String COST_AWARE = "costAware"; //$NON-NLS-1$
 
-    private TreeMap<Integer, LinkedList<IItem>> queues;
+    public static final String DEPENDENCY_AWARE = "dependencyAware"; //$NON-NLS-1$
 
-    private volatile Integer currentQueuePriority = 0;
-    
-    private CaseData caseData;
+    protected static final int QUEUE_SIZE = 100000;
 
-    private int maxQueueSize = QUEUE_SIZE;
+    protected final TreeSet<Integer> priorities = new TreeSet<>();
 
-    private int totalItemsBeingProcessed = 0;
+    protected volatile Integer currentQueuePriority = 0;
 
-    public ProcessingQueues(CaseData caseData) {
+    protected CaseData caseData;
+
+    protected int maxQueueSize = QUEUE_SIZE;
+
+    protected ProcessingQueues(CaseData caseData) {
         this.caseData = caseData;
-        initQueues();
+        priorities.add(0);
+        priorities.addAll(QueuesProcessingOrder.getProcessingQueues());
     }
 
-    private void initQueues() {
-        queues = new TreeMap<Integer, LinkedList<IItem>>();
-        queues.put(0, new LinkedList<IItem>());
-        for (Integer priority : QueuesProcessingOrder.getProcessingQueues())
-            queues.put(priority, new LinkedList<IItem>());
+    /**
+     * Creates the processing queues scheduler configured in LocalConfig.
+     */
+    public static ProcessingQueues createInstance(CaseData caseData) {
+        LocalConfig localConfig = ConfigurationManager.get().findObject(LocalConfig.class);
+        String scheduler = localConfig != null ? localConfig.getQueueScheduler() : null;
+        if (COST_AWARE.equalsIgnoreCase(scheduler)) {
+            LOGGER.info("Using cost aware processing queues."); //$NON-NLS-1$
+            return new CostAwareProcessingQueues(caseData, localConfig.getNumThreads());
+        }
+        if (DEPENDENCY_AWARE.equalsIgnoreCase(scheduler)) {
+            LOGGER.info("Using dependency aware processing queues."); //$NON-NLS-1$
+            return new DependencyAwareProcessingQueues(caseData);
+        }
+        if (WORK_STEALING.equalsIgnoreCase(scheduler)) {
+            LOGGER.info("Using work stealing processing queues."); //$NON-NLS-1$
+            return new WorkStealingProcessingQueues(caseData, localConfig.getNumThreads());
+        }
+        return new LinkedListProcessingQueues(caseData);
     }
 
     public void addItem(IItem item) throws InterruptedException {
@@ -66,78 +102,86 @@ private void addItemToQueue(IItem item, int queuePriority, boolean addFirst, boo
 
         Util.calctrackIDAndUpdateID(caseData, item);
 
-        LinkedList<IItem> queue = queues.get(queuePriority);
-        boolean sleep = false;
-        while (true) {
-            if (sleep) {
-                sleep = false;
-                Thread.sleep(1000);
-            }
-            synchronized (this) {
-                if (blockIfFull && queuePriority == 0 && queue.size() >= maxQueueSize) {
-                    sleep = true;
-                    continue;
-                } else {
-                    if (addFirst) {
-                        queue.addFirst(item);
-                    } else {
-                        queue.addLast(item);
-                    }
-                    break;
-                }
-            }
-        }
-
+        enqueue(item, queuePriority, addFirst, blockIfFull);
     }
 
-    public synchronized int getItemsBeingProcessed() {
-        return totalItemsBeingProcessed;
-    }
+    /**
+     * Inserts the item into the queue with the specified priority. If blockIfFull
+     * is true and the queue with priority 0 is full, waits until there is free
+     * space in it.
+     */
+    protected abstract void enqueue(IItem item, int queuePriority, boolean addFirst, boolean blockIfFull)
+            throws InterruptedException;
 
-    public synchronized void incItemsBeingProcessed() {
-        totalItemsBeingProcessed++;
-    }
+    /**
+     * Takes the next item to be processed by the specified worker from the current
+     * queue, waiting if none is available. If the item returned is not the queue
+     * end, it is already accounted as being processed.
+     */
+    public abstract IItem takeItem(Worker worker) throws InterruptedException;
 
-    public synchronized void decItemsBeingProcessed() {
-        totalItemsBeingProcessed--;
-    }
+    public abstract int getItemsBeingProcessed();
+
+    public abstract void incItemsBeingProcessed();
+
+    public abstract void decItemsBeingProcessed();
+
+    public abstract boolean isNoItemInQueueOrBeingProcessed();
 
-    public synchronized boolean isNoItemInQueueOrBeingProcessed() {
-        return totalItemsBeingProcessed == 0 && getItemQueue().size() == 0;
+    public abstract void addLastToCurrentQueue(IItem item) throws InterruptedException;
+
+    public abstract IItem peekItemFromCurrentQueue();
+
+    public abstract int getCurrentQueueSize();
+
+    public Integer changeToNextQueue() {
+        currentQueuePriority = priorities.ceiling(currentQueuePriority + 1);
+        return currentQueuePriority;
     }
 
-    public synchronized IItem pollFirstFromCurrentQueue() throws InterruptedException {
-        return getItemQueue().pollFirst();
+    public Integer getCurrentQueuePriority() {
+        return currentQueuePriority;
     }
 
-    public synchronized void addLastToCurrentQueue(IItem item) throws InterruptedException {
-        getItemQueue().addLast(item);
+    /**
+     * Decides if an item with the specified priority can be processed now or must
+     * be enqueued to be processed when its queue becomes the current one.
+     */
+    public boolean isToProcessNow(IItem item, int priority) {
+        return priority <= currentQueuePriority;
     }
 
-    public synchronized IItem peekItemFromCurrentQueue() {
-        return getItemQueue().peek();
+    /**
+     * Called when all items of data sources were added to the queues.
+     */
+    public void producerFinished() {
     }
 
-    public synchronized int getCurrentQueueSize() {
-        return getItemQueue().size();
+    /**
+     * Decides if a new subitem should be enqueued or processed right now by the
+     * worker that created it.
+     */
+    public boolean isToEnqueueSubitem(IItem subitem, int numWorkers) {
+        return getCurrentQueueSize() < 100 * numWorkers;
     }
 
-    public Integer changeToNextQueue() {
-        currentQueuePriority = queues.ceilingKey(currentQueuePriority + 1);
-        return currentQueuePriority;
+    /**
+     * Called by tasks with the time (in microseconds) they spent processing the
+     * item, not including time spent processing its subitems.
+     */
+    public void addProcessingTime(IItem item, long time) {
     }
 
-    public Integer getCurrentQueuePriority() {
-        return currentQueuePriority;
+    /**
+     * Called when the item was processed by the last task.
+     */
+    public void itemProcessed(IItem item) {
     }
 
     /**
-     * Obtém fila de arquivos de evidência do caso.
-     *
-     * @return fila de arquivos.
+     * Logs scheduler specific statistics at the end of processing.
      */
-    private LinkedList<IItem> getItemQueue() {
-        return queues.get(currentQueuePriority);
+    public void logStatistics() {
     }
 
 }
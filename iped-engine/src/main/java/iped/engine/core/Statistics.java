@@ -307,6 +307,8 @@ public void logStatistics(Manager manager) throws Exception {
             numDocs = reader.numDocs();
         }
 
+        manager.getProcessingQueues().logStatistics();
+
         LOGGER.info("Partial commits took {} seconds", manager.partialCommitsTime.get());
         LOGGER.info("Index internal docs: {}", numDocs); //$NON-NLS-1$
         LOGGER.info("Text Splits: {}", getSplits()); //$NON-NLS-1$
@@ -0,0 +1,384 @@
+package iped.engine.core;
+
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import iped.data.IItem;
+import iped.engine.data.CaseData;
+
+/**
+ * Scheduler with one lock-free deque per worker, plus one shared deque used by
+ * other threads (e.g. item producers), for each processing priority.
+ *
+ * Workers push new subitems to and take items from the head of their own deque,
+ * so items added first are processed next by the same worker. When its own
+ * deque and the shared one are empty, a worker steals the oldest item from the
+ * tail of the deepest deque of other workers. If there is nothing to steal, the
+ * worker blocks until a new item is added, instead of sleeping and polling.
+ *
+ * The queue end item is kept apart from the deques and is only handed to a
+ * worker when there is no other item to process in the current queue.
+ */
+public class WorkStealingProcessingQueues extends ProcessingQueues {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(WorkStealingProcessingQueues.class);
+
+    /**
+     * Max time to wait before handing the queue end to a worker while other
+     * workers are still processing items, so it can flush items held by its tasks.
+     */
+    private static final long QUEUE_END_WAIT_MILLIS = 100;
+
+    protected final int numWorkers;
+
+    private final TreeMap<Integer, Level> levels = new TreeMap<>();
+
+    private final AtomicInteger itemsBeingProcessed = new AtomicInteger();
+
+    private final LongAdder steals = new LongAdder();
+    private final LongAdder ownTakes = new LongAdder();
+    private final LongAdder sharedTakes = new LongAdder();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition itemAvailable = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final AtomicInteger idleWorkers = new AtomicInteger();
+    private final AtomicInteger blockedProducers = new AtomicInteger();
+
+    static class Level {
+
+        final int priority;
+
+        final ConcurrentLinkedDeque<IItem>[] deques;
+
+        final AtomicInteger[] dequeSizes;
+
+        /** items waiting in this queue */
+        final AtomicInteger queued = new AtomicInteger();
+
+        /** items waiting plus items being processed, if this is the current queue */
+        final AtomicInteger pending = new AtomicInteger();
+
+        final AtomicInteger maxQueued = new AtomicInteger();
+
+        final AtomicReference<IItem> queueEnd = new AtomicReference<>();
+
+        @SuppressWarnings("unchecked")
+        private Level(int priority, int numDeques) {
+            this.priority = priority;
+            deques = new ConcurrentLinkedDeque[numDeques];
+            dequeSizes = new AtomicInteger[numDeques];
+            for (int i = 0; i < numDeques; i++) {
+                deques[i] = new ConcurrentLinkedDeque<>();
+                dequeSizes[i] = new AtomicInteger();
+            }
+        }
+    }
+
+    public WorkStealingProcessingQueues(CaseData caseData, int numWorkers) {
+        super(caseData);
+        this.numWorkers = numWorkers;
+        for (Integer priority : priorities) {
+            // last deque is shared by non worker threads
+            levels.put(priority, new Level(priority, numWorkers + 1));
+        }
+    }
+
+    private int getDequeIndex(Thread thread) {
+        if (thread instanceof Worker) {
+            int id = ((Worker) thread).id;
+            if (id < numWorkers) {
+                return id;
+            }
+        }
+        return numWorkers;
+    }
+
+    Level getCurrentLevel() {
+        Integer priority = currentQueuePriority;
+        return priority != null ? levels.get(priority) : null;
+    }
+
+    @Override
+    protected void enqueue(IItem item, int queuePriority, boolean addFirst, boolean blockIfFull)
+            throws InterruptedException {
+
+        Level level = levels.get(queuePriority);
+
+        if (item.isQueueEnd()) {
+            level.queueEnd.set(item);
+            signalItemAvailable();
+            return;
+        }
+
+        if (blockIfFull && queuePriority == 0 && level.queued.get() >= maxQueueSize) {
+            waitNotFull(level);
+        }
+
+        level.pending.incrementAndGet();
+
+        push(level, getDequeIndex(Thread.currentThread()), item, addFirst);
+        int queued = level.queued.incrementAndGet();
+        if (queued > level.maxQueued.get()) {
+            level.maxQueued.accumulateAndGet(queued, Math::max);
+        }
+
+        signalItemAvailable();
+    }
+
+    private void waitNotFull(Level level) throws InterruptedException {
+        lock.lock();
+        try {
+            blockedProducers.incrementAndGet();
+            try {
+                while (level.queued.get() >= maxQueueSize) {
+                    notFull.await();
+                }
+            } finally {
+                blockedProducers.decrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void signalItemAvailable() {
+        if (idleWorkers.get() > 0) {
+            lock.lock();
+            try {
+                itemAvailable.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void signalNotFull(int queued) {
+        if (queued < maxQueueSize && blockedProducers.get() > 0) {
+            lock.lock();
+            try {
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Stores the item in the level, by default in the deque with the specified
+     * index.
+     */
+    protected void push(Level level, int idx, IItem item, boolean addFirst) {
+        if (addFirst) {
+            level.deques[idx].addFirst(item);
+        } else {
+            level.deques[idx].addLast(item);
+        }
+        level.dequeSizes[idx].incrementAndGet();
+    }
+
+    /**
+     * Removes the next item to be processed by the worker using the deque with
+     * the specified index, returns null if none was found.
+     */
+    protected IItem pollItem(Level level, int self) {
+        // first own deque, then shared deque, then steal from others
+        IItem item = pollFirst(level, self);
+        if (item != null) {
+            ownTakes.increment();
+            return item;
+        }
+        if (self != numWorkers) {
+            item = pollFirst(level, numWorkers);
+            if (item != null) {
+                sharedTakes.increment();
+                return item;
+            }
+        }
+        return steal(level, self);
+    }
+
+    private IItem pollFirst(Level level, int idx) {
+        IItem item = level.deques[idx].pollFirst();
+        if (item != null) {
+            level.dequeSizes[idx].decrementAndGet();
+        }
+        return item;
+    }
+
+    private IItem steal(Level level, int self) {
+        while (level.queued.get() > 0) {
+            // chooses the deepest deque as victim
+            int victim = -1, maxSize = 0;
+            for (int i = 0; i < numWorkers; i++) {
+                int size = level.dequeSizes[i].get();
+                if (i != self && size > maxSize) {
+                    maxSize = size;
+                    victim = i;
+                }
+            }
+            if (victim == -1) {
+                return null;
+            }
+            IItem item = level.deques[victim].pollLast();
+            if (item != null) {
+                level.dequeSizes[victim].decrementAndGet();
+                steals.increment();
+                return item;
+            }
+        }
+        return null;
+    }
+
+    private IItem takeFromLevel(Level level, int self) {
+        IItem item = pollItem(level, self);
+        if (item != null) {
+            // must inc items being processed before dec queued items
+            itemsBeingProcessed.incrementAndGet();
+            signalNotFull(level.queued.decrementAndGet());
+        }
+        return item;
+    }
+
+    @Override
+    public IItem takeItem(Worker worker) throws InterruptedException {
+        int self = getDequeIndex(worker);
+        boolean waitedForQueueEnd = false;
+        while (true) {
+            Level level = getCurrentLevel();
+            if (level != null) {
+                IItem item = takeFromLevel(level, self);
+                if (item != null) {
+                    return item;
+                }
+            }
+            lock.lock();
+            try {
+                idleWorkers.incrementAndGet();
+                try {
+                    // check again after registering as idle, so no signal is lost
+                    level = getCurrentLevel();
+                    if (level == null) {
+                        itemAvailable.await();
+                        continue;
+                    }
+                    IItem item = takeFromLevel(level, self);
+                    if (item != null) {
+                        return item;
+                    }
+                    IItem queueEnd = level.queueEnd.get();
+                    if (queueEnd == null) {
+                        itemAvailable.await();
+                    } else if (waitedForQueueEnd || level.pending.get() == 0) {
+                        if (level.queueEnd.compareAndSet(queueEnd, null)) {
+                            return queueEnd;
+                        }
+                    } else {
+                        itemAvailable.await(QUEUE_END_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                        waitedForQueueEnd = true;
+                    }
+                } finally {
+                    idleWorkers.decrementAndGet();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public int getItemsBeingProcessed() {
+        return itemsBeingProcessed.get();
+    }
+
+    @Override
+    public void incItemsBeingProcessed() {
+        getCurrentLevel().pending.incrementAndGet();
+        itemsBeingProcessed.incrementAndGet();
+    }
+
+    @Override
+    public void decItemsBeingProcessed() {
+        itemsBeingProcessed.decrementAndGet();
+        if (getCurrentLevel().pending.decrementAndGet() == 0) {
+            // wakes up a worker to take the queue end
+            signalItemAvailable();
+        }
+    }
+
+    @Override
+    public boolean isNoItemInQueueOrBeingProcessed() {
+        return getCurrentLevel().pending.get() == 0;
+    }
+
+    @Override
+    public void addLastToCurrentQueue(IItem item) throws InterruptedException {
+        enqueue(item, currentQueuePriority, false, false);
+    }
+
+    @Override
+    public IItem peekItemFromCurrentQueue() {
+        Level level = getCurrentLevel();
+        for (ConcurrentLinkedDeque<IItem> deque : level.deques) {
+            IItem item = deque.peekFirst();
+            if (item != null) {
+                return item;
+            }
+        }
+        return level.queueEnd.get();
+    }
+
+    @Override
+    public int getCurrentQueueSize() {
+        Level level = getCurrentLevel();
+        return level != null ? level.queued.get() : 0;
+    }
+
+    @Override
+    public Integer changeToNextQueue() {
+        Integer priority = super.changeToNextQueue();
+        if (priority != null) {
+            LOGGER.debug("Queue {} depth: {}", priority, getCurrentQueueSize()); //$NON-NLS-1$
+        }
+        return priority;
+    }
+
+    public long getStealCount() {
+        return steals.sum();
+    }
+
+    /**
+     * @return current number of items waiting in each worker deque, the last one
+     *         is the shared deque.
+     */
+    public int[] getQueueDepths() {
+        Level level = getCurrentLevel();
+        int[] depths = new int[numWorkers + 1];
+        if (level != null) {
+            for (int i = 0; i < depths.length; i++) {
+                depths[i] = level.dequeSizes[i].get();
+            }
+        }
+        return depths;
+    }
+
+    @Override
+    public void logStatistics() {
+        LOGGER.info("Work stealing queues: items taken from own queue: {}, from shared queue: {}, stolen: {}", //$NON-NLS-1$
+                ownTakes.sum(), sharedTakes.sum(), steals.sum());
+        for (Integer priority : levels.keySet()) {
+            LOGGER.info("Work stealing queues: max depth of queue {}: {}", priority, //$NON-NLS-1$
+                    levels.get(priority).maxQueued.get());
+        }
+    }
+
+}
@@ -57,6 +57,8 @@ public class Worker extends Thread {
     private static volatile long lastItemProcessingTime = 0;
 
     public IndexWriter writer;
+    // writer where documents are added, one of the index partitions if enabled
+    public IndexWriter partitionWriter;
     String baseFilePath;
 
     public volatile AbstractTask runningTask;
@@ -95,6 +97,7 @@ public Worker(int k, CaseData caseData, IndexWriter writer, File output, Manager
         id = k;
         this.caseData = caseData;
         this.writer = writer;
+        this.partitionWriter = manager.getPartitionWriter(k);
         this.output = output;
         this.manager = manager;
         this.stats = manager.stats;
@@ -211,8 +214,8 @@ public enum ProcessTime {
     public void processNewItem(IItem evidence, ProcessTime time) {
         caseData.incDiscoveredEvidences(1);
         // Se a fila está pequena, enfileira
-        if (time == ProcessTime.LATER
-                || (time == ProcessTime.AUTO && manager.getProcessingQueues().getCurrentQueueSize() < 100 * manager.getNumWorkers())) {
+        if (time == ProcessTime.LATER || (time == ProcessTime.AUTO
+                && manager.getProcessingQueues().isToEnqueueSubitem(evidence, manager.getNumWorkers()))) {
             manager.getProcessingQueues().addItemFirstNonBlocking(evidence);
         } // caso contrário processa o item no worker atual
         else {
@@ -239,23 +242,10 @@ public void run() {
 
             try {
                 evidence = null;
-                boolean sleep = false;
-                while (evidence == null) {
-                    if (sleep) {
-                        // this should be very rare
-                        sleep = false;
-                        Thread.sleep(100);
-                    }
-                    synchronized (manager.getProcessingQueues()) {
-                        evidence = manager.getProcessingQueues().pollFirstFromCurrentQueue();
-                        if (evidence == null) {
-                            sleep = true;
-                            continue;
-                        }
-                        if (!evidence.isQueueEnd()) {
-                            incItemsBeingProcessed();
-                        }
-                    }
+                // items taken are already accounted as being processed by the queues
+                evidence = manager.getProcessingQueues().takeItem(this);
+                if (!evidence.isQueueEnd()) {
+                    itemsBeingProcessed++;
                 }
 
 
@@ -0,0 +1,193 @@
+package iped.engine.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.StandardDirectoryReader;
+import org.apache.lucene.util.StringHelper;
+
+/**
+ * Case data computed when a case is opened by scanning the whole index: the
+ * luceneId to id maps, evidence UUIDs, number of items and leaf categories. It
+ * is saved to a file tied to the index commit, so next openings of the case
+ * just read the maps instead of rebuilding them. They are read into heap
+ * arrays, not memory mapped, so the file is not locked on Windows and can be
+ * replaced after a new commit while the case is open.
+ */
+class CaseIdMaps {
+
+    static final String FILE_PATH = IPEDSource.DATA_DIR + "/idMaps.dat"; //$NON-NLS-1$
+
+    private static final int VERSION = 2;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // luceneId -> id, -1 if the doc is deleted or is not an item
+    final IntBuffer ids;
+    // id -> luceneId, -1 if the item is not in the index
+    final IntBuffer docs;
+    final int lastId;
+    final int totalItems;
+    final Set<String> evidenceUUIDs;
+    final List<String> leafCategories;
+
+    CaseIdMaps(IntBuffer ids, IntBuffer docs, int lastId, int totalItems, Set<String> evidenceUUIDs,
+            List<String> leafCategories) {
+        this.ids = ids;
+        this.docs = docs;
+        this.lastId = lastId;
+        this.totalItems = totalItems;
+        this.evidenceUUIDs = evidenceUUIDs;
+        this.leafCategories = leafCategories;
+    }
+
+    /**
+     * @return a key identifying the index commit the reader was opened from, or
+     *         null if the reader is not a directory reader
+     */
+    static String getCommitKey(IndexReader reader) {
+        if (!(reader instanceof StandardDirectoryReader)) {
+            return null;
+        }
+        SegmentInfos infos = ((StandardDirectoryReader) reader).getSegmentInfos();
+        return StringHelper.idToString(infos.getId()) + "_" + infos.getGeneration() + "_" + infos.getVersion() //$NON-NLS-1$ //$NON-NLS-2$
+                + "_" + reader.maxDoc() + "_" + reader.numDocs(); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * @return the saved maps, or null if they were saved for another commit or by
+     *         another version
+     * @throws IOException
+     *             if the file is truncated or can not be read
+     */
+    static CaseIdMaps load(File file, String commitKey) throws IOException {
+        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer headerLen = ByteBuffer.allocate(Integer.BYTES);
+            readFully(fc, headerLen, 0);
+            int headerSize = headerLen.getInt(0);
+            if (headerSize < 0 || headerSize > fc.size()) {
+                throw new IOException("Invalid header size " + headerSize); //$NON-NLS-1$
+            }
+            byte[] header = new byte[headerSize];
+            readFully(fc, ByteBuffer.wrap(header), Integer.BYTES);
+            try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(header))) {
+                if (dis.readInt() != VERSION || !commitKey.equals(dis.readUTF())) {
+                    return null;
+                }
+                int numIds = dis.readInt();
+                int lastId = dis.readInt();
+                int totalItems = dis.readInt();
+                Set<String> evidenceUUIDs = new TreeSet<>();
+                for (int i = dis.readInt(); i > 0; i--) {
+                    evidenceUUIDs.add(dis.readUTF());
+                }
+                List<String> leafCategories = new ArrayList<>();
+                for (int i = dis.readInt(); i > 0; i--) {
+                    leafCategories.add(dis.readUTF());
+                }
+                long pos = Integer.BYTES + header.length;
+                long idsBytes = (long) numIds * Integer.BYTES;
+                long docsBytes = (lastId + 1L) * Integer.BYTES;
+                if (fc.size() != pos + idsBytes + docsBytes) {
+                    throw new IOException("Truncated file"); //$NON-NLS-1$
+                }
+                ByteBuffer bb = ByteBuffer.allocate(BUFFER_SIZE);
+                int[] ids = readInts(fc, pos, numIds, bb);
+                int[] docs = readInts(fc, pos + idsBytes, lastId + 1, bb);
+                return new CaseIdMaps(IntBuffer.wrap(ids), IntBuffer.wrap(docs), lastId, totalItems, evidenceUUIDs,
+                        leafCategories);
+            }
+        }
+    }
+
+    private static int[] readInts(FileChannel fc, long pos, int size, ByteBuffer bb) throws IOException {
+        int[] values = new int[size];
+        for (int i = 0; i < size;) {
+            bb.clear();
+            bb.limit((int) Math.min(bb.capacity(), (long) (size - i) * Integer.BYTES));
+            readFully(fc, bb, pos);
+            pos += bb.limit();
+            bb.flip();
+            int n = bb.limit() / Integer.BYTES;
+            bb.asIntBuffer().get(values, i, n);
+            i += n;
+        }
+        return values;
+    }
+
+    void save(File file, String commitKey) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(baos)) {
+            dos.writeInt(VERSION);
+            dos.writeUTF(commitKey);
+            dos.writeInt(ids.limit());
+            dos.writeInt(lastId);
+            dos.writeInt(totalItems);
+            dos.writeInt(evidenceUUIDs.size());
+            for (String uuid : evidenceUUIDs) {
+                dos.writeUTF(uuid);
+            }
+            dos.writeInt(leafCategories.size());
+            for (String category : leafCategories) {
+                dos.writeUTF(category);
+            }
+        }
+        byte[] header = baos.toByteArray();
+
+        file.getParentFile().mkdirs();
+        File tmp = new File(file.getAbsolutePath() + ".tmp"); //$NON-NLS-1$
+        try (FileChannel fc = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bb = ByteBuffer.allocate(BUFFER_SIZE);
+            bb.putInt(header.length);
+            bb.flip();
+            writeFully(fc, bb);
+            writeFully(fc, ByteBuffer.wrap(header));
+            writeInts(fc, ids, bb);
+            writeInts(fc, docs, bb);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writeInts(FileChannel fc, IntBuffer values, ByteBuffer bb) throws IOException {
+        for (int i = 0; i < values.limit();) {
+            bb.clear();
+            while (bb.remaining() >= Integer.BYTES && i < values.limit()) {
+                bb.putInt(values.get(i++));
+            }
+            bb.flip();
+            writeFully(fc, bb);
+        }
+    }
+
+    private static void writeFully(FileChannel fc, ByteBuffer bb) throws IOException {
+        while (bb.hasRemaining()) {
+            fc.write(bb);
+        }
+    }
+
+    private static void readFully(FileChannel fc, ByteBuffer bb, long pos) throws IOException {
+        while (bb.hasRemaining()) {
+            if (fc.read(bb, pos + bb.position()) == -1) {
+                throw new IOException("Truncated file"); //$NON-NLS-1$
+            }
+        }
+    }
+
+}
@@ -23,6 +23,7 @@
 import iped.data.IIPEDSource;
 import iped.data.IItem;
 import iped.data.IItemId;
+import iped.engine.lucene.SegmentDocValues;
 import iped.engine.lucene.SlowCompositeReaderWrapper;
 import iped.engine.lucene.analysis.AppAnalyzer;
 import iped.engine.search.LuceneSearchResult;
@@ -185,8 +186,12 @@ private void openIndex() throws IOException {
 
         reader = new MultiReader(readers, false);
 
+        // global ordinals across cases are not saved, segments of each case may
+        // be combined with different cases next time
+        segmentDocValues = new SegmentDocValues(reader, null);
+
         // TODO get rid of deprecated SlowCompositeReaderWrapper
-        atomicReader = SlowCompositeReaderWrapper.wrap(reader);
+        atomicReader = SlowCompositeReaderWrapper.wrap(reader, segmentDocValues);
 
         LOGGER.info("MultiReader opened"); //$NON-NLS-1$
 
@@ -20,9 +20,9 @@
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.IntBuffer;
 import java.nio.file.Files;
 import java.util.ArrayList;
-import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -66,6 +66,8 @@
 import iped.engine.datasource.SleuthkitReader;
 import iped.engine.localization.Messages;
 import iped.engine.lucene.ConfiguredFSDirectory;
+import iped.engine.lucene.IndexPartitions;
+import iped.engine.lucene.SegmentDocValues;
 import iped.engine.lucene.SlowCompositeReaderWrapper;
 import iped.engine.lucene.analysis.AppAnalyzer;
 import iped.engine.search.IPEDSearcher;
@@ -74,6 +76,7 @@
 import iped.engine.sleuthkit.TouchSleuthkitImages;
 import iped.engine.task.index.IndexItem;
 import iped.engine.task.index.IndexTask;
+import iped.engine.util.TextStore;
 import iped.engine.util.Util;
 import iped.exception.IPEDException;
 import iped.properties.BasicProps;
@@ -90,6 +93,7 @@ public class IPEDSource implements IIPEDSource {
     public static final String LIB_DIR = "lib"; //$NON-NLS-1$
     public static final String SLEUTH_DB = "sleuth.db"; //$NON-NLS-1$
     public static final String PREV_TEMP_INFO_PATH = DATA_DIR + "/prevTempDir.txt"; //$NON-NLS-1$
+    public static final String GLOBAL_ORDS_PATH = DATA_DIR + "/ordinals"; //$NON-NLS-1$
 
     /**
      * workaround para JVM não coletar objeto, nesse caso Sleuthkit perde referencia
@@ -104,6 +108,7 @@ public class IPEDSource implements IIPEDSource {
     SleuthkitCase sleuthCase;
     IndexReader reader;
     LeafReader atomicReader;
+    SegmentDocValues segmentDocValues;
     IndexWriter iw;
     IndexSearcher searcher;
     Analyzer analyzer;
@@ -114,10 +119,12 @@ public class IPEDSource implements IIPEDSource {
     protected Category categoryTree;
 
     private IBookmarks bookmarks;
+
+    private TextStore textStore;
+    private boolean textStoreOpened = false;
     IMultiBookmarks multiBookmarks;
 
-    private int[] ids, docs;
-    private BitSet parentDocs;
+    private IntBuffer ids, docs;
 
     protected int sourceId = -1;
 
@@ -221,14 +228,17 @@ public IPEDSource(File casePath, IndexWriter iw, boolean askImagePathIfNotFound)
             BooleanQuery.setMaxClauseCount(Integer.MAX_VALUE);
             analyzer = AppAnalyzer.get();
 
-            populateLuceneIdToIdMap();
-            invertIdToLuceneIdArray();
-            populateEvidenceUUIDs();
-            countTotalItems();
+            if (!loadIdMaps()) {
+                populateLuceneIdToIdMap();
+                invertIdToLuceneIdArray();
+                populateEvidenceUUIDs();
+                countTotalItems();
+                loadLeafCategories();
+                saveIdMaps();
+            }
 
             SleuthkitReader.loadImagePasswords(moduleDir);
 
-            loadLeafCategories();
             loadCategoryTree();
 
             loadKeywords();
@@ -259,7 +269,7 @@ public IPEDSource(File casePath, IndexWriter iw, boolean askImagePathIfNotFound)
     public void clearOldBookmarks() {
         ArrayList<Integer> idsToRemove = new ArrayList<>();
         for (int id = 0; id <= lastId; id++) {
-            if (docs[id] == -1) {
+            if (docs.get(id) == -1) {
                 idsToRemove.add(id);
             }
         }
@@ -275,15 +285,60 @@ public void clearOldBookmarks() {
         bookmarks.saveState(true);
     }
 
+    /**
+     * Loads id maps and other data saved for the index commit, if the index was
+     * not opened from a writer.
+     * 
+     * @return true if saved data was loaded
+     */
+    private boolean loadIdMaps() {
+        String commitKey = iw == null ? CaseIdMaps.getCommitKey(reader) : null;
+        File file = new File(moduleDir, CaseIdMaps.FILE_PATH);
+        if (commitKey == null || !file.exists()) {
+            return false;
+        }
+        try {
+            CaseIdMaps idMaps = CaseIdMaps.load(file, commitKey);
+            if (idMaps == null) {
+                return false;
+            }
+            ids = idMaps.ids;
+            docs = idMaps.docs;
+            lastId = idMaps.lastId;
+            totalItens = idMaps.totalItems;
+            evidenceUUIDs.addAll(idMaps.evidenceUUIDs);
+            leafCategories.addAll(idMaps.leafCategories);
+            LOGGER.info("LuceneId to ID mapping loaded from {}", file.getAbsolutePath()); //$NON-NLS-1$
+            return true;
+
+        } catch (IOException e) {
+            LOGGER.warn("Error loading {}: {}", file.getAbsolutePath(), e.toString()); //$NON-NLS-1$
+            return false;
+        }
+    }
+
+    private void saveIdMaps() {
+        String commitKey = iw == null ? CaseIdMaps.getCommitKey(reader) : null;
+        if (commitKey == null) {
+            return;
+        }
+        File file = new File(moduleDir, CaseIdMaps.FILE_PATH);
+        try {
+            new CaseIdMaps(ids, docs, lastId, totalItens, evidenceUUIDs, leafCategories).save(file, commitKey);
+        } catch (IOException e) {
+            // maybe a read only case
+            LOGGER.debug("Error saving {}: {}", file.getAbsolutePath(), e.toString()); //$NON-NLS-1$
+        }
+    }
+
     public void populateLuceneIdToIdMap() throws IOException {
 
         LOGGER.info("Creating LuceneId to ID mapping..."); //$NON-NLS-1$
-        ids = new int[reader.maxDoc()];
+        int[] ids = new int[reader.maxDoc()];
         for (int i = 0; i < ids.length; i++) {
             ids[i] = -1;
         }
-        
-        parentDocs = new BitSet(ids.length);
+        this.ids = IntBuffer.wrap(ids);
 
         NumericDocValues ndv = atomicReader.getNumericDocValues(IndexItem.ID);
         if (ndv == null) {
@@ -299,22 +354,23 @@ public void populateLuceneIdToIdMap() throws IOException {
                 continue;
             }
             ids[i] = (int) ndv.longValue();
-            parentDocs.set(i);
             if (ids[i] > lastId)
                 lastId = ids[i];
         }
     }
 
     protected void invertIdToLuceneIdArray() {
-        docs = new int[lastId + 1];
+        int[] docs = new int[lastId + 1];
         for (int i = 0; i < docs.length; i++) {
             docs[i] = -1;
         }
-        for (int i = 0; i < ids.length; i++) {
-            if (ids[i] > -1) {
-                docs[ids[i]] = i;
+        for (int i = 0; i < ids.limit(); i++) {
+            int id = ids.get(i);
+            if (id > -1) {
+                docs[id] = i;
             }
         }
+        this.docs = IntBuffer.wrap(docs);
     }
 
     private void populateEvidenceUUIDs() throws IOException {
@@ -462,11 +518,15 @@ private void openIndex(File index, IndexWriter iw) throws IOException {
             Directory directory = ConfiguredFSDirectory.open(index);
             reader = DirectoryReader.open(directory);
         } else {
-            reader = DirectoryReader.open(iw, true, false);
+            reader = IndexPartitions.openReader(iw, true, false);
         }
 
+        // global ordinals of a finished index are saved to be loaded next time
+        File ordsCacheDir = iw == null ? new File(moduleDir, GLOBAL_ORDS_PATH) : null;
+        segmentDocValues = new SegmentDocValues(reader, ordsCacheDir);
+
         // TODO get rid of deprecated SlowCompositeReaderWrapper
-        atomicReader = SlowCompositeReaderWrapper.wrap(reader);
+        atomicReader = SlowCompositeReaderWrapper.wrap(reader, segmentDocValues);
 
         openSearcher();
 
@@ -488,6 +548,7 @@ protected void openSearcher() {
     public void close() {
         try {
             IOUtil.closeQuietly(reader);
+            IOUtil.closeQuietly(textStore);
 
             if (searchExecutorService != null)
                 searchExecutorService.shutdown();
@@ -513,7 +574,7 @@ public IItem getItemByLuceneID(int docID) {
     }
 
     public IItem getItemByID(int id) {
-        return getItemByLuceneID(docs[id]);
+        return getItemByLuceneID(docs.get(id));
     }
 
     public void reopen() throws IOException {
@@ -669,24 +730,40 @@ public File getModuleDir() {
         return moduleDir;
     }
 
+    /**
+     * @return the store of texts extracted while processing, or null if texts
+     *         were not stored
+     */
+    public synchronized TextStore getTextStore() {
+        if (!textStoreOpened && moduleDir != null) {
+            textStoreOpened = true;
+            try {
+                textStore = TextStore.open(moduleDir);
+            } catch (IOException e) {
+                LOGGER.warn("Error opening extracted text store: {}", e.toString()); //$NON-NLS-1$
+            }
+        }
+        return textStore;
+    }
+
     public File getCaseDir() {
         return casePath;
     }
 
     public int getId(int luceneId) {
-        return ids[luceneId];
+        return ids.get(luceneId);
     }
     
     public IntStream getLuceneIdStream() {
-    	return parentDocs.stream();
+        return IntStream.range(0, ids.limit()).filter(luceneId -> ids.get(luceneId) != -1);
     }
 
     public int getLuceneId(IItemId itemId) {
-        return docs[itemId.getId()];
+        return docs.get(itemId.getId());
     }
 
     public int getLuceneId(int id) {
-        return docs[id];
+        return docs.get(id);
     }
 
     public int getParentId(int id) {
@@ -739,6 +816,14 @@ public LeafReader getLeafReader() {
         return this.atomicReader;
     }
 
+    /**
+     * @return per segment doc values of the index, prefer it over
+     *         {@link #getLeafReader()} to iterate over all documents
+     */
+    public SegmentDocValues getSegmentDocValues() {
+        return this.segmentDocValues;
+    }
+
     public IndexSearcher getSearcher() {
         return searcher;
     }
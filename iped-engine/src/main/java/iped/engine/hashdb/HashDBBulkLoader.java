@@ -0,0 +1,475 @@
+package iped.engine.hashdb;
+
+import static iped.engine.hashdb.HashDB.hashBytesLen;
+import static iped.engine.hashdb.HashDB.hashTypes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+
+import iped.utils.IOUtil;
+
+/**
+ * Merges hash records for the bulk load mode of {@link HashDBTool}, without
+ * querying the database for each record. Records are kept in memory up to a
+ * limit, then sorted, merged and written to temporary run files, which are
+ * merged at the end with a k-way merge. Records are first merged by their first
+ * hash present, then by each other hash type, so records sharing any hash are
+ * merged into one, like when importing record by record in the default merge
+ * mode. If merged records have different hashes of the same type, the hash of
+ * the record added later is kept, also like in the default merge mode.
+ */
+class HashDBBulkLoader implements Closeable {
+
+    private static final int MAX_MERGED_RUNS = 256;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Receives the merged records, in no specific order. Records are grouped by
+     * the last hash type merged, but records without that type come after the
+     * others.
+     */
+    interface RecordWriter {
+        void write(byte[][] hashes, Map<Integer, Set<String>> properties) throws Exception;
+    }
+
+    private static class Record {
+
+        private final byte[][] hashes;
+        private final TreeMap<Integer, Set<String>> properties;
+        // order of the last record merged into this one
+        private long seq;
+
+        private Record(byte[][] hashes, TreeMap<Integer, Set<String>> properties, long seq) {
+            this.hashes = hashes;
+            this.properties = properties;
+            this.seq = seq;
+        }
+
+        private int getPrimaryType() {
+            for (int i = 0; i < hashes.length; i++) {
+                if (hashes[i] != null) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private long estimateSize() {
+            long size = 96;
+            for (byte[] hash : hashes) {
+                if (hash != null) {
+                    size += 16 + hash.length;
+                }
+            }
+            for (Set<String> values : properties.values()) {
+                size += 64;
+                for (String value : values) {
+                    size += 56 + 2 * value.length();
+                }
+            }
+            return size;
+        }
+    }
+
+    private final File tmpDir;
+
+    private final long maxBufferSize;
+
+    private final boolean[] typePresent = new boolean[hashTypes.length];
+
+    private final List<Record> buffer = new ArrayList<>();
+
+    private long bufferSize;
+
+    private final List<File> runs = new ArrayList<>();
+
+    private int numTmpFiles;
+
+    private long numRecords, numMerged, numConflicts;
+
+    /**
+     * @param tmpDir
+     *            parent folder of the temporary folder with the run files
+     * @param maxBufferSize
+     *            estimated heap bytes of records kept in memory before they are
+     *            written to a run file
+     */
+    HashDBBulkLoader(File tmpDir, long maxBufferSize) throws IOException {
+        this.tmpDir = Files.createTempDirectory(tmpDir.toPath(), "hashdb-bulk").toFile();
+        this.maxBufferSize = maxBufferSize;
+    }
+
+    /**
+     * Adds a record, hashes and properties are copied.
+     */
+    void add(byte[][] hashes, Map<Integer, Set<String>> properties) throws IOException {
+        byte[][] hashesCopy = new byte[hashTypes.length][];
+        for (int i = 0; i < hashesCopy.length; i++) {
+            if (hashes[i] != null) {
+                hashesCopy[i] = hashes[i].clone();
+                typePresent[i] = true;
+            }
+        }
+        TreeMap<Integer, Set<String>> propertiesCopy = new TreeMap<>();
+        for (Map.Entry<Integer, Set<String>> entry : properties.entrySet()) {
+            propertiesCopy.put(entry.getKey(), new HashSet<>(entry.getValue()));
+        }
+        Record record = new Record(hashesCopy, propertiesCopy, numRecords++);
+        buffer.add(record);
+        bufferSize += record.estimateSize();
+        if (bufferSize >= maxBufferSize) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (!buffer.isEmpty()) {
+            runs.add(writeSortedRun(getComparator(-1)));
+        }
+    }
+
+    /**
+     * Merges all records added, passing the records with distinct hashes to the
+     * writer.
+     */
+    void load(RecordWriter writer) throws Exception {
+        flushBuffer();
+        List<File> files = mergeRuns(runs, getComparator(-1));
+        runs.clear();
+        for (int type = 1; type < hashTypes.length; type++) {
+            if (typePresent[type]) {
+                files = mergeByType(files, type);
+            }
+        }
+        try (RecordReader reader = new RecordReader(files)) {
+            Record record;
+            while ((record = reader.next()) != null) {
+                writer.write(record.hashes, record.properties);
+            }
+        }
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Merges records having the specified hash type. The records without it are
+     * kept in another file, they were already merged by other types.
+     */
+    private List<File> mergeByType(List<File> files, int type) throws IOException {
+        Comparator<Record> comparator = getComparator(type);
+        List<File> typeRuns = new ArrayList<>();
+        File others = newTmpFile();
+        try (RecordReader reader = new RecordReader(files);
+                DataOutputStream othersOs = newOutput(others)) {
+            Record record;
+            while ((record = reader.next()) != null) {
+                if (record.hashes[type] == null) {
+                    writeRecord(othersOs, record);
+                    continue;
+                }
+                buffer.add(record);
+                bufferSize += record.estimateSize();
+                if (bufferSize >= maxBufferSize) {
+                    typeRuns.add(writeSortedRun(comparator));
+                }
+            }
+            if (!buffer.isEmpty()) {
+                typeRuns.add(writeSortedRun(comparator));
+            }
+        }
+        for (File file : files) {
+            file.delete();
+        }
+        List<File> result = mergeRuns(typeRuns, comparator);
+        result.add(others);
+        return result;
+    }
+
+    private File writeSortedRun(Comparator<Record> comparator) throws IOException {
+        buffer.sort(comparator);
+        File run = newTmpFile();
+        try (DataOutputStream os = newOutput(run)) {
+            Record prev = null;
+            for (Record record : buffer) {
+                if (prev != null && comparator.compare(prev, record) == 0) {
+                    merge(prev, record);
+                } else {
+                    if (prev != null) {
+                        writeRecord(os, prev);
+                    }
+                    prev = record;
+                }
+            }
+            writeRecord(os, prev);
+        }
+        buffer.clear();
+        bufferSize = 0;
+        return run;
+    }
+
+    /**
+     * K-way merge of sorted runs into one file, merging records with the same
+     * key. Many runs are merged in more than one level.
+     */
+    private List<File> mergeRuns(List<File> runs, Comparator<Record> comparator) throws IOException {
+        List<File> pending = new ArrayList<>(runs);
+        while (pending.size() > 1) {
+            int n = Math.min(pending.size(), MAX_MERGED_RUNS);
+            List<File> merging = new ArrayList<>(pending.subList(0, n));
+            pending.subList(0, n).clear();
+            pending.add(mergeRunsToFile(merging, comparator));
+        }
+        return pending;
+    }
+
+    private File mergeRunsToFile(List<File> runs, Comparator<Record> comparator) throws IOException {
+        File merged = newTmpFile();
+        List<RecordReader> readers = new ArrayList<>();
+        PriorityQueue<RecordReader> queue = new PriorityQueue<>(runs.size(),
+                (a, b) -> comparator.compare(a.current, b.current));
+        try (DataOutputStream os = newOutput(merged)) {
+            for (File run : runs) {
+                RecordReader reader = new RecordReader(List.of(run));
+                readers.add(reader);
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+            Record prev = null;
+            while (!queue.isEmpty()) {
+                RecordReader reader = queue.poll();
+                Record record = reader.current;
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+                if (prev != null && comparator.compare(prev, record) == 0) {
+                    merge(prev, record);
+                } else {
+                    if (prev != null) {
+                        writeRecord(os, prev);
+                    }
+                    prev = record;
+                }
+            }
+            if (prev != null) {
+                writeRecord(os, prev);
+            }
+        } finally {
+            for (RecordReader reader : readers) {
+                IOUtil.closeQuietly(reader);
+            }
+        }
+        for (File run : runs) {
+            run.delete();
+        }
+        return merged;
+    }
+
+    /**
+     * @param type
+     *            hash type to compare, or -1 to compare the first hash present
+     */
+    private static Comparator<Record> getComparator(int type) {
+        if (type >= 0) {
+            return (a, b) -> compare(a.hashes[type], b.hashes[type]);
+        }
+        return (a, b) -> {
+            int typeA = a.getPrimaryType();
+            int typeB = b.getPrimaryType();
+            if (typeA != typeB) {
+                return Integer.compare(typeA, typeB);
+            }
+            return compare(a.hashes[typeA], b.hashes[typeB]);
+        };
+    }
+
+    private static int compare(byte[] a, byte[] b) {
+        for (int i = 0; i < a.length && i < b.length; i++) {
+            int cmp = Integer.compare(a[i] & 0xFF, b[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
+    /**
+     * Merges b into a. If they have different hashes of the same type, the hash
+     * of the record added last is kept.
+     */
+    private void merge(Record a, Record b) {
+        boolean conflict = false;
+        for (int i = 0; i < a.hashes.length; i++) {
+            if (a.hashes[i] == null) {
+                a.hashes[i] = b.hashes[i];
+            } else if (b.hashes[i] != null && compare(a.hashes[i], b.hashes[i]) != 0) {
+                if (b.seq > a.seq) {
+                    a.hashes[i] = b.hashes[i];
+                }
+                conflict = true;
+            }
+        }
+        if (conflict) {
+            numConflicts++;
+        }
+        a.seq = Math.max(a.seq, b.seq);
+        for (Map.Entry<Integer, Set<String>> entry : b.properties.entrySet()) {
+            Set<String> values = a.properties.get(entry.getKey());
+            if (values == null) {
+                a.properties.put(entry.getKey(), entry.getValue());
+            } else {
+                values.addAll(entry.getValue());
+            }
+        }
+        numMerged++;
+    }
+
+    private File newTmpFile() {
+        return new File(tmpDir, "run" + (numTmpFiles++) + ".tmp");
+    }
+
+    private static DataOutputStream newOutput(File file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+    }
+
+    private static void writeRecord(DataOutputStream os, Record record) throws IOException {
+        int mask = 0;
+        for (int i = 0; i < record.hashes.length; i++) {
+            if (record.hashes[i] != null) {
+                mask |= 1 << i;
+            }
+        }
+        os.writeByte(mask);
+        os.writeLong(record.seq);
+        for (byte[] hash : record.hashes) {
+            if (hash != null) {
+                os.write(hash);
+            }
+        }
+        os.writeInt(record.properties.size());
+        for (Map.Entry<Integer, Set<String>> entry : record.properties.entrySet()) {
+            os.writeInt(entry.getKey());
+            os.writeInt(entry.getValue().size());
+            for (String value : entry.getValue()) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                os.writeInt(bytes.length);
+                os.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Reads records from files, one after the other.
+     */
+    private static class RecordReader implements Closeable {
+
+        private final List<File> files;
+        private int nextFile;
+        private DataInputStream is;
+        private Record current;
+
+        private RecordReader(List<File> files) {
+            this.files = files;
+        }
+
+        private Record next() throws IOException {
+            return advance() ? current : null;
+        }
+
+        private boolean advance() throws IOException {
+            while (true) {
+                if (is == null) {
+                    if (nextFile == files.size()) {
+                        current = null;
+                        return false;
+                    }
+                    is = new DataInputStream(
+                            new BufferedInputStream(new FileInputStream(files.get(nextFile++)), BUFFER_SIZE));
+                }
+                int mask = is.read();
+                if (mask == -1) {
+                    is.close();
+                    is = null;
+                    continue;
+                }
+                current = readRecord(mask);
+                return true;
+            }
+        }
+
+        private Record readRecord(int mask) throws IOException {
+            try {
+                long seq = is.readLong();
+                byte[][] hashes = new byte[hashTypes.length][];
+                for (int i = 0; i < hashes.length; i++) {
+                    if ((mask & (1 << i)) != 0) {
+                        hashes[i] = new byte[hashBytesLen[i]];
+                        is.readFully(hashes[i]);
+                    }
+                }
+                TreeMap<Integer, Set<String>> properties = new TreeMap<>();
+                int numProperties = is.readInt();
+                for (int i = 0; i < numProperties; i++) {
+                    int id = is.readInt();
+                    int numValues = is.readInt();
+                    Set<String> values = new HashSet<>();
+                    for (int j = 0; j < numValues; j++) {
+                        byte[] bytes = new byte[is.readInt()];
+                        is.readFully(bytes);
+                        values.add(new String(bytes, StandardCharsets.UTF_8));
+                    }
+                    properties.put(id, values);
+                }
+                return new Record(hashes, properties, seq);
+            } catch (EOFException e) {
+                throw new IOException("Truncated bulk load temporary file", e); //$NON-NLS-1$
+            }
+        }
+
+        @Override
+        public void close() {
+            IOUtil.closeQuietly(is);
+        }
+    }
+
+    long getNumRecords() {
+        return numRecords;
+    }
+
+    long getNumMerged() {
+        return numMerged;
+    }
+
+    long getNumConflicts() {
+        return numConflicts;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.clear();
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+}
@@ -338,23 +338,46 @@ public synchronized void lookup(byte[][] hashes, Map<String, String> properties)
         ResultSet rs1 = stmtSelect.executeQuery();
         while (rs1.next()) {
             int hashId = rs1.getInt(1);
-            stmtSelectHashProperties.setInt(1, hashId);
-            ResultSet rs2 = stmtSelectHashProperties.executeQuery();
-            while (rs2.next()) {
-                int propertyId = rs2.getInt(1);
-                String propertyName = propertyIdToName.get(propertyId);
-                if (propertyName != null) {
-                    String propertyValue = rs2.getString(2);
-                    String prev = properties.get(propertyName);
-                    if (prev != null) {
-                        propertyValue = HashDB.mergeProperties(propertyValue, prev);
-                    }
-                    properties.put(propertyName, propertyValue);
+            readProperties(hashId, properties);
+        }
+        rs1.close();
+    }
+
+    /**
+     * Merges the properties of the specified hash ids, already found by other
+     * means (e.g. {@link HashDBIndex}), into the properties map.
+     */
+    public synchronized void lookupProperties(int[] hashIds, int numHashIds, Map<String, String> properties)
+            throws Exception {
+        for (int i = 0; i < numHashIds; i++) {
+            readProperties(hashIds[i], properties);
+        }
+    }
+
+    private void readProperties(int hashId, Map<String, String> properties) throws Exception {
+        stmtSelectHashProperties.setInt(1, hashId);
+        ResultSet rs = stmtSelectHashProperties.executeQuery();
+        while (rs.next()) {
+            int propertyId = rs.getInt(1);
+            String propertyName = propertyIdToName.get(propertyId);
+            if (propertyName != null) {
+                String propertyValue = rs.getString(2);
+                String prev = properties.get(propertyName);
+                if (prev != null) {
+                    propertyValue = HashDB.mergeProperties(propertyValue, prev);
                 }
+                properties.put(propertyName, propertyValue);
             }
-            rs2.close();
         }
-        rs1.close();
+        rs.close();
+    }
+
+    boolean isHashPresent(int hashType) {
+        return presentHashes[hashType];
+    }
+
+    Connection getConnection() {
+        return connection;
     }
 
     public synchronized void close() {
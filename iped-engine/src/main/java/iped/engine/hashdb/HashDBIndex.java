@@ -0,0 +1,379 @@
+package iped.engine.hashdb;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import iped.utils.IOUtil;
+
+/**
+ * Read only, memory mapped index of all hashes of the hashes database. For each
+ * hash type, it keeps the digests sorted with their HASH_IDs, preceded by a
+ * bloom filter, so lookups of hashes not in the database (most of them) do not
+ * touch SQLite and can be done concurrently without locks. Properties of the
+ * hashes found still must be read from the database.
+ *
+ * The index is built from the database once and kept in a cache file next to
+ * the database, that is rebuilt if the database file changes. If the database
+ * folder is not writable, the cache file is kept in the user home, named by the
+ * database path.
+ */
+public class HashDBIndex {
+
+    private static Logger logger = LoggerFactory.getLogger(HashDBIndex.class);
+
+    private static final String INDEX_EXT = ".index"; //$NON-NLS-1$
+
+    private static final File userCacheDir = new File(System.getProperty("user.home"), ".iped/hashdb"); //$NON-NLS-1$
+
+    private static final long MAGIC = 0x4950454448444249L; // IPEDHDBI
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_LEN = 8 + 4 + 8 + 8 + 4 + HashDB.hashTypes.length * 16;
+
+    private static final int BLOOM_BITS_PER_HASH = 10;
+
+    private static final int BLOOM_HASH_FUNCTIONS = 7;
+
+    private static final int MAX_MAP_SIZE = 1 << 30;
+
+    /**
+     * Max number of HASH_IDs returned by a lookup, one per hash type.
+     */
+    public static final int MAX_HITS = HashDB.hashTypes.length;
+
+    private final HashTable[] tables = new HashTable[HashDB.hashTypes.length];
+
+    private RandomAccessFile raf;
+
+    private static class HashTable {
+
+        private final int hashLen;
+        private final int recordLen;
+        private final long count;
+        private final long bloomBits;
+        private final MappedByteBuffer[] bloom;
+        private final MappedByteBuffer[] records;
+        private final int recordsPerMap;
+
+        /**
+         * first record index of each 2 bytes prefix, to narrow binary searches.
+         */
+        private final long[] prefixStart = new long[(1 << 16) + 1];
+
+        private HashTable(FileChannel channel, long offset, int hashLen, long count, long bloomWords)
+                throws IOException {
+            this.hashLen = hashLen;
+            this.recordLen = hashLen + 4;
+            this.count = count;
+            this.bloomBits = bloomWords * 64;
+
+            long bloomLen = bloomWords * 8;
+            bloom = map(channel, offset, bloomLen, MAX_MAP_SIZE);
+            offset += bloomLen;
+
+            recordsPerMap = MAX_MAP_SIZE / recordLen;
+            records = map(channel, offset, count * recordLen, recordsPerMap * recordLen);
+
+            for (int prefix = 0, i = 0; prefix < (1 << 16); prefix++) {
+                prefixStart[prefix] = i;
+                while (i < count && getPrefix(i) == prefix) {
+                    i++;
+                }
+                prefixStart[prefix + 1] = i;
+            }
+        }
+
+        private static MappedByteBuffer[] map(FileChannel channel, long offset, long len, int mapSize)
+                throws IOException {
+            int n = (int) ((len + mapSize - 1) / mapSize);
+            MappedByteBuffer[] maps = new MappedByteBuffer[n];
+            for (int i = 0; i < n; i++) {
+                long start = (long) i * mapSize;
+                maps[i] = channel.map(MapMode.READ_ONLY, offset + start, Math.min(mapSize, len - start));
+            }
+            return maps;
+        }
+
+        private int getPrefix(long record) {
+            MappedByteBuffer map = records[(int) (record / recordsPerMap)];
+            int pos = (int) (record % recordsPerMap) * recordLen;
+            return ((map.get(pos) & 0xFF) << 8) | (map.get(pos + 1) & 0xFF);
+        }
+
+        private boolean mightContain(byte[] hash) {
+            long h1 = getLong(hash, 0);
+            long h2 = getLong(hash, 8) | 1;
+            for (int i = 0; i < BLOOM_HASH_FUNCTIONS; i++) {
+                long bit = Long.remainderUnsigned(h1 + i * h2, bloomBits);
+                long word = bit >>> 6;
+                MappedByteBuffer map = bloom[(int) (word / (MAX_MAP_SIZE / 8))];
+                long value = map.getLong((int) (word % (MAX_MAP_SIZE / 8)) * 8);
+                if ((value & (1L << (bit & 63))) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int find(byte[] hash) {
+            int prefix = ((hash[0] & 0xFF) << 8) | (hash[1] & 0xFF);
+            long low = prefixStart[prefix];
+            long high = prefixStart[prefix + 1] - 1;
+            while (low <= high) {
+                long mid = (low + high) >>> 1;
+                MappedByteBuffer map = records[(int) (mid / recordsPerMap)];
+                int pos = (int) (mid % recordsPerMap) * recordLen;
+                int cmp = 0;
+                for (int i = 2; i < hashLen && cmp == 0; i++) {
+                    cmp = Integer.compare(map.get(pos + i) & 0xFF, hash[i] & 0xFF);
+                }
+                if (cmp == 0) {
+                    return map.getInt(pos + hashLen);
+                }
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private HashDBIndex(File cacheFile) throws IOException {
+        raf = new RandomAccessFile(cacheFile, "r");
+        FileChannel channel = raf.getChannel();
+        raf.seek(8 + 4 + 8 + 8);
+        int numTypes = raf.readInt();
+        long[] counts = new long[numTypes];
+        long[] bloomWords = new long[numTypes];
+        for (int i = 0; i < numTypes; i++) {
+            counts[i] = raf.readLong();
+            bloomWords[i] = raf.readLong();
+        }
+        long offset = HEADER_LEN;
+        for (int i = 0; i < numTypes; i++) {
+            if (counts[i] > 0) {
+                tables[i] = new HashTable(channel, offset, HashDB.hashBytesLen[i], counts[i], bloomWords[i]);
+                offset += bloomWords[i] * 8 + counts[i] * (HashDB.hashBytesLen[i] + 4);
+            }
+        }
+    }
+
+    /**
+     * @return the index file kept next to the hashes database file.
+     */
+    public static File getIndexFileNextToDB(File hashDBFile) {
+        return new File(hashDBFile.getPath() + INDEX_EXT);
+    }
+
+    /**
+     * @return the index file next to the hashes database, if it is valid or can be
+     *         written, otherwise a file in the user home named by the database
+     *         path.
+     */
+    public static File getIndexFile(File hashDBFile) {
+        File indexFile = getIndexFileNextToDB(hashDBFile);
+        File dir = hashDBFile.getAbsoluteFile().getParentFile();
+        if (isValidCache(hashDBFile, indexFile) || (dir != null && Files.isWritable(dir.toPath())
+                && (!indexFile.exists() || Files.isWritable(indexFile.toPath())))) {
+            return indexFile;
+        }
+        String name = DigestUtils.md5Hex(hashDBFile.getAbsolutePath()) + INDEX_EXT;
+        return new File(userCacheDir, name);
+    }
+
+    /**
+     * Loads the index of the hashes database from the default cache file, see
+     * {@link #getIndexFile(File)}, building it first if it does not exist or is
+     * outdated.
+     */
+    public static HashDBIndex load(HashDBDataSource dataSource, File hashDBFile) throws Exception {
+        return load(dataSource, hashDBFile, getIndexFile(hashDBFile));
+    }
+
+    public static HashDBIndex load(HashDBDataSource dataSource, File hashDBFile, File cacheFile) throws Exception {
+        if (!isValidCache(hashDBFile, cacheFile)) {
+            long t = System.currentTimeMillis();
+            logger.info("Building hashes database index {}...", cacheFile.getPath());
+            build(dataSource, hashDBFile, cacheFile);
+            logger.info("Hashes database index built in {} ms.", System.currentTimeMillis() - t);
+        }
+        HashDBIndex index = new HashDBIndex(cacheFile);
+        logger.info("Hashes database index loaded: {} hashes.", index.size());
+        return index;
+    }
+
+    private static boolean isValidCache(File hashDBFile, File cacheFile) {
+        if (!cacheFile.exists() || cacheFile.length() < HEADER_LEN) {
+            return false;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(cacheFile, "r")) {
+            return raf.readLong() == MAGIC && raf.readInt() == VERSION && raf.readLong() == hashDBFile.length()
+                    && raf.readLong() == hashDBFile.lastModified() && raf.readInt() == HashDB.hashTypes.length;
+        } catch (IOException e) {
+            logger.warn("Error reading index file " + cacheFile.getPath(), e);
+            return false;
+        }
+    }
+
+    private static void build(HashDBDataSource dataSource, File hashDBFile, File cacheFile) throws Exception {
+        if (cacheFile.getParentFile() != null && !cacheFile.getParentFile().exists()) {
+            cacheFile.getParentFile().mkdirs();
+        }
+        File tmp = new File(cacheFile.getPath() + ".tmp");
+        boolean ok = false;
+        Statement stmt = dataSource.getConnection().createStatement();
+        DataOutputStream os = null;
+        try {
+            long[] counts = new long[HashDB.hashTypes.length];
+            long[] bloomWords = new long[HashDB.hashTypes.length];
+            for (int i = 0; i < counts.length; i++) {
+                if (dataSource.isHashPresent(i)) {
+                    ResultSet rs = stmt.executeQuery(
+                            "select count(*) from HASHES where " + HashDB.hashTypes[i] + " is not null");
+                    counts[i] = rs.next() ? rs.getLong(1) : 0;
+                    rs.close();
+                    bloomWords[i] = (counts[i] * BLOOM_BITS_PER_HASH + 63) / 64;
+                }
+            }
+
+            os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 20));
+            os.writeLong(MAGIC);
+            os.writeInt(VERSION);
+            os.writeLong(hashDBFile.length());
+            os.writeLong(hashDBFile.lastModified());
+            os.writeInt(counts.length);
+            for (int i = 0; i < counts.length; i++) {
+                os.writeLong(counts[i]);
+                os.writeLong(bloomWords[i]);
+            }
+
+            stmt.setFetchSize(4096);
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    continue;
+                }
+                int hashLen = HashDB.hashBytesLen[i];
+                String sql = "select " + HashDB.hashTypes[i] + ", HASH_ID from HASHES where " + HashDB.hashTypes[i]
+                        + " is not null order by " + HashDB.hashTypes[i];
+
+                // first pass fills the bloom filter, second one writes sorted records
+                long[] bloom = new long[(int) bloomWords[i]];
+                long bloomBits = bloomWords[i] * 64;
+                long n = 0;
+                ResultSet rs = stmt.executeQuery(sql);
+                while (rs.next() && n++ < counts[i]) {
+                    byte[] hash = rs.getBytes(1);
+                    if (hash.length != hashLen) {
+                        throw new IOException("Invalid " + HashDB.hashTypes[i] + " length in hashes database"); //$NON-NLS-1$
+                    }
+                    long h1 = getLong(hash, 0);
+                    long h2 = getLong(hash, 8) | 1;
+                    for (int k = 0; k < BLOOM_HASH_FUNCTIONS; k++) {
+                        long bit = Long.remainderUnsigned(h1 + k * h2, bloomBits);
+                        bloom[(int) (bit >>> 6)] |= 1L << (bit & 63);
+                    }
+                }
+                rs.close();
+                for (long word : bloom) {
+                    os.writeLong(word);
+                }
+                bloom = null;
+
+                n = 0;
+                rs = stmt.executeQuery(sql);
+                while (rs.next() && n < counts[i]) {
+                    os.write(rs.getBytes(1));
+                    os.writeInt(rs.getInt(2));
+                    n++;
+                }
+                rs.close();
+                if (n != counts[i]) {
+                    throw new IOException("Hashes database changed while building index"); //$NON-NLS-1$
+                }
+            }
+            os.close();
+            os = null;
+
+            cacheFile.delete();
+            ok = tmp.renameTo(cacheFile);
+            if (!ok) {
+                throw new IOException("Error renaming " + tmp.getPath() + " to " + cacheFile.getPath()); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+        } finally {
+            IOUtil.closeQuietly(os);
+            stmt.close();
+            if (!ok) {
+                tmp.delete();
+            }
+        }
+    }
+
+    private static long getLong(byte[] b, int off) {
+        long l = 0;
+        for (int i = off; i < off + 8; i++) {
+            l = (l << 8) | (b[i] & 0xFF);
+        }
+        return l;
+    }
+
+    public long size() {
+        long size = 0;
+        for (HashTable table : tables) {
+            if (table != null) {
+                size += table.count;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Looks up the hashes, indexed by hash type like in
+     * {@link HashDBDataSource#lookup(byte[][], java.util.Map)}, and stores the
+     * distinct HASH_IDs found in hashIds, which must have {@link #MAX_HITS}
+     * length. This method is thread safe.
+     *
+     * @return number of HASH_IDs found
+     */
+    public int lookup(byte[][] hashes, int[] hashIds) {
+        int hits = 0;
+        NEXT: for (int i = 0; i < hashes.length && i < tables.length; i++) {
+            byte[] hash = hashes[i];
+            HashTable table = tables[i];
+            if (hash == null || table == null || hash.length != table.hashLen || !table.mightContain(hash)) {
+                continue;
+            }
+            int hashId = table.find(hash);
+            if (hashId != -1) {
+                for (int j = 0; j < hits; j++) {
+                    if (hashIds[j] == hashId) {
+                        continue NEXT;
+                    }
+                }
+                hashIds[hits++] = hashId;
+            }
+        }
+        return hits;
+    }
+
+    public void close() {
+        IOUtil.closeQuietly(raf);
+    }
+
+}
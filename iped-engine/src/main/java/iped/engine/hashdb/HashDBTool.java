@@ -95,6 +95,8 @@ public class HashDBTool {
     private static final String icseFlagColumns = "IsDistributed;VictimIdentified;OffenderIdentified;FileAvailable;Baseline";
     private static final String icseDelimiter = ";";
 
+    private static final int bulkCommitInterval = 1 << 20;
+
     private final List<File> inputs = new ArrayList<File>();
     private File output;
     private int lastHashId, lastPropertyId;
@@ -112,8 +114,9 @@ public class HashDBTool {
     private final Map<String, Integer> propertyNameToId = new HashMap<String, Integer>();
     private Map<Integer, String> nsrlProdCodeToName;
     private ProcessMode mode = ProcessMode.UNDEFINED;
-    private int totIns, totRem, totUpd, totSkip, totComb, totIgn, totNoProd, totInvHash;
-    private boolean dbExists = true, skipOpt, inputFolderUsed;
+    private int totIns, totRem, totUpd, totSkip, totComb, totIgn, totNoProd, totInvHash, totQueued;
+    private boolean dbExists = true, skipOpt, inputFolderUsed, bulk, buildIndex;
+    private HashDBBulkLoader bulkLoader;
     private String delimiter;
     private final Set<String> skipCols = new HashSet<String>();
     private final Map<String, String> renameCols = new HashMap<String, String>();
@@ -138,6 +141,10 @@ public boolean run(String[] args) {
         if (inputs.isEmpty())
             System.exit(0);
         dbExists = output.exists();
+        if (bulk && dbExists) {
+            System.out.println("ERROR: -bulk can only be used to create a new database.");
+            return false;
+        }
         if (!connect())
             return false;
         if (!dbExists && !createDatabase())
@@ -148,11 +155,66 @@ public boolean run(String[] args) {
             return false;
         if (!loadProperties())
             return false;
+        if (bulk && !createBulkLoader())
+            return false;
         if (!readFiles())
             return false;
+        if (bulkLoader != null && !loadBulk())
+            return false;
         return true;
     }
 
+    private boolean createBulkLoader() {
+        try {
+            File parent = output.getAbsoluteFile().getParentFile();
+            // records kept in memory before being sorted and written to a temporary file
+            long maxBufferSize = Runtime.getRuntime().maxMemory() / 4;
+            bulkLoader = new HashDBBulkLoader(parent, maxBufferSize);
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    private boolean loadBulk() {
+        try {
+            long t = System.currentTimeMillis();
+            System.out.println("\nMerging " + bulkLoader.getNumRecords() + " records...");
+            totIns = 0;
+            bulkLoader.load((hashes, properties) -> {
+                int hashId = ++lastHashId;
+                if (!insertHash(hashId, hashes) || !insertHashProperties(hashId, properties)) {
+                    throw new SQLException("Error inserting hash #" + hashId);
+                }
+                if ((++totIns & 8191) == 0)
+                    updatePercentage(-totIns);
+                if ((totIns & (bulkCommitInterval - 1)) == 0)
+                    connection.commit();
+            });
+            updatePercentage(-1);
+            System.out.println("\r" + totIns + " hash" + (totIns == 1 ? "" : "es") + " inserted in " + endTime(t));
+            System.out.println(bulkLoader.getNumMerged() + " record" + (bulkLoader.getNumMerged() == 1 ? "" : "s")
+                    + " merged.");
+            if (bulkLoader.getNumConflicts() > 0)
+                System.out.println("WARNING: " + bulkLoader.getNumConflicts() + " merged record"
+                        + (bulkLoader.getNumConflicts() == 1 ? "" : "s") + " with inconsistent hashes.");
+            connection.commit();
+
+            t = System.currentTimeMillis();
+            System.out.println("\nCreating indexes...");
+            Statement statement = connection.createStatement();
+            createIndexes(statement);
+            statement.close();
+            System.out.println("Indexes created in " + endTime(t));
+            return true;
+        } catch (Exception e) {
+            System.out.println();
+            e.printStackTrace();
+        }
+        return false;
+    }
+
     private boolean initSequences() {
         try {
             Statement stmt = connection.createStatement();
@@ -211,6 +273,11 @@ private boolean process(byte[][] newHashes, Map<Integer, Set<String>> newPropert
         }
         if (mask == 0)
             return true;
+        if (bulkLoader != null) {
+            totQueued++;
+            bulkLoader.add(newHashes, newProperties);
+            return true;
+        }
         PreparedStatement stmtSelect = stmtSelectHash[mask];
         int k = 0;
         for (byte[] h : newHashes) {
@@ -532,15 +599,9 @@ private boolean createDatabase() {
             sb.append(")");
             statement.executeUpdate(sb.toString());
 
-            for (String s : hashTypes) {
-                sb.delete(0, sb.length());
-                sb.append("create unique index IDX_");
-                sb.append(s);
-                sb.append(" on HASHES (");
-                sb.append(s);
-                sb.append(")");
-                statement.executeUpdate(sb.toString());
-            }
+            // in bulk mode, indexes are created after all hashes are inserted
+            if (!bulk)
+                createIndexes(statement);
 
             sb.delete(0, sb.length());
             sb.append("create table HASHES_PROPERTIES (HASH_ID integer, PROPERTY_ID integer, VALUE text NOT NULL, ");
@@ -567,6 +628,18 @@ private boolean createDatabase() {
         return false;
     }
 
+    private void createIndexes(Statement statement) throws SQLException {
+        for (String s : hashTypes) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("create unique index IDX_");
+            sb.append(s);
+            sb.append(" on HASHES (");
+            sb.append(s);
+            sb.append(")");
+            statement.executeUpdate(sb.toString());
+        }
+    }
+
     private boolean connect() {
         try {
             SQLiteConfig config = new SQLiteConfig();
@@ -605,7 +678,7 @@ private boolean readFiles() {
 
     private boolean readFile(File file) {
         FileType type = getFileType(file);
-        totIns = totRem = totUpd = totSkip = totComb = totIgn = totNoProd = totInvHash = 0;
+        totIns = totRem = totUpd = totSkip = totComb = totIgn = totNoProd = totInvHash = totQueued = 0;
         System.out.println("\nReading " + (type == FileType.INPUT ? "" : type.toString() + " ") + "file "
                 + file.getPath() + "...");
         if (type == FileType.NSRL_PROD)
@@ -1383,6 +1456,8 @@ else if (col.equals(nsrlProductName))
     private void printTotals() {
         if (totIns > 0)
             System.out.println(totIns + " hash" + (totIns == 1 ? "" : "es") + " inserted.");
+        if (totQueued > 0)
+            System.out.println(totQueued + " record" + (totQueued == 1 ? "" : "s") + " queued for bulk loading.");
         if (totRem > 0)
             System.out.println(totRem + " hash" + (totRem == 1 ? "" : "es") + " removed.");
         if (totUpd > 0)
@@ -1824,8 +1899,10 @@ private boolean isIcseCsv(File file) {
 
     private void deleteUnused() throws SQLException {
         Statement stmt = connection.createStatement();
-        stmt.executeUpdate(
-                "delete from HASHES where not exists (select 1 from HASHES_PROPERTIES where HASH_ID = HASHES.HASH_ID)");
+        // bulk loaded hashes always have properties
+        if (!bulk)
+            stmt.executeUpdate(
+                    "delete from HASHES where not exists (select 1 from HASHES_PROPERTIES where HASH_ID = HASHES.HASH_ID)");
         stmt.executeUpdate(
                 "delete from PROPERTIES where not exists (select 1 from HASHES_PROPERTIES where PROPERTY_ID = PROPERTIES.PROPERTY_ID)");
         stmt.close();
@@ -1874,10 +1951,13 @@ void finish(boolean success) {
                     } catch (Exception e) {
                         e.printStackTrace();
                     }
-                    try {
-                        vacuum();
-                    } catch (Exception e) {
-                        e.printStackTrace();
+                    // bulk loaded database was written sequentially, without deletions
+                    if (!bulk) {
+                        try {
+                            vacuum();
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                        }
                     }
                     System.out.println("Optimization completed in " + endTime(t));
                 }
@@ -1917,6 +1997,15 @@ void finish(boolean success) {
                 connection.close();
         } catch (Exception e) {
         }
+        try {
+            if (bulkLoader != null)
+                bulkLoader.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        if (success && buildIndex) {
+            buildIndex();
+        }
         try {
             if (!success && !dbExists && output != null && output.exists()) {
                 output.delete();
@@ -1925,6 +2014,26 @@ void finish(boolean success) {
         }
     }
 
+    private void buildIndex() {
+        HashDBDataSource dataSource = null;
+        HashDBIndex index = null;
+        try {
+            long t = System.currentTimeMillis();
+            System.out.println("\nBuilding memory mapped index...");
+            dataSource = new HashDBDataSource(output);
+            index = HashDBIndex.load(dataSource, output, HashDBIndex.getIndexFileNextToDB(output));
+            System.out.println("Index with " + index.size() + " hashes built in " + endTime(t) + ": "
+                    + HashDBIndex.getIndexFileNextToDB(output).getPath());
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (index != null)
+                index.close();
+            if (dataSource != null)
+                dataSource.close();
+        }
+    }
+
     private boolean prepare() {
         try {
             StringBuilder sb = new StringBuilder();
@@ -2117,6 +2226,10 @@ private boolean parseParameters(String[] args) {
                 mode = ProcessMode.REMOVE_ALL;
             } else if (arg.equalsIgnoreCase("-noOpt")) {
                 skipOpt = true;
+            } else if (arg.equalsIgnoreCase("-bulk")) {
+                bulk = true;
+            } else if (arg.equalsIgnoreCase("-buildIndex")) {
+                buildIndex = true;
             } else {
                 System.out.println("ERROR: unknown parameter '" + arg + "'.");
                 return false;
@@ -2132,6 +2245,10 @@ private boolean parseParameters(String[] args) {
         }
         if (mode == ProcessMode.UNDEFINED)
             mode = ProcessMode.MERGE;
+        if (bulk && mode != ProcessMode.MERGE) {
+            System.out.println("ERROR: -bulk can not be combined with other process mode option.");
+            return false;
+        }
         return true;
     }
 
@@ -2146,7 +2263,8 @@ private void usage() {
         System.out.println("    imported directly.");
         System.out.println();
         System.out.println("Usage: java -jar iped-hashdb.jar -d <input file or folder> -o <output DB file>");
-        System.out.println("            [-replace | -replaceAll | -remove | -removeAll] [-noOpt]");
+        System.out.println("            [-replace | -replaceAll | -remove | -removeAll | -bulk] [-noOpt]");
+        System.out.println("            [-buildIndex]");
         System.out.println("            [-delimiter <char>] [-addCol <column name> <fixed value>]");
         System.out.println("            [-renameCol <current name> <new name>] [-skipCol <column name>]");
         System.out.println("            [-mapValue <column name> <current value> <new value>]");
@@ -2178,6 +2296,15 @@ private void usage() {
         System.out.println("    is removed.");
         System.out.println("  -removeAll");
         System.out.println("    Remove all references to the hashes present in the input files.");
+        System.out.println("  -bulk");
+        System.out.println("    Faster import of large hash sets into a new database. Records of all input");
+        System.out.println("    files are sorted and merged using temporary files in the output folder,");
+        System.out.println("    then hashes are inserted at once and indexes are created at the end.");
+        System.out.println("    Properties are merged, like in the default mode.");
+        System.out.println("  -buildIndex");
+        System.out.println("    Build the memory mapped index of the database hashes, used during case");
+        System.out.println("    processing if enabled in HashDBLookupConfig.txt, so it is not built when");
+        System.out.println("    processing starts. It is written next to the output database.");
         System.out.println("  -noOpt");
         System.out.println("    Skip optimizations (reclaim empty space and database analisys) executed");
         System.out.println("    after processing input file(s).");
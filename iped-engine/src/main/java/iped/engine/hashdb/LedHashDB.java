@@ -1,14 +1,55 @@
 package iped.engine.hashdb;
 
 public class LedHashDB {
+
+    /**
+     * Bits of the pre-filter per MD5 of 512 bytes.
+     */
+    private static final int FILTER_BITS_PER_HASH = 16;
+
     private final byte[] md5_512;
     private final byte[] md5_64k;
     private final int[] hashIds;
 
+    /**
+     * Bloom filter of MD5 of 512 bytes, probed with 3 independent 32 bits parts
+     * of the hash, so most misses are answered without searching the sorted
+     * hashes.
+     */
+    private final long[] md5_512Filter;
+
     public LedHashDB(byte[] md5_512, byte[] md5_64k, int[] hashIds) {
+        this(md5_512, md5_64k, hashIds, null);
+    }
+
+    public LedHashDB(byte[] md5_512, byte[] md5_64k, int[] hashIds, long[] md5_512Filter) {
         this.md5_512 = md5_512;
         this.md5_64k = md5_64k;
         this.hashIds = hashIds;
+        this.md5_512Filter = md5_512Filter != null ? md5_512Filter : createFilter(md5_512);
+    }
+
+    private static long[] createFilter(byte[] md5s) {
+        long numBits = Math.max(64, Long.highestOneBit((long) (md5s.length >>> 4) * FILTER_BITS_PER_HASH - 1) << 1);
+        long[] filter = new long[(int) (Math.min(numBits, 1L << 31) >>> 6)];
+        for (int off = 0; off + 16 <= md5s.length; off += 16) {
+            for (int i = 0; i < 3; i++) {
+                int bit = filterBit(filter, md5s, off + 4 * i);
+                filter[bit >>> 6] |= 1L << bit;
+            }
+        }
+        return filter;
+    }
+
+    private static int filterBit(long[] filter, byte[] md5, int off) {
+        int value = ((md5[off] & 255) << 24) | ((md5[off + 1] & 255) << 16) | ((md5[off + 2] & 255) << 8)
+                | (md5[off + 3] & 255);
+        long mask = ((long) filter.length << 6) - 1;
+        return (int) (value & mask);
+    }
+
+    public long[] getMD5_512Filter() {
+        return md5_512Filter;
     }
 
     public byte[] getMD5_512() {
@@ -30,6 +71,11 @@ public int size() {
     public boolean containsMD5_512(byte[] bytes) {
         if (bytes.length != 16)
             return false;
+        for (int i = 0; i < 3; i++) {
+            int bit = filterBit(md5_512Filter, bytes, 4 * i);
+            if ((md5_512Filter[bit >>> 6] & (1L << bit)) == 0)
+                return false;
+        }
         return binarySearch(md5_512, bytes) >= 0;
     }
 
@@ -0,0 +1,259 @@
+package iped.engine.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+
+/**
+ * Read only channel over content stored in independently LZ4 compressed blocks
+ * of fixed size. Only blocks touched by reads are decompressed. Decompressed
+ * blocks can be shared between channels using a {@link BlockCache}.
+ *
+ * Format: magic (4 bytes), version (1 byte), block size (int), content length
+ * (long), number of blocks (int), offset of each block plus the end offset
+ * (int[]), then the blocks. Blocks that do not compress are stored as is.
+ */
+public class BlockCompressedByteChannel implements SeekableByteChannel {
+
+    private static final byte[] MAGIC = { 'I', 'B', 'L', 'Z' };
+
+    private static final byte VERSION = 1;
+
+    private static final int HEADER_LEN = MAGIC.length + 1 + 4 + 8 + 4;
+
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+    private static final LZ4Factory lz4Factory = LZ4Factory.fastestInstance();
+
+    private final byte[] data;
+    private final String id;
+    private final BlockCache cache;
+    private final int blockSize;
+    private final long length;
+    private final int numBlocks;
+    private final int offsetsPos;
+
+    private byte[] block;
+    private int blockIdx = -1;
+    private long pos = 0;
+    private boolean closed = false;
+
+    /**
+     * LRU cache of decompressed blocks, limited by total size.
+     */
+    public static class BlockCache {
+
+        private final long maxBytes;
+        private long bytes = 0;
+
+        private final LinkedHashMap<String, byte[]> blocks = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                if (bytes > maxBytes) {
+                    bytes -= eldest.getValue().length;
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        public BlockCache(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        private synchronized byte[] get(String key) {
+            return blocks.get(key);
+        }
+
+        private synchronized void put(String key, byte[] block) {
+            byte[] prev = blocks.put(key, block);
+            if (prev != null) {
+                bytes -= prev.length;
+            }
+            bytes += block.length;
+        }
+    }
+
+    /**
+     * @param data
+     *            content in block compressed format
+     * @param id
+     *            content identifier, used as key in the cache
+     * @param cache
+     *            optional cache of decompressed blocks
+     */
+    public BlockCompressedByteChannel(byte[] data, String id, BlockCache cache) throws IOException {
+        if (!isBlockCompressed(data) || data.length < HEADER_LEN || data[MAGIC.length] != VERSION) {
+            throw new IOException("Invalid block compressed content"); //$NON-NLS-1$
+        }
+        ByteBuffer header = ByteBuffer.wrap(data, MAGIC.length + 1, HEADER_LEN - MAGIC.length - 1);
+        this.blockSize = header.getInt();
+        this.length = header.getLong();
+        this.numBlocks = header.getInt();
+        this.offsetsPos = HEADER_LEN;
+        if (blockSize <= 0 || length < 0 || numBlocks != (length + blockSize - 1) / blockSize
+                || data.length < offsetsPos + 4L * (numBlocks + 1)) {
+            throw new IOException("Invalid block compressed content header"); //$NON-NLS-1$
+        }
+        this.data = data;
+        this.id = id;
+        this.cache = cache;
+    }
+
+    public static boolean isBlockCompressed(byte[] data) {
+        if (data == null || data.length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static byte[] compress(byte[] buf, int len) {
+        return compress(buf, len, DEFAULT_BLOCK_SIZE);
+    }
+
+    public static byte[] compress(byte[] buf, int len, int blockSize) {
+        LZ4Compressor compressor = lz4Factory.fastCompressor();
+        int numBlocks = (len + blockSize - 1) / blockSize;
+        int dataPos = HEADER_LEN + 4 * (numBlocks + 1);
+        byte[] out = new byte[dataPos + compressor.maxCompressedLength(len) + numBlocks * 16];
+        ByteBuffer bb = ByteBuffer.wrap(out);
+        bb.put(MAGIC).put(VERSION).putInt(blockSize).putLong(len).putInt(numBlocks);
+        int pos = dataPos;
+        for (int i = 0; i < numBlocks; i++) {
+            bb.putInt(pos);
+            int off = i * blockSize;
+            int rawLen = Math.min(blockSize, len - off);
+            int compLen = compressor.compress(buf, off, rawLen, out, pos, out.length - pos);
+            if (compLen >= rawLen) {
+                System.arraycopy(buf, off, out, pos, rawLen);
+                compLen = rawLen;
+            }
+            pos += compLen;
+        }
+        bb.putInt(pos);
+        byte[] result = new byte[pos];
+        System.arraycopy(out, 0, result, 0, pos);
+        return result;
+    }
+
+    private int getOffset(int idx) {
+        return ByteBuffer.wrap(data, offsetsPos + 4 * idx, 4).getInt();
+    }
+
+    private byte[] getBlock(int idx) throws IOException {
+        if (idx == blockIdx) {
+            return block;
+        }
+        String key = cache != null ? id + "#" + idx : null; //$NON-NLS-1$
+        byte[] result = cache != null ? cache.get(key) : null;
+        if (result == null) {
+            int rawLen = (int) Math.min(blockSize, length - (long) idx * blockSize);
+            int start = getOffset(idx);
+            int compLen = getOffset(idx + 1) - start;
+            if (start < 0 || compLen < 0 || start + compLen > data.length) {
+                throw new IOException("Invalid block offset in compressed content"); //$NON-NLS-1$
+            }
+            result = new byte[rawLen];
+            if (compLen == rawLen) {
+                System.arraycopy(data, start, result, 0, rawLen);
+            } else {
+                try {
+                    int read = lz4Factory.safeDecompressor().decompress(data, start, compLen, result, 0, rawLen);
+                    if (read != rawLen) {
+                        throw new IOException("Corrupted compressed block " + idx); //$NON-NLS-1$
+                    }
+                } catch (RuntimeException e) {
+                    throw new IOException("Corrupted compressed block " + idx, e); //$NON-NLS-1$
+                }
+            }
+            if (cache != null) {
+                cache.put(key, result);
+            }
+        }
+        block = result;
+        blockIdx = idx;
+        return result;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        checkIfClosed();
+        if (pos >= length) {
+            return -1;
+        }
+        int total = 0;
+        while (dst.hasRemaining() && pos < length) {
+            int idx = (int) (pos / blockSize);
+            int off = (int) (pos % blockSize);
+            byte[] b = getBlock(idx);
+            int len = Math.min(b.length - off, dst.remaining());
+            dst.put(b, off, len);
+            pos += len;
+            total += len;
+        }
+        return total;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        throw new IOException("Unsupported Operation"); //$NON-NLS-1$
+    }
+
+    @Override
+    public long position() throws IOException {
+        checkIfClosed();
+        return pos;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        checkIfClosed();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position " + newPosition); //$NON-NLS-1$
+        }
+        pos = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        checkIfClosed();
+        return length;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        throw new IOException("Unsupported Operation"); //$NON-NLS-1$
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        block = null;
+    }
+
+    private void checkIfClosed() throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+
+}
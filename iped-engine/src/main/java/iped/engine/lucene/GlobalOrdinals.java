@@ -0,0 +1,262 @@
+package iped.engine.lucene;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.lucene.index.OrdinalMap;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.packed.PackedInts;
+import org.apache.lucene.util.packed.PackedLongValues;
+
+/**
+ * Maps ordinals of a SORTED or SORTED_SET doc values field in each index
+ * segment to ordinals of the whole index, like Lucene {@link OrdinalMap}, but
+ * can be saved to and loaded from a file, so it is built just once for an
+ * unchanged index. Ordinals are merged from the segment terms straight into
+ * packed deltas, encoded like OrdinalMap does, without building an OrdinalMap.
+ */
+public class GlobalOrdinals {
+
+    private static final int VERSION = 1;
+
+    private final long valueCount;
+    // by segment, segment ord -> global ord - segment ord
+    private final PackedLongValues[] globalOrdDeltas;
+    // global ord -> first segment with the value and global ord - its ord in that
+    // segment
+    private final PackedLongValues firstSegments;
+    private final PackedLongValues firstSegmentOrdDeltas;
+
+    private GlobalOrdinals(long valueCount, PackedLongValues[] globalOrdDeltas, PackedLongValues firstSegments,
+            PackedLongValues firstSegmentOrdDeltas) {
+        this.valueCount = valueCount;
+        this.globalOrdDeltas = globalOrdDeltas;
+        this.firstSegments = firstSegments;
+        this.firstSegmentOrdDeltas = firstSegmentOrdDeltas;
+    }
+
+    public static GlobalOrdinals build(SortedDocValues[] values) throws IOException {
+        TermsEnum[] termsEnums = new TermsEnum[values.length];
+        long[] valueCounts = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            termsEnums[i] = values[i].termsEnum();
+            valueCounts[i] = values[i].getValueCount();
+        }
+        return build(termsEnums, valueCounts);
+    }
+
+    public static GlobalOrdinals build(SortedSetDocValues[] values) throws IOException {
+        TermsEnum[] termsEnums = new TermsEnum[values.length];
+        long[] valueCounts = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            termsEnums[i] = values[i].termsEnum();
+            valueCounts[i] = values[i].getValueCount();
+        }
+        return build(termsEnums, valueCounts);
+    }
+
+    private static class Segment {
+
+        private final int index;
+        // position by decreasing value count
+        private final int rank;
+        private final TermsEnum termsEnum;
+        private BytesRef term;
+
+        private Segment(int index, int rank, TermsEnum termsEnum) {
+            this.index = index;
+            this.rank = rank;
+            this.termsEnum = termsEnum;
+        }
+    }
+
+    /**
+     * Merges terms of all segments in order. Like OrdinalMap, the first segment of
+     * a value is the one with more values among segments having it, so lookups
+     * tend to hit few large segments.
+     */
+    private static GlobalOrdinals build(TermsEnum[] termsEnums, long[] valueCounts) throws IOException {
+        PackedLongValues.Builder[] globalOrdDeltas = new PackedLongValues.Builder[termsEnums.length];
+        PackedLongValues.Builder firstSegments = PackedLongValues.packedBuilder(PackedInts.COMPACT);
+        PackedLongValues.Builder firstSegmentOrdDeltas = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+        PriorityQueue<Segment> queue = new PriorityQueue<>(Math.max(1, termsEnums.length), (a, b) -> {
+            int cmp = a.term.compareTo(b.term);
+            return cmp != 0 ? cmp : Integer.compare(a.rank, b.rank);
+        });
+        Integer[] byValueCount = new Integer[termsEnums.length];
+        for (int i = 0; i < byValueCount.length; i++) {
+            byValueCount[i] = i;
+        }
+        Arrays.sort(byValueCount, (a, b) -> Long.compare(valueCounts[b], valueCounts[a]));
+        int[] ranks = new int[termsEnums.length];
+        for (int rank = 0; rank < ranks.length; rank++) {
+            ranks[byValueCount[rank]] = rank;
+        }
+        for (int i = 0; i < termsEnums.length; i++) {
+            globalOrdDeltas[i] = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+            Segment segment = new Segment(i, ranks[i], termsEnums[i]);
+            if ((segment.term = segment.termsEnum.next()) != null) {
+                queue.add(segment);
+            }
+        }
+        List<Segment> sameTerm = new ArrayList<>();
+        long globalOrd = 0;
+        while (!queue.isEmpty()) {
+            Segment first = queue.poll();
+            sameTerm.add(first);
+            while (!queue.isEmpty() && queue.peek().term.equals(first.term)) {
+                sameTerm.add(queue.poll());
+            }
+            firstSegments.add(first.index);
+            firstSegmentOrdDeltas.add(globalOrd - first.termsEnum.ord());
+            for (Segment segment : sameTerm) {
+                globalOrdDeltas[segment.index].add(globalOrd - segment.termsEnum.ord());
+            }
+            for (Segment segment : sameTerm) {
+                if ((segment.term = segment.termsEnum.next()) != null) {
+                    queue.add(segment);
+                }
+            }
+            sameTerm.clear();
+            globalOrd++;
+        }
+        return new GlobalOrdinals(globalOrd, build(globalOrdDeltas), firstSegments.build(),
+                firstSegmentOrdDeltas.build());
+    }
+
+    private static PackedLongValues[] build(PackedLongValues.Builder[] builders) {
+        PackedLongValues[] values = new PackedLongValues[builders.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = builders[i].build();
+        }
+        return values;
+    }
+
+    public long getValueCount() {
+        return valueCount;
+    }
+
+    public int getNumSegments() {
+        return globalOrdDeltas.length;
+    }
+
+    public long getGlobalOrd(int segment, long segmentOrd) {
+        return segmentOrd + globalOrdDeltas[segment].get(segmentOrd);
+    }
+
+    public int getFirstSegment(long globalOrd) {
+        return (int) firstSegments.get(globalOrd);
+    }
+
+    public long getFirstSegmentOrd(long globalOrd) {
+        return globalOrd - firstSegmentOrdDeltas.get(globalOrd);
+    }
+
+    /**
+     * @return heap used by the ordinals
+     */
+    public long ramBytesUsed() {
+        long bytes = firstSegments.ramBytesUsed() + firstSegmentOrdDeltas.ramBytesUsed();
+        for (PackedLongValues deltas : globalOrdDeltas) {
+            bytes += deltas.ramBytesUsed();
+        }
+        return bytes;
+    }
+
+    /**
+     * Saves the ordinals with a key identifying the segments they were built from.
+     * Segment to global ordinals are increasing, so they are saved as deltas.
+     */
+    public void save(File file, String key) throws IOException {
+        file.getParentFile().mkdirs();
+        File tmp = new File(file.getAbsolutePath() + ".tmp"); //$NON-NLS-1$
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            dos.writeInt(VERSION);
+            dos.writeUTF(key);
+            dos.writeLong(valueCount);
+            dos.writeInt(globalOrdDeltas.length);
+            for (int seg = 0; seg < globalOrdDeltas.length; seg++) {
+                int count = (int) globalOrdDeltas[seg].size();
+                dos.writeInt(count);
+                long prev = 0;
+                for (int ord = 0; ord < count; ord++) {
+                    long globalOrd = getGlobalOrd(seg, ord);
+                    writeVLong(dos, globalOrd - prev);
+                    prev = globalOrd;
+                }
+            }
+            for (long ord = 0; ord < valueCount; ord++) {
+                writeVLong(dos, getFirstSegment(ord));
+                writeVLong(dos, getFirstSegmentOrd(ord));
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return the saved ordinals, or null if they were saved with a different key
+     */
+    public static GlobalOrdinals load(File file, String key) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (dis.readInt() != VERSION || !key.equals(dis.readUTF())) {
+                return null;
+            }
+            long valueCount = dis.readLong();
+            PackedLongValues.Builder[] globalOrdDeltas = new PackedLongValues.Builder[dis.readInt()];
+            for (int seg = 0; seg < globalOrdDeltas.length; seg++) {
+                globalOrdDeltas[seg] = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+                int count = dis.readInt();
+                long globalOrd = 0;
+                for (int ord = 0; ord < count; ord++) {
+                    globalOrd += readVLong(dis);
+                    globalOrdDeltas[seg].add(globalOrd - ord);
+                }
+            }
+            PackedLongValues.Builder firstSegments = PackedLongValues.packedBuilder(PackedInts.COMPACT);
+            PackedLongValues.Builder firstSegmentOrdDeltas = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+            for (long ord = 0; ord < valueCount; ord++) {
+                firstSegments.add(readVLong(dis));
+                firstSegmentOrdDeltas.add(ord - readVLong(dis));
+            }
+            return new GlobalOrdinals(valueCount, build(globalOrdDeltas), firstSegments.build(),
+                    firstSegmentOrdDeltas.build());
+        }
+    }
+
+    private static void writeVLong(DataOutputStream dos, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            dos.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        dos.writeByte((int) value);
+    }
+
+    private static long readVLong(DataInputStream dis) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = dis.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new EOFException("Corrupted global ordinals file"); //$NON-NLS-1$
+    }
+
+}
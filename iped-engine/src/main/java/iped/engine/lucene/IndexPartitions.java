@@ -0,0 +1,119 @@
+package iped.engine.lucene;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.store.Directory;
+
+import iped.utils.IOUtil;
+
+/**
+ * Keeps the extra index writers used when workers write documents to several
+ * index partitions, so near real time readers opened from the main writer
+ * see documents of all partitions.
+ */
+public class IndexPartitions {
+
+    private static final String PARTITIONS_DIR = "index-partitions"; //$NON-NLS-1$
+
+    private static final Map<IndexWriter, IndexWriter[]> partitions = new ConcurrentHashMap<>();
+
+    /**
+     * @return folder of an extra partition, numbered from 1, beside the main
+     *         index folder
+     */
+    public static File getPartitionDir(File indexDir, int partition) {
+        return new File(new File(indexDir.getParentFile(), PARTITIONS_DIR), String.valueOf(partition));
+    }
+
+    /**
+     * @return number of partitions, including the main index. Partitions of a
+     *         previous interrupted processing are kept when resuming it, even if
+     *         configuration changed.
+     */
+    public static int getNumPartitions(File indexDir, int configuredPartitions) {
+        int numPartitions = Math.max(1, configuredPartitions);
+        while (getPartitionDir(indexDir, numPartitions).exists()) {
+            numPartitions++;
+        }
+        return numPartitions;
+    }
+
+    /**
+     * Opens the writer of an extra partition. A new partition gets a first empty
+     * commit, like the main index, to be used when restarting.
+     */
+    public static IndexWriter openWriter(Directory directory, IndexWriterConfig config, boolean restart)
+            throws IOException {
+        boolean newIndex = !DirectoryReader.indexExists(directory);
+        if (restart && !newIndex) {
+            config.setIndexCommit(DirectoryReader.listCommits(directory).get(0));
+        }
+        IndexWriter writer = new IndexWriter(directory, config);
+        if (newIndex) {
+            writer.commit();
+        }
+        return writer;
+    }
+
+    /**
+     * Closes the partition writers, adds their segments to the main index,
+     * commits it and deletes the partition folders.
+     */
+    public static void merge(IndexWriter mainWriter, IndexWriter[] otherWriters, File indexDir) throws IOException {
+        unregister(mainWriter);
+        Directory[] directories = new Directory[otherWriters.length];
+        for (int i = 0; i < otherWriters.length; i++) {
+            directories[i] = otherWriters[i].getDirectory();
+            otherWriters[i].close();
+        }
+        mainWriter.addIndexes(directories);
+        mainWriter.commit();
+        for (Directory directory : directories) {
+            directory.close();
+        }
+        IOUtil.deleteDirectory(new File(indexDir.getParentFile(), PARTITIONS_DIR));
+    }
+
+    public static void register(IndexWriter mainWriter, IndexWriter[] otherWriters) {
+        partitions.put(mainWriter, otherWriters);
+    }
+
+    public static void unregister(IndexWriter mainWriter) {
+        partitions.remove(mainWriter);
+    }
+
+    /**
+     * Opens a near real time reader of the writer and of its partitions, if any.
+     * Documents of partitions come after the ones of the main writer.
+     */
+    public static IndexReader openReader(IndexWriter writer, boolean applyAllDeletes, boolean writeAllDeletes)
+            throws IOException {
+        DirectoryReader mainReader = DirectoryReader.open(writer, applyAllDeletes, writeAllDeletes);
+        IndexWriter[] otherWriters = partitions.get(writer);
+        if (otherWriters == null) {
+            return mainReader;
+        }
+        IndexReader[] readers = new IndexReader[otherWriters.length + 1];
+        readers[0] = mainReader;
+        try {
+            for (int i = 0; i < otherWriters.length; i++) {
+                readers[i + 1] = DirectoryReader.open(otherWriters[i], applyAllDeletes, writeAllDeletes);
+            }
+        } catch (IOException | RuntimeException e) {
+            for (IndexReader reader : readers) {
+                IOUtil.closeQuietly(reader);
+            }
+            throw e;
+        }
+        return new MultiReader(readers, true);
+    }
+
+}
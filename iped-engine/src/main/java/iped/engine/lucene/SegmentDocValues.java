@@ -0,0 +1,486 @@
+package iped.engine.lucene;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Gives per segment access to doc values of an index, so callers can iterate
+ * segments in parallel instead of going through the slow doc by doc lookups of
+ * {@link SlowCompositeReaderWrapper}, and index wide views of SORTED and
+ * SORTED_SET fields backed by {@link GlobalOrdinals}. Global ordinals are built
+ * lazily per field and, if a cache dir is given, saved there so next openings
+ * of an unchanged index just load them.
+ */
+public class SegmentDocValues {
+
+    private static Logger logger = LoggerFactory.getLogger(SegmentDocValues.class);
+
+    public interface LeafConsumer {
+        void accept(LeafReaderContext context) throws IOException;
+    }
+
+    private final IndexReader reader;
+    private final List<LeafReaderContext> leaves;
+    private final int[] starts;
+    private final File cacheDir;
+    private final String segmentsKey;
+    private final Map<String, GlobalOrdinals> globalOrdsCache = new ConcurrentHashMap<>();
+
+    /**
+     * @param cacheDir
+     *            where global ordinals are saved, or null to keep them just in
+     *            memory
+     */
+    public SegmentDocValues(IndexReader reader, File cacheDir) {
+        this.reader = reader;
+        this.leaves = reader.leaves();
+        this.starts = new int[leaves.size() + 1];
+        for (int i = 0; i < leaves.size(); i++) {
+            starts[i] = leaves.get(i).docBase;
+        }
+        starts[leaves.size()] = reader.maxDoc();
+        this.segmentsKey = getSegmentsKey(leaves);
+        this.cacheDir = segmentsKey != null ? cacheDir : null;
+    }
+
+    /**
+     * Identifies the segments, including their doc values updates, or returns null
+     * if some leaf is not a segment of an index in disk.
+     */
+    private static String getSegmentsKey(List<LeafReaderContext> leaves) {
+        StringBuilder sb = new StringBuilder();
+        for (LeafReaderContext context : leaves) {
+            LeafReader leaf = FilterLeafReader.unwrap(context.reader());
+            if (!(leaf instanceof SegmentReader)) {
+                return null;
+            }
+            SegmentReader segReader = (SegmentReader) leaf;
+            sb.append(segReader.getSegmentName()).append('_');
+            sb.append(StringHelper.idToString(segReader.getSegmentInfo().info.getId())).append('_');
+            sb.append(segReader.getSegmentInfo().getDocValuesGen()).append(';');
+        }
+        return DigestUtils.md5Hex(sb.toString());
+    }
+
+    public IndexReader getReader() {
+        return reader;
+    }
+
+    public List<LeafReaderContext> getLeaves() {
+        return leaves;
+    }
+
+    /**
+     * Runs the consumer on each segment in parallel.
+     */
+    public void forEachLeaf(LeafConsumer consumer) throws IOException {
+        try {
+            leaves.parallelStream().forEach(context -> {
+                try {
+                    consumer.accept(context);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private DocValuesType getDocValuesType(String field) {
+        for (LeafReaderContext context : leaves) {
+            FieldInfo fieldInfo = context.reader().getFieldInfos().fieldInfo(field);
+            if (fieldInfo != null) {
+                return fieldInfo.getDocValuesType();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return global ordinals of a SORTED or SORTED_SET field, or null if the
+     *         field has other doc values type or it is not indexed
+     */
+    public GlobalOrdinals getGlobalOrdinals(String field) throws IOException {
+        GlobalOrdinals globalOrds = globalOrdsCache.get(field);
+        if (globalOrds != null) {
+            return globalOrds;
+        }
+        DocValuesType type = getDocValuesType(field);
+        if (type != DocValuesType.SORTED && type != DocValuesType.SORTED_SET) {
+            return null;
+        }
+        synchronized (this) {
+            globalOrds = globalOrdsCache.get(field);
+            if (globalOrds == null) {
+                globalOrds = loadGlobalOrdinals(field);
+                if (globalOrds == null) {
+                    globalOrds = buildGlobalOrdinals(field, type);
+                    saveGlobalOrdinals(field, globalOrds);
+                }
+                globalOrdsCache.put(field, globalOrds);
+            }
+            return globalOrds;
+        }
+    }
+
+    private GlobalOrdinals buildGlobalOrdinals(String field, DocValuesType type) throws IOException {
+        long t = System.currentTimeMillis();
+        GlobalOrdinals globalOrds;
+        if (type == DocValuesType.SORTED) {
+            SortedDocValues[] values = new SortedDocValues[leaves.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = DocValues.getSorted(leaves.get(i).reader(), field);
+            }
+            globalOrds = GlobalOrdinals.build(values);
+        } else {
+            SortedSetDocValues[] values = new SortedSetDocValues[leaves.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = DocValues.getSortedSet(leaves.get(i).reader(), field);
+            }
+            globalOrds = GlobalOrdinals.build(values);
+        }
+        logger.debug("Global ordinals of {} built in {}ms", field, System.currentTimeMillis() - t); //$NON-NLS-1$
+        return globalOrds;
+    }
+
+    private File getCacheFile(String field) {
+        return new File(cacheDir, DigestUtils.md5Hex(field.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private GlobalOrdinals loadGlobalOrdinals(String field) {
+        if (cacheDir == null) {
+            return null;
+        }
+        File file = getCacheFile(field);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            GlobalOrdinals globalOrds = GlobalOrdinals.load(file, segmentsKey);
+            if (globalOrds != null && globalOrds.getNumSegments() == leaves.size()) {
+                return globalOrds;
+            }
+        } catch (IOException e) {
+            logger.warn("Error loading global ordinals of {}: {}", field, e.toString()); //$NON-NLS-1$
+        }
+        return null;
+    }
+
+    private void saveGlobalOrdinals(String field, GlobalOrdinals globalOrds) {
+        if (cacheDir == null) {
+            return;
+        }
+        try {
+            globalOrds.save(getCacheFile(field), segmentsKey);
+        } catch (IOException e) {
+            // maybe a read only case, just rebuild next time
+            logger.debug("Error saving global ordinals of {}: {}", field, e.toString()); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * @return an index wide view of a SORTED field, with global ordinals, or null
+     *         if the field is not SORTED
+     */
+    public SortedDocValues getSortedDocValues(String field) throws IOException {
+        if (leaves.size() == 1) {
+            return leaves.get(0).reader().getSortedDocValues(field);
+        }
+        if (getDocValuesType(field) != DocValuesType.SORTED) {
+            return null;
+        }
+        GlobalOrdinals globalOrds = getGlobalOrdinals(field);
+        SortedDocValues[] values = new SortedDocValues[leaves.size()];
+        long cost = 0;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = DocValues.getSorted(leaves.get(i).reader(), field);
+            cost += values[i].cost();
+        }
+        return new GlobalSortedDocValues(values, starts, globalOrds, cost);
+    }
+
+    /**
+     * @return an index wide view of a SORTED_SET field, with global ordinals, or
+     *         null if the field is not SORTED_SET
+     */
+    public SortedSetDocValues getSortedSetDocValues(String field) throws IOException {
+        if (leaves.size() == 1) {
+            return leaves.get(0).reader().getSortedSetDocValues(field);
+        }
+        if (getDocValuesType(field) != DocValuesType.SORTED_SET) {
+            return null;
+        }
+        GlobalOrdinals globalOrds = getGlobalOrdinals(field);
+        SortedSetDocValues[] values = new SortedSetDocValues[leaves.size()];
+        long cost = 0;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = DocValues.getSortedSet(leaves.get(i).reader(), field);
+            cost += values[i].cost();
+        }
+        return new GlobalSortedSetDocValues(values, starts, globalOrds, cost);
+    }
+
+    private static class GlobalSortedDocValues extends SortedDocValues {
+
+        private final SortedDocValues[] values;
+        private final int[] starts;
+        private final GlobalOrdinals globalOrds;
+        private final long cost;
+        private int nextLeaf;
+        private SortedDocValues currentValues;
+        private int currentLeaf = -1;
+        private int currentDocStart;
+        private int docID = -1;
+
+        private GlobalSortedDocValues(SortedDocValues[] values, int[] starts, GlobalOrdinals globalOrds, long cost) {
+            this.values = values;
+            this.starts = starts;
+            this.globalOrds = globalOrds;
+            this.cost = cost;
+        }
+
+        @Override
+        public int docID() {
+            return docID;
+        }
+
+        @Override
+        public int nextDoc() throws IOException {
+            while (true) {
+                while (currentValues == null) {
+                    if (nextLeaf == values.length) {
+                        docID = NO_MORE_DOCS;
+                        return docID;
+                    }
+                    setLeaf(nextLeaf++);
+                }
+                int newDocID = currentValues.nextDoc();
+                if (newDocID == NO_MORE_DOCS) {
+                    currentValues = null;
+                } else {
+                    docID = currentDocStart + newDocID;
+                    return docID;
+                }
+            }
+        }
+
+        @Override
+        public int advance(int targetDocID) throws IOException {
+            if (targetDocID <= docID) {
+                throw new IllegalArgumentException("can only advance beyond current document: on docID=" + docID
+                        + " but targetDocID=" + targetDocID);
+            }
+            int readerIndex = ReaderUtil.subIndex(targetDocID, starts);
+            if (readerIndex >= nextLeaf) {
+                if (readerIndex == values.length) {
+                    currentValues = null;
+                    docID = NO_MORE_DOCS;
+                    return docID;
+                }
+                setLeaf(readerIndex);
+                nextLeaf = readerIndex + 1;
+            }
+            int newDocID = currentValues.advance(targetDocID - currentDocStart);
+            if (newDocID == NO_MORE_DOCS) {
+                currentValues = null;
+                return nextDoc();
+            }
+            docID = currentDocStart + newDocID;
+            return docID;
+        }
+
+        @Override
+        public boolean advanceExact(int targetDocID) throws IOException {
+            if (targetDocID < docID) {
+                throw new IllegalArgumentException("can only advance beyond current document: on docID=" + docID
+                        + " but targetDocID=" + targetDocID);
+            }
+            int readerIndex = ReaderUtil.subIndex(targetDocID, starts);
+            if (readerIndex >= nextLeaf) {
+                if (readerIndex == values.length) {
+                    throw new IllegalArgumentException("Out of range: " + targetDocID);
+                }
+                setLeaf(readerIndex);
+                nextLeaf = readerIndex + 1;
+            }
+            docID = targetDocID;
+            return currentValues.advanceExact(targetDocID - currentDocStart);
+        }
+
+        private void setLeaf(int leaf) {
+            currentLeaf = leaf;
+            currentValues = values[leaf];
+            currentDocStart = starts[leaf];
+        }
+
+        @Override
+        public int ordValue() throws IOException {
+            return (int) globalOrds.getGlobalOrd(currentLeaf, currentValues.ordValue());
+        }
+
+        @Override
+        public BytesRef lookupOrd(int ord) throws IOException {
+            int segment = globalOrds.getFirstSegment(ord);
+            return values[segment].lookupOrd((int) globalOrds.getFirstSegmentOrd(ord));
+        }
+
+        @Override
+        public int getValueCount() {
+            return (int) globalOrds.getValueCount();
+        }
+
+        @Override
+        public long cost() {
+            return cost;
+        }
+    }
+
+    private static class GlobalSortedSetDocValues extends SortedSetDocValues {
+
+        private final SortedSetDocValues[] values;
+        private final int[] starts;
+        private final GlobalOrdinals globalOrds;
+        private final long cost;
+        private int nextLeaf;
+        private SortedSetDocValues currentValues;
+        private int currentLeaf = -1;
+        private int currentDocStart;
+        private int docID = -1;
+
+        private GlobalSortedSetDocValues(SortedSetDocValues[] values, int[] starts, GlobalOrdinals globalOrds,
+                long cost) {
+            this.values = values;
+            this.starts = starts;
+            this.globalOrds = globalOrds;
+            this.cost = cost;
+        }
+
+        @Override
+        public int docID() {
+            return docID;
+        }
+
+        @Override
+        public int nextDoc() throws IOException {
+            while (true) {
+                while (currentValues == null) {
+                    if (nextLeaf == values.length) {
+                        docID = NO_MORE_DOCS;
+                        return docID;
+                    }
+                    setLeaf(nextLeaf++);
+                }
+                int newDocID = currentValues.nextDoc();
+                if (newDocID == NO_MORE_DOCS) {
+                    currentValues = null;
+                } else {
+                    docID = currentDocStart + newDocID;
+                    return docID;
+                }
+            }
+        }
+
+        @Override
+        public int advance(int targetDocID) throws IOException {
+            if (targetDocID <= docID) {
+                throw new IllegalArgumentException("can only advance beyond current document: on docID=" + docID
+                        + " but targetDocID=" + targetDocID);
+            }
+            int readerIndex = ReaderUtil.subIndex(targetDocID, starts);
+            if (readerIndex >= nextLeaf) {
+                if (readerIndex == values.length) {
+                    currentValues = null;
+                    docID = NO_MORE_DOCS;
+                    return docID;
+                }
+                setLeaf(readerIndex);
+                nextLeaf = readerIndex + 1;
+            }
+            int newDocID = currentValues.advance(targetDocID - currentDocStart);
+            if (newDocID == NO_MORE_DOCS) {
+                currentValues = null;
+                return nextDoc();
+            }
+            docID = currentDocStart + newDocID;
+            return docID;
+        }
+
+        @Override
+        public boolean advanceExact(int targetDocID) throws IOException {
+            if (targetDocID < docID) {
+                throw new IllegalArgumentException("can only advance beyond current document: on docID=" + docID
+                        + " but targetDocID=" + targetDocID);
+            }
+            int readerIndex = ReaderUtil.subIndex(targetDocID, starts);
+            if (readerIndex >= nextLeaf) {
+                if (readerIndex == values.length) {
+                    throw new IllegalArgumentException("Out of range: " + targetDocID);
+                }
+                setLeaf(readerIndex);
+                nextLeaf = readerIndex + 1;
+            }
+            docID = targetDocID;
+            return currentValues.advanceExact(targetDocID - currentDocStart);
+        }
+
+        private void setLeaf(int leaf) {
+            currentLeaf = leaf;
+            currentValues = values[leaf];
+            currentDocStart = starts[leaf];
+        }
+
+        @Override
+        public long nextOrd() throws IOException {
+            long segmentOrd = currentValues.nextOrd();
+            if (segmentOrd == NO_MORE_ORDS) {
+                return segmentOrd;
+            }
+            return globalOrds.getGlobalOrd(currentLeaf, segmentOrd);
+        }
+
+        @Override
+        public long docValueCount() {
+            return currentValues.docValueCount();
+        }
+
+        @Override
+        public BytesRef lookupOrd(long ord) throws IOException {
+            int segment = globalOrds.getFirstSegment(ord);
+            return values[segment].lookupOrd(globalOrds.getFirstSegmentOrd(ord));
+        }
+
+        @Override
+        public long getValueCount() {
+            return globalOrds.getValueCount();
+        }
+
+        @Override
+        public long cost() {
+            return cost;
+        }
+    }
+
+}
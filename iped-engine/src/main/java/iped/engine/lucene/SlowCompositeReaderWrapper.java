@@ -88,6 +88,9 @@ public final class SlowCompositeReaderWrapper extends LeafReader {
   // but do we really need to optimize slow-wrapper any more?
   final Map<String,OrdinalMap> cachedOrdMaps = new HashMap<>();
 
+  // if set, sorted and sorted set doc values use its global ordinals
+  private final SegmentDocValues segmentDocValues;
+
   /** This method is sugar for getting an {@link LeafReader} from
    * an {@link IndexReader} of any kind. If the reader is already atomic,
    * it is returned unchanged, otherwise wrapped by this class.
@@ -101,8 +104,26 @@ public static LeafReader wrap(IndexReader reader) throws IOException {
     }
   }
 
+  /** Like {@link #wrap(IndexReader)}, but getting sorted and sorted set doc values
+   * from the given {@link SegmentDocValues}, whose global ordinals may be loaded
+   * from disk instead of rebuilt.
+   */
+  public static LeafReader wrap(IndexReader reader, SegmentDocValues segmentDocValues) throws IOException {
+    if (reader instanceof CompositeReader) {
+      return new SlowCompositeReaderWrapper((CompositeReader) reader, segmentDocValues);
+    } else {
+      assert reader instanceof LeafReader;
+      return (LeafReader) reader;
+    }
+  }
+
   SlowCompositeReaderWrapper(CompositeReader reader) throws IOException {
+    this(reader, null);
+  }
+
+  SlowCompositeReaderWrapper(CompositeReader reader, SegmentDocValues segmentDocValues) throws IOException {
     in = reader;
+    this.segmentDocValues = segmentDocValues;
     in.registerParentReader(this);
     if (reader.leaves().isEmpty()) {
       metaData = new LeafMetaData(Version.LATEST.major, Version.LATEST, null);
@@ -191,6 +212,9 @@ public SortedNumericDocValues getSortedNumericDocValues(String field) throws IOE
   @Override
   public SortedDocValues getSortedDocValues(String field) throws IOException {
     ensureOpen();
+    if (segmentDocValues != null) {
+      return segmentDocValues.getSortedDocValues(field);
+    }
     OrdinalMap map = null;
     synchronized (cachedOrdMaps) {
       map = cachedOrdMaps.get(field);
@@ -233,6 +257,9 @@ public SortedDocValues getSortedDocValues(String field) throws IOException {
   @Override
   public SortedSetDocValues getSortedSetDocValues(String field) throws IOException {
     ensureOpen();
+    if (segmentDocValues != null) {
+      return segmentDocValues.getSortedSetDocValues(field);
+    }
     OrdinalMap map = null;
     synchronized (cachedOrdMaps) {
       map = cachedOrdMaps.get(field);
@@ -11,8 +11,10 @@
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.util.BytesRef;
+import org.roaringbitmap.RoaringBitmap;
 
 import iped.data.IItem;
 import iped.data.IItemId;
@@ -84,6 +86,7 @@ public void score() throws IOException {
         int numThreads = Runtime.getRuntime().availableProcessors();
         Thread[] threads = new Thread[numThreads];
         int evalCut = (int) (100 * refSimilarityFeatures.length / distToScoreMult);
+        RoaringBitmap candidates = findCandidates(evalCut);
         int itemsPerThread = (len + numThreads - 1) / numThreads;
         for (int k = 0; k < numThreads; k++) {
             int threadIdx = k;
@@ -102,6 +105,10 @@ public void run() {
                     for (int i = i0; i < i1; i++) {
                         IItemId itemId = result.getItem(i);
                         int luceneId = ipedCase.getLuceneId(itemId);
+                        if (candidates != null && !candidates.contains(luceneId)) {
+                            result.setScore(i, 0);
+                            continue;
+                        }
                         BytesRef bytesRef = DocValuesUtil.getBytesRef(similarityFeaturesValues, luceneId);
                         if (bytesRef == null || bytesRef.length == 0) {
                             result.setScore(i, 0);
@@ -143,6 +150,32 @@ public void run() {
         organizeTopResults();
     }
 
+    /**
+     * Searches the HNSW graph of image feature vectors for images possibly within
+     * the distance cut. Vectors hold part of the features, so their distance is
+     * not greater than the full one and no image within the cut is missed,
+     * candidates are scored later with all features.
+     * 
+     * @return luceneIds of candidate images, or null if the case was indexed
+     *         without image feature vectors
+     */
+    private RoaringBitmap findCandidates(int evalCut) throws IOException {
+        IndexReader reader = ipedCase.getReader();
+        if (!KnnVectorSearch.hasVectors(reader, ImageSimilarityTask.IMAGE_FEATURES_VECTOR)) {
+            return null;
+        }
+        RoaringBitmap luceneIds = new RoaringBitmap();
+        for (int i = 0; i < len; i++) {
+            luceneIds.add(ipedCase.getLuceneId(result.getItem(i)));
+        }
+        Map<Integer, Float> hits = new HashMap<>();
+        KnnVectorSearch.searchWithin(reader, ImageSimilarityTask.IMAGE_FEATURES_VECTOR,
+                ImageSimilarityTask.getFeaturesVector(refSimilarityFeatures), evalCut, luceneIds, hits);
+        RoaringBitmap candidates = new RoaringBitmap();
+        hits.keySet().forEach(candidates::add);
+        return candidates;
+    }
+
     private void organizeTopResults() {
         for (int i = 0; i < len; i++) {
             if (result.getScore(i) > cut) {
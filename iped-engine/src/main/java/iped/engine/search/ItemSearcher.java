@@ -3,8 +3,15 @@
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.IntFunction;
 
 import org.apache.lucene.index.IndexWriter;
 
@@ -15,6 +22,8 @@
 
 public class ItemSearcher implements IItemSearcher {
 
+    private static final int MAX_VALUES_PER_QUERY = 512;
+
     File caseFolder;
     IndexWriter iw;
     IPEDSource iSource;
@@ -66,6 +75,82 @@ public IItemReader next() {
         };
     }
 
+    /**
+     * Values are resolved by the {@link LiveItemRegistry} while processing,
+     * otherwise by queries with many values.
+     */
+    @Override
+    public Map<String, List<IItemReader>> searchByValues(String field, Collection<String> values) {
+        LiveItemRegistry registry = LiveItemRegistry.getInstance();
+        if (iw != null && registry.isComplete() && registry.isSupported(field)) {
+            return searchInRegistry(registry, field, values, this::getVisibleItem);
+        }
+        Map<String, List<IItemReader>> result = new HashMap<>();
+        Map<String, Set<String>> valuesToSearch = new HashMap<>();
+        for (String value : values) {
+            valuesToSearch.computeIfAbsent(LiveItemRegistry.normalize(field, value), v -> new HashSet<>()).add(value);
+            if (valuesToSearch.size() == MAX_VALUES_PER_QUERY) {
+                searchValues(field, valuesToSearch, result);
+                valuesToSearch.clear();
+            }
+        }
+        if (!valuesToSearch.isEmpty()) {
+            searchValues(field, valuesToSearch, result);
+        }
+        return result;
+    }
+
+    private IItemReader getVisibleItem(int id) {
+        // items indexed after this searcher was opened are not visible
+        if (id > iSource.getLastId() || iSource.getLuceneId(id) == -1) {
+            return null;
+        }
+        return iSource.getItemByID(id);
+    }
+
+    /**
+     * @param visibleItems
+     *            returns the item of an id, or null if it is not visible
+     */
+    static Map<String, List<IItemReader>> searchInRegistry(LiveItemRegistry registry, String field,
+            Collection<String> values, IntFunction<IItemReader> visibleItems) {
+        Map<String, List<IItemReader>> result = new HashMap<>();
+        for (String value : new HashSet<>(values)) {
+            String normalized = LiveItemRegistry.normalize(field, value);
+            Set<Integer> ids = new TreeSet<>();
+            registry.lookup(field, value, ids::add);
+            for (int id : ids) {
+                IItemReader item = visibleItems.apply(id);
+                if (item != null && normalized.equals(LiveItemRegistry.getValue(item, field))) {
+                    result.computeIfAbsent(value, v -> new ArrayList<>()).add(item);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param values
+     *            normalized values mapped to searched ones
+     */
+    private void searchValues(String field, Map<String, Set<String>> values, Map<String, List<IItemReader>> result) {
+        StringBuilder query = new StringBuilder();
+        query.append(escapeQuery(field)).append(":("); //$NON-NLS-1$
+        for (String value : values.keySet()) {
+            query.append('"').append(escapeQuery(value)).append("\" "); //$NON-NLS-1$
+        }
+        query.append(')');
+        for (IItemReader item : searchIterable(query.toString())) {
+            String itemValue = LiveItemRegistry.getValue(item, field);
+            Set<String> searchedValues = itemValue != null ? values.get(itemValue) : null;
+            if (searchedValues != null) {
+                for (String value : searchedValues) {
+                    result.computeIfAbsent(value, v -> new ArrayList<>()).add(item);
+                }
+            }
+        }
+    }
+
     private SearchResult getResult(String luceneQuery) {
         try {
             IPEDSearcher searcher = new IPEDSearcher(iSource, luceneQuery);
@@ -0,0 +1,185 @@
+package iped.engine.search;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.VectorValues;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.roaringbitmap.RoaringBitmap;
+
+/**
+ * Finds docs with vectors of a KNN vector field within a max squared euclidean
+ * distance of a target vector, using the HNSW graph of each segment. The
+ * approximate search is repeated doubling k while the farthest hit is still
+ * within the distance, so the number of hits is not limited. Distances of hits
+ * are computed again from the indexed vectors. Segments where few docs are
+ * accepted, or where the graph search visits more docs than accepted ones, are
+ * searched exhaustively.
+ */
+public class KnnVectorSearch {
+
+    private static final int INITIAL_K = 100;
+
+    /**
+     * @return true if some segment has vectors indexed in the field
+     */
+    public static boolean hasVectors(IndexReader reader, String field) {
+        for (LeafReaderContext context : reader.leaves()) {
+            FieldInfo info = context.reader().getFieldInfos().fieldInfo(field);
+            if (info != null && info.getVectorDimension() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return vector fields whose names start with the prefix, used when a doc
+     *         has many vectors, indexed in fields with a numeric suffix
+     */
+    public static Set<String> getVectorFields(IndexReader reader, String prefix) {
+        Set<String> fields = new TreeSet<>();
+        for (LeafReaderContext context : reader.leaves()) {
+            for (FieldInfo info : context.reader().getFieldInfos()) {
+                if (info.getVectorDimension() > 0 && info.name.startsWith(prefix)) {
+                    fields.add(info.name);
+                }
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * @param acceptDocs
+     *            luceneIds to search in
+     * @param maxSquaredDist
+     *            max squared distance of the returned docs
+     * @param hits
+     *            map to put found luceneIds and their squared distance, if a doc
+     *            is already in it, the smaller distance is kept
+     */
+    public static void searchWithin(IndexReader reader, String field, float[] target, float maxSquaredDist,
+            RoaringBitmap acceptDocs, Map<Integer, Float> hits) throws IOException {
+        Map<Integer, Float> leafHits = new ConcurrentHashMap<>();
+        try {
+            reader.leaves().parallelStream().forEach(context -> {
+                try {
+                    searchLeaf(context, field, target, maxSquaredDist, acceptDocs, leafHits);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        leafHits.forEach((doc, dist) -> hits.merge(doc, dist, Math::min));
+    }
+
+    private static void searchLeaf(LeafReaderContext context, String field, float[] target, float maxSquaredDist,
+            RoaringBitmap acceptDocs, Map<Integer, Float> hits) throws IOException {
+        LeafReader leafReader = context.reader();
+        FieldInfo info = leafReader.getFieldInfos().fieldInfo(field);
+        if (info == null || info.getVectorDimension() != target.length) {
+            return;
+        }
+        int maxDoc = leafReader.maxDoc();
+        FixedBitSet bits = new FixedBitSet(maxDoc);
+        Bits liveDocs = leafReader.getLiveDocs();
+        acceptDocs.forEachInRange(context.docBase, maxDoc, doc -> {
+            int leafDoc = doc - context.docBase;
+            if (liveDocs == null || liveDocs.get(leafDoc)) {
+                bits.set(leafDoc);
+            }
+        });
+        int cost = bits.cardinality();
+        if (cost == 0) {
+            return;
+        }
+
+        int k = INITIAL_K;
+        while (k < cost) {
+            TopDocs topDocs = leafReader.searchNearestVectors(field, target, k, bits, cost);
+            if (topDocs.totalHits.relation != TotalHits.Relation.EQUAL_TO) {
+                // visited limit reached, graph search is not cheaper than exact one
+                break;
+            }
+            ScoreDoc[] scoreDocs = topDocs.scoreDocs;
+            if (scoreDocs.length < k || squaredDistance(scoreDocs[scoreDocs.length - 1].score) > maxSquaredDist) {
+                int[] docs = new int[scoreDocs.length];
+                for (int i = 0; i < docs.length; i++) {
+                    docs[i] = scoreDocs[i].doc;
+                }
+                Arrays.sort(docs);
+                FixedBitSet candidates = new FixedBitSet(maxDoc);
+                for (int doc : docs) {
+                    candidates.set(doc);
+                }
+                collectExact(context, field, target, maxSquaredDist, candidates, hits);
+                return;
+            }
+            k *= 2;
+        }
+        collectExact(context, field, target, maxSquaredDist, bits, hits);
+    }
+
+    /**
+     * Converts the score of {@link org.apache.lucene.index.VectorSimilarityFunction#EUCLIDEAN}
+     * back to the squared distance, just used to decide if k must be increased.
+     */
+    private static float squaredDistance(float score) {
+        return 1 / score - 1;
+    }
+
+    private static void collectExact(LeafReaderContext context, String field, float[] target, float maxSquaredDist,
+            FixedBitSet docs, Map<Integer, Float> hits) throws IOException {
+        VectorValues values = context.reader().getVectorValues(field);
+        if (values == null) {
+            return;
+        }
+        int doc = docs.nextSetBit(0);
+        while (doc != DocIdSetIterator.NO_MORE_DOCS) {
+            // advance() must not be called with the current doc as target
+            int vectorDoc = values.docID() < doc ? values.advance(doc) : values.docID();
+            if (vectorDoc == DocIdSetIterator.NO_MORE_DOCS) {
+                break;
+            }
+            if (vectorDoc == doc) {
+                float dist = squaredDistance(target, values.vectorValue(), maxSquaredDist);
+                if (dist <= maxSquaredDist) {
+                    hits.put(context.docBase + doc, dist);
+                }
+                doc = doc + 1 < docs.length() ? docs.nextSetBit(doc + 1) : DocIdSetIterator.NO_MORE_DOCS;
+            } else {
+                // doc has no vector, vectorDoc may be accepted too
+                doc = docs.nextSetBit(vectorDoc);
+            }
+        }
+    }
+
+    /**
+     * @return squared euclidean distance, computation stops when it exceeds cut
+     */
+    public static float squaredDistance(float[] a, float[] b, float cut) {
+        float dist = 0;
+        for (int i = 0; i < a.length && dist <= cut; i++) {
+            float d = a[i] - b[i];
+            dist += d * d;
+        }
+        return dist;
+    }
+
+}
@@ -0,0 +1,299 @@
+package iped.engine.search;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.util.StringHelper;
+
+import iped.data.IItemReader;
+import iped.engine.config.ConfigurationManager;
+import iped.engine.config.HashTaskConfig;
+import iped.properties.BasicProps;
+
+/**
+ * Maps hashes, paths and names of items indexed while processing to their ids,
+ * so parsers can resolve many values referenced by databases without running
+ * a Lucene query for each one. Values are kept as 64 bits hashes in primitive
+ * arrays, so ids found must be checked against the item values, see
+ * {@link #getValue(IItemReader, String)}. Hash values of all algorithms share
+ * the same keys, so the {@link BasicProps#HASH} value, which repeats one of
+ * them, takes no extra entry. If the arrays would use more memory than the
+ * configured limit, the registry is dropped and lookups search the index.
+ */
+public class LiveItemRegistry {
+
+    private static Logger LOGGER = LogManager.getLogger(LiveItemRegistry.class);
+
+    private static final String HASH_KEY_PREFIX = "hash"; //$NON-NLS-1$
+
+    private static final int SEED_1 = 0;
+    private static final int SEED_2 = 0x9747b28c;
+
+    private static final LiveItemRegistry instance = new LiveItemRegistry();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile LongIntMultiMap map = null;
+
+    private long maxBytes = 0;
+
+    private volatile boolean complete = false;
+
+    private volatile List<String> hashFields = null;
+
+    private LiveItemRegistry() {
+    }
+
+    /**
+     * Creates a registry of the given hash fields, instead of the configured
+     * ones, for tests.
+     */
+    LiveItemRegistry(List<String> hashFields, long maxBytes) {
+        this.hashFields = hashFields;
+        clear(true, maxBytes);
+    }
+
+    public static LiveItemRegistry getInstance() {
+        return instance;
+    }
+
+    /**
+     * Clears the registry before processing.
+     *
+     * @param complete
+     *            true if all items of the case will be registered, false if the
+     *            case already has indexed items, then lookups must also search the
+     *            index
+     * @param maxBytes
+     *            memory limit of the registry, 0 disables it
+     */
+    public void clear(boolean complete, long maxBytes) {
+        lock.writeLock().lock();
+        try {
+            this.maxBytes = maxBytes;
+            this.map = complete && maxBytes > 0 ? new LongIntMultiMap() : null;
+            this.complete = map != null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    private List<String> getHashFields() {
+        if (hashFields == null) {
+            List<String> fields = new ArrayList<>();
+            fields.add(BasicProps.HASH);
+            HashTaskConfig hashConfig = ConfigurationManager.get().findObject(HashTaskConfig.class);
+            if (hashConfig != null) {
+                fields.addAll(hashConfig.getAlgorithms());
+            }
+            hashFields = fields;
+        }
+        return hashFields;
+    }
+
+    public boolean isSupported(String field) {
+        return BasicProps.PATH.equals(field) || BasicProps.NAME.equals(field) || getHashFields().contains(field);
+    }
+
+    private boolean isHashField(String field) {
+        return BasicProps.HASH.equals(field) || getHashFields().contains(field);
+    }
+
+    /**
+     * @return the value of the item field compared to searched values, hashes
+     *         and names are lower cased
+     */
+    public static String getValue(IItemReader item, String field) {
+        String value;
+        if (BasicProps.PATH.equals(field)) {
+            return item.getPath();
+        } else if (BasicProps.NAME.equals(field)) {
+            value = item.getName();
+        } else if (BasicProps.HASH.equals(field)) {
+            value = item.getHash();
+        } else {
+            Object attr = item.getExtraAttribute(field);
+            value = attr != null ? attr.toString() : null;
+        }
+        return value != null ? normalize(field, value) : null;
+    }
+
+    public static String normalize(String field, String value) {
+        return BasicProps.PATH.equals(field) ? value : value.toLowerCase();
+    }
+
+    private long getKey(String field, String value) {
+        String prefix = isHashField(field) ? HASH_KEY_PREFIX : field;
+        byte[] bytes = (prefix + '\0' + normalize(field, value)).getBytes(StandardCharsets.UTF_8);
+        return ((long) StringHelper.murmurhash3_x86_32(bytes, 0, bytes.length, SEED_1) << 32)
+                | (StringHelper.murmurhash3_x86_32(bytes, 0, bytes.length, SEED_2) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Registers the item values, called after it was added to the index.
+     */
+    public void register(IItemReader item) {
+        if (map == null) {
+            return;
+        }
+        List<String> fields = getHashFields();
+        long[] keys = new long[fields.size() + 2];
+        int numKeys = 0;
+        for (String field : fields) {
+            String value = getValue(item, field);
+            if (value != null && !value.isEmpty()) {
+                long key = getKey(field, value);
+                // the same value of other hash fields, like HASH, is not repeated
+                if (!contains(keys, numKeys, key)) {
+                    keys[numKeys++] = key;
+                }
+            }
+        }
+        if (item.getPath() != null) {
+            keys[numKeys++] = getKey(BasicProps.PATH, item.getPath());
+        }
+        if (item.getName() != null) {
+            keys[numKeys++] = getKey(BasicProps.NAME, item.getName());
+        }
+        lock.writeLock().lock();
+        try {
+            if (map == null) {
+                return;
+            }
+            if (map.ramBytesUsed(numKeys) > maxBytes) {
+                LOGGER.info("Live item registry reached {}MB, lookups will search the index", //$NON-NLS-1$
+                        maxBytes >> 20);
+                map = null;
+                complete = false;
+                return;
+            }
+            for (int i = 0; i < numKeys; i++) {
+                map.put(keys[i], item.getId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static boolean contains(long[] keys, int numKeys, long key) {
+        for (int i = 0; i < numKeys; i++) {
+            if (keys[i] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Passes ids of items possibly having the value to the consumer. Values of the
+     * items must be checked, different values could have the same key.
+     */
+    public void lookup(String field, String value, IntConsumer ids) {
+        long key = getKey(field, value);
+        lock.readLock().lock();
+        try {
+            if (map != null) {
+                map.get(key, ids);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Open addressing map of long keys to many int values, values of each key are
+     * kept in a linked list of entries.
+     */
+    static class LongIntMultiMap {
+
+        private long[] keys = new long[1 << 16];
+        // first entry of key, -1 if slot is empty
+        private int[] firstEntries = newFilledArray(1 << 16);
+        private int usedSlots = 0;
+
+        private int[] entryValues = new int[1 << 16];
+        private int[] nextEntries = new int[1 << 16];
+        private int numEntries = 0;
+
+        private static int[] newFilledArray(int size) {
+            int[] array = new int[size];
+            Arrays.fill(array, -1);
+            return array;
+        }
+
+        /**
+         * @return memory used by the arrays after more keys and entries are put
+         */
+        long ramBytesUsed(int moreEntries) {
+            long slots = keys.length;
+            while ((usedSlots + moreEntries) * 4L >= slots * 3L) {
+                slots *= 2;
+            }
+            long entries = entryValues.length;
+            while (numEntries + moreEntries > entries) {
+                entries *= 2;
+            }
+            return slots * (Long.BYTES + Integer.BYTES) + entries * 2 * Integer.BYTES;
+        }
+
+        private int getSlot(long[] keys, int[] firstEntries, long key) {
+            int mask = keys.length - 1;
+            int slot = (int) (key ^ (key >>> 32)) & mask;
+            while (firstEntries[slot] != -1 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        void put(long key, int value) {
+            if (usedSlots * 4L >= keys.length * 3L) {
+                rehash();
+            }
+            if (numEntries == entryValues.length) {
+                entryValues = Arrays.copyOf(entryValues, numEntries * 2);
+                nextEntries = Arrays.copyOf(nextEntries, numEntries * 2);
+            }
+            int slot = getSlot(keys, firstEntries, key);
+            if (firstEntries[slot] == -1) {
+                keys[slot] = key;
+                usedSlots++;
+            }
+            entryValues[numEntries] = value;
+            nextEntries[numEntries] = firstEntries[slot];
+            firstEntries[slot] = numEntries++;
+        }
+
+        void get(long key, IntConsumer consumer) {
+            int slot = getSlot(keys, firstEntries, key);
+            for (int entry = firstEntries[slot]; entry != -1; entry = nextEntries[entry]) {
+                consumer.accept(entryValues[entry]);
+            }
+        }
+
+        private void rehash() {
+            long[] newKeys = new long[keys.length * 2];
+            int[] newFirstEntries = newFilledArray(keys.length * 2);
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (firstEntries[slot] != -1) {
+                    int newSlot = getSlot(newKeys, newFirstEntries, keys[slot]);
+                    newKeys[newSlot] = keys[slot];
+                    newFirstEntries[newSlot] = firstEntries[slot];
+                }
+            }
+            keys = newKeys;
+            firstEntries = newFirstEntries;
+        }
+    }
+
+}
@@ -5,11 +5,15 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.util.BytesRef;
+import org.roaringbitmap.RoaringBitmap;
 
 import iped.data.IItem;
 import iped.data.IItemId;
@@ -59,6 +63,37 @@ private static final float squaredDistToScore(float squaredDist) {
     }
 
     private void score(MultiSearchResult result) throws IOException {
+        Set<String> vectorFields = KnnVectorSearch.getVectorFields(ipedCase.getReader(), FACE_FEATURES);
+        if (!vectorFields.isEmpty()) {
+            scoreByVectorSearch(result, vectorFields);
+        } else {
+            // cases indexed without face vectors
+            scoreByBruteForce(result);
+        }
+    }
+
+    /**
+     * Searches the faces close to the reference one in the HNSW graphs of face
+     * vector fields, one field for each face position in the images.
+     */
+    private void scoreByVectorSearch(MultiSearchResult result, Set<String> vectorFields) throws IOException {
+        int len = result.getLength();
+        RoaringBitmap luceneIds = new RoaringBitmap();
+        for (int i = 0; i < len; i++) {
+            luceneIds.add(ipedCase.getLuceneId(result.getItem(i)));
+        }
+        Map<Integer, Float> hits = new HashMap<>();
+        for (String field : vectorFields) {
+            KnnVectorSearch.searchWithin(ipedCase.getReader(), field, refSimilarityFeatures, minDistSquared, luceneIds,
+                    hits);
+        }
+        for (int i = 0; i < len; i++) {
+            Float squaredDist = hits.get(ipedCase.getLuceneId(result.getItem(i)));
+            result.setScore(i, squaredDist != null ? squaredDistToScore(squaredDist) : 0);
+        }
+    }
+
+    private void scoreByBruteForce(MultiSearchResult result) throws IOException {
 
         LeafReader leafReader = ipedCase.getLeafReader();
         int numThreads = Runtime.getRuntime().availableProcessors();
@@ -3,12 +3,15 @@
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -17,6 +20,9 @@
 import java.util.PriorityQueue;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -39,6 +45,7 @@ public class SleuthkitClient implements Comparable<SleuthkitClient> {
 
     private static final int MAX_STREAMS = 10000;
     private static final int TIMEOUT_SECONDS = 3600;
+    private static final int MEMORY_TIMEOUT_MILLIS = 10000;
 
     private static PriorityQueue<SleuthkitClient> clientPriorityQueue = new PriorityQueue<>();
     private static Object lock = new Object();
@@ -66,11 +73,150 @@ public class SleuthkitClient implements Comparable<SleuthkitClient> {
     OutputStream os;
     Random rand = new Random();
 
-    private boolean serverError = false;
+    private volatile Slots slots;
     private int openedStreams = 0;
     private Set<SleuthkitClientInputStream> currentStreams = new HashSet<>();
     private int priority = 0;
-    private long requestTime = 0;
+
+    interface ResponseReader<T> {
+        T read(Slots slots, int slot, byte response) throws IOException;
+    }
+
+    /**
+     * Request slots in the memory mapped file shared with one server process.
+     * Each request owns a slot until its response is read, so several streams
+     * can wait for the server at the same time. Responses are dispatched by a
+     * thread reading the server output. A new instance is created when the
+     * server is restarted.
+     */
+    static class Slots {
+
+        final MappedByteBuffer mbb;
+        private final ByteBuffer[] data = new ByteBuffer[SleuthkitServer.NUM_SLOTS];
+        private final Semaphore[] responses = new Semaphore[SleuthkitServer.NUM_SLOTS];
+        private final ArrayBlockingQueue<Integer> free = new ArrayBlockingQueue<>(SleuthkitServer.NUM_SLOTS);
+        private final LinkedBlockingQueue<Integer> pings = new LinkedBlockingQueue<>();
+        private final InputStream is;
+        private final OutputStream os;
+        private volatile boolean error = false;
+        private int inFlight = 0;
+        private long requestTime = 0;
+
+        private Slots(MappedByteBuffer mbb, InputStream is, OutputStream os, int id) {
+            this.mbb = mbb;
+            this.is = is;
+            this.os = os;
+            for (int i = 0; i < SleuthkitServer.NUM_SLOTS; i++) {
+                data[i] = mbb.duplicate();
+                responses[i] = new Semaphore(0);
+                free.add(i);
+            }
+            Thread dispatcher = new Thread(this::dispatch, "SleuthkitClient-" + id + "-responses"); //$NON-NLS-1$ //$NON-NLS-2$
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+        }
+
+        private void dispatch() {
+            try {
+                int b;
+                while ((b = is.read()) != -1) {
+                    if (b >= SleuthkitServer.SLOT_NOTIFY) {
+                        responses[b - SleuthkitServer.SLOT_NOTIFY].release();
+                    } else {
+                        pings.add(b);
+                    }
+                }
+            } catch (IOException e) {
+                // server process finished
+            }
+            error = true;
+            for (Semaphore s : responses) {
+                s.release();
+            }
+            pings.add(-1);
+        }
+
+        static int base(int slot) {
+            return slot * SleuthkitServer.SLOT_SIZE;
+        }
+
+        boolean isError() {
+            return error;
+        }
+
+        void setError() {
+            error = true;
+        }
+
+        private int acquire() throws IOException {
+            try {
+                return free.take();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException(e.toString());
+            }
+        }
+
+        private void release(int slot) {
+            free.add(slot);
+        }
+
+        private void send(int slot) throws IOException {
+            try {
+                synchronized (os) {
+                    SleuthkitServer.notify(os, SleuthkitServer.SLOT_NOTIFY + slot);
+                }
+            } catch (IOException e) {
+                error = true;
+                throw e;
+            }
+        }
+
+        private boolean ping(int value) throws IOException {
+            pings.clear();
+            synchronized (os) {
+                SleuthkitServer.notify(os, value);
+            }
+            try {
+                Integer r = pings.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                return r != null && r == value;
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException(e.toString());
+            }
+        }
+
+        /**
+         * Copies response data of the slot into the array.
+         */
+        void get(int slot, byte[] b, int off, int len) {
+            ByteBuffer bb = data[slot];
+            bb.position(base(slot) + SleuthkitServer.SLOT_HEADER_SIZE);
+            bb.get(b, off, len);
+        }
+
+        private synchronized void requestSent() {
+            if (inFlight++ == 0) {
+                requestTime = System.currentTimeMillis() / 1000;
+            }
+        }
+
+        private synchronized void responseReceived() {
+            inFlight--;
+            requestTime = inFlight == 0 ? 0 : System.currentTimeMillis() / 1000;
+        }
+
+        private synchronized long getRequestTime() {
+            return requestTime;
+        }
+
+        private boolean isReadingContent() {
+            for (int i = 0; i < SleuthkitServer.NUM_SLOTS; i++) {
+                if (SleuthkitServer.getByte(mbb, base(i)) == FLAGS.SQLITE_READ) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 
     static class TimeoutMonitor extends Thread {
         public void run() {
@@ -86,36 +232,26 @@ public void run() {
         }
     }
 
-    synchronized boolean isServerError() {
-        return serverError;
-    }
-
-    synchronized void setServerError(boolean error) {
-        serverError = error;
+    boolean isServerError() {
+        Slots s = slots;
+        return s == null || s.isError();
     }
 
     private synchronized void checkTimeout() {
-        if (requestTime == 0)
+        Slots s = slots;
+        if (s == null || s.getRequestTime() == 0)
             return;
-        if (SleuthkitServer.getByte(mbb, 0) != FLAGS.SQLITE_READ) {
+        if (!s.isReadingContent()) {
             logger.info("Waiting SleuthkitServer {} database read...", id); //$NON-NLS-1$
             return;
         }
-        if (System.currentTimeMillis() / 1000 - requestTime >= TIMEOUT_SECONDS) {
+        if (System.currentTimeMillis() / 1000 - s.getRequestTime() >= TIMEOUT_SECONDS) {
             logger.error("Timeout waiting SleuthkitServer " + id + " response! Restarting...");
-            serverError = true;
-            requestTime = 0;
+            s.setError();
             finishProcess(false);
         }
     }
 
-    synchronized void enableTimeoutCheck(boolean enable) {
-        if (enable)
-            requestTime = System.currentTimeMillis() / 1000;
-        else
-            requestTime = 0;
-    }
-
     public static synchronized void addEnvVar(String key, String value) {
         newEnvVars.put(key, value);
     }
@@ -220,6 +356,8 @@ private synchronized void start() {
                 throw new Exception("Error starting SleuthkitServer " + id); //$NON-NLS-1$
             }
 
+            slots = new Slots(mbb, is, os, id);
+
             logger.info("Starting SleuthkitServer {} started.", id);
 
         } catch (Exception e) {
@@ -248,13 +386,9 @@ public void run() {
     }
 
     private synchronized boolean ping() {
-        int i = rand.nextInt(255) + 1;
+        int i = rand.nextInt(SleuthkitServer.SLOT_NOTIFY - 1) + 1;
         try {
-            os.write(i);
-            os.flush();
-            int r = is.read();
-            if (r == i)
-                return true;
+            return slots.ping(i);
 
         } catch (IOException e) {
             e.printStackTrace();
@@ -263,7 +397,7 @@ private synchronized boolean ping() {
     }
 
     private synchronized boolean isFineToUse() {
-        if (serverError) {
+        if (isServerError()) {
             return false;
         }
         if (!ping()) {
@@ -298,8 +432,109 @@ synchronized void restartServer() throws IOException {
         }
 
         openedStreams = 0;
-        currentStreams.forEach(s -> s.seekAfterRestart = true);
-        serverError = false;
+    }
+
+    private synchronized Slots getSlots() throws IOException {
+        if (isServerError()) {
+            restartServer();
+        }
+        return slots;
+    }
+
+    /**
+     * Sends a stream command to the server using a free slot and waits for its
+     * response. Requests of different streams can be in flight at the same time.
+     */
+    <T> T request(byte cmd, SleuthkitClientInputStream stream, long position, int length, ResponseReader<T> reader)
+            throws IOException {
+        Slots s = getSlots();
+        int slot = s.acquire();
+        try {
+            if (s.isError()) {
+                throw new IOException("SleuthkitServer " + id + " stopped!"); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            int base = Slots.base(slot);
+            s.mbb.putInt(base + SleuthkitServer.SLEUTH_ID, stream.sleuthId);
+            s.mbb.putLong(base + SleuthkitServer.STREAM_ID, stream.streamId);
+            s.mbb.putLong(base + SleuthkitServer.POSITION, position);
+            s.mbb.putInt(base + SleuthkitServer.LENGTH, length);
+            SleuthkitServer.commitByte(s.mbb, base, cmd);
+
+            s.requestSent();
+            byte response;
+            try {
+                s.send(slot);
+                response = waitResponse(s, slot, stream);
+            } finally {
+                s.responseReceived();
+            }
+
+            if (response == FLAGS.EXCEPTION) {
+                int len = s.mbb.getInt(base + SleuthkitServer.LENGTH);
+                byte[] b = new byte[len];
+                s.get(slot, b, 0, len);
+                throw new IOException("SleuthkitServer " + id + " error: " + new String(b, StandardCharsets.UTF_8)); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            return reader.read(s, slot, response);
+
+        } catch (IOException e) {
+            if (s.isError()) {
+                logger.error("Possible SleuthkitServer " + id + " crash reading " + stream.path); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            throw e;
+
+        } finally {
+            s.release(slot);
+        }
+    }
+
+    private byte waitResponse(Slots s, int slot, SleuthkitClientInputStream stream) throws IOException {
+        s.responses[slot].acquireUninterruptibly();
+        if (s.isError()) {
+            throw new IOException("SleuthkitServer " + id + " pipe closed!"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        int base = Slots.base(slot);
+        byte cmd;
+        long time = 0;
+        while (FLAGS.isClientCmd(cmd = SleuthkitServer.getByte(s.mbb, base)) || cmd == FLAGS.SQLITE_READ) {
+            if (time == 0) {
+                time = System.currentTimeMillis();
+                logger.warn("Waiting SleuthkitServer " + id + " memory write..."); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            if (System.currentTimeMillis() - time >= MEMORY_TIMEOUT_MILLIS) {
+                s.setError();
+                logger.error("MemoryReadTimeout waiting SleuthkitServer " + id + ": " + stream.path); //$NON-NLS-1$ //$NON-NLS-2$
+                throw new IOException("MemoryReadTimeout waiting SleuthkitServer " + id + ": " + stream.path); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            Thread.onSpinWait();
+        }
+        return cmd;
+    }
+
+    int read(SleuthkitClientInputStream stream, long position, byte[] b, int off, int len) throws IOException {
+        return request(FLAGS.READ, stream, position, len, (s, slot, response) -> {
+            if (response == FLAGS.EOF) {
+                return -1;
+            }
+            int read = s.mbb.getInt(Slots.base(slot) + SleuthkitServer.LENGTH);
+            s.get(slot, b, off, read);
+            return read;
+        });
+    }
+
+    long size(SleuthkitClientInputStream stream) throws IOException {
+        return request(FLAGS.SIZE, stream, 0, 0,
+                (s, slot, response) -> s.mbb.getLong(Slots.base(slot) + SleuthkitServer.POSITION));
+    }
+
+    void close(SleuthkitClientInputStream stream) throws IOException {
+        try {
+            if (!isServerError()) {
+                request(FLAGS.CLOSE, stream, 0, 0, (s, slot, response) -> null);
+            }
+        } finally {
+            removeStream(stream);
+        }
     }
 
     synchronized void removeStream(SleuthkitClientInputStream stream) {
@@ -332,6 +567,9 @@ private synchronized void finishProcess(boolean deletemmapFile) {
         }
         fc = null;
         mbb = null;
+        if (slots != null) {
+            slots.setError();
+        }
 
         if (deletemmapFile) {
             int tries = 10;
@@ -6,11 +6,14 @@
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.sleuthkit.datamodel.Content;
 import org.sleuthkit.datamodel.SleuthkitCase;
@@ -19,11 +22,39 @@
 import iped.engine.config.ConfigurationManager;
 import iped.engine.config.LocalConfig;
 import iped.engine.util.DirectMemory;
-
+import iped.io.SeekableInputStream;
+
+/**
+ * Process reading sleuthkit contents for {@link SleuthkitClient}. Requests and
+ * responses are exchanged through a ring of slots in a memory mapped file, so
+ * several streams can have requests in flight. A slot is notified writing its
+ * index plus {@link #SLOT_NOTIFY} to the process input, and its response is
+ * notified the same way on the process output. Smaller bytes are pings.
+ *
+ * Slot layout: flag (1 byte), sleuthkit id (int), stream id (long), position
+ * or result (long), length (int), then data.
+ */
 public class SleuthkitServer {
 
-    public static final int MMAP_FILE_SIZE = 10 * 1024 * 1024;
-    private static final int MAX_BUF_SIZE = 8 * 1024 * 1024; // must be less than MMAP_FILE_SIZE
+    static final int NUM_SLOTS = 8;
+    static final int SLOT_HEADER_SIZE = 32;
+    static final int SLOT_DATA_SIZE = 1 << 20;
+    static final int SLOT_SIZE = SLOT_HEADER_SIZE + SLOT_DATA_SIZE;
+
+    public static final int MMAP_FILE_SIZE = NUM_SLOTS * SLOT_SIZE;
+
+    // offsets in slot header
+    static final int SLEUTH_ID = 1;
+    static final int STREAM_ID = 5;
+    static final int POSITION = 13;
+    static final int LENGTH = 21;
+
+    static final int SLOT_NOTIFY = 128;
+
+    private static final int READ_AHEAD_SIZE = 1 << 20;
+    private static final int MAX_READ_AHEADS = 16;
+    private static final int MIN_TO_READ = 64 * 1024;
+    private static final int PREFETCH_SIZE = 256 * 1024;
 
     static class FLAGS {
 
@@ -47,6 +78,53 @@ final static boolean isClientCmd(int cmd) {
         }
     }
 
+    /**
+     * Data read from a stream after the last position requested by the client,
+     * so sequential reads are answered from memory. It is filled in advance
+     * while there are no requests waiting.
+     */
+    static class ReadAhead {
+        final SeekableInputStream sis;
+        final byte[] buf = new byte[READ_AHEAD_SIZE];
+        long start;
+        int len;
+        // end of data already sent to the client
+        long consumed;
+        boolean eof;
+
+        ReadAhead(SeekableInputStream sis) throws IOException {
+            this.sis = sis;
+            // the stream outlives evicted read aheads, so it may not be at 0
+            this.start = sis.position();
+            this.consumed = start;
+        }
+    }
+
+    /**
+     * @return LRU map of the read aheads by stream id, keeping at most
+     *         {@link #MAX_READ_AHEADS}
+     */
+    static LinkedHashMap<Long, ReadAhead> createReadAheads() {
+        return new LinkedHashMap<Long, ReadAhead>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, ReadAhead> eldest) {
+                return size() > MAX_READ_AHEADS;
+            }
+        };
+    }
+
+    static ReadAhead getReadAhead(Map<Long, ReadAhead> readAheads, long streamId, SeekableInputStream sis)
+            throws IOException {
+        ReadAhead ra = readAheads.get(streamId);
+        if (ra == null) {
+            ra = new ReadAhead(sis);
+            readAheads.put(streamId, ra);
+        }
+        return ra;
+    }
+
     static boolean useUnsafe = true;
 
     public static void main(String args[]) {
@@ -78,64 +156,82 @@ public static void main(String args[]) {
 
             SleuthkitCase sleuthCase = SleuthkitInputStreamFactory.openSleuthkitCase(dbPath);
             HashMap<Long, SleuthkitInputStream> sisMap = new HashMap<>();
+            LinkedHashMap<Long, ReadAhead> readAheads = createReadAheads();
 
             java.util.logging.Logger.getLogger("org.sleuthkit").setLevel(java.util.logging.Level.SEVERE); //$NON-NLS-1$
 
+            ByteBuffer[] slotData = new ByteBuffer[NUM_SLOTS];
+            for (int i = 0; i < NUM_SLOTS; i++) {
+                slotData[i] = out.duplicate();
+            }
+
             commitByte(out, 0, FLAGS.DONE);
-            notify(os);
+            notify(os, 0);
 
-            byte[] buf = new byte[MAX_BUF_SIZE];
-            int minToRead = 64 * 1024;
-            SleuthkitInputStream sis = null;
+            ReadAhead lastRead = null;
 
             while (true) {
+                int read = in.read();
+                if (read == -1)
+                    break;
+                if (read < SLOT_NOTIFY) {
+                    // ping response
+                    notify(os, read);
+                    continue;
+                }
+                int base = (read - SLOT_NOTIFY) * SLOT_SIZE;
+                ByteBuffer data = slotData[read - SLOT_NOTIFY];
                 try {
-                    int read = in.read();
-                    if (read == -1)
-                        break;
-                    if (read > 0) {
-                        // ping response
-                        os.write(read);
-                        os.flush();
-                        continue;
-                    }
-                    byte cmd = waitCmd(out, in);
-                    sis = getSis(out, sleuthCase, sisMap);
-                    commitByte(out, 0, FLAGS.SQLITE_READ);
+                    byte cmd = waitCmd(out, base);
+                    long streamId = out.getLong(base + STREAM_ID);
+                    SleuthkitInputStream sis = getSis(out, base, sleuthCase, sisMap);
+                    commitByte(out, base, FLAGS.SQLITE_READ);
 
                     if (cmd == FLAGS.SEEK) {
-                        sis.seek(out.getLong(13));
+                        readAheads.remove(streamId);
+                        sis.seek(out.getLong(base + POSITION));
                     } else if (cmd == FLAGS.CLOSE) {
-                        sis = sisMap.remove(out.getLong(5));
+                        readAheads.remove(streamId);
+                        sis = sisMap.remove(streamId);
                         sis.close();
                     } else if (cmd == FLAGS.READ) {
-                        int len = out.getInt(13);
-                        len = Math.max(minToRead, Math.min(len, buf.length));
-                        len = readIn(sis, buf, len);
+                        ReadAhead ra = getReadAhead(readAheads, streamId, sis);
+                        int len = readAt(ra, out.getLong(base + POSITION), out.getInt(base + LENGTH), data,
+                                base + SLOT_HEADER_SIZE);
+                        lastRead = ra;
                         if (len == -1) {
-                            commitByte(out, 0, FLAGS.EOF);
-                            notify(os);
+                            commitByte(out, base, FLAGS.EOF);
+                            notify(os, read);
                             continue;
-                        } else {
-                            writeOut(out, buf, len);
                         }
+                        out.putInt(base + LENGTH, len);
                     } else if (cmd == FLAGS.SIZE) {
-                        out.putLong(13, sis.size());
+                        out.putLong(base + POSITION, sis.size());
                     } else if (cmd == FLAGS.POSITION) {
-                        out.putLong(13, sis.position());
+                        out.putLong(base + POSITION, sis.position());
                     }
 
-                    commitByte(out, 0, FLAGS.DONE);
-                    notify(os);
+                    commitByte(out, base, FLAGS.DONE);
+                    notify(os, read);
 
                 } catch (Throwable e) {
                     // e.printStackTrace(System.err);
-                    byte[] msgBytes = e.getMessage().getBytes("UTF-8"); //$NON-NLS-1$
-                    out.putInt(13, msgBytes.length);
-                    out.position(17);
-                    out.put(msgBytes);
-                    commitByte(out, 0, FLAGS.EXCEPTION);
-                    notify(os);
+                    byte[] msgBytes = String.valueOf(e.getMessage()).getBytes("UTF-8"); //$NON-NLS-1$
+                    int len = Math.min(msgBytes.length, SLOT_DATA_SIZE);
+                    out.putInt(base + LENGTH, len);
+                    data.position(base + SLOT_HEADER_SIZE);
+                    data.put(msgBytes, 0, len);
+                    commitByte(out, base, FLAGS.EXCEPTION);
+                    notify(os, read);
+                }
+
+                if (lastRead != null && in.available() == 0) {
+                    try {
+                        prefetch(lastRead, in);
+                    } catch (IOException e) {
+                        // next read will report it
+                        lastRead.eof = true;
+                    }
                 }
             }
 
@@ -144,21 +240,94 @@ public static void main(String args[]) {
             commitByte(out, 0, FLAGS.ERROR);
             try {
                 if (os != null)
-                    notify(os);
+                    notify(os, 0);
             } catch (IOException e1) {
                 e1.printStackTrace();
             }
         }
     }
 
+    /**
+     * Copies data at position to the slot, reading the stream only for data not
+     * in the read ahead buffer yet.
+     *
+     * @return number of bytes copied or -1 at end of stream
+     */
+    static int readAt(ReadAhead ra, long pos, int len, ByteBuffer data, int dataPos) throws IOException {
+        len = Math.min(len, SLOT_DATA_SIZE);
+        if (pos < ra.start || pos > ra.start + ra.len) {
+            if (ra.sis.position() != pos) {
+                ra.sis.seek(pos);
+            }
+            ra.start = pos;
+            ra.consumed = pos;
+            ra.len = 0;
+            ra.eof = false;
+        }
+        int off = (int) (pos - ra.start);
+        if (off + len > ra.len && !ra.eof) {
+            int want = Math.max(len, MIN_TO_READ);
+            if (off + want > ra.buf.length) {
+                // discards data before position
+                System.arraycopy(ra.buf, off, ra.buf, 0, ra.len - off);
+                ra.start = pos;
+                ra.len -= off;
+                off = 0;
+            }
+            int end = Math.min(off + want, ra.buf.length);
+            if (ra.sis.position() != ra.start + ra.len) {
+                ra.sis.seek(ra.start + ra.len);
+            }
+            while (ra.len < off + len) {
+                int read = ra.sis.read(ra.buf, ra.len, end - ra.len);
+                if (read == -1) {
+                    ra.eof = true;
+                    break;
+                }
+                ra.len += read;
+            }
+        }
+        len = Math.min(len, ra.len - off);
+        if (len <= 0) {
+            return -1;
+        }
+        data.position(dataPos);
+        data.put(ra.buf, off, len);
+        ra.consumed = Math.max(ra.consumed, pos + len);
+        return len;
+    }
+
+    /**
+     * Reads the next data of the stream sequentially while no request arrives.
+     */
+    private static void prefetch(ReadAhead ra, InputStream in) throws IOException {
+        while (!ra.eof && in.available() == 0 && ra.sis.position() == ra.start + ra.len) {
+            if (ra.len == ra.buf.length) {
+                int consumed = (int) (ra.consumed - ra.start);
+                if (consumed < ra.buf.length / 2) {
+                    return;
+                }
+                System.arraycopy(ra.buf, consumed, ra.buf, 0, ra.len - consumed);
+                ra.start += consumed;
+                ra.len -= consumed;
+            }
+            int read = ra.sis.read(ra.buf, ra.len, Math.min(PREFETCH_SIZE, ra.buf.length - ra.len));
+            if (read == -1) {
+                ra.eof = true;
+            } else {
+                ra.len += read;
+            }
+        }
+    }
+
     private static HashSet<Long> warmedDataSources = new HashSet<>();
 
-    private static SleuthkitInputStream getSis(MappedByteBuffer out, SleuthkitCase sleuthCase,
+    private static SleuthkitInputStream getSis(MappedByteBuffer out, int base, SleuthkitCase sleuthCase,
             HashMap<Long, SleuthkitInputStream> sisMap) throws Exception {
-        long streamId = out.getLong(5);
+        long streamId = out.getLong(base + STREAM_ID);
         SleuthkitInputStream sis = sisMap.get(streamId);
         if (sis == null) {
-            int id = out.getInt(1);
+            int id = out.getInt(base + SLEUTH_ID);
             Content content = sleuthCase.getAbstractFileById(id);
             if (content == null) {
                 content = sleuthCase.getContentById(id);
@@ -178,32 +347,22 @@ private static SleuthkitInputStream getSis(MappedByteBuffer out, SleuthkitCase s
         return sis;
     }
 
-    private static byte waitCmd(MappedByteBuffer out, InputStream in) throws Exception {
+    private static byte waitCmd(MappedByteBuffer out, int base) throws Exception {
         byte cmd;
         long t = 0;
-        while (!FLAGS.isClientCmd(cmd = getByte(out, 0))) {
+        while (!FLAGS.isClientCmd(cmd = getByte(out, base))) {
             if (t == 0)
                 t = System.currentTimeMillis();
             long time = (System.currentTimeMillis() - t) / 1000;
             if (time >= 10)
                 throw new IOException("MemoryReadTimeout waiting SleuthkitClient!"); //$NON-NLS-1$
-            Thread.sleep(1);
+            Thread.onSpinWait();
         }
         return cmd;
     }
 
-    private static int readIn(SleuthkitInputStream sis, byte[] buf, int len) throws IOException {
-        return sis.read(buf, 0, len);
-    }
-
-    private static void writeOut(MappedByteBuffer out, byte[] buf, int len) throws Exception {
-        out.position(17);
-        out.put(buf, 0, len);
-        out.putInt(13, len);
-    }
-
-    static void notify(OutputStream os) throws IOException {
-        os.write(0);
+    static void notify(OutputStream os, int value) throws IOException {
+        os.write(value);
         os.flush();
     }
 
@@ -198,7 +198,9 @@ public final void processAndSendToNextTask(IItem evidence) throws Exception {
             if (subitensTime == null) {
                 subitensTime = 0L;
             }
-            taskTime += System.nanoTime() / 1000 - t - subitensTime;
+            long itemTime = System.nanoTime() / 1000 - t - subitensTime;
+            taskTime += itemTime;
+            worker.manager.getProcessingQueues().addProcessingTime(evidence, itemTime);
         }
 
         if (sendToNextTask) {
@@ -221,7 +223,7 @@ public final void processAndSendToNextTask(IItem evidence) throws Exception {
     protected void sendToNextTask(IItem evidence) throws Exception {
         if (nextTask != null) {
             int priority = QueuesProcessingOrder.getProcessingQueue(evidence.getMediaType());
-            if (evidence.isRoot() || priority <= worker.manager.getProcessingQueues().getCurrentQueuePriority())
+            if (evidence.isRoot() || worker.manager.getProcessingQueues().isToProcessNow(evidence, priority))
                 nextTask.processAndSendToNextTask(evidence);
             else {
                 reEnqueueItem(evidence, priority);
@@ -229,6 +231,7 @@ protected void sendToNextTask(IItem evidence) throws Exception {
         } else if (!evidence.isQueueEnd()) {
             // dec items being processed counter if this is last task
             worker.decItemsBeingProcessed();
+            worker.manager.getProcessingQueues().itemProcessed(evidence);
 
             // clear resources
             evidence.dispose();
@@ -1,23 +1,18 @@
 package iped.engine.task;
 
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 
-import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexNotFoundException;
-import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.LeafReader;
-import org.apache.lucene.index.SortedDocValues;
 
 import iped.configuration.Configurable;
 import iped.data.IHashValue;
 import iped.data.IItem;
 import iped.engine.config.ConfigurationManager;
 import iped.engine.config.EnableTaskProperty;
-import iped.engine.lucene.SlowCompositeReaderWrapper;
+import iped.engine.lucene.IndexPartitions;
 import iped.engine.task.index.IndexItem;
-import iped.utils.HashValue;
+import iped.engine.util.HashRegistry;
 
 /**
  * Tarefa de verificação de arquivos duplicados. Ignora o arquivo caso
@@ -26,11 +21,11 @@
  */
 public class DuplicateTask extends AbstractTask {
 
-    public static String HASH_MAP = HashTask.class.getSimpleName() + "HashMap"; //$NON-NLS-1$
+    public static String HASH_REGISTRY = HashRegistry.class.getSimpleName();
 
     private static final String ENABLE_PARAM = "ignoreDuplicates"; //$NON-NLS-1$
 
-    private HashMap<IHashValue, IHashValue> hashMap;
+    private HashRegistry hashRegistry;
 
     private static boolean ignoreDuplicates = false;
 
@@ -49,14 +44,7 @@ public void process(IItem evidence) {
         boolean isDuplicate = false;
         IHashValue hashValue = evidence.getHashValue();
         if (hashValue != null) {
-            synchronized (hashMap) {
-                if (!hashMap.containsKey(hashValue)) {
-                    hashMap.put(hashValue, hashValue);
-                } else {
-                    isDuplicate = true;
-                }
-
-            }
+            isDuplicate = !hashRegistry.add(hashValue.getBytes());
         }
 
         if (ignoreDuplicates && isDuplicate && !evidence.isDir() && !evidence.isRoot()
@@ -71,25 +59,16 @@ public void init(ConfigurationManager configurationManager) throws Exception {
 
         ignoreDuplicates = configurationManager.getEnableTaskProperty(ENABLE_PARAM);
 
-        hashMap = (HashMap<IHashValue, IHashValue>) caseData.getCaseObject(HASH_MAP);
-        if (hashMap == null) {
-            hashMap = new HashMap<IHashValue, IHashValue>();
-            caseData.putCaseObject(HASH_MAP, hashMap);
-
-            try (IndexReader reader = DirectoryReader.open(worker.writer, true, true)) {
-                LeafReader aReader = SlowCompositeReaderWrapper.wrap(reader);
-                SortedDocValues sdv = aReader.getSortedDocValues(IndexItem.HASH);
-                if (sdv != null) {
-                    for (int ord = 0; ord < sdv.getValueCount(); ord++) {
-                        String hash = sdv.lookupOrd(ord).utf8ToString();
-                        if (hash != null && !hash.isEmpty()) {
-                            IHashValue hValue = new HashValue(hash);
-                            hashMap.put(hValue, hValue);
-                        }
-                    }
-                }
+        hashRegistry = (HashRegistry) caseData.getCaseObject(HASH_REGISTRY);
+        if (hashRegistry == null) {
+            hashRegistry = new HashRegistry();
+            caseData.putCaseObject(HASH_REGISTRY, hashRegistry);
+
+            // loads hashes of previous processing in background, registry waits for it
+            try {
+                hashRegistry.loadFromIndexAsync(IndexPartitions.openReader(worker.writer, true, true), IndexItem.HASH);
             } catch (IndexNotFoundException e) {
-                // ignore
+                hashRegistry.setLoaded();
             }
         }
 
@@ -97,7 +76,7 @@ public void init(ConfigurationManager configurationManager) throws Exception {
 
     @Override
     public void finish() throws Exception {
-        hashMap.clear();
+        hashRegistry.clear();
     }
 
 }
@@ -25,7 +25,6 @@
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -41,21 +40,19 @@
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.zip.Deflater;
 
 import iped.properties.BasicProps;
 import iped.properties.ExtraProperties;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.compress.compressors.CompressorException;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
-import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
-import org.apache.commons.compress.compressors.gzip.GzipParameters;
 import org.apache.commons.compress.utils.IOUtils;
 import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
 import org.apache.logging.log4j.Level;
@@ -85,8 +82,11 @@
 import iped.engine.config.HtmlReportTaskConfig;
 import iped.engine.data.Category;
 import iped.engine.data.IPEDSource;
+import iped.engine.io.BlockCompressedByteChannel;
+import iped.engine.io.BlockCompressedByteChannel.BlockCache;
 import iped.engine.localization.Messages;
 import iped.engine.task.index.IndexItem;
+import iped.engine.util.HashRegistry;
 import iped.engine.util.UIPropertyListenerProvider;
 import iped.engine.util.Util;
 import iped.exception.IPEDException;
@@ -135,6 +135,10 @@ public class ExportFileTask extends AbstractTask {
     // maps below are used to track different storages/connections in multicases
     private static HashMap<File, HashMap<Integer, File>> storage = new HashMap<>();
     private static HashMap<File, HashMap<Integer, Connection>> storageCon = new HashMap<>();
+    private static HashMap<File, HashMap<Integer, SQLiteStorageWriter>> storageWriters = new HashMap<>();
+
+    // used to read contents not written to storages yet
+    private static ConcurrentHashMap<Path, SQLiteStorageWriter> storageWriterByPath = new ConcurrentHashMap<>();
 
     private static AtomicInteger counter = new AtomicInteger();
 
@@ -148,7 +152,7 @@ public class ExportFileTask extends AbstractTask {
     private static boolean computeHash = false;
     private static File extractDir;
 
-    private HashMap<IHashValue, IHashValue> hashMap;
+    private HashRegistry hashRegistry;
     private List<String> noContentLabels;
     private ExportByCategoriesConfig exportByCategories;
     private ExportByKeywordsConfig exportByKeywords;
@@ -246,6 +250,44 @@ private static Connection getSQLiteConnection(File storage) throws SQLException
         return conn;
     }
 
+    private static synchronized SQLiteStorageWriter getStorageWriter(File output, int k) {
+        HashMap<Integer, SQLiteStorageWriter> writers = storageWriters.get(output);
+        if (writers == null) {
+            writers = new HashMap<>();
+            storageWriters.put(output, writers);
+        }
+        SQLiteStorageWriter writer = writers.get(k);
+        if (writer == null) {
+            writer = new SQLiteStorageWriter(storageCon.get(output).get(k), INSERT_DATA, "StorageWriter-" + k); //$NON-NLS-1$
+            writers.put(k, writer);
+            storageWriterByPath.put(storage.get(output).get(k).toPath(), writer);
+        }
+        return writer;
+    }
+
+    private static synchronized void closeStorageWriters(File output) throws SQLException {
+        HashMap<Integer, SQLiteStorageWriter> writers = storageWriters.remove(output);
+        if (writers != null) {
+            for (Entry<Integer, SQLiteStorageWriter> entry : writers.entrySet()) {
+                entry.getValue().close();
+                storageWriterByPath.remove(storage.get(output).get(entry.getKey()).toPath());
+            }
+        }
+    }
+
+    private static void flushStorageWriters(File output) throws SQLException {
+        List<SQLiteStorageWriter> writers = new ArrayList<>();
+        synchronized (ExportFileTask.class) {
+            if (storageWriters.get(output) != null) {
+                writers.addAll(storageWriters.get(output).values());
+            }
+        }
+        // waits outside the lock, so workers can get writers meanwhile
+        for (SQLiteStorageWriter writer : writers) {
+            writer.flush();
+        }
+    }
+
     private static synchronized File getSubDir(File extractDir) {
         if (subDirCounter % 1000 == 0) {
             subDir = new File(extractDir, Integer.toString(subDirCounter / 1000));
@@ -306,9 +348,7 @@ public void process(IItem evidence) {
                 // store references to -nocontent items to be deleted from sqlite storages
                 IHashValue hashValue = evidence.getHashValue();
                 if (hashValue != null) {
-                    synchronized (hashMap) {
-                        // this uses less memory reusing a previous stored reference
-                        hashValue = hashMap.get(hashValue);
+                    synchronized (noContentHashes) {
                         noContentHashes.add(hashValue);
                     }
                 }
@@ -410,10 +450,7 @@ public void renameToHash(IItem evidence) {
                 hashFile.getParentFile().mkdirs();
             }
             IHashValue hashVal = new HashValue(hash);
-            IHashValue hashLock;
-            synchronized (hashMap) {
-                hashLock = hashMap.get(hashVal);
-            }
+            Object hashLock = hashRegistry.getLock(hashVal.getBytes());
 
             synchronized (hashLock) {
                 if (!hashFile.exists()) {
@@ -514,9 +551,7 @@ public void extractFile(InputStream inputStream, IItem evidence, Long parentSize
         } else if ((hash = evidence.getHash()) != null && !hash.isEmpty()) {
             outputFile = getHashFile(hash, ext);
             IHashValue hashVal = new HashValue(hash);
-            synchronized (hashMap) {
-                hashLock = hashMap.get(hashVal);
-            }
+            hashLock = hashRegistry.getLock(hashVal.getBytes());
 
         } else {
             outputFile = new File(extractDir, Util.getValidFilename("0" + counter.getAndIncrement() + ext)); //$NON-NLS-1$
@@ -524,76 +559,85 @@ public void extractFile(InputStream inputStream, IItem evidence, Long parentSize
 
         boolean fileExists = false;
 
-        synchronized (hashLock) {
-            if (hash == null || !(fileExists = outputFile.exists())) {
-                BufferedOutputStream bos = null;
-                try (TemporaryResources tmp = new TemporaryResources()) {
-
-                    TikaInputStream tis = TikaInputStream.get(inputStream, tmp);
-                    InputStream poiInputStream = Util.getPOIFSInputStream(tis);
-                    inputStream = poiInputStream != null ? poiInputStream : tis;
-
-                    long total = 0;
-                    int i = 0;
-                    while (i != -1 && !Thread.currentThread().isInterrupted()) {
-                        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                        Exception exception = null;
-                        try {
-                            byte[] buf = new byte[8 * 1024];
-                            while (baos.size() <= MAX_BUFFER_SIZE - buf.length && (i = inputStream.read(buf)) != -1) {
-                                baos.write(buf, 0, i);
-                            }
-                        } catch (Exception e) {
-                            // catch exceptions here to extract some content, even runtime exceptions
-                            exception = e;
+        // content is copied to a temp file, without holding the lock, if other items
+        // with same hash could be exported concurrently to the same output file
+        File targetFile = outputFile;
+        if (hash != null) {
+            targetFile = new File(outputFile.getParentFile(),
+                    outputFile.getName() + "." + Thread.currentThread().getId() + ".tmp"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+
+        if (hash == null || !(fileExists = outputFile.exists())) {
+            BufferedOutputStream bos = null;
+            try (TemporaryResources tmp = new TemporaryResources()) {
+
+                TikaInputStream tis = TikaInputStream.get(inputStream, tmp);
+                InputStream poiInputStream = Util.getPOIFSInputStream(tis);
+                inputStream = poiInputStream != null ? poiInputStream : tis;
+
+                long total = 0;
+                int i = 0;
+                while (i != -1 && !Thread.currentThread().isInterrupted()) {
+                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                    Exception exception = null;
+                    try {
+                        byte[] buf = new byte[8 * 1024];
+                        while (baos.size() <= MAX_BUFFER_SIZE - buf.length && (i = inputStream.read(buf)) != -1) {
+                            baos.write(buf, 0, i);
                         }
-                        if ((i == -1 || exception != null) && storageCon.get(output) != null && total == 0 && evidence.getMetadata().get(ExtraProperties.EXTRACTED_FILE) == null) {
-                            if (baos.size() == 0) {
-                                evidence.setLength(0L);
-                            } else {
-                                byte[] buf = baos.toByteArray();
-                                baos = null;
-                                insertIntoStorage(evidence, buf, buf.length);
-                            }
+                    } catch (Exception e) {
+                        // catch exceptions here to extract some content, even runtime exceptions
+                        exception = e;
+                    }
+                    if ((i == -1 || exception != null) && storageCon.get(output) != null && total == 0 && evidence.getMetadata().get(ExtraProperties.EXTRACTED_FILE) == null) {
+                        if (baos.size() == 0) {
+                            evidence.setLength(0L);
                         } else {
-                            if (bos == null) {
-                                if (!outputFile.getParentFile().exists()) {
-                                    outputFile.getParentFile().mkdirs();
-                                }
-                                // a read-only file using id as name may exist, could be a subitem left behind
-                                // by a previous interrupted processing, see #721
-                                if (outputFile.exists()) {
-                                    outputFile.setWritable(true);
-                                }
-                                bos = new BufferedOutputStream(Files.newOutputStream(outputFile.toPath()));
-                                fileExists = true;
+                            byte[] buf = baos.toByteArray();
+                            baos = null;
+                            insertIntoStorage(evidence, buf, buf.length);
+                        }
+                    } else {
+                        if (bos == null) {
+                            if (!targetFile.getParentFile().exists()) {
+                                targetFile.getParentFile().mkdirs();
                             }
-                            bos.write(baos.toByteArray());
-                            total += baos.size();
+                            // a read-only file using id as name may exist, could be a subitem left behind
+                            // by a previous interrupted processing, see #721
+                            if (targetFile.exists()) {
+                                targetFile.setWritable(true);
+                            }
+                            bos = new BufferedOutputStream(Files.newOutputStream(targetFile.toPath()));
+                            fileExists = true;
                         }
+                        bos.write(baos.toByteArray());
+                        total += baos.size();
+                    }
 
-                        if (exception != null)
-                            throw exception;
-
-                        if (ZipBombException.isZipBomb(parentSize, total)) {
-                            throw new ZipBombException("Potential zip bomb while extracting subitem!"); //$NON-NLS-1$
-                        }
+                    if (exception != null)
+                        throw exception;
 
+                    if (ZipBombException.isZipBomb(parentSize, total)) {
+                        throw new ZipBombException("Potential zip bomb while extracting subitem!"); //$NON-NLS-1$
                     }
 
-                    // must catch generic Exception because of Runtime exceptions while extracting
-                    // corrupted subitems
-                } catch (Exception e) {
-                    if (e instanceof IOException && IOUtil.isDiskFull((IOException) e))
-                        LOGGER.error("Error exporting {}\t{}", evidence.getPath(), "No space left on output disk!"); //$NON-NLS-1$ //$NON-NLS-2$
-                    else
-                        LOGGER.warn("Error exporting {}\t{}", evidence.getPath(), e.toString()); //$NON-NLS-1$
-
-                    LOGGER.debug("", e);
+                }
 
-                } finally {
-                    if (bos != null) {
-                        bos.close();
+                // must catch generic Exception because of Runtime exceptions while extracting
+                // corrupted subitems
+            } catch (Exception e) {
+                if (e instanceof IOException && IOUtil.isDiskFull((IOException) e))
+                    LOGGER.error("Error exporting {}\t{}", evidence.getPath(), "No space left on output disk!"); //$NON-NLS-1$ //$NON-NLS-2$
+                else
+                    LOGGER.warn("Error exporting {}\t{}", evidence.getPath(), e.toString()); //$NON-NLS-1$
+
+                LOGGER.debug("", e);
+
+            } finally {
+                if (bos != null) {
+                    bos.close();
+                    if (targetFile != outputFile) {
+                        publishTempFile(targetFile, outputFile, hashLock);
                     }
                 }
             }
@@ -608,6 +652,19 @@ public void extractFile(InputStream inputStream, IItem evidence, Long parentSize
 
     }
 
+    private void publishTempFile(File tempFile, File outputFile, Object hashLock) throws IOException {
+        synchronized (hashLock) {
+            if (!outputFile.exists()) {
+                Files.move(tempFile.toPath(), outputFile.toPath());
+                return;
+            }
+        }
+        // exported concurrently by other thread
+        if (!tempFile.delete()) {
+            LOGGER.warn("{} Error deleting {}", Thread.currentThread().getName(), tempFile.getAbsolutePath()); //$NON-NLS-1$
+        }
+    }
+
     private void insertIntoStorage(IItem evidence, byte[] buf, int len)
             throws InterruptedException, IOException, SQLException, CompressorException {
         byte[] hash = null;
@@ -620,27 +677,21 @@ private void insertIntoStorage(IItem evidence, byte[] buf, int len)
         int k = getStorageSuffix(hash);
         boolean alreadyInDB = false;
         String id = hashString != null ? hashString : new HashValue(hash).toString();
-        try (PreparedStatement ps = storageCon.get(output).get(k).prepareStatement(CHECK_HASH)) {
-            ps.setString(1, id);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                alreadyInDB = true;
+        SQLiteStorageWriter writer = getStorageWriter(output, k);
+        if (writer.getPending(id) != null) {
+            alreadyInDB = true;
+        } else {
+            try (PreparedStatement ps = storageCon.get(output).get(k).prepareStatement(CHECK_HASH)) {
+                ps.setString(1, id);
+                ResultSet rs = ps.executeQuery();
+                if (rs.next()) {
+                    alreadyInDB = true;
+                }
             }
         }
         if (!alreadyInDB) {
-            try (PreparedStatement ps = storageCon.get(output).get(k).prepareStatement(INSERT_DATA)) {
-                ps.setString(1, id);
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                OutputStream gzippedOut = new GzipCompressorOutputStream(baos, getGzipParams());
-                // OutputStream gzippedOut = new LZ4BlockOutputStream(baos);
-                gzippedOut.write(buf, 0, len);
-                gzippedOut.close();
-                byte[] bytes = baos.toByteArray();
-                baos = null;
-                ps.setBytes(2, bytes);
-                ps.setBytes(3, bytes);
-                ps.executeUpdate();
-            }
+            // compresses here, in the worker thread, then the writer thread inserts it
+            writer.add(id, BlockCompressedByteChannel.compress(buf, len));
         }
         evidence.setIdInDataSource(id);
         evidence.setInputStreamFactory(
@@ -649,16 +700,15 @@ private void insertIntoStorage(IItem evidence, byte[] buf, int len)
         evidence.setLength((long) len);
     }
 
-    private GzipParameters getGzipParams() {
-        GzipParameters compression = new GzipParameters();
-        compression.setCompressionLevel(Deflater.BEST_SPEED);
-        return compression;
-    }
-
     public static class SQLiteInputStreamFactory extends SeekableInputStreamFactory {
 
         private static final String SELECT_DATA = "SELECT data FROM t1 WHERE id=?;";
 
+        private static final int BLOCK_CACHE_SIZE = 1 << 23;
+
+        // caches of decompressed blocks, one per storage
+        private static final ConcurrentHashMap<Path, BlockCache> blockCaches = new ConcurrentHashMap<>();
+
         private Connection conn;
 
         public SQLiteInputStreamFactory(Path datasource) {
@@ -682,19 +732,31 @@ public boolean checkIfDataSourceExists() {
         public SeekableInputStream getSeekableInputStream(String identifier) throws IOException {
             try {
                 byte[] bytes = null;
-                if (conn == null || conn.isClosed()) {
-                    conn = getSQLiteStorageCon(Paths.get(getDataSourceURI()).toFile());
+                SQLiteStorageWriter writer = storageWriterByPath.get(Paths.get(getDataSourceURI()));
+                if (writer != null) {
+                    bytes = writer.getPending(identifier);
                 }
-                try (PreparedStatement ps = conn.prepareStatement(SELECT_DATA)) {
-                    ps.setString(1, identifier);
-                    try (ResultSet rs = ps.executeQuery()) {
-                        if (rs.next()) {
-                            bytes = rs.getBytes(1);
+                if (bytes == null) {
+                    if (conn == null || conn.isClosed()) {
+                        conn = getSQLiteStorageCon(Paths.get(getDataSourceURI()).toFile());
+                    }
+                    try (PreparedStatement ps = conn.prepareStatement(SELECT_DATA)) {
+                        ps.setString(1, identifier);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            if (rs.next()) {
+                                bytes = rs.getBytes(1);
+                            }
                         }
                     }
                 }
+                if (BlockCompressedByteChannel.isBlockCompressed(bytes)) {
+                    // only blocks being read are decompressed
+                    Path path = Paths.get(getDataSourceURI());
+                    BlockCache cache = blockCaches.computeIfAbsent(path, p -> new BlockCache(BLOCK_CACHE_SIZE));
+                    return new SeekableFileInputStream(new BlockCompressedByteChannel(bytes, identifier, cache));
+                }
+                // previous storage format, gzipped content
                 InputStream gzippedIn = new GzipCompressorInputStream(new ByteArrayInputStream(bytes));
-                // gzippedIn = new LZ4BlockInputStream(new ByteArrayInputStream(bytes));
                 bytes = IOUtils.toByteArray(gzippedIn);
                 gzippedIn.close();
                 return new SeekableFileInputStream(new SeekableInMemoryByteChannel(bytes));
@@ -740,13 +802,14 @@ public void init(ConfigurationManager configurationManager) throws Exception {
         itensExtracted = 0;
         subDirCounter = 0;
 
-        hashMap = (HashMap<IHashValue, IHashValue>) caseData.getCaseObject(DuplicateTask.HASH_MAP);
+        hashRegistry = (HashRegistry) caseData.getCaseObject(DuplicateTask.HASH_REGISTRY);
 
     }
 
     @Override
     public void finish() throws Exception {
-        hashMap.clear();
+        hashRegistry.clear();
+        closeStorageWriters(output);
         if (storageCon.get(output) != null) {
             for (Entry<Integer, Connection> entry : storageCon.get(output).entrySet()) {
                 Connection con = entry.getValue();
@@ -761,6 +824,7 @@ public void finish() throws Exception {
     }
 
     public static void commitStorage(File output) throws SQLException {
+        flushStorageWriters(output);
         if (storageCon.get(output) != null) {
             for (Connection con : storageCon.get(output).values()) {
                 if (con != null && !con.isClosed() && !con.getAutoCommit()) {
@@ -25,6 +25,7 @@
 import iped.engine.config.LocalConfig;
 import iped.engine.hashdb.HashDB;
 import iped.engine.hashdb.HashDBDataSource;
+import iped.engine.hashdb.HashDBIndex;
 import iped.parsers.util.ChildPornHashLookup;
 import iped.parsers.util.ChildPornHashLookup.LookupProvider;
 
@@ -53,9 +54,12 @@ public class HashDBLookupTask extends AbstractTask {
     private static File hashDBFile;
     private static String[] hashesAttributes;
 
+    private static HashDBIndex hashDBIndex;
+
     private HashDBDataSource hashDBDataSource;
 
     private byte[][] hashes;
+    private final int[] hashIds = new int[HashDBIndex.MAX_HITS];
     private final Map<String, String> properties = new HashMap<String, String>();
 
     private static String nsrlDefaultStatus;
@@ -105,6 +109,9 @@ public void init(ConfigurationManager configurationManager) throws Exception {
                             } else {
                                 excludeKnown = hashDBConfig.isExcludeKnown();
                                 hashDBDataSource = new HashDBDataSource(hashDBFile);
+                                if (hashDBConfig.isUseIndex()) {
+                                    hashDBIndex = HashDBIndex.load(hashDBDataSource, hashDBFile);
+                                }
                                 addLookupProvider(hashDBDataSource);
                                 if (hashDBConfig.getNsrlConfig() != null) {
                                     loadNsrlConfig(hashDBConfig.getNsrlConfig());
@@ -132,6 +139,16 @@ private void addLookupProvider(HashDBDataSource hashDBDataSource) {
         ChildPornHashLookup.addLookupProvider(new LookupProvider() {
             public List<String> lookupHash(String algorithm, String hash) {
                 try {
+                    if (hashDBIndex != null) {
+                        int idx = HashDB.hashType(algorithm);
+                        if (idx >= 0) {
+                            byte[][] hashes = new byte[HashDB.hashTypes.length][];
+                            hashes[idx] = HashDB.hashStrToBytes(hash, HashDB.hashBytesLen[idx]);
+                            if (hashDBIndex.lookup(hashes, new int[HashDBIndex.MAX_HITS]) == 0) {
+                                return null;
+                            }
+                        }
+                    }
                     return hashDBDataSource.lookupSets(algorithm, hash);
                 } catch (Exception e) {
                     logger.warn("Error in lookupHash " + algorithm + " : " + hash, e);
@@ -148,6 +165,9 @@ public void finish() throws Exception {
                 if (hashDBDataSource != null) {
                     hashDBDataSource.close();
                 }
+                if (hashDBIndex != null) {
+                    hashDBIndex.close();
+                }
                 if (excluded > 0) {
                     logger.info("Items ignored by hash database lookup: {}", excluded);
                 }
@@ -206,7 +226,15 @@ protected void process(IItem evidence) throws Exception {
         if (hasHash) {
             properties.clear();
             try {
-                hashDBDataSource.lookup(hashes, properties);
+                if (hashDBIndex != null) {
+                    // misses do not touch the database
+                    int hits = hashDBIndex.lookup(hashes, hashIds);
+                    if (hits > 0) {
+                        hashDBDataSource.lookupProperties(hashIds, hits, properties);
+                    }
+                } else {
+                    hashDBDataSource.lookup(hashes, properties);
+                }
             } catch (Exception e) {
                 logger.warn("Error looking up evidence " + evidence, e);
                 return;
@@ -18,18 +18,13 @@
  */
 package iped.engine.task;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,6 +33,8 @@
 import iped.data.IItem;
 import iped.engine.config.ConfigurationManager;
 import iped.engine.config.HashTaskConfig;
+import iped.engine.task.hash.Ed2kMessageDigest;
+import iped.engine.task.hash.HashPipeline;
 import iped.parsers.whatsapp.WhatsAppParser;
 
 /**
@@ -49,7 +46,13 @@ public class HashTask extends AbstractTask {
 
     private static final int HASH_BUFFER_LEN = 1024 * 1024;
 
-    private static final ExecutorService executorService = Executors.newCachedThreadPool();
+    /**
+     * Smaller items are hashed by the worker thread itself, larger ones are hashed
+     * by the pipeline, with one thread per algorithm.
+     */
+    private static final int PIPELINE_MIN_LENGTH = 16 * HASH_BUFFER_LEN;
+
+    private static final int PIPELINE_BUFFERS = 4;
 
     public enum HASH {
         MD5("md5"), //$NON-NLS-1$
@@ -70,7 +73,13 @@ public String toString() {
         }
     }
 
-    private HashMap<String, MessageDigest> digestMap = new LinkedHashMap<String, MessageDigest>();
+    private List<String> algorithms = new ArrayList<>();
+
+    private List<MessageDigest> digests = new ArrayList<>();
+
+    private byte[] buffer;
+
+    private HashPipeline pipeline;
 
     private HashTaskConfig hashConfig;
 
@@ -89,13 +98,8 @@ public void init(ConfigurationManager configurationManager) throws Exception {
         hashConfig = configurationManager.findObject(HashTaskConfig.class);
 
         for (String algorithm : hashConfig.getAlgorithms()) {
-            MessageDigest digest = null;
-            if (!algorithm.equalsIgnoreCase(HASH.EDONKEY.toString())) {
-                digest = MessageDigest.getInstance(algorithm.toUpperCase());
-            } else {
-                digest = MessageDigest.getInstance("MD4"); //$NON-NLS-1$
-            }
-            digestMap.put(algorithm, digest);
+            algorithms.add(algorithm);
+            digests.add(createDigest(algorithm));
             if (HASH.SHA256.toString().equals(algorithm)) {
                 System.setProperty(WhatsAppParser.SHA256_ENABLED_SYSPROP, Boolean.TRUE.toString());
             }
@@ -103,10 +107,31 @@ public void init(ConfigurationManager configurationManager) throws Exception {
 
     }
 
+    private static MessageDigest createDigest(String algorithm) throws NoSuchAlgorithmException {
+        if (!algorithm.equalsIgnoreCase(HASH.EDONKEY.toString())) {
+            return MessageDigest.getInstance(algorithm.toUpperCase());
+        } else {
+            return new Ed2kMessageDigest();
+        }
+    }
+
+    private HashPipeline getPipeline() throws NoSuchAlgorithmException {
+        if (pipeline == null) {
+            List<MessageDigest> pipelineDigests = new ArrayList<>();
+            for (String algorithm : algorithms) {
+                pipelineDigests.add(createDigest(algorithm));
+            }
+            pipeline = new HashPipeline(pipelineDigests, HASH_BUFFER_LEN, PIPELINE_BUFFERS,
+                    Thread.currentThread().getName() + "-" + getName()); //$NON-NLS-1$
+        }
+        return pipeline;
+    }
+
     @Override
     public void finish() throws Exception {
-        if (!executorService.isShutdown()) {
-            executorService.shutdown();
+        if (pipeline != null) {
+            pipeline.close();
+            pipeline = null;
         }
     }
 
@@ -116,7 +141,7 @@ public void process(IItem evidence) {
             return;
         }
 
-        if (evidence.getHash() != null || digestMap.isEmpty()
+        if (evidence.getHash() != null || digests.isEmpty()
                 || evidence.getExtraAttribute(IgnoreHardLinkTask.IGNORE_HARDLINK_ATTR) != null) {
             return;
         }
@@ -128,70 +153,20 @@ public void process(IItem evidence) {
 
         try (InputStream in = evidence.getBufferedInputStream()) {
 
-            byte[] readBuf = new byte[HASH_BUFFER_LEN];
-            byte[] hashBuf = new byte[HASH_BUFFER_LEN];
-            byte[] tempBuf = null;
-            int len;
-
-            AtomicReference<CountDownLatch> countDown = new AtomicReference<>(null);
-            AtomicReference<Exception> ex = new AtomicReference<Exception>(null);
-
-            while ((len = in.read(readBuf)) >= 0 && !Thread.currentThread().isInterrupted()) {
-
-                if (countDown.get() != null) {
-                    countDown.get().await();
-                }
-
-                countDown.set(new CountDownLatch(digestMap.size()));
-
-                // swap hashBuf <-> readBuf
-                tempBuf = hashBuf;
-                hashBuf = readBuf;
-                readBuf = tempBuf;
-
-                final int currLen = len;
-                final byte[] currHashBuf = hashBuf;
-                for (String algo : digestMap.keySet()) {
-                    executorService.execute(() -> {
-                        try {
-                            if (!algo.equals(HASH.EDONKEY.toString())) {
-                                digestMap.get(algo).update(currHashBuf, 0, currLen);
-                            } else {
-                                updateEd2k(currHashBuf, currLen);
-                            }
-                        } catch (Exception e) {
-                            ex.set(e);
-                        } finally {
-                            countDown.get().countDown();
-                        }
-                    });
-                }
-
-                if (ex.get() != null) {
-                    throw ex.get();
-                }
-            }
-
-            if (countDown.get() != null) {
-                countDown.get().await();
+            byte[][] hashes;
+            if (digests.size() > 1 && evidence.getLength() >= PIPELINE_MIN_LENGTH) {
+                hashes = getPipeline().digest(in);
+            } else {
+                hashes = digestInline(in);
             }
 
-            boolean defaultHash = true;
-            for (String algo : digestMap.keySet()) {
-                byte[] hash;
-                if (!algo.equals(HASH.EDONKEY.toString())) {
-                    hash = digestMap.get(algo).digest();
-                } else {
-                    hash = digestEd2k();
-                }
-
-                String hashString = getHashString(hash);
-                evidence.setExtraAttribute(algo, hashString);
+            for (int i = 0; i < hashes.length; i++) {
+                String hashString = getHashString(hashes[i]);
+                evidence.setExtraAttribute(algorithms.get(i), hashString);
 
-                if (defaultHash) {
+                if (i == 0) {
                     evidence.setHash(hashString);
                 }
-                defaultHash = false;
             }
 
         } catch (Exception e) {
@@ -207,46 +182,35 @@ public void process(IItem evidence) {
 
     }
 
-    private static int CHUNK_SIZE = 9500 * 1024;
-    private int chunk = 0, total = 0;
-    private ByteArrayOutputStream out = new ByteArrayOutputStream();
-
-    private void updateEd2k(byte[] buffer, int len) throws IOException {
-
-        MessageDigest md4 = digestMap.get(HASH.EDONKEY.toString());
-        if (chunk + len >= CHUNK_SIZE) {
-            int offset = CHUNK_SIZE - chunk;
-            md4.update(buffer, 0, offset);
-            out.write(md4.digest());
-            chunk = len - offset;
-            md4.update(buffer, offset, chunk);
-        } else {
-            md4.update(buffer, 0, len);
-            chunk += len;
-        }
-        total += len;
-    }
-
-    private byte[] digestEd2k() throws IOException {
-
-        MessageDigest md4 = digestMap.get(HASH.EDONKEY.toString());
-        if (total == 0 || total % CHUNK_SIZE != 0) {
-            out.write(md4.digest());
+    private byte[][] digestInline(InputStream in) throws IOException, InterruptedException {
+        if (buffer == null) {
+            buffer = new byte[HASH_BUFFER_LEN];
         }
+        boolean success = false;
+        try {
+            int len;
+            while ((len = in.read(buffer)) >= 0) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+                for (MessageDigest digest : digests) {
+                    digest.update(buffer, 0, len);
+                }
+            }
+            byte[][] hashes = new byte[digests.size()][];
+            for (int i = 0; i < hashes.length; i++) {
+                hashes[i] = digests.get(i).digest();
+            }
+            success = true;
+            return hashes;
 
-        if (out.size() > md4.getDigestLength()) {
-            md4.update(out.toByteArray());
-            out.reset();
-            out.write(md4.digest());
+        } finally {
+            if (!success) {
+                for (MessageDigest digest : digests) {
+                    digest.reset();
+                }
+            }
         }
-
-        byte[] ed2k = out.toByteArray();
-
-        chunk = 0;
-        total = 0;
-        out = new ByteArrayOutputStream();
-
-        return ed2k;
     }
 
     public static String getHashString(byte[] hash) {
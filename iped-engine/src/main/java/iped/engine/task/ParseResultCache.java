@@ -0,0 +1,232 @@
+package iped.engine.task;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.apache.tika.metadata.Metadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConfig.JournalMode;
+import org.sqlite.SQLiteConfig.SynchronousMode;
+
+import iped.engine.io.BlockCompressedByteChannel;
+
+/**
+ * Cache of text and metadata extracted by parsers, keyed by content hash, media
+ * type and parsing configuration, so files with duplicated content are parsed
+ * only once, in the same case or in cases sharing the cache file. Text is
+ * stored LZ4 block compressed in a SQLite database, and the oldest entries are
+ * removed when the database grows above the maximum size.
+ */
+public class ParseResultCache implements Closeable {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(ParseResultCache.class);
+
+    public static final String DEFAULT_FILE_NAME = "parse-cache.db"; //$NON-NLS-1$
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS parsed(id TEXT PRIMARY KEY, text BLOB, metadata BLOB);"; //$NON-NLS-1$
+
+    private static final String INSERT_DATA = "INSERT INTO parsed(id, text, metadata) VALUES(?,?,?) ON CONFLICT(id) DO NOTHING"; //$NON-NLS-1$
+
+    private static final String SELECT_EXACT = "SELECT text, metadata FROM parsed WHERE id=?;"; //$NON-NLS-1$
+
+    private static final String SELECT_COUNT = "SELECT count(*) FROM parsed;"; //$NON-NLS-1$
+
+    private static final String DELETE_OLDEST = "DELETE FROM parsed WHERE rowid IN (SELECT rowid FROM parsed ORDER BY rowid LIMIT ?);"; //$NON-NLS-1$
+
+    private static final int CHECK_SIZE_INTERVAL = 1000;
+
+    /**
+     * Entries are removed until the database is this fraction of its maximum size
+     */
+    private static final double EVICT_TARGET = 0.9;
+
+    public static class CachedResult {
+
+        private final String text;
+        private final Metadata metadata;
+
+        private CachedResult(String text, Metadata metadata) {
+            this.text = text;
+            this.metadata = metadata;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return metadata set or changed by the parser
+         */
+        public Metadata getMetadata() {
+            return metadata;
+        }
+    }
+
+    private final Connection conn;
+    private final long maxBytes;
+    private final String configKey;
+    private int putsSinceCheck = 0;
+
+    /**
+     * @param configKey
+     *            identifies the parsing configuration, results of other
+     *            configurations are not returned
+     */
+    public ParseResultCache(File dbFile, long maxBytes, String configKey) throws SQLException {
+        this.maxBytes = maxBytes;
+        this.configKey = configKey;
+        dbFile.getParentFile().mkdirs();
+        SQLiteConfig config = new SQLiteConfig();
+        config.setSynchronous(SynchronousMode.NORMAL);
+        config.setJournalMode(JournalMode.WAL);
+        config.setBusyTimeout(3600000);
+        conn = config.createConnection("jdbc:sqlite:" + dbFile.getAbsolutePath()); //$NON-NLS-1$
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(CREATE_TABLE);
+        }
+    }
+
+    private String getId(String hash, String mediaType) {
+        return hash + "/" + mediaType + "/" + configKey; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    public synchronized CachedResult get(String hash, String mediaType) throws IOException {
+        try (PreparedStatement ps = conn.prepareStatement(SELECT_EXACT)) {
+            ps.setString(1, getId(hash, mediaType));
+            ResultSet rs = ps.executeQuery();
+            if (!rs.next()) {
+                return null;
+            }
+            return new CachedResult(decompress(rs.getBytes(1)), readMetadata(rs.getBytes(2)));
+
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * @param metadata
+     *            metadata set or changed by the parser
+     */
+    public synchronized void put(String hash, String mediaType, String text, Metadata metadata) throws IOException {
+        try (PreparedStatement ps = conn.prepareStatement(INSERT_DATA)) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            ps.setString(1, getId(hash, mediaType));
+            ps.setBytes(2, BlockCompressedByteChannel.compress(bytes, bytes.length));
+            ps.setBytes(3, writeMetadata(metadata));
+            ps.executeUpdate();
+
+            if (++putsSinceCheck >= CHECK_SIZE_INTERVAL) {
+                putsSinceCheck = 0;
+                checkSize();
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void checkSize() throws SQLException {
+        long usedBytes;
+        try (Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery("PRAGMA page_size;"); //$NON-NLS-1$
+            long pageSize = rs.next() ? rs.getLong(1) : 0;
+            rs = stmt.executeQuery("PRAGMA page_count;"); //$NON-NLS-1$
+            long pages = rs.next() ? rs.getLong(1) : 0;
+            rs = stmt.executeQuery("PRAGMA freelist_count;"); //$NON-NLS-1$
+            pages -= rs.next() ? rs.getLong(1) : 0;
+            usedBytes = pages * pageSize;
+        }
+        if (usedBytes <= maxBytes) {
+            return;
+        }
+        long count;
+        try (Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery(SELECT_COUNT);
+            count = rs.next() ? rs.getLong(1) : 0;
+        }
+        try (PreparedStatement ps = conn.prepareStatement(DELETE_OLDEST)) {
+            double excess = (usedBytes - maxBytes * EVICT_TARGET) / usedBytes;
+            ps.setLong(1, Math.max(1, (long) Math.ceil(count * excess)));
+            int deleted = ps.executeUpdate();
+            LOGGER.info("Parse results cache reached {} bytes, {} oldest entries removed.", usedBytes, deleted); //$NON-NLS-1$
+        }
+    }
+
+    private static String decompress(byte[] data) throws IOException {
+        try (BlockCompressedByteChannel channel = new BlockCompressedByteChannel(data, null, null)) {
+            ByteBuffer bb = ByteBuffer.allocate((int) channel.size());
+            while (bb.hasRemaining() && channel.read(bb) != -1)
+                ;
+            return new String(bb.array(), 0, bb.position(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static byte[] writeMetadata(Metadata metadata) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(baos)) {
+            String[] names = metadata.names();
+            dos.writeInt(names.length);
+            for (String name : names) {
+                writeString(dos, name);
+                String[] values = metadata.getValues(name);
+                dos.writeInt(values.length);
+                for (String value : values) {
+                    writeString(dos, value);
+                }
+            }
+        }
+        return baos.toByteArray();
+    }
+
+    private static Metadata readMetadata(byte[] data) throws IOException {
+        Metadata metadata = new Metadata();
+        try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data))) {
+            int numNames = dis.readInt();
+            for (int i = 0; i < numNames; i++) {
+                String name = readString(dis);
+                int numValues = dis.readInt();
+                for (int j = 0; j < numValues; j++) {
+                    metadata.add(name, readString(dis));
+                }
+            }
+        }
+        return metadata;
+    }
+
+    // writeUTF() is limited to 64KB strings
+    private static void writeString(DataOutputStream dos, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+
+    private static String readString(DataInputStream dis) throws IOException {
+        byte[] bytes = new byte[dis.readInt()];
+        dis.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+}
@@ -18,11 +18,15 @@
  */
 package iped.engine.task;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.Reader;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -33,6 +37,7 @@
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.compress.archivers.ArchiveStreamFactory;
 import org.apache.tika.exception.TikaException;
 import org.apache.tika.extractor.EmbeddedDocumentExtractor;
@@ -57,6 +62,7 @@
 import iped.data.ICaseData;
 import iped.data.IItem;
 import iped.data.IItemReader;
+import iped.engine.Version;
 import iped.engine.config.CategoryToExpandConfig;
 import iped.engine.config.Configuration;
 import iped.engine.config.ConfigurationManager;
@@ -164,6 +170,13 @@ public class ParsingTask extends ThumbTask implements EmbeddedDocumentExtractor
     private static AtomicInteger containersBeingExpanded = new AtomicInteger();
     private static AtomicBoolean tikaSAXPoolSizeSet = new AtomicBoolean(false);
 
+    /**
+     * Texts bigger than this are not stored in the parse results cache
+     */
+    private static final int MAX_CACHED_TEXT_LEN = 2 << 20;
+
+    private static ParseResultCache parseCache;
+
     private CategoryToExpandConfig expandConfig;
     private ParsingTaskConfig parsingConfig;
 
@@ -367,6 +380,10 @@ private void safeProcess(IItem evidence) throws Exception {
             }
         }
 
+        if (isToUseParseCache(evidence) && loadParseResult(evidence)) {
+            return;
+        }
+
         TikaInputStream tis = null;
         try {
             tis = evidence.getTikaStream();
@@ -396,6 +413,15 @@ private void safeProcess(IItem evidence) throws Exception {
             zipBombStatsMap.put(evidence.getId(), new ZipBombStats(evidence.getLength()));
         }
 
+        Map<String, List<String>> prevMetadata = null;
+        if (isToUseParseCache(evidence)) {
+            prevMetadata = new HashMap<>();
+            for (String name : metadata.names()) {
+                prevMetadata.put(name, Arrays.asList(metadata.getValues(name)));
+            }
+        }
+
+        TextCache parsedText = null;
         try {
             reader = new ParsingReader(this.autoParser, tis, metadata, context);
             reader.startBackgroundParsing();
@@ -413,6 +439,7 @@ private void safeProcess(IItem evidence) throws Exception {
             ((Item) evidence).setParsedTextCache(textCache);
             evidence.setParsed(true);
             totalText.addAndGet(textCache.getSize());
+            parsedText = textCache;
 
         } catch (IOException e) {
             if (e.toString().contains("Write end dead"))
@@ -430,11 +457,90 @@ private void safeProcess(IItem evidence) throws Exception {
             if (numSubitems > 0) {
                 evidence.setExtraAttribute(NUM_SUBITEMS, numSubitems);
             }
+            if (prevMetadata != null && parsedText != null) {
+                storeParseResult(evidence, parsedText, prevMetadata);
+            }
             handleMetadata(evidence);
         }
 
     }
 
+    private boolean isToUseParseCache(IItem evidence) {
+        return parseCache != null && !extractEmbedded && evidence.getHash() != null && evidence.getLength() != null
+                && evidence.getLength() > 0;
+    }
+
+    /**
+     * Sets text and metadata of an item with the same content parsed before.
+     * 
+     * @return true if a cached result was found
+     */
+    private boolean loadParseResult(IItem evidence) {
+        try {
+            ParseResultCache.CachedResult result = parseCache.get(evidence.getHash(),
+                    evidence.getMediaType().toString());
+            if (result == null) {
+                return false;
+            }
+            Metadata metadata = evidence.getMetadata();
+            Metadata cachedMetadata = result.getMetadata();
+            for (String name : cachedMetadata.names()) {
+                metadata.remove(name);
+                for (String value : cachedMetadata.getValues(name)) {
+                    metadata.add(name, value);
+                }
+            }
+            TextCache textCache = new TextCache();
+            textCache.setEnableDiskCache(parsingConfig.isStoreTextCacheOnDisk());
+            textCache.write(result.getText());
+            ((Item) evidence).setParsedTextCache(textCache);
+            evidence.setParsed(true);
+            totalText.addAndGet(textCache.getSize());
+            handleMetadata(evidence);
+            return true;
+
+        } catch (IOException e) {
+            LOGGER.warn("Error reading parse results cache: " + evidence.toString(), e); //$NON-NLS-1$
+            return false;
+        }
+    }
+
+    /**
+     * Stores text and metadata set by the parser, if parsing finished without
+     * timeouts, errors or subitems.
+     */
+    private void storeParseResult(IItem evidence, TextCache textCache, Map<String, List<String>> prevMetadata) {
+        Metadata metadata = evidence.getMetadata();
+        if (numSubitems > 0 || textCache.getSize() > MAX_CACHED_TEXT_LEN || Thread.currentThread().isInterrupted()
+                || metadata.get(StandardParser.INDEXER_TIMEOUT) != null
+                || metadata.get(StandardParser.PARSER_EXCEPTION) != null) {
+            return;
+        }
+        try {
+            StringBuilder sb = new StringBuilder((int) textCache.getSize());
+            char[] cbuf = new char[64 * 1024];
+            try (Reader textReader = textCache.getTextReader()) {
+                int len;
+                while ((len = textReader.read(cbuf)) != -1) {
+                    sb.append(cbuf, 0, len);
+                }
+            }
+            Metadata changed = new Metadata();
+            for (String name : metadata.names()) {
+                List<String> values = Arrays.asList(metadata.getValues(name));
+                if (!values.equals(prevMetadata.getOrDefault(name, Collections.emptyList()))) {
+                    for (String value : values) {
+                        changed.add(name, value);
+                    }
+                }
+            }
+            parseCache.put(evidence.getHash(), evidence.getMediaType().toString(), sb.toString(), changed);
+
+        } catch (IOException e) {
+            LOGGER.warn("Error writing to parse results cache: " + evidence.toString(), e); //$NON-NLS-1$
+        }
+    }
+
     private final void handleMetadata(IItem evidence) {
         // Ajusta metadados:
         Metadata metadata = evidence.getMetadata();
@@ -784,6 +890,56 @@ public void init(ConfigurationManager configurationManager) {
 
         this.autoParser = new StandardParser();
 
+        if (parsingConfig.isEnableParseCache() && parsingConfig.isEnabled()) {
+            initParseCache(configurationManager, output);
+        }
+
+    }
+
+    private synchronized static void initParseCache(ConfigurationManager configurationManager, File output) {
+        if (parseCache != null) {
+            return;
+        }
+        ParsingTaskConfig parsingConfig = configurationManager.findObject(ParsingTaskConfig.class);
+        File dbFile;
+        String path = parsingConfig.getParseCachePath();
+        if (path == null) {
+            dbFile = new File(output, OCRParser.TEXT_DIR + "/" + ParseResultCache.DEFAULT_FILE_NAME); //$NON-NLS-1$
+        } else {
+            if (path.startsWith("~")) { //$NON-NLS-1$
+                path = System.getProperty("user.home") + path.substring(1); //$NON-NLS-1$
+            }
+            dbFile = new File(path);
+        }
+        try {
+            parseCache = new ParseResultCache(dbFile, parsingConfig.getMaxParseCacheSizeMB() * (1L << 20),
+                    getParseCacheConfigKey(configurationManager));
+            LOGGER.info("Using parse results cache " + dbFile.getAbsolutePath()); //$NON-NLS-1$
+
+        } catch (Exception e) {
+            throw new IPEDException("Error opening parse results cache " + dbFile.getAbsolutePath(), e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Identifies configurations affecting parsing results, so cached results of
+     * other configurations or versions are not reused.
+     */
+    private static String getParseCacheConfigKey(ConfigurationManager configurationManager) throws IOException {
+        ParsingTaskConfig parsingConfig = configurationManager.findObject(ParsingTaskConfig.class);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeUTF(Version.APP_VERSION);
+            oos.writeBoolean(parsingConfig.isParseCorruptedFiles());
+            oos.writeBoolean(parsingConfig.isParseUnknownFiles());
+            oos.writeInt(parsingConfig.getMinRawStringSize());
+            oos.writeBoolean(parsingConfig.isSortPDFChars());
+            oos.writeBoolean(parsingConfig.isProcessImagesInPDFs());
+            oos.writeObject(parsingConfig.getPhoneParsersToUse());
+            oos.writeObject(configurationManager.findObject(ParsersConfig.class));
+            oos.writeObject(configurationManager.findObject(OCRConfig.class));
+        }
+        return DigestUtils.md5Hex(baos.toByteArray());
     }
 
     public static void setupParsingOptions(ConfigurationManager configurationManager) {
@@ -877,6 +1033,14 @@ public void finish() throws Exception {
             WhatsAppParser.clearStaticResources();
         }
         totalText = null;
+        closeParseCache();
+    }
+
+    private synchronized static void closeParseCache() throws IOException {
+        if (parseCache != null) {
+            parseCache.close();
+            parseCache = null;
+        }
     }
 
     public static void copyTimesPerParser(Map<String,Long> dest) {
@@ -0,0 +1,194 @@
+package iped.engine.task;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Writes compressed item contents into one sqlite storage shard using a
+ * dedicated thread, grouping inserts in batches, so workers do not wait for
+ * sqlite. Contents not written yet are kept in memory and are returned by
+ * {@link #getPending(String)}, so they can be read right after being queued.
+ */
+class SQLiteStorageWriter {
+
+    private static Logger LOGGER = LogManager.getLogger(SQLiteStorageWriter.class);
+
+    private static final int MAX_BATCH_SIZE = 256;
+
+    private static final int MAX_PENDING_BYTES = 1 << 25;
+
+    private final Connection con;
+
+    private final String insertSql;
+
+    private final LinkedBlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+
+    private final ConcurrentHashMap<String, byte[]> pending = new ConcurrentHashMap<>();
+
+    private final Semaphore pendingBytes = new Semaphore(MAX_PENDING_BYTES);
+
+    private final Thread thread;
+
+    private volatile boolean closed = false;
+
+    private volatile SQLException exception;
+
+    // sequence of the last queued and of the last written entries, guarded by this
+    private long queuedSeq = 0;
+
+    private long writtenSeq = 0;
+
+    private static class Entry {
+
+        private final String id;
+        private final long seq;
+
+        private Entry(String id, long seq) {
+            this.id = id;
+            this.seq = seq;
+        }
+    }
+
+    SQLiteStorageWriter(Connection con, String insertSql, String name) {
+        this.con = con;
+        this.insertSql = insertSql;
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues the compressed data to be inserted, blocking if too much data is
+     * waiting to be written.
+     *
+     * @return false if the id was already queued and not written yet.
+     */
+    boolean add(String id, byte[] data) throws InterruptedException, SQLException {
+        checkException();
+        if (pending.putIfAbsent(id, data) != null) {
+            return false;
+        }
+        try {
+            pendingBytes.acquire(permits(data));
+        } catch (InterruptedException e) {
+            pending.remove(id);
+            throw e;
+        }
+        synchronized (this) {
+            queue.add(new Entry(id, ++queuedSeq));
+        }
+        return true;
+    }
+
+    byte[] getPending(String id) {
+        return pending.get(id);
+    }
+
+    /**
+     * Waits until the data queued before this call is written to the database.
+     * Data queued after it is not waited for.
+     */
+    void flush() throws SQLException {
+        synchronized (this) {
+            long seq = queuedSeq;
+            while (writtenSeq < seq && exception == null && thread.isAlive()) {
+                try {
+                    wait(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        checkException();
+    }
+
+    void close() throws SQLException {
+        flush();
+        closed = true;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkException() throws SQLException {
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private static int permits(byte[] data) {
+        return Math.min(data.length, MAX_PENDING_BYTES);
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>();
+        while (!closed) {
+            try {
+                Entry entry = queue.poll(1, TimeUnit.SECONDS);
+                if (entry == null) {
+                    continue;
+                }
+                batch.add(entry);
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                write(batch);
+
+                // removes data only after it is visible in the database
+                for (Entry written : batch) {
+                    byte[] data = pending.remove(written.id);
+                    if (data != null) {
+                        pendingBytes.release(permits(data));
+                    }
+                }
+                synchronized (this) {
+                    writtenSeq = batch.get(batch.size() - 1).seq;
+                    notifyAll();
+                }
+                batch.clear();
+
+            } catch (InterruptedException e) {
+                // closing
+            } catch (SQLException e) {
+                // keeps data not written as pending, so it is still readable, and reports it
+                List<String> ids = new ArrayList<>();
+                for (Entry failed : batch) {
+                    ids.add(failed.id);
+                }
+                SQLException error = new SQLException("Error writing to sqlite storage ids " + ids, e); //$NON-NLS-1$
+                LOGGER.error(error.getMessage(), e);
+                synchronized (this) {
+                    exception = error;
+                    notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    private void write(List<Entry> batch) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(insertSql)) {
+            for (Entry entry : batch) {
+                byte[] data = pending.get(entry.id);
+                ps.setString(1, entry.id);
+                ps.setBytes(2, data);
+                ps.setBytes(3, data);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+}
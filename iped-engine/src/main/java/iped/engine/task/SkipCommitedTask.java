@@ -14,7 +14,6 @@
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexNotFoundException;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReader;
@@ -28,6 +27,7 @@
 import iped.engine.config.ConfigurationManager;
 import iped.engine.datasource.UfedXmlReader;
 import iped.engine.lucene.DocValuesUtil;
+import iped.engine.lucene.IndexPartitions;
 import iped.engine.lucene.SlowCompositeReaderWrapper;
 import iped.engine.task.carver.BaseCarveTask;
 import iped.engine.task.index.IndexItem;
@@ -96,7 +96,7 @@ public void init(ConfigurationManager configurationManager) throws Exception {
             return;
         }
 
-        try (IndexReader reader = DirectoryReader.open(worker.writer, true, true)) {
+        try (IndexReader reader = IndexPartitions.openReader(worker.writer, true, true)) {
             LeafReader aReader = SlowCompositeReaderWrapper.wrap(reader);
 
             SortedDocValues evidenceUUIDs = aReader.getSortedDocValues(BasicProps.EVIDENCE_UUID);
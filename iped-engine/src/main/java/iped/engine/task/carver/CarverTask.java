@@ -1,18 +1,12 @@
 package iped.engine.task.carver;
 
 import java.io.File;
-import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.TreeMap;
 
 import org.apache.tika.mime.MediaType;
-import org.arabidopsis.ahocorasick.AhoCorasick;
-import org.arabidopsis.ahocorasick.SearchResult;
-import org.arabidopsis.ahocorasick.Searcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,7 +14,6 @@
 import iped.carvers.api.Carver;
 import iped.carvers.api.CarverType;
 import iped.carvers.api.Hit;
-import iped.carvers.api.Signature;
 import iped.carvers.standard.JSCarver;
 import iped.configuration.Configurable;
 import iped.data.IItem;
@@ -43,17 +36,17 @@ public class CarverTask extends BaseCarveTask {
     public static boolean ignoreCorrupted = true;
 
     private static CarverType[] carverTypes;
+    private static SignatureScanner.Signatures signatures;
     private static Logger LOGGER = LoggerFactory.getLogger(CarverTask.class);
-    private static int largestPatternLen = 100;
 
     protected HashMap<CarverType, Carver> registeredCarvers = new HashMap<CarverType, Carver>();
     private CarvedItemListener carvedItemListener = null;
     IItem evidence;
 
     long prevLen = 0;
-    int len = 0, k = 0;
-    byte[] buf = new byte[1024 * 1024];
-    byte[] cBuf;
+
+    // reused by the instances created for each item processed by this worker
+    private SignatureScanner scanner;
 
     public static void setEnabled(boolean enabled) {
         enableCarving = enabled;
@@ -72,6 +65,10 @@ public void process(IItem evidence) {
         // Nova instancia pois o mesmo objeto é reusado e nao é imutável
         CarverTask carver = new CarverTask();
         carver.setWorker(worker);
+        if (scanner == null) {
+            scanner = new SignatureScanner(signatures);
+        }
+        carver.scanner = scanner;
         carver.safeProcess(evidence);
 
         // Ao terminar o tratamento do item, caso haja referência ao mesmo no mapa de
@@ -130,83 +127,24 @@ private void safeProcess(IItem evidence) {
 
     }
 
-    private void fillBuf(InputStream in) throws IOException {
-        prevLen += len;
-        len = 0;
-        k = 0;
-        while (k != -1 && (len += k) < buf.length) {
-            k = in.read(buf, len, buf.length - len);
-        }
-
-        cBuf = new byte[len];
-        System.arraycopy(buf, 0, cBuf, 0, len);
-
-    }
-
-    private Hit findSig(InputStream in) throws Exception {
-        HashMap<CarverType, TreeMap<Long, Integer>> map = new HashMap<>();
-        for (int i = 0; i < carverTypes.length; i++) {
-            map.put(carverTypes[i], new TreeMap<Long, Integer>());
-        }
-
-        AhoCorasick tree = carverConfig.getPopulatedTree();
-        SearchResult lastResult = new SearchResult(tree.root, null, 0);
-        do {
-            fillBuf(in);
-            lastResult = new SearchResult(lastResult.lastMatchedState, cBuf, 0);
-            Iterator<SearchResult> searcher = new Searcher(tree, tree.continueSearch(lastResult));
-
-            while (searcher.hasNext()) {
-                lastResult = searcher.next();
-
-                for (Object out : lastResult.getOutputs()) {
-                    Object[] oarray = (Object[]) out;
-                    Signature sig = (Signature) oarray[0];
-                    int seq = (int) oarray[1];
-                    int i = lastResult.getLastIndex() - sig.seqEndPos[seq];
-
-                    // tratamento para assinaturas com ? (divididas)
-                    if (sig.seqs.length > 1) {
-                        Integer hits = (Integer) map.get(sig.getCarverType()).get(prevLen + i);
-                        if (hits == null) {
-                            hits = 0;
-                        }
-                        if (hits != seq) {
-                            continue;
-                        }
-                        map.get(sig.getCarverType()).put(prevLen + i, ++hits);
-                        if (map.get(sig.getCarverType()).size() > largestPatternLen) {
-                            map.get(sig.getCarverType()).remove(map.get(sig.getCarverType()).firstKey());
-                        }
-
-                        if (hits < sig.seqs.length) {
-                            continue;
-                        }
-                    }
-
-                    Hit hit = null;
-                    hit = new Hit(sig, prevLen + i);
-
-                    Carver carver = getCarver(sig.getCarverType());
-
-                    try {
-                        carver.notifyHit(this.evidence, hit);
-                    } catch (Exception e) {
-                        LOGGER.warn("{} Skipping unexpected error carving on hit {} {} - CarverClass {}", //$NON-NLS-1$
-                                Thread.currentThread().getName(), evidence.getPath(), hit.getOffset(),
-                                carver.getClass().getName());
-                        e.printStackTrace();
-                    }
-                }
+    private void findSig(InputStream in) throws Exception {
+
+        scanner.scan(in, prevLen, (sig, offset) -> {
+            Hit hit = new Hit(sig, offset);
+            Carver carver = getCarver(sig.getCarverType());
+            try {
+                carver.notifyHit(this.evidence, hit);
+            } catch (Exception e) {
+                LOGGER.warn("{} Skipping unexpected error carving on hit {} {} - CarverClass {}", //$NON-NLS-1$
+                        Thread.currentThread().getName(), evidence.getPath(), hit.getOffset(),
+                        carver.getClass().getName());
+                e.printStackTrace();
             }
-
-        } while (k != -1);
+        });
 
         for (Carver carver : registeredCarvers.values()) {
             carver.notifyEnd(this.evidence);
         }
-
-        return null;
     }
 
     @Override
@@ -233,6 +171,11 @@ public void init(ConfigurationManager configurationManager) throws Exception {
             carverTypes = carverConfig.getCarverTypes();
             ignoreCorrupted = carverConfig.isToIgnoreCorrupted();
         }
+        synchronized (CarverTask.class) {
+            if (signatures == null && carverTypes != null) {
+                signatures = new SignatureScanner.Signatures(carverTypes);
+            }
+        }
     }
 
     @Override
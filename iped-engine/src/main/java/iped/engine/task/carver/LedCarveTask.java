@@ -1,18 +1,25 @@
 package iped.engine.task.carver;
 
-import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -30,6 +37,7 @@
 import iped.engine.hashdb.HashDBDataSource;
 import iped.engine.hashdb.LedHashDB;
 import iped.engine.hashdb.LedItem;
+import iped.io.SeekableInputStream;
 import iped.properties.MediaTypes;
 import iped.utils.IOUtil;
 
@@ -75,11 +83,6 @@ public class LedCarveTask extends BaseCarveTask {
      */
     private static final AtomicLong num512hit = new AtomicLong();
 
-    /**
-     * Digest utilizado para cálculo do MD5.
-     */
-    private MessageDigest digest = null;
-
     /**
      * Base de hashes, com MD5 dos 512 bytes e 64 KBytes iniciais, e respectivos registros na base.
      */
@@ -89,6 +92,21 @@ public class LedCarveTask extends BaseCarveTask {
 
     private static final String cachePath = System.getProperty("user.home") + "/.iped/ledcarve.cache";
 
+    private static final int LED_512 = 512;
+
+    private static final int LED_64K = 65536;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Items at least this large are scanned in parallel ranges.
+     */
+    private static final long MIN_PARALLEL_LENGTH = 1L << 28;
+
+    private static final long MIN_RANGE_LENGTH = 1L << 26;
+
+    private static ExecutorService rangeExecutor;
+
     @Override
     public boolean isEnabled() {
         return taskEnabled;
@@ -138,6 +156,7 @@ public void init(ConfigurationManager configurationManager) throws Exception {
                             }
                             if (ledHashDB != null && ledHashDB.size() > 0) {
                                 logger.info("{} LED Hashes loaded in {} ms.", ledHashDB.size(), System.currentTimeMillis() - t);
+                                rangeExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
                                 taskEnabled = true;
                             }
                         }
@@ -147,7 +166,6 @@ public void init(ConfigurationManager configurationManager) throws Exception {
                 init.set(true);
             }
         }
-        if (taskEnabled) digest = MessageDigest.getInstance("MD5");
     }
 
     /**
@@ -157,6 +175,7 @@ public void finish() throws Exception {
         synchronized (finished) {
             if (taskEnabled && !finished.get()) {
                 ledHashDB = null;
+                rangeExecutor.shutdown();
                 hashDBDataSource.close();
                 ledCarved.clear();
                 NumberFormat nf = new DecimalFormat("#,##0");
@@ -172,80 +191,157 @@ protected void process(IItem evidence) throws Exception {
         // Verifica se está desabilitado e se o tipo de arquivo é tratado
         if (!taskEnabled || caseData.isIpedReport() || !isAcceptedType(evidence.getMediaType()) || !isToProcess(evidence)) return;
 
-        byte[] buf512 = new byte[512];
-        byte[] buf64K = new byte[65536 - buf512.length];
-        BufferedInputStream is = null;
+        Long length = evidence.getLength();
+        int numRanges = 1;
+        if (length != null && length >= MIN_PARALLEL_LENGTH) {
+            numRanges = (int) Math.min(Runtime.getRuntime().availableProcessors(), length / MIN_RANGE_LENGTH);
+        }
 
-        int cntCarvedItems = 0;
-        long cnt512hit = 0;
-        long cnt512total = 0;
-        long cntBytesHashed = 0;
-        Set<Long> offsets = null;
+        List<SectorScan> scans = new ArrayList<>();
         try {
-            long offset = 0;
-            int read512 = 0;
-            is = evidence.getBufferedInputStream();
-            while ((read512 = is.readNBytes(buf512, 0, buf512.length)) > 0) {
-                if (read512 != buf512.length) break;
-                cnt512total++;
-                boolean empty = true;
-                byte first = buf512[0];
-                for (int i = 1; i < read512; i++) {
-                    if (buf512[i] != first) {
-                        empty = false;
-                        break;
-                    }
+            if (numRanges <= 1) {
+                try (InputStream is = evidence.getBufferedInputStream()) {
+                    SectorScan scan = new SectorScan(0, Long.MAX_VALUE);
+                    scans.add(scan);
+                    scan.scan(is);
                 }
-                if (!empty) {
-                    digest.update(buf512, 0, read512);
-                    cntBytesHashed += read512;
-                    byte[] hash512 = digest.digest();
-                    if (ledHashDB.containsMD5_512(hash512)) {
-                        cnt512hit++;
-                        is.mark(65536);
-                        int read64K = is.readNBytes(buf64K, 0, buf64K.length);
-                        is.reset();
-                        if (read64K == buf64K.length) {
-                            cntBytesHashed += read512 + read64K;
-                            digest.update(buf512, 0, read512);
-                            digest.update(buf64K, 0, read64K);
-                            byte[] hash64K = digest.digest();
-                            int hashId = ledHashDB.hashIdFromMD5_64K(hash64K);
-                            if (hashId >= 0) {
-                                LedItem ledItem = hashDBDataSource.getLedItem(hashId);
-                                if (ledItem != null) {
-                                    String name = "CarvedLed-" + offset;
-                                    String ext = ledItem.getExt();
-                                    if (ext != null) name += '.' + ext.toLowerCase();
-                                    IItem carvedItem = createCarvedFile(evidence, offset, ledItem.getLength(), name, null);
-                                    if (carvedItem != null) {
-                                        carvedItem.setExtraAttribute("ledCarvedMD5", ledItem.getMD5());
-                                        cntCarvedItems++;
-                                        if (offsets == null) {
-                                            offsets = new HashSet<Long>();
-                                            synchronized (ledCarved) {
-                                                ledCarved.put(evidence, offsets);
-                                            }
-                                        }
-                                        offsets.add(offset);
-                                        addOffsetFile(carvedItem, evidence);
-                                    }
-                                }
-                            }
+            } else {
+                // blocks are aligned to 512 bytes from the item start
+                long rangeLen = (length / numRanges + 511) & ~511L;
+                List<Future<SectorScan>> futures = new ArrayList<>();
+                for (int i = 0; i < numRanges; i++) {
+                    SectorScan scan = new SectorScan(i * rangeLen, i == numRanges - 1 ? Long.MAX_VALUE : (i + 1) * rangeLen);
+                    futures.add(rangeExecutor.submit(() -> {
+                        try (SeekableInputStream is = evidence.getSeekableInputStream()) {
+                            is.seek(scan.start);
+                            scan.scan(is);
                         }
+                        return scan;
+                    }));
+                }
+                for (Future<SectorScan> future : futures) {
+                    try {
+                        scans.add(future.get());
+                    } catch (ExecutionException e) {
+                        logger.warn(evidence.toString(), e.getCause());
                     }
                 }
-                offset += read512;
             }
         } catch (Exception e) {
             logger.warn(evidence.toString(), e);
-        } finally {
-            IOUtil.closeQuietly(is);
+        }
+
+        int cntCarvedItems = 0;
+        Set<Long> offsets = null;
+        for (SectorScan scan : scans) {
+            for (int i = 0; i < scan.numHits; i++) {
+                long offset = scan.hitOffsets[i];
+                LedItem ledItem = hashDBDataSource.getLedItem(scan.hitHashIds[i]);
+                if (ledItem != null) {
+                    String name = "CarvedLed-" + offset;
+                    String ext = ledItem.getExt();
+                    if (ext != null) name += '.' + ext.toLowerCase();
+                    IItem carvedItem = createCarvedFile(evidence, offset, ledItem.getLength(), name, null);
+                    if (carvedItem != null) {
+                        carvedItem.setExtraAttribute("ledCarvedMD5", ledItem.getMD5());
+                        cntCarvedItems++;
+                        if (offsets == null) {
+                            offsets = new HashSet<Long>();
+                            synchronized (ledCarved) {
+                                ledCarved.put(evidence, offsets);
+                            }
+                        }
+                        offsets.add(offset);
+                        addOffsetFile(carvedItem, evidence);
+                    }
+                }
+            }
+            num512hit.addAndGet(scan.cnt512hit);
+            num512total.addAndGet(scan.cnt512total);
+            bytesHashed.addAndGet(scan.cntBytesHashed);
         }
         numCarvedItems.addAndGet(cntCarvedItems);
-        num512hit.addAndGet(cnt512hit);
-        num512total.addAndGet(cnt512total);
-        bytesHashed.addAndGet(cntBytesHashed);
+    }
+
+    /**
+     * Scans the 512 bytes blocks starting in a range of the item, using large
+     * reads. Blocks with known MD5 of the initial 512 bytes and 64 KBytes are
+     * collected to be carved later by the item worker.
+     */
+    private static class SectorScan {
+
+        private final long start, end;
+        private final MessageDigest digest;
+
+        private long[] hitOffsets = new long[16];
+        private int[] hitHashIds = new int[16];
+        private int numHits = 0;
+
+        private long cnt512hit = 0;
+        private long cnt512total = 0;
+        private long cntBytesHashed = 0;
+
+        private SectorScan(long start, long end) throws NoSuchAlgorithmException {
+            this.start = start;
+            this.end = end;
+            this.digest = MessageDigest.getInstance("MD5");
+        }
+
+        private void scan(InputStream is) throws IOException {
+            // buffer keeps the next 64 KBytes after the last block scanned
+            byte[] buf = new byte[BUFFER_SIZE + LED_64K];
+            long bufOffset = start;
+            int len = 0;
+            boolean eof = false;
+            while (true) {
+                while (!eof && len < buf.length) {
+                    int read = is.read(buf, len, buf.length - len);
+                    if (read < 0) eof = true;
+                    else len += read;
+                }
+                int pos = 0;
+                for (; pos + LED_512 <= len && bufOffset + pos < end && (eof || pos + LED_64K <= len); pos += LED_512) {
+                    scanBlock(buf, pos, len, bufOffset + pos);
+                }
+                if (eof || bufOffset + pos >= end) break;
+                System.arraycopy(buf, pos, buf, 0, len - pos);
+                len -= pos;
+                bufOffset += pos;
+            }
+        }
+
+        private void scanBlock(byte[] buf, int pos, int len, long offset) {
+            cnt512total++;
+            byte first = buf[pos];
+            boolean empty = true;
+            for (int i = pos + 1; i < pos + LED_512; i++) {
+                if (buf[i] != first) {
+                    empty = false;
+                    break;
+                }
+            }
+            if (empty) return;
+            digest.update(buf, pos, LED_512);
+            cntBytesHashed += LED_512;
+            byte[] hash512 = digest.digest();
+            if (ledHashDB.containsMD5_512(hash512)) {
+                cnt512hit++;
+                if (pos + LED_64K <= len) {
+                    cntBytesHashed += LED_64K;
+                    digest.update(buf, pos, LED_64K);
+                    byte[] hash64K = digest.digest();
+                    int hashId = ledHashDB.hashIdFromMD5_64K(hash64K);
+                    if (hashId >= 0) {
+                        if (numHits == hitOffsets.length) {
+                            hitOffsets = Arrays.copyOf(hitOffsets, numHits * 2);
+                            hitHashIds = Arrays.copyOf(hitHashIds, numHits * 2);
+                        }
+                        hitOffsets[numHits] = offset;
+                        hitHashIds[numHits++] = hashId;
+                    }
+                }
+            }
+        }
     }
 
     public static boolean isAcceptedType(MediaType mediaType) {
@@ -273,6 +369,8 @@ private boolean writeCache(File hashDBFile) {
             os.write(ledHashDB.getMD5_64K());
             os.writeInt(ledHashDB.getHashIds().length);
             IOUtil.writeIntArray(os, ledHashDB.getHashIds());
+            os.writeInt(ledHashDB.getMD5_512Filter().length);
+            IOUtil.writeLongArray(os, ledHashDB.getMD5_512Filter());
             ret = true;
         } catch (Exception e) {
             logger.warn("Error writing cache file " + cacheFile.getPath(), e);
@@ -308,8 +406,12 @@ private boolean readCache(File hashDBFile) {
                             len = is.readInt();
                             int[] hashIds = IOUtil.readIntArray(is, len);
                             if (hashIds != null) {
-                                ledHashDB = new LedHashDB(md5_512, md5_64k, hashIds);
-                                ret = true;
+                                len = is.readInt();
+                                long[] filter = IOUtil.readLongArray(is, len);
+                                if (filter != null) {
+                                    ledHashDB = new LedHashDB(md5_512, md5_64k, hashIds, filter);
+                                    ret = true;
+                                }
                             }
                         }
                     }
@@ -0,0 +1,286 @@
+package iped.engine.task.carver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.arabidopsis.ahocorasick.ByteDFA;
+import org.arabidopsis.ahocorasick.ByteDFA.MatchListener;
+
+import iped.carvers.api.CarverType;
+import iped.carvers.api.Signature;
+
+/**
+ * Streaming scanner of carving signatures. The signatures sequences are
+ * compiled once into a {@link ByteDFA}, whose state is kept between reads, so
+ * the same read buffer is reused without copies. Partial matches of signatures
+ * with wildcards and found hits are tracked in primitive arrays, and hits are
+ * reported in signature offset order.
+ *
+ * Instances are not thread safe, each worker must use its own.
+ */
+public class SignatureScanner implements MatchListener {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    public interface HitListener {
+        void hit(Signature signature, long offset);
+    }
+
+    /**
+     * Immutable automaton of the signatures, can be shared by scanners.
+     */
+    public static class Signatures {
+
+        private final ByteDFA dfa;
+        private final Signature[] signatures;
+        // signature and sequence index by automaton output
+        private final int[] outputSig;
+        private final int[] outputSeq;
+        private final int maxSigLength;
+
+        public Signatures(CarverType[] carverTypes) {
+            List<Signature> sigs = new ArrayList<>();
+            List<int[]> outs = new ArrayList<>();
+            ByteDFA.Builder builder = new ByteDFA.Builder();
+            int maxLen = 0;
+            for (CarverType ct : carverTypes) {
+                for (Signature sig : ct.getSignatures()) {
+                    if (sig.seqs == null || sig.seqs.length == 0) {
+                        continue;
+                    }
+                    int sigIdx = sigs.size();
+                    sigs.add(sig);
+                    for (int k = 0; k < sig.seqs.length; k++) {
+                        builder.add(sig.seqs[k], outs.size());
+                        outs.add(new int[] { sigIdx, k });
+                    }
+                    maxLen = Math.max(maxLen, Math.max(sig.getLength(), sig.seqEndPos[sig.seqs.length - 1]));
+                }
+            }
+            dfa = builder.build();
+            signatures = sigs.toArray(new Signature[0]);
+            outputSig = new int[outs.size()];
+            outputSeq = new int[outs.size()];
+            for (int i = 0; i < outs.size(); i++) {
+                outputSig[i] = outs.get(i)[0];
+                outputSeq[i] = outs.get(i)[1];
+            }
+            maxSigLength = maxLen;
+        }
+
+        public int getMaxSignatureLength() {
+            return maxSigLength;
+        }
+    }
+
+    /**
+     * Starts of signatures with wildcards whose first sequences were found, in
+     * increasing offset order, and the number of sequences found for each one.
+     */
+    private static class PartialMatches {
+
+        private final long[] starts;
+        private final int[] found;
+        private int head = 0, size = 0;
+
+        private PartialMatches(int capacity) {
+            starts = new long[capacity];
+            found = new int[capacity];
+        }
+
+        private void expire(long minStart) {
+            while (size > 0 && starts[head] < minStart) {
+                head = (head + 1) % starts.length;
+                size--;
+            }
+        }
+
+        private void add(long start) {
+            if (size == starts.length) {
+                // should not happen, starts are unique inside the window
+                head = (head + 1) % starts.length;
+                size--;
+            }
+            int idx = (head + size) % starts.length;
+            starts[idx] = start;
+            found[idx] = 1;
+            size++;
+        }
+
+        private int indexOf(long start) {
+            int low = 0, high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long value = starts[(head + mid) % starts.length];
+                if (value < start) {
+                    low = mid + 1;
+                } else if (value > start) {
+                    high = mid - 1;
+                } else {
+                    return (head + mid) % starts.length;
+                }
+            }
+            return -1;
+        }
+
+        private void clear() {
+            head = size = 0;
+        }
+    }
+
+    private final Signatures sigs;
+    private final PartialMatches[] partials;
+    private final byte[] buf = new byte[BUFFER_SIZE];
+
+    // min heap of hits not reported yet, by offset then by order found
+    private long[] heapOffset = new long[64];
+    private long[] heapOrder = new long[64];
+    private int[] heapSig = new int[64];
+    private int heapSize = 0;
+    private long hitCounter = 0;
+
+    private HitListener listener;
+
+    public SignatureScanner(Signatures sigs) {
+        this.sigs = sigs;
+        this.partials = new PartialMatches[sigs.signatures.length];
+        for (int i = 0; i < partials.length; i++) {
+            Signature sig = sigs.signatures[i];
+            if (sig.seqs.length > 1) {
+                partials[i] = new PartialMatches(sigs.maxSigLength + 1);
+            }
+        }
+    }
+
+    /**
+     * Scans the stream until its end, reporting found hits to the listener.
+     *
+     * @param startOffset
+     *            offset of the first byte of the stream in the item
+     */
+    public void scan(InputStream in, long startOffset, HitListener listener) throws IOException {
+        this.listener = listener;
+        for (PartialMatches p : partials) {
+            if (p != null) {
+                p.clear();
+            }
+        }
+        heapSize = 0;
+        int state = sigs.dfa.getInitialState();
+        long offset = startOffset;
+        try {
+            int len;
+            while ((len = readFully(in)) > 0) {
+                state = sigs.dfa.scan(buf, 0, len, state, offset, this);
+                offset += len;
+                // hits starting before this can not be found anymore
+                flushHits(offset - sigs.maxSigLength);
+            }
+            flushHits(Long.MAX_VALUE);
+        } finally {
+            this.listener = null;
+        }
+    }
+
+    private int readFully(InputStream in) throws IOException {
+        int len = 0, read = 0;
+        while (read != -1 && len < buf.length) {
+            read = in.read(buf, len, buf.length - len);
+            if (read > 0) {
+                len += read;
+            }
+        }
+        return len;
+    }
+
+    @Override
+    public void match(int output, long end) {
+        int sigIdx = sigs.outputSig[output];
+        int seq = sigs.outputSeq[output];
+        Signature sig = sigs.signatures[sigIdx];
+        long start = end - sig.seqEndPos[seq];
+        PartialMatches partial = partials[sigIdx];
+        if (partial != null) {
+            // signatures with wildcards: sequences must be found in order
+            partial.expire(end - sigs.maxSigLength);
+            if (seq == 0) {
+                partial.add(start);
+                return;
+            }
+            int idx = partial.indexOf(start);
+            if (idx == -1 || partial.found[idx] != seq) {
+                return;
+            }
+            if (++partial.found[idx] < sig.seqs.length) {
+                return;
+            }
+        }
+        pushHit(start, sigIdx);
+    }
+
+    private void pushHit(long offset, int sigIdx) {
+        if (heapSize == heapOffset.length) {
+            heapOffset = Arrays.copyOf(heapOffset, heapSize * 2);
+            heapOrder = Arrays.copyOf(heapOrder, heapSize * 2);
+            heapSig = Arrays.copyOf(heapSig, heapSize * 2);
+        }
+        int i = heapSize++;
+        long order = hitCounter++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!less(offset, order, heapOffset[parent], heapOrder[parent])) {
+                break;
+            }
+            set(i, heapOffset[parent], heapOrder[parent], heapSig[parent]);
+            i = parent;
+        }
+        set(i, offset, order, sigIdx);
+    }
+
+    private void flushHits(long maxOffset) {
+        while (heapSize > 0 && heapOffset[0] < maxOffset) {
+            long offset = heapOffset[0];
+            int sigIdx = heapSig[0];
+            removeFirst();
+            listener.hit(sigs.signatures[sigIdx], offset);
+        }
+    }
+
+    private void removeFirst() {
+        heapSize--;
+        long offset = heapOffset[heapSize];
+        long order = heapOrder[heapSize];
+        int sig = heapSig[heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize
+                    && less(heapOffset[child + 1], heapOrder[child + 1], heapOffset[child], heapOrder[child])) {
+                child++;
+            }
+            if (!less(heapOffset[child], heapOrder[child], offset, order)) {
+                break;
+            }
+            set(i, heapOffset[child], heapOrder[child], heapSig[child]);
+            i = child;
+        }
+        set(i, offset, order, sig);
+    }
+
+    private static boolean less(long off1, long order1, long off2, long order2) {
+        return off1 < off2 || (off1 == off2 && order1 < order2);
+    }
+
+    private void set(int i, long offset, long order, int sig) {
+        heapOffset[i] = offset;
+        heapOrder[i] = order;
+        heapSig[i] = sig;
+    }
+
+}
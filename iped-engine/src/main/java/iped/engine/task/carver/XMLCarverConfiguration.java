@@ -243,40 +243,33 @@ public CarverType[] getCarverTypes() {
     }
 
     /**
-     * Configures the Task passed as parameter
+     * Configures the Task passed as parameter. Signatures are scanned by
+     * {@link SignatureScanner}, the Aho-Corasick tree is just built if asked by
+     * {@link #getPopulatedTree()}.
      */
     @Override
     synchronized public void configListener(CarvedItemListener carvedItemListener)
             throws CarverConfigurationException {
-        try {
-            CarverType[] carverTypes = carverTypesArray.toArray(new CarverType[0]);
-
-            if (tree == null) {
-                tree = new AhoCorasick();
-                for (int i = 0; i < carverTypes.length; i++) {
-                    CarverType ct = carverTypes[i];
-                    ArrayList<Signature> sigs = ct.getSignatures();
-                    for (int j = 0; j < sigs.size(); j++) {
-                        Signature sig = sigs.get(j);
-                        if (sig.seqs != null) {
-                            for (int k = 0; k < sig.seqs.length; k++) {
-                                Object[] out = new Object[2];
-                                out[0] = sig;
-                                out[1] = k;
-                                tree.add(sig.seqs[k], out);
-                            }
+    }
+
+    synchronized public AhoCorasick getPopulatedTree() {
+        if (tree == null) {
+            AhoCorasick newTree = new AhoCorasick();
+            for (CarverType ct : carverTypesArray) {
+                for (Signature sig : ct.getSignatures()) {
+                    if (sig.seqs != null) {
+                        for (int k = 0; k < sig.seqs.length; k++) {
+                            Object[] out = new Object[2];
+                            out[0] = sig;
+                            out[1] = k;
+                            newTree.add(sig.seqs[k], out);
                         }
                     }
                 }
-                tree.prepare();
             }
-
-        } catch (Exception e) {
-            throw new CarverConfigurationException(e);
+            newTree.prepare();
+            tree = newTree;
         }
-    }
-
-    public AhoCorasick getPopulatedTree() {
         return tree;
     }
 
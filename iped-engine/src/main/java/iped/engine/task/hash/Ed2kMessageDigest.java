@@ -0,0 +1,73 @@
+package iped.engine.task.hash;
+
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * eDonkey hash: MD4 of each 9500KB chunk, the final hash is the MD4 of the
+ * concatenated chunk hashes if there is more than one of them.
+ */
+public class Ed2kMessageDigest extends MessageDigest {
+
+    public static final int CHUNK_SIZE = 9500 * 1024;
+
+    private final MessageDigest md4;
+
+    private int chunk = 0;
+    private long total = 0;
+    private ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    public Ed2kMessageDigest() throws NoSuchAlgorithmException {
+        super("edonkey"); //$NON-NLS-1$
+        md4 = MessageDigest.getInstance("MD4"); //$NON-NLS-1$
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return md4.getDigestLength();
+    }
+
+    @Override
+    protected void engineUpdate(byte input) {
+        engineUpdate(new byte[] { input }, 0, 1);
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len) {
+        while (len > 0) {
+            int toHash = Math.min(len, CHUNK_SIZE - chunk);
+            md4.update(input, offset, toHash);
+            chunk += toHash;
+            total += toHash;
+            offset += toHash;
+            len -= toHash;
+            if (chunk == CHUNK_SIZE) {
+                out.writeBytes(md4.digest());
+                chunk = 0;
+            }
+        }
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+        if (total == 0 || total % CHUNK_SIZE != 0) {
+            out.writeBytes(md4.digest());
+        }
+        byte[] ed2k = out.toByteArray();
+        if (ed2k.length > md4.getDigestLength()) {
+            ed2k = md4.digest(ed2k);
+        }
+        engineReset();
+        return ed2k;
+    }
+
+    @Override
+    protected void engineReset() {
+        md4.reset();
+        chunk = 0;
+        total = 0;
+        out = new ByteArrayOutputStream();
+    }
+
+}
@@ -0,0 +1,191 @@
+package iped.engine.task.hash;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Computes multiple digests of large streams in parallel. The stream is read by
+ * the calling thread into a bounded ring of buffers, each digest is updated by
+ * its own long-lived consumer thread. There is no task submission or latch
+ * creation per buffer, the threads just wait for the next buffer to be
+ * published or released.
+ *
+ * Instances are not thread safe, each processing thread should use its own.
+ */
+public class HashPipeline implements Closeable {
+
+    private final MessageDigest[] digests;
+    private final Thread[] consumers;
+    private final Exception[] errors;
+
+    private final byte[][] buffers;
+    private final int[] lengths;
+
+    // guarded by lock
+    private final long[] consumed;
+    private long published = 0;
+    private boolean closed = false;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition dataAvailable = lock.newCondition();
+    private final Condition bufferReleased = lock.newCondition();
+
+    public HashPipeline(List<MessageDigest> digests, int bufferSize, int numBuffers, String threadName) {
+        this.digests = digests.toArray(new MessageDigest[0]);
+        this.errors = new Exception[this.digests.length];
+        this.consumed = new long[this.digests.length];
+        this.buffers = new byte[numBuffers][bufferSize];
+        this.lengths = new int[numBuffers];
+        this.consumers = new Thread[this.digests.length];
+        for (int i = 0; i < consumers.length; i++) {
+            final int idx = i;
+            consumers[i] = new Thread(() -> consume(idx), threadName + "-" + this.digests[i].getAlgorithm()); //$NON-NLS-1$
+            consumers[i].setDaemon(true);
+            consumers[i].start();
+        }
+    }
+
+    private void consume(int idx) {
+        try {
+            while (true) {
+                long seq;
+                lock.lock();
+                try {
+                    while (consumed[idx] >= published && !closed) {
+                        dataAvailable.await();
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    seq = consumed[idx];
+                } finally {
+                    lock.unlock();
+                }
+
+                int slot = (int) (seq % buffers.length);
+                try {
+                    digests[idx].update(buffers[slot], 0, lengths[slot]);
+                } catch (Exception e) {
+                    errors[idx] = e;
+                }
+
+                lock.lock();
+                try {
+                    consumed[idx]++;
+                    bufferReleased.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (InterruptedException e) {
+            // closing
+        }
+    }
+
+    private long minConsumed() {
+        long min = Long.MAX_VALUE;
+        for (long c : consumed) {
+            if (c < min) {
+                min = c;
+            }
+        }
+        return min;
+    }
+
+    private int awaitFreeBuffer() throws InterruptedException {
+        lock.lock();
+        try {
+            while (published - minConsumed() >= buffers.length) {
+                bufferReleased.await();
+            }
+            return (int) (published % buffers.length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void publish(int slot, int len) {
+        lock.lock();
+        try {
+            lengths[slot] = len;
+            published++;
+            dataAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitConsumers() {
+        lock.lock();
+        try {
+            // consumers take at most a few buffers to finish, so wait even if interrupted
+            while (minConsumed() < published) {
+                bufferReleased.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads the whole stream and returns its digests, in the same order of the
+     * digests passed to the constructor.
+     */
+    public byte[][] digest(InputStream in) throws IOException, InterruptedException {
+        boolean success = false;
+        try {
+            int len;
+            do {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+                int slot = awaitFreeBuffer();
+                len = in.read(buffers[slot]);
+                if (len > 0) {
+                    publish(slot, len);
+                }
+            } while (len >= 0);
+
+            awaitConsumers();
+
+            for (int i = 0; i < digests.length; i++) {
+                if (errors[i] != null) {
+                    throw new IllegalStateException("Error computing " + digests[i].getAlgorithm(), errors[i]); //$NON-NLS-1$
+                }
+            }
+
+            byte[][] result = new byte[digests.length][];
+            for (int i = 0; i < digests.length; i++) {
+                result[i] = digests[i].digest();
+            }
+            success = true;
+            return result;
+
+        } finally {
+            if (!success) {
+                awaitConsumers();
+                for (int i = 0; i < digests.length; i++) {
+                    digests[i].reset();
+                    errors[i] = null;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            dataAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
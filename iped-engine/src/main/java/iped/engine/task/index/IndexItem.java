@@ -414,8 +414,11 @@ public static Document Document(IItem evidence, File output) {
         doc.add(new StringField(SUBITEM, value, Field.Store.YES));
         doc.add(new SortedDocValuesField(SUBITEM, new BytesRef(value)));
 
-        if (evidence.getThumb() != null)
+        if (evidence.getThumb() != null) {
             doc.add(new StoredField(THUMB, evidence.getThumb()));
+            // read by the gallery without decompressing the stored fields
+            doc.add(new BinaryDocValuesField(THUMB, new BytesRef(evidence.getThumb())));
+        }
 
         byte[] similarityFeatures = (byte[]) evidence.getExtraAttribute(ImageSimilarityTask.IMAGE_FEATURES);
         // clear extra property to don't add it again later when iterating over extra props
@@ -425,6 +428,8 @@ public static Document Document(IItem evidence, File output) {
             doc.add(new StoredField(ImageSimilarityTask.IMAGE_FEATURES, similarityFeatures));
             doc.add(new IntPoint(ImageSimilarityTask.IMAGE_FEATURES, similarityFeatures[0], similarityFeatures[1],
                     similarityFeatures[2], similarityFeatures[3]));
+            doc.add(new KnnVectorField(ImageSimilarityTask.IMAGE_FEATURES_VECTOR,
+                    ImageSimilarityTask.getFeaturesVector(similarityFeatures)));
         }
 
         long off = evidence.getFileOffset();
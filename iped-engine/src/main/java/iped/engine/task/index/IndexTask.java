@@ -32,10 +32,12 @@
 import iped.engine.io.CloseFilterReader;
 import iped.engine.io.FragmentingReader;
 import iped.engine.io.ParsingReader;
+import iped.engine.search.LiveItemRegistry;
 import iped.engine.task.AbstractTask;
 import iped.engine.task.ParsingTask;
 import iped.engine.task.SkipCommitedTask;
 import iped.engine.task.carver.BaseCarveTask;
+import iped.engine.util.TextStore;
 import iped.engine.util.Util;
 import iped.exception.IPEDException;
 import iped.parsers.standard.StandardParser;
@@ -82,6 +84,8 @@ private static final FieldType getContentFieldType() {
 
     private IndexTaskConfig indexConfig;
 
+    private TextStore textStore;
+
     public static boolean isTreeNodeOnly(IItem item) {
         return (!item.isToAddToCase() && (item.isDir() || item.isRoot() || item.hasChildren()))
                 || item.getExtraAttribute(IndexItem.TREENODE) != null;
@@ -137,6 +141,9 @@ public void process(IItem evidence) throws IOException {
                                 e.toString());
                     }
                 }
+                if (textReader != null && textStore != null) {
+                    textReader = textStore.storingReader(evidence.getId(), textReader);
+                }
             }
         }
 
@@ -146,7 +153,8 @@ public void process(IItem evidence) throws IOException {
         FragmentingReader fragReader = new FragmentingReader(textReader, indexConfig.getTextSplitSize(),
                 indexConfig.getTextOverlapSize());
         try {
-            worker.writer.addDocuments(new DocumentsIterable(evidence, fragReader));
+            worker.partitionWriter.addDocuments(new DocumentsIterable(evidence, fragReader));
+            LiveItemRegistry.getInstance().register(evidence);
 
         } catch (IOException e) {
             if (IOUtil.isDiskFull(e))
@@ -260,6 +268,10 @@ public void init(ConfigurationManager configurationManager) throws Exception {
 
         this.autoParser = new StandardParser();
 
+        if (indexConfig.isStoreExtractedText() && indexConfig.isIndexFileContents()) {
+            textStore = TextStore.getWriter(output);
+        }
+
     }
 
     @Override
@@ -268,6 +280,7 @@ public void finish() throws Exception {
         if (!finished.getAndSet(true)) {
             saveExtraAttributes(output);
             IndexItem.saveMetadataTypes(new File(output, "conf")); //$NON-NLS-1$
+            TextStore.close(output);
         }
     }
 
@@ -28,8 +28,6 @@
 import org.slf4j.LoggerFactory;
 
 import dk.brics.automaton.Automaton;
-import dk.brics.automaton.AutomatonMatcher;
-import dk.brics.automaton.BasicOperations;
 import dk.brics.automaton.DatatypesAutomatonProvider;
 import dk.brics.automaton.RegExp;
 import dk.brics.automaton.RunAutomaton;
@@ -63,7 +61,12 @@ public class RegexTask extends AbstractTask {
 
     private static List<Regex> regexList;
 
-    private static Regex regexFull;
+    /**
+     * Changes when the cached automata format changes
+     */
+    private static final int CACHE_VERSION = 2;
+
+    private static TaggedRunAutomaton regexFull;
 
     private static FSTConfiguration fastSerializer = FSTConfiguration.createDefaultConfiguration();
 
@@ -200,13 +203,12 @@ public void init(ConfigurationManager configurationManager) throws Exception {
                 }
                 logger.info("Created {} automata for each keyword to export configured.", regexList.size() - num);
 
-                ArrayList<Automaton> automatonList = new ArrayList<Automaton>();
+                ArrayList<RunAutomaton> automatonList = new ArrayList<RunAutomaton>();
                 for (Regex regex : regexList) {
-                    automatonList.add(regex.automaton);
+                    automatonList.add(regex.pattern);
                 }
-                Automaton automata = BasicOperations.union(automatonList);
-                regexFull = new Regex("FULL", automata); //$NON-NLS-1$
-                logger.info("Created the unique automaton for all regexes.");
+                regexFull = new TaggedRunAutomaton(automatonList);
+                logger.info("Created the unique automaton for all regexes with {} states.", regexFull.getSize());
 
                 writeCache(regexConfig, exportConfig);
                 logger.info("Regex cache saved to {}", cacheFile.getAbsolutePath());
@@ -252,7 +254,7 @@ private boolean loadCache(RegexTaskConfig regexConfig, ExportByKeywordsConfig ex
             int fullLen = dis.readInt();
             byte[] full = new byte[fullLen];
             dis.readFully(full);
-            regexFull = (Regex) fastSerializer.asObject(full);
+            regexFull = (TaggedRunAutomaton) fastSerializer.asObject(full);
             return true;
         }
     }
@@ -261,6 +263,7 @@ private byte[] getMd5FromConfigs(RegexTaskConfig regexConfig, ExportByKeywordsCo
             throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeInt(CACHE_VERSION);
             oos.writeObject(regexConfig);
             oos.writeObject(exportConfig);
         }
@@ -307,79 +310,111 @@ private Reader getExtraAttributeReader(IItem item) {
         return new StringReader(sb.toString());
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Searches the text for leftmost longest matches of all regexes in a single
+     * pass. Text is read into a reused buffer; if a match could continue after the
+     * end of the buffer, the text from its start is moved to the beginning of the
+     * buffer before reading more, so matches crossing buffer boundaries are not
+     * lost.
+     */
     private void processRegex(IItem evidence, Reader reader) throws IOException {
 
-        int k = 0;
+        TaggedRunAutomaton automaton = regexFull;
+        int[] tags = automaton.getTags();
+        int len = 0;
         long totalOffset = 0;
-        while (k != -1) {
-            int off = 0;
-            k = 0;
-            while (k != -1 && (off += k) < cbuf.length)
-                k = reader.read(cbuf, off, cbuf.length - off);
-
-            String text = new String(cbuf, 0, off);
+        boolean eof = false;
+        while (!eof) {
+            int k = 0;
+            while (len < cbuf.length && (k = reader.read(cbuf, len, cbuf.length - len)) != -1)
+                len += k;
+            eof = k == -1;
 
             List<Map<String, RegexHits>> hitList = new ArrayList<Map<String, RegexHits>>();
             for (int i = 0; i < regexList.size(); i++) {
                 hitList.add(new HashMap<>());
             }
 
-            AutomatonMatcher fullMatcher = regexFull.pattern.newMatcher(text);
-            while (fullMatcher.find()) {
-                int start = fullMatcher.start();
-                int end = fullMatcher.end();
-                String fullHit = text.substring(start, end);
-                int i = 0;
-                for (Regex regex : regexList) {
-                    if (regex.pattern.run(fullHit)) {
-                        String hit = fullHit.substring(regex.prefix, fullHit.length() - regex.sufix);
-                        if (regex.ignoreCases)
-                            hit = hit.toLowerCase();
-                        if (regexValidator.validate(regex, hit)) {
-                            if (regexConfig.isFormatRegexMatches()) {
-                                hit = regexValidator.format(regex, hit);
-                            }
-                            Map<String, RegexHits> hitMap = hitList.get(i);
-                            RegexHits hits = hitMap.get(hit);
-                            if (hits == null) {
-                                hits = new RegexHits(hit);
-                                hitMap.put(hit, hits);
-                            }
-                            hits.addOffset(totalOffset + start + regex.prefix);
+            int begin = 0;
+            while (begin < len) {
+                int state = automaton.getInitialState();
+                int matchEnd = -1, matchState = -1, i = begin;
+                for (; i < len; i++) {
+                    state = automaton.step(state, cbuf[i]);
+                    if (state == -1)
+                        break;
+                    if (automaton.isAccept(state)) {
+                        matchEnd = i + 1;
+                        matchState = state;
+                    }
+                }
+                if (i == len && state != -1 && !eof && begin > 0) {
+                    // match could continue in next chars, search again after reading them
+                    break;
+                }
+                if (matchEnd == -1) {
+                    begin++;
+                    continue;
+                }
+                for (int t = automaton.getTagStart(matchState); t < automaton.getTagEnd(matchState); t++) {
+                    Regex regex = regexList.get(tags[t]);
+                    int hitLen = matchEnd - begin - regex.prefix - regex.sufix;
+                    if (hitLen < 0)
+                        continue;
+                    String hit = new String(cbuf, begin + regex.prefix, hitLen);
+                    if (regex.ignoreCases)
+                        hit = hit.toLowerCase();
+                    if (regexValidator.validate(regex, hit)) {
+                        if (regexConfig.isFormatRegexMatches()) {
+                            hit = regexValidator.format(regex, hit);
+                        }
+                        Map<String, RegexHits> hitMap = hitList.get(tags[t]);
+                        RegexHits hits = hitMap.get(hit);
+                        if (hits == null) {
+                            hits = new RegexHits(hit);
+                            hitMap.put(hit, hits);
                         }
+                        hits.addOffset(totalOffset + begin + regex.prefix);
                     }
-                    i++;
                 }
+                begin = matchEnd;
             }
-            for (int i = 0; i < regexList.size(); i++) {
-                if (hitList.get(i).size() > 0) {
-                    String key = REGEX_PREFIX + regexList.get(i).name;
-                    Collection<RegexHits> prevHits = (Collection<RegexHits>) evidence.getExtraAttribute(key);
-                    Map<String, RegexHits> hitsMap = hitList.get(i);
-                    if (prevHits == null || prevHits.isEmpty() || !(prevHits.iterator().next() instanceof RegexHits)) {
-                        evidence.setExtraAttribute(key, hitsMap.values());
+            addHits(evidence, hitList);
+
+            System.arraycopy(cbuf, begin, cbuf, 0, len - begin);
+            len -= begin;
+            totalOffset += begin;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addHits(IItem evidence, List<Map<String, RegexHits>> hitList) {
+        for (int i = 0; i < regexList.size(); i++) {
+            if (hitList.get(i).size() > 0) {
+                String key = REGEX_PREFIX + regexList.get(i).name;
+                Collection<RegexHits> prevHits = (Collection<RegexHits>) evidence.getExtraAttribute(key);
+                Map<String, RegexHits> hitsMap = hitList.get(i);
+                if (prevHits == null || prevHits.isEmpty() || !(prevHits.iterator().next() instanceof RegexHits)) {
+                    evidence.setExtraAttribute(key, hitsMap.values());
+                } else {
+                    if (prevHits.size() >= MAX_RESULTS) {
+                        evidence.setExtraAttribute("maxHitsReached" + key, "true");
                     } else {
-                        if (prevHits.size() >= MAX_RESULTS) {
-                            evidence.setExtraAttribute("maxHitsReached" + key, "true");
-                        } else {
-                            for (RegexHits hits : prevHits) {
-                                RegexHits prev = hitsMap.get(hits.getHit());
-                                if (prev != null) {
-                                    prev.addAll(hits.getOffsets());
-                                } else {
-                                    hitsMap.put(hits.getHit(), hits);
-                                }
+                        for (RegexHits hits : prevHits) {
+                            RegexHits prev = hitsMap.get(hits.getHit());
+                            if (prev != null) {
+                                prev.addAll(hits.getOffsets());
+                            } else {
+                                hitsMap.put(hits.getHit(), hits);
                             }
-                            evidence.setExtraAttribute(key, hitsMap.values());
                         }
+                        evidence.setExtraAttribute(key, hitsMap.values());
                     }
-
-                    if (regexList.get(i).name.equals(KEYWORDS_NAME))
-                        evidence.setToExtract(true);
                 }
+
+                if (regexList.get(i).name.equals(KEYWORDS_NAME))
+                    evidence.setToExtract(true);
             }
-            totalOffset += off;
         }
     }
 
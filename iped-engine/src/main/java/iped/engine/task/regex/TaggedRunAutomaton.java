@@ -0,0 +1,259 @@
+package iped.engine.task.regex;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import dk.brics.automaton.RunAutomaton;
+
+/**
+ * Deterministic automaton recognizing the union of several regexes, whose
+ * accept states are tagged with the indexes of the regexes accepting the input
+ * read until them. So one run over the text finds matches and which regexes
+ * they belong to, without running each regex again over the matches.
+ *
+ * It is built as the product of the regex automata, where each state is the
+ * tuple of the states of each regex automaton, then minimized keeping states
+ * with different tags apart.
+ */
+public class TaggedRunAutomaton implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int[] NO_TAGS = new int[0];
+
+    private final int size;
+    private final int initial;
+    private final int numClasses;
+    // next state by state * numClasses + char class, -1 means dead
+    private final int[] transitions;
+    private final int[] classmap;
+    // tags of each state are tags[tagStart[state]] until tags[tagStart[state + 1] - 1]
+    private final int[] tagStart;
+    private final int[] tags;
+
+    public TaggedRunAutomaton(List<RunAutomaton> automata) {
+        int n = automata.size();
+
+        TreeSet<Character> pointSet = new TreeSet<>();
+        pointSet.add((char) 0);
+        for (RunAutomaton a : automata) {
+            for (char c : a.getCharIntervals()) {
+                pointSet.add(c);
+            }
+        }
+        char[] points = new char[pointSet.size()];
+        int p = 0;
+        for (char c : pointSet) {
+            points[p++] = c;
+        }
+        int numClasses = points.length;
+        classmap = new int[Character.MAX_VALUE + 1];
+        for (int c = 0, cls = 0; c <= Character.MAX_VALUE; c++) {
+            if (cls + 1 < numClasses && c >= points[cls + 1]) {
+                cls++;
+            }
+            classmap[c] = cls;
+        }
+
+        // product construction
+        Map<StateTuple, Integer> ids = new HashMap<>();
+        List<int[]> tuples = new ArrayList<>();
+        int[] start = new int[n];
+        for (int i = 0; i < n; i++) {
+            start[i] = automata.get(i).getInitialState();
+        }
+        ids.put(new StateTuple(start), 0);
+        tuples.add(start);
+        int[] trans = new int[numClasses * 16];
+        for (int s = 0; s < tuples.size(); s++) {
+            int[] tuple = tuples.get(s);
+            for (int cls = 0; cls < numClasses; cls++) {
+                char c = points[cls];
+                int[] next = new int[n];
+                boolean alive = false;
+                for (int i = 0; i < n; i++) {
+                    next[i] = tuple[i] == -1 ? -1 : automata.get(i).step(tuple[i], c);
+                    alive |= next[i] != -1;
+                }
+                int id = -1;
+                if (alive) {
+                    StateTuple key = new StateTuple(next);
+                    Integer prev = ids.get(key);
+                    if (prev == null) {
+                        id = tuples.size();
+                        ids.put(key, id);
+                        tuples.add(next);
+                    } else {
+                        id = prev;
+                    }
+                }
+                int idx = s * numClasses + cls;
+                if (idx >= trans.length) {
+                    trans = Arrays.copyOf(trans, trans.length * 2);
+                }
+                trans[idx] = id;
+            }
+        }
+        int productSize = tuples.size();
+        int[][] productTags = new int[productSize][];
+        for (int s = 0; s < productSize; s++) {
+            int[] tuple = tuples.get(s);
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                if (tuple[i] != -1 && automata.get(i).isAccept(tuple[i])) {
+                    count++;
+                }
+            }
+            int[] t = count == 0 ? NO_TAGS : new int[count];
+            for (int i = 0, j = 0; i < n && j < count; i++) {
+                if (tuple[i] != -1 && automata.get(i).isAccept(tuple[i])) {
+                    t[j++] = i;
+                }
+            }
+            productTags[s] = t;
+        }
+        tuples = null;
+        ids = null;
+
+        // minimization by partition refinement, initially by tags
+        int[] block = new int[productSize];
+        int numBlocks = refine(block, productSize, s -> new StateTuple(productTags[s]));
+        while (true) {
+            final int[] prevBlock = block.clone();
+            final int[] t = trans;
+            int[] newBlock = new int[productSize];
+            int newNumBlocks = refine(newBlock, productSize, s -> {
+                int[] sig = new int[numClasses + 1];
+                sig[0] = prevBlock[s];
+                for (int cls = 0; cls < numClasses; cls++) {
+                    int next = t[s * numClasses + cls];
+                    sig[cls + 1] = next == -1 ? -1 : prevBlock[next];
+                }
+                return new StateTuple(sig);
+            });
+            block = newBlock;
+            if (newNumBlocks == numBlocks) {
+                break;
+            }
+            numBlocks = newNumBlocks;
+        }
+
+        this.size = numBlocks;
+        this.numClasses = numClasses;
+        this.initial = block[0];
+        this.transitions = new int[numBlocks * numClasses];
+        int[][] blockTags = new int[numBlocks][];
+        for (int s = 0; s < productSize; s++) {
+            int b = block[s];
+            if (blockTags[b] != null) {
+                continue;
+            }
+            blockTags[b] = productTags[s];
+            for (int cls = 0; cls < numClasses; cls++) {
+                int next = trans[s * numClasses + cls];
+                transitions[b * numClasses + cls] = next == -1 ? -1 : block[next];
+            }
+        }
+        tagStart = new int[numBlocks + 1];
+        int total = 0;
+        for (int b = 0; b < numBlocks; b++) {
+            tagStart[b] = total;
+            total += blockTags[b].length;
+        }
+        tagStart[numBlocks] = total;
+        tags = new int[total];
+        for (int b = 0; b < numBlocks; b++) {
+            System.arraycopy(blockTags[b], 0, tags, tagStart[b], blockTags[b].length);
+        }
+    }
+
+    private interface Signature {
+        StateTuple get(int state);
+    }
+
+    /**
+     * Assigns the same block to states with equal signatures.
+     *
+     * @return the number of blocks
+     */
+    private static int refine(int[] block, int numStates, Signature signature) {
+        Map<StateTuple, Integer> blocks = new HashMap<>();
+        for (int s = 0; s < numStates; s++) {
+            StateTuple sig = signature.get(s);
+            Integer b = blocks.get(sig);
+            if (b == null) {
+                b = blocks.size();
+                blocks.put(sig, b);
+            }
+            block[s] = b;
+        }
+        return blocks.size();
+    }
+
+    private static class StateTuple {
+
+        private final int[] states;
+        private final int hash;
+
+        private StateTuple(int[] states) {
+            this.states = states;
+            this.hash = Arrays.hashCode(states);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof StateTuple && Arrays.equals(states, ((StateTuple) obj).states);
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getInitialState() {
+        return initial;
+    }
+
+    /**
+     * @return the next state, or -1 if no match is possible anymore
+     */
+    public int step(int state, char c) {
+        return transitions[state * numClasses + classmap[c]];
+    }
+
+    public boolean isAccept(int state) {
+        return tagStart[state] != tagStart[state + 1];
+    }
+
+    /**
+     * @return index of first tag of the state in {@link #getTags()}
+     */
+    public int getTagStart(int state) {
+        return tagStart[state];
+    }
+
+    /**
+     * @return index after the last tag of the state in {@link #getTags()}
+     */
+    public int getTagEnd(int state) {
+        return tagStart[state + 1];
+    }
+
+    /**
+     * @return indexes of the regexes, grouped by state
+     */
+    public int[] getTags() {
+        return tags;
+    }
+
+}
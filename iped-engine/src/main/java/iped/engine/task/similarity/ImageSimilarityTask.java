@@ -9,6 +9,7 @@
 
 import javax.imageio.ImageIO;
 
+import org.apache.lucene.index.VectorValues;
 import org.apache.tika.mime.MediaType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +31,13 @@ public class ImageSimilarityTask extends AbstractTask {
 
     public static final String IMAGE_FEATURES = "imageFeatures"; //$NON-NLS-1$
 
+    /**
+     * KNN vector field with image features used to search similar images, just
+     * the first ones fitting the max vector dimension, without the 4 features
+     * also indexed as points.
+     */
+    public static final String IMAGE_FEATURES_VECTOR = IMAGE_FEATURES + "Vector"; //$NON-NLS-1$
+
     private static boolean taskEnabled = false;
     private static final AtomicBoolean init = new AtomicBoolean(false);
     private static final AtomicBoolean finished = new AtomicBoolean(false);
@@ -42,6 +50,17 @@ public class ImageSimilarityTask extends AbstractTask {
 
     private static final Logger logger = LoggerFactory.getLogger(ImageSimilarityTask.class);
 
+    /**
+     * @return the vector indexed in {@link #IMAGE_FEATURES_VECTOR}
+     */
+    public static float[] getFeaturesVector(byte[] features) {
+        float[] vector = new float[Math.min(features.length - 4, VectorValues.MAX_DIMENSIONS)];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = features[i + 4];
+        }
+        return vector;
+    }
+
     public boolean isEnabled() {
         return taskEnabled;
     }
@@ -0,0 +1,342 @@
+package iped.engine.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.util.BytesRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Concurrent set of raw digests shared by processing tasks to detect duplicate
+ * items. Digests are packed into long arrays of open addressing tables, split
+ * into stripes with their own locks, so there are no boxed objects per digest
+ * and workers do not contend on a global lock.
+ *
+ * It also provides striped lock objects to serialize operations on items with
+ * the same hash.
+ */
+public class HashRegistry {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(HashRegistry.class);
+
+    private static final int NUM_STRIPES = 256;
+
+    private static final int NUM_LOCKS = 4096;
+
+    private static final int MAX_DIGEST_LEN = 64;
+
+    private final DigestSet[] setsByLength = new DigestSet[MAX_DIGEST_LEN + 1];
+
+    private final Object[] locks = new Object[NUM_LOCKS];
+
+    private final CountDownLatch loaded = new CountDownLatch(1);
+
+    private volatile Exception loadException;
+
+    public HashRegistry() {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    private static class Stripe {
+
+        private static final float MAX_LOAD = 0.7f;
+
+        private final int words;
+        private long[] table;
+        private int capacity = 1024;
+        private int size = 0;
+        private boolean hasZeroKey = false;
+
+        private Stripe(int words) {
+            this.words = words;
+            this.table = new long[capacity * words];
+        }
+
+        private synchronized boolean add(long[] key, long hash) {
+            if (isZero(key, 0)) {
+                boolean added = !hasZeroKey;
+                hasZeroKey = true;
+                return added;
+            }
+            int slot = findSlot(table, capacity, key, hash);
+            if (!isZero(table, slot * words)) {
+                return false;
+            }
+            System.arraycopy(key, 0, table, slot * words, words);
+            if (++size > capacity * MAX_LOAD) {
+                grow();
+            }
+            return true;
+        }
+
+        private synchronized boolean contains(long[] key, long hash) {
+            if (isZero(key, 0)) {
+                return hasZeroKey;
+            }
+            int slot = findSlot(table, capacity, key, hash);
+            return !isZero(table, slot * words);
+        }
+
+        private synchronized int size() {
+            return size + (hasZeroKey ? 1 : 0);
+        }
+
+        /**
+         * @return slot containing the key or the empty slot where it should be
+         *         inserted.
+         */
+        private int findSlot(long[] table, int capacity, long[] key, long hash) {
+            int mask = capacity - 1;
+            int slot = (int) hash & mask;
+            while (true) {
+                int base = slot * words;
+                if (isZero(table, base) || equals(table, base, key)) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private void grow() {
+            int newCapacity = capacity << 1;
+            long[] newTable = new long[newCapacity * words];
+            long[] key = new long[words];
+            for (int i = 0; i < capacity; i++) {
+                int base = i * words;
+                if (!isZero(table, base)) {
+                    System.arraycopy(table, base, key, 0, words);
+                    int slot = findSlot(newTable, newCapacity, key, hash(key));
+                    System.arraycopy(key, 0, newTable, slot * words, words);
+                }
+            }
+            table = newTable;
+            capacity = newCapacity;
+        }
+
+        private boolean isZero(long[] array, int base) {
+            for (int i = 0; i < words; i++) {
+                if (array[base + i] != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean equals(long[] array, int base, long[] key) {
+            for (int i = 0; i < words; i++) {
+                if (array[base + i] != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class DigestSet {
+
+        private final int words;
+        private final Stripe[] stripes = new Stripe[NUM_STRIPES];
+
+        private DigestSet(int digestLen) {
+            words = (digestLen + 7) / 8;
+            for (int i = 0; i < stripes.length; i++) {
+                stripes[i] = new Stripe(words);
+            }
+        }
+
+        private long[] toKey(byte[] digest) {
+            long[] key = new long[words];
+            for (int i = 0; i < digest.length; i++) {
+                key[i >> 3] |= (digest[i] & 0xFFL) << (56 - ((i & 7) << 3));
+            }
+            return key;
+        }
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long hash(long[] key) {
+        return mix(key[0]);
+    }
+
+    private static Stripe getStripe(DigestSet set, long hash) {
+        // uses high bits, low bits are used to find the slot
+        return set.stripes[(int) (hash >>> 56) & (NUM_STRIPES - 1)];
+    }
+
+    private DigestSet getDigestSet(int digestLen, boolean create) {
+        DigestSet set = setsByLength[digestLen];
+        if (set == null && create) {
+            synchronized (setsByLength) {
+                set = setsByLength[digestLen];
+                if (set == null) {
+                    set = new DigestSet(digestLen);
+                    setsByLength[digestLen] = set;
+                }
+            }
+        }
+        return set;
+    }
+
+    private void awaitLoading() {
+        if (loaded.getCount() > 0) {
+            try {
+                loaded.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        if (loadException != null) {
+            throw new RuntimeException("Error loading hashes from index", loadException); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Adds the digest to this set.
+     *
+     * @return true if the digest was not in the set, false otherwise.
+     */
+    public boolean add(byte[] digest) {
+        awaitLoading();
+        return addInternal(digest);
+    }
+
+    private boolean addInternal(byte[] digest) {
+        if (digest.length == 0 || digest.length > MAX_DIGEST_LEN) {
+            throw new IllegalArgumentException("Invalid digest length " + digest.length); //$NON-NLS-1$
+        }
+        DigestSet set = getDigestSet(digest.length, true);
+        long[] key = set.toKey(digest);
+        long hash = hash(key);
+        return getStripe(set, hash).add(key, hash);
+    }
+
+    public boolean contains(byte[] digest) {
+        awaitLoading();
+        if (digest.length == 0 || digest.length > MAX_DIGEST_LEN) {
+            return false;
+        }
+        DigestSet set = getDigestSet(digest.length, false);
+        if (set == null) {
+            return false;
+        }
+        long[] key = set.toKey(digest);
+        long hash = hash(key);
+        return getStripe(set, hash).contains(key, hash);
+    }
+
+    public long size() {
+        long size = 0;
+        for (int i = 0; i < setsByLength.length; i++) {
+            DigestSet set = getDigestSet(i, false);
+            if (set != null) {
+                for (Stripe stripe : set.stripes) {
+                    size += stripe.size();
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns a lock object to synchronize operations on items with the specified
+     * digest. Different digests may share the same lock.
+     */
+    public Object getLock(byte[] digest) {
+        int h = 0;
+        for (int i = 0; i < Math.min(4, digest.length); i++) {
+            h = (h << 8) | (digest[i] & 0xFF);
+        }
+        return locks[(int) mix(h) & (NUM_LOCKS - 1)];
+    }
+
+    public void clear() {
+        synchronized (setsByLength) {
+            for (int i = 0; i < setsByLength.length; i++) {
+                setsByLength[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Loads all hex encoded digests from the sorted doc values field, reading
+     * index segments in parallel. Other methods wait until loading is finished.
+     * The reader is closed when done.
+     */
+    public void loadFromIndexAsync(IndexReader reader, String field) {
+        Thread loader = new Thread(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                reader.leaves().parallelStream().forEach(leaf -> loadFromSegment(leaf, field));
+                LOGGER.info("Loaded {} hashes from index in {}ms", size(), System.currentTimeMillis() - start); //$NON-NLS-1$
+            } catch (Exception e) {
+                loadException = e;
+            } finally {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Error closing index reader", e); //$NON-NLS-1$
+                }
+                loaded.countDown();
+            }
+        }, "HashRegistryLoader"); //$NON-NLS-1$
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Marks this registry as loaded, when there is nothing to load.
+     */
+    public void setLoaded() {
+        loaded.countDown();
+    }
+
+    private void loadFromSegment(LeafReaderContext leaf, String field) {
+        try {
+            SortedDocValues sdv = leaf.reader().getSortedDocValues(field);
+            if (sdv == null) {
+                return;
+            }
+            for (int ord = 0; ord < sdv.getValueCount(); ord++) {
+                byte[] digest = decodeHex(sdv.lookupOrd(ord));
+                if (digest != null) {
+                    addInternal(digest);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] decodeHex(BytesRef ref) {
+        if (ref.length == 0 || ref.length % 2 != 0 || ref.length > 2 * MAX_DIGEST_LEN) {
+            return null;
+        }
+        byte[] digest = new byte[ref.length / 2];
+        for (int i = 0; i < digest.length; i++) {
+            int hi = Character.digit(ref.bytes[ref.offset + 2 * i], 16);
+            int lo = Character.digit(ref.bytes[ref.offset + 2 * i + 1], 16);
+            if (hi < 0 || lo < 0) {
+                return null;
+            }
+            digest[i] = (byte) ((hi << 4) | lo);
+        }
+        return digest;
+    }
+
+}
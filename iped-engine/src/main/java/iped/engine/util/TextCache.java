@@ -1,46 +1,336 @@
 package iped.engine.util;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.RandomAccessFile;
 import java.io.Reader;
 import java.io.StringReader;
-import java.io.Writer;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.FileSystemException;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.io.input.BoundedReader;
-import org.apache.commons.io.input.RandomAccessFileInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import iped.data.IItem;
 import iped.utils.IOUtil;
-
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+/**
+ * Stores parsed text of an item to be read by later tasks. Text is kept in
+ * segments of up to 64K chars, as 1 byte chars if all of them are latin1, or as
+ * UTF-16 chars, so reading it back needs no charset decoding and random
+ * positions are found by segment. Up to {@link #MAX_UNCOMPRESSED_BYTES} per
+ * item are kept uncompressed, so most texts are read without decoding. Further
+ * segments are LZ4 compressed. Compressed segments are kept in heap up to
+ * {@link #MAX_MEMORY_BYTES} per item, after that they are appended to a temp
+ * file if disk cache is enabled. Otherwise text is kept in heap up to
+ * {@link #MAX_MEMORY_CHARS} and further text is discarded.
+ */
 public class TextCache implements Closeable, Cloneable {
 
     private static Logger logger = LoggerFactory.getLogger(TextCache.class);
 
+    static final int SEGMENT_CHARS = 1 << 16;
+
+    /**
+     * Max bytes of each item kept in heap without compression
+     */
+    static final int MAX_UNCOMPRESSED_BYTES = 4 << 20;
+
+    /**
+     * Max compressed bytes of each item kept in heap
+     */
+    static final int MAX_MEMORY_BYTES = 4 << 20;
+
+    /**
+     * Max chars of each item kept if disk cache is disabled
+     */
     private static int MAX_MEMORY_CHARS = 10000000;
 
+    /**
+     * Number of decoded segments kept for readers of the same text
+     */
+    private static final int DECODED_CACHE_SIZE = 2;
+
+    private static final LZ4Factory lz4Factory = LZ4Factory.fastestInstance();
+
     private IItem sourceItem;
-    private StringBuilder sb = new StringBuilder();
-    private File tmp;
-    private Writer writer;
+    private Segments segments = new Segments();
+    private char[] buffer;
+    private int bufferLen = 0;
     private long size = 0;
     private boolean diskCacheEnabled = true;
-    private long offset = -1;
+    private long offset = 0;
     private AtomicInteger refCount = new AtomicInteger(1);
 
+    /**
+     * Text segments, shared by clones.
+     */
+    private static class Segments {
+
+        // char offset of each segment, plus the total number of chars at the end
+        private long[] starts = new long[] { 0 };
+        // uncompressed segments, byte[] of latin1 chars or char[], or null if compressed
+        private List<Object> plain = new ArrayList<>();
+        // compressed segments in heap, or null if plain or stored in the temp file
+        private List<byte[]> data = new ArrayList<>();
+        private boolean[] latin1 = new boolean[0];
+        // offset and compressed length of segments in the temp file
+        private long[] filePos = new long[0];
+        private int[] fileLen = new int[0];
+        private long plainBytes = 0;
+        private long memoryBytes = 0;
+        private long fileSize = 0;
+        private File tmp;
+        private FileChannel channel;
+        // last decoded segments and their indexes, read by all readers
+        private final Object[] decoded = new Object[DECODED_CACHE_SIZE];
+        private final int[] decodedSegs = new int[DECODED_CACHE_SIZE];
+        private int nextDecoded = 0;
+
+        private Segments() {
+            Arrays.fill(decodedSegs, -1);
+        }
+
+        private int numSegments() {
+            return data.size();
+        }
+
+        private long totalChars() {
+            return starts[starts.length - 1];
+        }
+
+        /**
+         * @return true if the chars array was kept as a plain segment, so it must
+         *         not be changed by the caller anymore
+         */
+        private boolean add(char[] chars, int len, boolean diskCacheEnabled) {
+            int seg = numSegments();
+            starts = Arrays.copyOf(starts, seg + 2);
+            starts[seg + 1] = starts[seg] + len;
+            latin1 = Arrays.copyOf(latin1, seg + 1);
+            filePos = Arrays.copyOf(filePos, seg + 1);
+            fileLen = Arrays.copyOf(fileLen, seg + 1);
+
+            boolean isLatin1 = isLatin1(chars, len);
+            latin1[seg] = isLatin1;
+            int plainLen = isLatin1 ? len : len * 2;
+            if (plainBytes + plainLen <= MAX_UNCOMPRESSED_BYTES) {
+                boolean keepArray = false;
+                if (isLatin1) {
+                    byte[] bytes = new byte[len];
+                    for (int i = 0; i < len; i++) {
+                        bytes[i] = (byte) chars[i];
+                    }
+                    plain.add(bytes);
+                } else {
+                    keepArray = len == chars.length;
+                    plain.add(keepArray ? chars : Arrays.copyOf(chars, len));
+                }
+                data.add(null);
+                plainBytes += plainLen;
+                return keepArray;
+            }
+
+            Buffers buffers = scratch.get();
+            int compressedLen = compress(chars, len, isLatin1, buffers);
+            byte[] compressed = buffers.compressed;
+            plain.add(null);
+
+            if (memoryBytes + compressedLen > MAX_MEMORY_BYTES && diskCacheEnabled && spill(compressed, compressedLen, seg)) {
+                data.add(null);
+            } else {
+                data.add(Arrays.copyOf(compressed, compressedLen));
+                memoryBytes += compressedLen;
+            }
+            return false;
+        }
+
+        private boolean spill(byte[] compressed, int len, int seg) {
+            try {
+                if (channel == null) {
+                    tmp = File.createTempFile("text", null);
+                    channel = FileChannel.open(tmp.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                }
+                ByteBuffer bb = ByteBuffer.wrap(compressed, 0, len);
+                long pos = fileSize;
+                while (bb.hasRemaining()) {
+                    pos += channel.write(bb, pos);
+                }
+                filePos[seg] = fileSize;
+                fileLen[seg] = len;
+                fileSize = pos;
+                return true;
+
+            } catch (IOException e) {
+                // maybe no space left, keep text in memory
+                logger.warn("Error writing text to temp file, keeping it in memory: {}", e.toString());
+                return false;
+            }
+        }
+
+        /**
+         * @return chars of a segment, as byte[] if they are latin1 or as char[],
+         *         which must not be changed. Compressed segments are decoded once
+         *         for readers of the same text, while they are in the decoded cache.
+         */
+        private Object get(int seg, Buffers buffers) throws IOException {
+            Object chars = plain.get(seg);
+            if (chars != null) {
+                return chars;
+            }
+            synchronized (decoded) {
+                for (int i = 0; i < DECODED_CACHE_SIZE; i++) {
+                    if (decodedSegs[i] == seg) {
+                        return decoded[i];
+                    }
+                }
+            }
+            byte[] compressed = data.get(seg);
+            if (compressed == null) {
+                compressed = buffers.compressed(fileLen[seg]);
+                ByteBuffer bb = ByteBuffer.wrap(compressed, 0, fileLen[seg]);
+                long pos = filePos[seg];
+                while (bb.hasRemaining()) {
+                    int read = channel.read(bb, pos + bb.position());
+                    if (read == -1) {
+                        throw new IOException("Extracted text file truncated: " + tmp.getAbsolutePath());
+                    }
+                }
+            }
+            int len = (int) (starts[seg + 1] - starts[seg]);
+            if (latin1[seg]) {
+                byte[] bytes = new byte[len];
+                lz4Factory.fastDecompressor().decompress(compressed, 0, bytes, 0, len);
+                chars = bytes;
+            } else {
+                char[] utf16 = new char[len];
+                decompress(compressed, false, utf16, len, buffers);
+                chars = utf16;
+            }
+            synchronized (decoded) {
+                decoded[nextDecoded] = chars;
+                decodedSegs[nextDecoded] = seg;
+                nextDecoded = (nextDecoded + 1) % DECODED_CACHE_SIZE;
+            }
+            return chars;
+        }
+
+        private int findSegment(long charOffset) {
+            int idx = Arrays.binarySearch(starts, 0, starts.length - 1, charOffset);
+            return idx >= 0 ? idx : -idx - 2;
+        }
+
+        private boolean isReadable() {
+            return fileSize == 0 || channel != null;
+        }
+
+        /**
+         * @return true if the temp file was deleted by others, maybe by antivirus
+         */
+        private boolean isTempFileMissing() {
+            return tmp != null && !tmp.exists();
+        }
+
+        private void close() {
+            IOUtil.closeQuietly(channel);
+            channel = null;
+            if (tmp != null) {
+                tmp.delete();
+                tmp = null;
+            }
+            synchronized (decoded) {
+                Arrays.fill(decoded, null);
+                Arrays.fill(decodedSegs, -1);
+            }
+        }
+    }
+
+    /**
+     * Reusable byte arrays for segment encoding and decoding
+     */
+    static class Buffers {
+
+        private byte[] bytes = new byte[0];
+        private byte[] compressed = new byte[0];
+
+        private byte[] bytes(int len) {
+            if (bytes.length < len) {
+                bytes = new byte[len];
+            }
+            return bytes;
+        }
+
+        byte[] compressed(int len) {
+            if (compressed.length < len) {
+                compressed = new byte[len];
+            }
+            return compressed;
+        }
+    }
+
+    private static final ThreadLocal<Buffers> scratch = ThreadLocal.withInitial(Buffers::new);
+
+    static boolean isLatin1(char[] chars, int len) {
+        for (int i = 0; i < len; i++) {
+            if (chars[i] >= 256) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compresses chars as 1 byte chars if latin1 is true, otherwise as UTF-16
+     * chars, into buffers.compressed.
+     *
+     * @return the compressed length
+     */
+    static int compress(char[] chars, int len, boolean latin1, Buffers buffers) {
+        int numBytes = latin1 ? len : len * 2;
+        byte[] bytes = buffers.bytes(numBytes);
+        if (latin1) {
+            for (int i = 0; i < len; i++) {
+                bytes[i] = (byte) chars[i];
+            }
+        } else {
+            for (int i = 0, j = 0; i < len; i++) {
+                bytes[j++] = (byte) (chars[i] >> 8);
+                bytes[j++] = (byte) chars[i];
+            }
+        }
+        LZ4Compressor compressor = lz4Factory.fastCompressor();
+        byte[] compressed = buffers.compressed(compressor.maxCompressedLength(numBytes));
+        return compressor.compress(bytes, 0, numBytes, compressed, 0, compressed.length);
+    }
+
+    /**
+     * Decompresses len chars encoded by
+     * {@link #compress(char[], int, boolean, Buffers)}
+     */
+    static void decompress(byte[] compressed, boolean latin1, char[] chars, int len, Buffers buffers) {
+        int numBytes = latin1 ? len : len * 2;
+        byte[] bytes = buffers.bytes(numBytes);
+        LZ4FastDecompressor decompressor = lz4Factory.fastDecompressor();
+        decompressor.decompress(compressed, 0, bytes, 0, numBytes);
+        if (latin1) {
+            for (int i = 0; i < len; i++) {
+                chars[i] = (char) (bytes[i] & 0xff);
+            }
+        } else {
+            for (int i = 0, j = 0; i < len; i++, j += 2) {
+                chars[i] = (char) ((bytes[j] << 8) | (bytes[j + 1] & 0xff));
+            }
+        }
+    }
+
     public void setSourceItem(IItem sourceItem) {
         this.sourceItem = sourceItem;
     }
@@ -54,32 +344,32 @@ public void write(String string) throws IOException {
     }
 
     public void write(char[] buf, int off, int len) throws IOException {
-        if (tmp == null && sb != null && sb.length() + len > MAX_MEMORY_CHARS && diskCacheEnabled) {
-            tmp = File.createTempFile("text", null);
-            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8));
-            writer.write(sb.toString());
-            sb = null;
+        if (!diskCacheEnabled && size + len > MAX_MEMORY_CHARS) {
+            len = (int) Math.max(0, MAX_MEMORY_CHARS - size);
         }
-
-        if (sb != null && sb.length() < MAX_MEMORY_CHARS) {
-            if (sb.length() + len > MAX_MEMORY_CHARS)
-                len = MAX_MEMORY_CHARS - sb.length();
-            sb.append(buf, off, len);
+        int end = off + len;
+        while (off < end) {
+            if (buffer == null) {
+                buffer = new char[SEGMENT_CHARS];
+            }
+            int n = Math.min(end - off, SEGMENT_CHARS - bufferLen);
+            System.arraycopy(buf, off, buffer, bufferLen, n);
+            bufferLen += n;
+            off += n;
+            if (bufferLen == SEGMENT_CHARS) {
+                flushBuffer();
+            }
         }
+        size += len;
+    }
 
-        if (writer != null)
-            try {
-                writer.write(buf, off, len);
-            } catch (IOException e) {
-                // maybe no space left
-                e.printStackTrace();
-                IOUtil.closeQuietly(writer);
-                writer = null;
-                tmp.delete();
-                tmp = null;
+    private void flushBuffer() {
+        if (bufferLen > 0) {
+            if (segments.add(buffer, bufferLen, diskCacheEnabled)) {
+                buffer = null;
             }
-
-        size += len;
+            bufferLen = 0;
+        }
     }
 
     public long getSize() {
@@ -87,39 +377,26 @@ public long getSize() {
     }
 
     public Reader getTextReader() throws IOException {
-        if (writer != null) {
-            writer.close();
-            writer = null;
-        }
-
-        Reader reader = null;
-        if (sb != null)
-            reader = new StringReader(sb.toString());
-
-        if (tmp != null) {
-            try {
-                if (offset == -1) {
-                    reader = Files.newBufferedReader(tmp.toPath());
-                } else {
-                    RandomAccessFile raf = new RandomAccessFile(tmp, "r");
-                    raf.seek(offset);
-                    reader = new InputStreamReader(new RandomAccessFileInputStream(raf, true), StandardCharsets.UTF_8);
-                    reader = new BufferedReader(new BoundedReader(reader, (int) size));
-                }
-
-            } catch (FileSystemException | FileNotFoundException e) {
-                logger.error("Error reading extracted text file{}, maybe your antivirus blocked or deleted it? {}",
-                        sourceItem != null ? " from " + sourceItem.getPath() : "", e.toString());
-                e.printStackTrace();
-                return new StringReader("");
-            }
+        flushBuffer();
+        buffer = null;
+        if (!segments.isReadable()) {
+            logger.error("Extracted text file{} was already deleted.",
+                    sourceItem != null ? " from " + sourceItem.getPath() : "");
+            return new StringReader("");
         }
-
-        if (reader != null) {
-            return new KnownSizeReader(reader);
+        if (segments.isTempFileMissing()) {
+            logger.error("Error reading extracted text file{}, maybe your antivirus blocked or deleted it? {}",
+                    sourceItem != null ? " from " + sourceItem.getPath() : "", segments.tmp.getAbsolutePath());
+            return new StringReader("");
         }
+        return new KnownSizeReader(new SegmentReader(segments, offset, offset + size));
+    }
 
-        return null;
+    /**
+     * @return the temp file of segments not kept in heap, or null, for tests
+     */
+    File getTempFile() {
+        return segments.tmp;
     }
 
     public void setTextBounds(long offset, int size) {
@@ -129,16 +406,77 @@ public void setTextBounds(long offset, int size) {
         if (offset + size > this.size) {
             throw new IllegalArgumentException("offset + size must be less than or equal to original text size.");
         }
-        this.offset = offset;
+        this.offset += offset;
         this.size = size;
     }
 
     @Override
     public void close() throws IOException {
-        if (writer != null)
-            writer.close();
-        if (tmp != null && refCount.decrementAndGet() == 0)
-            tmp.delete();
+        buffer = null;
+        if (refCount.decrementAndGet() == 0) {
+            segments.close();
+        }
+    }
+
+    /**
+     * Reads chars from start (inclusive) to end (exclusive) one segment at a
+     * time.
+     */
+    private static class SegmentReader extends Reader {
+
+        private final Segments segments;
+        private final long end;
+        private final Buffers buffers = new Buffers();
+        private long position;
+        private int seg;
+        private char[] chars;
+        private byte[] latin1Chars;
+        private int charsPos, charsLen;
+
+        private SegmentReader(Segments segments, long start, long end) {
+            this.segments = segments;
+            this.position = start;
+            this.end = Math.min(end, segments.totalChars());
+            this.seg = segments.findSegment(start) - 1;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            if (charsPos == charsLen) {
+                seg++;
+                Object segment = segments.get(seg, buffers);
+                if (segment instanceof byte[]) {
+                    latin1Chars = (byte[]) segment;
+                    chars = null;
+                    charsLen = latin1Chars.length;
+                } else {
+                    chars = (char[]) segment;
+                    latin1Chars = null;
+                    charsLen = chars.length;
+                }
+                charsPos = (int) (position - segments.starts[seg]);
+            }
+            int n = (int) Math.min(Math.min(len, charsLen - charsPos), end - position);
+            if (chars != null) {
+                System.arraycopy(chars, charsPos, cbuf, off, n);
+            } else {
+                for (int i = 0; i < n; i++) {
+                    cbuf[off + i] = (char) (latin1Chars[charsPos + i] & 0xff);
+                }
+            }
+            charsPos += n;
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            chars = null;
+            latin1Chars = null;
+        }
     }
 
     public class KnownSizeReader extends Reader {
@@ -167,12 +505,12 @@ public long getSize() {
 
     @Override
     public TextCache clone() {
+        // we just use clone for reading for now
+        flushBuffer();
+        buffer = null;
         TextCache o = new TextCache();
         o.sourceItem = sourceItem;
-        o.sb = sb;
-        o.tmp = tmp;
-        // we just use clone for reading for now
-        // o.writer = writer;
+        o.segments = segments;
         o.size = size;
         o.diskCacheEnabled = diskCacheEnabled;
         o.offset = offset;
@@ -0,0 +1,403 @@
+package iped.engine.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConfig.Pragma;
+import org.sqlite.SQLiteConfig.SynchronousMode;
+
+/**
+ * Persistent store of the text extracted from items, written while indexing so
+ * the text viewer and other consumers can read it back without parsing items
+ * again. Text of each item is split into chunks of {@link #CHUNK_CHARS} chars,
+ * compressed like {@link TextCache} segments and kept in a sqlite database of
+ * the case. All chunks but the last one are full, so the chunk holding a char
+ * offset is found without reading the previous ones.
+ */
+public class TextStore implements Closeable {
+
+    private static Logger logger = LoggerFactory.getLogger(TextStore.class);
+
+    public static final String DB_NAME = "data/texts.db"; //$NON-NLS-1$
+
+    static final int CHUNK_CHARS = 1 << 16;
+
+    private static final int SQLITE_CACHE_SIZE = 1 << 24;
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS texts(id INTEGER, chunk INTEGER, latin1 INTEGER, chars INTEGER, data BLOB, PRIMARY KEY(id, chunk)) WITHOUT ROWID;"; //$NON-NLS-1$
+
+    private static final String INSERT_CHUNK = "INSERT OR REPLACE INTO texts(id, chunk, latin1, chars, data) VALUES(?,?,?,?,?);"; //$NON-NLS-1$
+
+    private static final String DELETE_TEXT = "DELETE FROM texts WHERE id=?;"; //$NON-NLS-1$
+
+    private static final String SELECT_CHUNK = "SELECT latin1, chars, data FROM texts WHERE id=? AND chunk=?;"; //$NON-NLS-1$
+
+    private static final String SELECT_SIZE = "SELECT chunk, chars FROM texts WHERE id=? ORDER BY chunk DESC LIMIT 1;"; //$NON-NLS-1$
+
+    // stores being written, by case module dir
+    private static HashMap<File, TextStore> writers = new HashMap<>();
+
+    private final File db;
+    private final Connection con;
+    private final boolean readOnly;
+
+    private TextStore(File db, boolean readOnly) throws SQLException {
+        this.db = db;
+        this.readOnly = readOnly;
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(readOnly);
+        config.setPragma(Pragma.CACHE_SIZE, "-" + SQLITE_CACHE_SIZE / 1024); //$NON-NLS-1$
+        config.setBusyTimeout(3600000);
+        if (!readOnly) {
+            config.setSynchronous(SynchronousMode.NORMAL);
+            config.setPragma(Pragma.JOURNAL_MODE, "TRUNCATE"); //$NON-NLS-1$
+        }
+        con = config.createConnection("jdbc:sqlite:" + db.getAbsolutePath()); //$NON-NLS-1$
+        if (!readOnly) {
+            try (Statement stmt = con.createStatement()) {
+                stmt.executeUpdate(CREATE_TABLE);
+            }
+            con.setAutoCommit(false);
+        }
+    }
+
+    /**
+     * Opens the text store of a case to read texts.
+     *
+     * @return the store, or null if texts were not stored while processing
+     */
+    public static TextStore open(File moduleDir) throws IOException {
+        File db = new File(moduleDir, DB_NAME);
+        if (!db.exists()) {
+            return null;
+        }
+        try {
+            return new TextStore(db, true);
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * @return the store of the case being processed, created on first call
+     */
+    public static synchronized TextStore getWriter(File moduleDir) throws IOException {
+        TextStore store = writers.get(moduleDir);
+        if (store == null) {
+            File db = new File(moduleDir, DB_NAME);
+            db.getParentFile().mkdirs();
+            try {
+                store = new TextStore(db, false);
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+            writers.put(moduleDir, store);
+        }
+        return store;
+    }
+
+    public static void commit(File moduleDir) throws SQLException {
+        TextStore store;
+        synchronized (TextStore.class) {
+            store = writers.get(moduleDir);
+        }
+        if (store != null) {
+            synchronized (store) {
+                store.con.commit();
+            }
+        }
+    }
+
+    public static void close(File moduleDir) throws IOException {
+        TextStore store;
+        synchronized (TextStore.class) {
+            store = writers.remove(moduleDir);
+        }
+        if (store != null) {
+            store.close();
+            logger.info("Closed extracted text store {}", store.db.getAbsolutePath()); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Wraps a reader of the item text, storing the text read. It is stored only
+     * if the wrapped reader is read until its end, partial texts are discarded
+     * when the returned reader is closed.
+     */
+    public Reader storingReader(int id, Reader reader) {
+        return new StoringReader(id, reader);
+    }
+
+    private synchronized void delete(int id) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(DELETE_TEXT)) {
+            ps.setInt(1, id);
+            ps.executeUpdate();
+        }
+    }
+
+    private synchronized void insert(int id, int chunk, boolean latin1, int chars, byte[] data, int len)
+            throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(INSERT_CHUNK)) {
+            ps.setInt(1, id);
+            ps.setInt(2, chunk);
+            ps.setBoolean(3, latin1);
+            ps.setInt(4, chars);
+            ps.setBytes(5, len == data.length ? data : Arrays.copyOf(data, len));
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * @return the number of chars stored for the item, or -1 if its text was not
+     *         stored
+     */
+    public synchronized long getTextSize(int id) throws IOException {
+        try (PreparedStatement ps = con.prepareStatement(SELECT_SIZE)) {
+            ps.setInt(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return -1;
+                }
+                return (long) rs.getInt(1) * CHUNK_CHARS + rs.getInt(2);
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Returns a reader of the stored text of an item, starting at a char offset.
+     * Just the chunks from that offset on are read and decompressed.
+     *
+     * @return the reader, or null if the item text was not stored
+     */
+    public Reader getTextReader(int id, long charOffset) throws IOException {
+        if (charOffset < 0) {
+            throw new IllegalArgumentException("Negative text offset: " + charOffset); //$NON-NLS-1$
+        }
+        ChunkReader reader = new ChunkReader(id);
+        if (!reader.loadChunk((int) (charOffset / CHUNK_CHARS))) {
+            if (charOffset == 0 || getTextSize(id) == -1) {
+                return null;
+            }
+            // offset after the end of text
+            return reader;
+        }
+        reader.charsPos = (int) Math.min(charOffset % CHUNK_CHARS, reader.charsLen);
+        return reader;
+    }
+
+    public Reader getTextReader(int id) throws IOException {
+        return getTextReader(id, 0);
+    }
+
+    private synchronized boolean readChunk(int id, int chunk, ChunkReader reader) throws IOException {
+        try (PreparedStatement ps = con.prepareStatement(SELECT_CHUNK)) {
+            ps.setInt(1, id);
+            ps.setInt(2, chunk);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return false;
+                }
+                boolean latin1 = rs.getBoolean(1);
+                int len = rs.getInt(2);
+                byte[] data = rs.getBytes(3);
+                TextCache.decompress(data, latin1, reader.chars, len, reader.buffers);
+                reader.charsLen = len;
+                reader.charsPos = 0;
+                return true;
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!readOnly && !con.isClosed()) {
+                synchronized (this) {
+                    con.commit();
+                }
+            }
+            con.close();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private class ChunkReader extends Reader {
+
+        private final int id;
+        private final TextCache.Buffers buffers = new TextCache.Buffers();
+        private final char[] chars = new char[CHUNK_CHARS];
+        private int chunk = -1;
+        private int charsPos, charsLen;
+        private boolean eof = false;
+
+        private ChunkReader(int id) {
+            this.id = id;
+        }
+
+        private boolean loadChunk(int chunk) throws IOException {
+            this.chunk = chunk;
+            eof = !readChunk(id, chunk, this);
+            return !eof;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (charsPos == charsLen) {
+                // last chunk is not full
+                if (eof || charsLen < CHUNK_CHARS || !loadChunk(chunk + 1)) {
+                    eof = true;
+                    return -1;
+                }
+            }
+            int n = Math.min(len, charsLen - charsPos);
+            System.arraycopy(chars, charsPos, cbuf, off, n);
+            charsPos += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+
+    private class StoringReader extends FilterReader {
+
+        private final int id;
+        private final TextCache.Buffers buffers = new TextCache.Buffers();
+        // grows up to CHUNK_CHARS, most texts are small
+        private char[] chunkChars = new char[1024];
+        private int chunkLen = 0;
+        private int chunk = 0;
+        private boolean complete = false;
+        private boolean failed = false;
+
+        private StoringReader(int id, Reader reader) {
+            super(reader);
+            this.id = id;
+        }
+
+        @Override
+        public int read() throws IOException {
+            char[] c = new char[1];
+            return read(c, 0, 1) == -1 ? -1 : c[0];
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            int read = super.read(cbuf, off, len);
+            if (read == -1) {
+                if (!complete) {
+                    complete = true;
+                    // chunk 0 is stored even if empty, so empty texts are known
+                    if (chunkLen > 0 || chunk == 0) {
+                        flushChunk();
+                    }
+                }
+                return -1;
+            }
+            int end = off + read;
+            while (off < end) {
+                int n = Math.min(end - off, CHUNK_CHARS - chunkLen);
+                if (chunkLen + n > chunkChars.length) {
+                    int newLen = Math.min(CHUNK_CHARS, Math.max(chunkLen + n, chunkChars.length * 2));
+                    chunkChars = Arrays.copyOf(chunkChars, newLen);
+                }
+                System.arraycopy(cbuf, off, chunkChars, chunkLen, n);
+                chunkLen += n;
+                off += n;
+                if (chunkLen == CHUNK_CHARS) {
+                    flushChunk();
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped chars must be stored too
+            char[] buf = new char[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(buf, 0, (int) Math.min(buf.length, n - skipped));
+                if (read == -1) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void mark(int readAheadLimit) throws IOException {
+            throw new IOException("mark() not supported"); //$NON-NLS-1$
+        }
+
+        @Override
+        public void reset() throws IOException {
+            throw new IOException("reset() not supported"); //$NON-NLS-1$
+        }
+
+        private void flushChunk() {
+            if (failed) {
+                return;
+            }
+            try {
+                if (chunk == 0) {
+                    // item may have been stored before, e.g. processing was resumed
+                    delete(id);
+                }
+                boolean latin1 = TextCache.isLatin1(chunkChars, chunkLen);
+                int compressedLen = TextCache.compress(chunkChars, chunkLen, latin1, buffers);
+                insert(id, chunk, latin1, chunkLen, buffers.compressed(0), compressedLen);
+                chunk++;
+                chunkLen = 0;
+
+            } catch (SQLException e) {
+                failed = true;
+                logger.warn("Error storing extracted text of item {}: {}", id, e.toString()); //$NON-NLS-1$
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            chunkChars = null;
+            try {
+                // also deletes a text stored before, if this one was not stored
+                if (!complete || failed) {
+                    delete(id);
+                }
+            } catch (SQLException e) {
+                logger.warn("Error deleting partial extracted text of item {}: {}", id, e.toString()); //$NON-NLS-1$
+            } finally {
+                super.close();
+            }
+        }
+    }
+
+}
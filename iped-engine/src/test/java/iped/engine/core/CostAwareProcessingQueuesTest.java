@@ -0,0 +1,122 @@
+package iped.engine.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.tika.mime.MediaType;
+import org.junit.Before;
+import org.junit.Test;
+
+import iped.data.IItem;
+import iped.engine.data.CaseData;
+import iped.engine.data.DataSource;
+import iped.engine.data.Item;
+
+public class CostAwareProcessingQueuesTest {
+
+    private static final MediaType VIDEO = MediaType.video("mp4");
+
+    private CostAwareProcessingQueues queues;
+    private DataSource dataSource = new DataSource(new File("a.dd"));
+    private int nextId = 0;
+
+    @Before
+    public void setUp() {
+        queues = new CostAwareProcessingQueues(new CaseData(), 1);
+    }
+
+    private Item newItem(String name, long length) {
+        Item item = new Item();
+        item.setName(name);
+        item.setPath("/" + name);
+        item.setIdInDataSource(Integer.toString(nextId++));
+        item.setDataSource(dataSource);
+        item.setLength(length);
+        return item;
+    }
+
+    /**
+     * Reports processed videos of 512MB taking 10s each, text files 1ms each.
+     */
+    private void addHistory() {
+        for (int i = 0; i < 20; i++) {
+            Item item = newItem("old.mp4", 512L << 20);
+            item.setMediaType(VIDEO);
+            queues.addProcessingTime(item, 10000000);
+            queues.itemProcessed(item);
+        }
+        for (int i = 0; i < 100; i++) {
+            Item item = newItem("old.txt", 1000);
+            item.setMediaType(MediaType.TEXT_PLAIN);
+            queues.addProcessingTime(item, 1000);
+            queues.itemProcessed(item);
+        }
+    }
+
+    private IItem take() throws InterruptedException {
+        return queues.takeItem(null);
+    }
+
+    @Test
+    public void testCostlyItemsTakenFirst() throws InterruptedException {
+        addHistory();
+        Item text1 = newItem("1.txt", 1000);
+        Item smallVideo = newItem("small.mp4", 100L << 20);
+        Item text2 = newItem("2.txt", 1000);
+        Item video = newItem("video.mp4", 2L << 30);
+        Item bigVideo = newItem("big.mp4", 4L << 30);
+        Item text3 = newItem("3.txt", 1000);
+        Item queueEnd = new Item();
+        queueEnd.setPath("[queue-end]");
+        queueEnd.setQueueEnd(true);
+        for (Item item : new Item[] { text1, smallVideo, text2, video, bigVideo, text3 }) {
+            queues.addItem(item);
+        }
+        queues.addItem(queueEnd);
+        assertEquals(6, queues.getCurrentQueueSize());
+        assertSame(bigVideo, queues.peekItemFromCurrentQueue());
+
+        // higher cost first, others in insertion order
+        IItem[] expected = { bigVideo, video, text1, smallVideo, text2, text3 };
+        for (IItem item : expected) {
+            assertSame(item, take());
+        }
+        assertEquals(0, queues.getCurrentQueueSize());
+        assertFalse(queues.isNoItemInQueueOrBeingProcessed());
+        for (int i = 0; i < expected.length; i++) {
+            queues.decItemsBeingProcessed();
+        }
+        assertTrue(queues.isNoItemInQueueOrBeingProcessed());
+        assertSame(queueEnd, take());
+    }
+
+    @Test
+    public void testDefaultCostWithoutHistory() throws InterruptedException {
+        // 50MB/s by default, so costly above 1.5GB
+        Item big = newItem("big.bin", 2L << 30);
+        Item small = newItem("small.bin", 1L << 30);
+        queues.addItem(small);
+        queues.addItem(big);
+        assertSame(big, take());
+        assertSame(small, take());
+    }
+
+    @Test
+    public void testCostlySubitemsEnqueued() throws InterruptedException {
+        addHistory();
+        Item text = newItem("sub.txt", 1000);
+        Item video = newItem("sub.mp4", 2L << 30);
+        assertTrue(queues.isToEnqueueSubitem(text, 1));
+        for (int i = 0; i < 100; i++) {
+            queues.addItem(newItem(i + ".txt", 1000));
+        }
+        // the queue already has enough items for the workers
+        assertFalse(queues.isToEnqueueSubitem(text, 1));
+        assertTrue(queues.isToEnqueueSubitem(video, 1));
+    }
+
+}
@@ -0,0 +1,234 @@
+package iped.engine.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import iped.data.IItem;
+import iped.engine.data.CaseData;
+import iped.engine.data.DataSource;
+import iped.engine.data.Item;
+
+/**
+ * Simulates the workers and the manager in a single thread, so items are taken
+ * and processed in a known order.
+ */
+public class DependencyAwareProcessingQueuesTest {
+
+    private DependencyAwareProcessingQueues queues;
+    private DataSource dataSourceA = new DataSource(new File("a.dd"));
+    private DataSource dataSourceB = new DataSource(new File("b.dd"));
+    private Item queueEnd;
+    private int searchersCreated = 0;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        queues = new DependencyAwareProcessingQueues(new CaseData());
+        queues.setSearcherFactory(() -> {
+            searchersCreated++;
+            return null;
+        });
+        queueEnd = new Item();
+        queueEnd.setPath("[queue-end]");
+        queueEnd.setQueueEnd(true);
+    }
+
+    private Item newItem(String name, DataSource dataSource) {
+        Item item = new Item();
+        item.setName(name);
+        item.setPath("/" + name);
+        item.setIdInDataSource(name);
+        item.setDataSource(dataSource);
+        return item;
+    }
+
+    private IItem take() throws InterruptedException {
+        return queues.takeItem(null);
+    }
+
+    /**
+     * Takes the queue end and puts it back, like a worker does.
+     *
+     * @return true if there are no items left in the current queue or being
+     *         processed, so the worker would wait for the queue change
+     */
+    private boolean takeQueueEnd() throws InterruptedException {
+        IItem item = take();
+        assertSame(queueEnd, item);
+        boolean idle = queues.isNoItemInQueueOrBeingProcessed();
+        queues.addLastToCurrentQueue(item);
+        return idle;
+    }
+
+    /**
+     * Called after the last task processed the item.
+     */
+    private void finish(IItem item) {
+        queues.decItemsBeingProcessed();
+        queues.itemProcessed(item);
+    }
+
+    @Test
+    public void testHeldUntilDataSourceItemsProcessed() throws InterruptedException {
+        Item a0 = newItem("a0", dataSourceA);
+        Item b0 = newItem("b0", dataSourceB);
+        Item a1 = newItem("a1", dataSourceA);
+        Item a2 = newItem("a2", dataSourceA);
+        Item b2 = newItem("b2", dataSourceB);
+        queues.addItem(a0);
+        queues.addItem(b0);
+        queues.addItemToQueue(a1, 1);
+        queues.addItemToQueue(a2, 2);
+        queues.addItemToQueue(b2, 2);
+        queues.addItem(queueEnd);
+        queues.producerFinished();
+
+        assertSame(a0, take());
+        assertSame(b0, take());
+        assertFalse(queues.isToProcessNow(a2, 2));
+        assertFalse(queues.isToProcessNow(b2, 2));
+        // all data sources have items being processed
+        assertFalse(takeQueueEnd());
+
+        finish(b0);
+        assertSame(b2, take());
+        assertFalse(queues.isToProcessNow(a1, 1));
+        assertSame(queueEnd, queues.peekItemFromCurrentQueue());
+        takeQueueEnd();
+
+        finish(a0);
+        // a2 still depends on a1
+        assertSame(a1, take());
+        assertFalse(queues.isToProcessNow(a2, 2));
+        takeQueueEnd();
+        finish(a1);
+        assertSame(a2, take());
+        assertTrue(queues.isToProcessNow(a2, 2));
+        finish(a2);
+        finish(b2);
+
+        assertTrue(takeQueueEnd());
+        // reopened once for each release
+        assertEquals(3, searchersCreated);
+    }
+
+    @Test
+    public void testProducerFinishedWithItemsInFlight() throws InterruptedException {
+        Item a0 = newItem("a0", dataSourceA);
+        Item a2 = newItem("a2", dataSourceA);
+        queues.addItem(a0);
+        queues.addItem(queueEnd);
+        queues.addItemToQueue(a2, 2);
+
+        assertSame(a0, take());
+        finish(a0);
+        // the producer could still add items of the data source
+        assertFalse(queues.isToProcessNow(a2, 2));
+        assertTrue(takeQueueEnd());
+
+        Item a0b = newItem("a0b", dataSourceA);
+        queues.addItem(a0b);
+        assertFalse(takeQueueEnd());
+        assertSame(a0b, take());
+        queues.producerFinished();
+        assertFalse(queues.isToProcessNow(a2, 2));
+        takeQueueEnd();
+
+        finish(a0b);
+        assertSame(a2, take());
+        finish(a2);
+        assertTrue(takeQueueEnd());
+        assertEquals(1, searchersCreated);
+    }
+
+    @Test
+    public void testReEnqueuedItem() throws InterruptedException {
+        Item a0 = newItem("a0", dataSourceA);
+        Item a3 = newItem("a3", dataSourceA);
+        Item b3 = newItem("b3", dataSourceB);
+        queues.addItem(a0);
+        queues.addItem(queueEnd);
+        queues.addItemToQueue(a3, 3);
+        queues.addItemToQueue(b3, 3);
+        queues.producerFinished();
+
+        assertSame(a0, take());
+        // its type has a later priority, found while processing it
+        queues.addItemToQueue(a0, 2);
+        queues.decItemsBeingProcessed();
+
+        assertSame(a0, take());
+        assertFalse(queues.isToProcessNow(a3, 3));
+        assertSame(b3, take());
+        takeQueueEnd();
+        finish(a0);
+        assertSame(a3, take());
+        finish(a3);
+        finish(b3);
+        assertTrue(takeQueueEnd());
+    }
+
+    @Test
+    public void testQueueEndEndsPipeline() throws InterruptedException {
+        Item a0 = newItem("a0", dataSourceA);
+        Item b0 = newItem("b0", dataSourceB);
+        Item a1 = newItem("a1", dataSourceA);
+        Item b2 = newItem("b2", dataSourceB);
+        Item a3 = newItem("a3", dataSourceA);
+        queues.addItem(a0);
+        queues.addItem(b0);
+        queues.addItem(queueEnd);
+        queues.addItemToQueue(a1, 1);
+        queues.addItemToQueue(b2, 2);
+        queues.addItemToQueue(a3, 3);
+        queues.producerFinished();
+
+        assertSame(a0, take());
+        assertSame(b0, take());
+        finish(b0);
+        // released early, others are left to their queues
+        assertSame(b2, take());
+        finish(b2);
+        takeQueueEnd();
+        finish(a0);
+
+        List<IItem> processed = new ArrayList<>();
+        int queueChanges = 0;
+        while (true) {
+            IItem item = take();
+            if (!item.isQueueEnd()) {
+                processed.add(item);
+                finish(item);
+                continue;
+            }
+            boolean idle = queues.isNoItemInQueueOrBeingProcessed();
+            queues.addLastToCurrentQueue(item);
+            if (!idle) {
+                continue;
+            }
+            // all workers waiting, the manager changes the queue
+            assertSame(queueEnd, queues.peekItemFromCurrentQueue());
+            if (queues.changeToNextQueue() == null) {
+                break;
+            }
+            queueChanges++;
+            queues.addLastToCurrentQueue(queueEnd);
+        }
+        assertEquals(QueuesProcessingOrder.getProcessingQueues().size(), queueChanges);
+        assertNull(queues.getCurrentQueuePriority());
+        // a1 and a3 released when a0 finished, before their queues
+        assertEquals(2, processed.size());
+        assertSame(a1, processed.get(0));
+        assertSame(a3, processed.get(1));
+    }
+
+}
@@ -0,0 +1,102 @@
+package iped.engine.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apache.tika.mime.MediaType;
+import org.junit.Test;
+
+import iped.engine.data.Item;
+
+public class ItemCostEstimatorTest {
+
+    private static final MediaType PDF = MediaType.application("pdf");
+
+    private ItemCostEstimator estimator = new ItemCostEstimator();
+
+    private static Item newItem(String name, MediaType type, long length) {
+        Item item = new Item();
+        item.setName(name);
+        item.setMediaType(type);
+        item.setLength(length);
+        return item;
+    }
+
+    /**
+     * Adds processed items with the specified processing time, reported by two
+     * tasks.
+     */
+    private void addProcessedItems(int count, String name, MediaType type, long length, long time) {
+        for (int i = 0; i < count; i++) {
+            Item item = newItem(name, type, length);
+            estimator.addProcessingTime(item, time / 2);
+            estimator.addProcessingTime(item, time - time / 2);
+            estimator.addProcessedItem(item);
+        }
+    }
+
+    @Test
+    public void testDefaultThroughput() {
+        assertEquals(0, estimator.estimateCost(newItem("a.pdf", PDF, 0)));
+        assertEquals(2000000, estimator.estimateCost(newItem("a.pdf", PDF, 100000000)), 1);
+        // not enough samples yet
+        addProcessedItems(19, "a.pdf", PDF, 1000, 1000000);
+        assertEquals(2000000, estimator.estimateCost(newItem("a.pdf", PDF, 100000000)), 1);
+        Item item = new Item();
+        item.setName("no_length");
+        assertEquals(0, estimator.estimateCost(item));
+    }
+
+    @Test
+    public void testCostPerType() {
+        // 1s per item of 1MB
+        addProcessedItems(20, "a.pdf", PDF, 1 << 20, 1000000);
+        // 1ms per item of 1KB
+        addProcessedItems(100, "a.txt", MediaType.TEXT_PLAIN, 1 << 10, 1000);
+
+        // small items cost at least the average time per item
+        assertEquals(1000000, estimator.estimateCost(newItem("b.pdf", PDF, 1)));
+        assertEquals(10000000, estimator.estimateCost(newItem("b.pdf", PDF, 10 << 20)), 1);
+        assertEquals(1000, estimator.estimateCost(newItem("b.txt", MediaType.TEXT_PLAIN, 1)));
+        assertEquals(10000, estimator.estimateCost(newItem("b.txt", MediaType.TEXT_PLAIN, 10 << 10)), 1);
+
+        // types without history use the global average
+        long globalTimePerItem = (20 * 1000000L + 100 * 1000L) / 120;
+        assertEquals(globalTimePerItem, estimator.estimateCost(newItem("b.doc", MediaType.application("msword"), 1)));
+        long globalBytes = 20L * (1 << 20) + 100L * (1 << 10);
+        long globalTime = 20 * 1000000L + 100 * 1000L;
+        long length = 100 << 20;
+        assertEquals((long) ((double) globalTime / globalBytes * length),
+                estimator.estimateCost(newItem("b.doc", MediaType.application("msword"), length)));
+    }
+
+    @Test
+    public void testTypeFromExtension() {
+        assertEquals(PDF, estimator.getMediaType(newItem("a.pdf", null, 0)));
+        assertEquals(PDF, estimator.getMediaType(newItem("A.PDF", null, 0)));
+        // declared type is used
+        assertEquals(MediaType.TEXT_PLAIN, estimator.getMediaType(newItem("a.pdf", MediaType.TEXT_PLAIN, 0)));
+        assertNull(estimator.getMediaType(newItem("no_extension", null, 0)));
+
+        addProcessedItems(20, "a.pdf", PDF, 1 << 20, 1000000);
+        addProcessedItems(100, "a.txt", MediaType.TEXT_PLAIN, 1 << 10, 1000);
+        // enqueued before signature detection
+        assertEquals(1000000, estimator.estimateCost(newItem("b.pdf", null, 1)));
+        assertEquals(1000, estimator.estimateCost(newItem("b.txt", null, 1)));
+    }
+
+    @Test
+    public void testTimeBeforeSignatureDetection() {
+        for (int i = 0; i < 20; i++) {
+            Item item = newItem("a.pdf", null, 1 << 20);
+            // tasks before signature detection
+            estimator.addProcessingTime(item, 400000);
+            item.setMediaType(PDF);
+            estimator.addProcessingTime(item, 600000);
+            estimator.addProcessedItem(item);
+        }
+        addProcessedItems(100, "a.txt", MediaType.TEXT_PLAIN, 1 << 10, 1000);
+        assertEquals(1000000, estimator.estimateCost(newItem("b.pdf", null, 1)));
+    }
+
+}
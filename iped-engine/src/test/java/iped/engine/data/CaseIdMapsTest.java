@@ -0,0 +1,168 @@
+package iped.engine.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CaseIdMapsTest {
+
+    private static final String KEY = "commitKey";
+
+    private File tmpDir;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        tmpDir = Files.createTempDirectory("caseidmaps").toFile();
+        file = new File(tmpDir, CaseIdMaps.FILE_PATH);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    /**
+     * Maps with more ints than the read buffer holds, some docs deleted.
+     */
+    private static CaseIdMaps newMaps(int numDocs) {
+        Random random = new Random(0);
+        int[] ids = new int[numDocs];
+        int lastId = -1;
+        int totalItems = 0;
+        for (int i = 0; i < numDocs; i++) {
+            if (random.nextInt(10) == 0) {
+                ids[i] = -1;
+            } else {
+                ids[i] = i + random.nextInt(3) * numDocs;
+                lastId = Math.max(lastId, ids[i]);
+                totalItems++;
+            }
+        }
+        int[] docs = new int[lastId + 1];
+        Arrays.fill(docs, -1);
+        for (int i = 0; i < numDocs; i++) {
+            if (ids[i] != -1) {
+                docs[ids[i]] = i;
+            }
+        }
+        Set<String> uuids = new TreeSet<>(Arrays.asList("uuid-1", "uuid-2", "evidência-3"));
+        List<String> categories = Arrays.asList("Images", "Documents", "Outras categorias");
+        return new CaseIdMaps(IntBuffer.wrap(ids), IntBuffer.wrap(docs), lastId, totalItems, uuids, categories);
+    }
+
+    private static int[] toArray(IntBuffer buffer) {
+        int[] array = new int[buffer.limit()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = buffer.get(i);
+        }
+        return array;
+    }
+
+    private static void assertSameMaps(CaseIdMaps expected, CaseIdMaps result) {
+        assertArrayEquals(toArray(expected.ids), toArray(result.ids));
+        assertArrayEquals(toArray(expected.docs), toArray(result.docs));
+        assertEquals(expected.lastId, result.lastId);
+        assertEquals(expected.totalItems, result.totalItems);
+        assertEquals(expected.evidenceUUIDs, result.evidenceUUIDs);
+        assertEquals(expected.leafCategories, result.leafCategories);
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        for (int numDocs : new int[] { 0, 1, 1000, 100000 }) {
+            CaseIdMaps maps = newMaps(numDocs);
+            maps.save(file, KEY);
+            assertSameMaps(maps, CaseIdMaps.load(file, KEY));
+        }
+    }
+
+    @Test
+    public void testFileNotLockedAfterLoad() throws IOException {
+        CaseIdMaps maps = newMaps(1000);
+        maps.save(file, KEY);
+        CaseIdMaps loaded = CaseIdMaps.load(file, KEY);
+
+        // replaced after a new commit while the case is open
+        newMaps(500).save(file, KEY + "2");
+        assertSameMaps(maps, loaded);
+        assertTrue(file.delete());
+        assertFalse(new File(file.getAbsolutePath() + ".tmp").exists()); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testTruncatedFile() throws IOException {
+        newMaps(10000).save(file, KEY);
+        long length = file.length();
+        for (long size : new long[] { length - 1, length / 2, 10, 2, 0 }) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) { //$NON-NLS-1$
+                raf.setLength(size);
+            }
+            try {
+                CaseIdMaps.load(file, KEY);
+                fail("Truncated file loaded, size " + size); //$NON-NLS-1$
+            } catch (IOException e) {
+                // expected, maps are rebuilt
+            }
+        }
+    }
+
+    @Test
+    public void testCommitKeyMismatch() throws IOException {
+        Directory directory = FSDirectory.open(new File(tmpDir, "index").toPath()); //$NON-NLS-1$
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig())) {
+            for (int i = 0; i < 10; i++) {
+                Document doc = new Document();
+                doc.add(new StringField("id", Integer.toString(i), Store.NO)); //$NON-NLS-1$
+                writer.addDocument(doc);
+            }
+            writer.commit();
+            String key;
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                key = CaseIdMaps.getCommitKey(reader);
+                assertNotNull(key);
+                newMaps(10).save(file, key);
+                assertNotNull(CaseIdMaps.load(file, key));
+            }
+
+            writer.deleteDocuments(new Term("id", "3")); //$NON-NLS-1$ //$NON-NLS-2$
+            writer.commit();
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                String newKey = CaseIdMaps.getCommitKey(reader);
+                assertFalse(key.equals(newKey));
+                assertNull(CaseIdMaps.load(file, newKey));
+            }
+        } finally {
+            directory.close();
+        }
+    }
+}
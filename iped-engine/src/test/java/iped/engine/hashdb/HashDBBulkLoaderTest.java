@@ -0,0 +1,254 @@
+package iped.engine.hashdb;
+
+import static iped.engine.hashdb.HashDB.hashBytesLen;
+import static iped.engine.hashdb.HashDB.hashTypes;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HashDBBulkLoaderTest {
+
+    private File tmpDir;
+
+    @Before
+    public void setUp() throws IOException {
+        tmpDir = Files.createTempDirectory("hashdb-bulk-test").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private static String hash(int type, int value) {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < hashBytesLen[type] * 2) {
+            sb.append(String.format("%08x", value * 31 + type + 1));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param records
+     *            hashes of each record, by type, null if absent, followed by the
+     *            property value
+     */
+    private File writeInput(List<String[]> records) throws IOException {
+        File input = new File(tmpDir, "input.csv");
+        try (PrintWriter out = new PrintWriter(input, StandardCharsets.UTF_8)) {
+            out.println(String.join(",", hashTypes) + ",set");
+            for (String[] record : records) {
+                StringBuilder line = new StringBuilder();
+                for (int i = 0; i < hashTypes.length; i++) {
+                    line.append(record[i] != null ? record[i] : "").append(',');
+                }
+                out.println(line.append(record[hashTypes.length]));
+            }
+        }
+        return input;
+    }
+
+    private File createDB(File input, boolean bulk) {
+        File db = new File(tmpDir, bulk ? "bulk.db" : "default.db");
+        List<String> args = new ArrayList<>(List.of("-d", input.getPath(), "-o", db.getPath()));
+        if (bulk) {
+            args.add("-bulk");
+        }
+        HashDBTool tool = new HashDBTool();
+        boolean success = tool.run(args.toArray(new String[0]));
+        tool.finish(success);
+        assertTrue(success);
+        return db;
+    }
+
+    /**
+     * @return each record of the database with its hashes and properties, sorted
+     */
+    private static List<String> dump(File db) throws Exception {
+        Map<Integer, String> propertyNames = new HashMap<>();
+        Map<Integer, StringBuilder> records = new TreeMap<>();
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + db.getAbsolutePath());
+                Statement st = conn.createStatement()) {
+            try (ResultSet rs = st.executeQuery("select PROPERTY_ID, PROPERTY_NAME from PROPERTIES")) {
+                while (rs.next()) {
+                    propertyNames.put(rs.getInt(1), rs.getString(2));
+                }
+            }
+            try (ResultSet rs = st.executeQuery("select * from HASHES")) {
+                while (rs.next()) {
+                    StringBuilder sb = new StringBuilder();
+                    for (String type : hashTypes) {
+                        byte[] bytes = rs.getBytes(type);
+                        sb.append(type).append('=').append(bytes != null ? HashDB.hashBytesToStr(bytes) : null);
+                        sb.append(' ');
+                    }
+                    records.put(rs.getInt("HASH_ID"), sb);
+                }
+            }
+            try (ResultSet rs = st
+                    .executeQuery("select HASH_ID, PROPERTY_ID, VALUE from HASHES_PROPERTIES order by PROPERTY_ID")) {
+                while (rs.next()) {
+                    Set<String> values = new TreeSet<>(HashDB.toSet(rs.getString(3)));
+                    records.get(rs.getInt(1)).append(propertyNames.get(rs.getInt(2))).append('=').append(values);
+                }
+            }
+        }
+        List<String> result = new ArrayList<>();
+        for (StringBuilder sb : records.values()) {
+            result.add(sb.toString());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Imports the records in the default and in the bulk mode.
+     * 
+     * @return records of the bulk loaded database, same as the default one
+     */
+    private List<String> assertSameDB(List<String[]> records) throws Exception {
+        File input = writeInput(records);
+        List<String> expected = dump(createDB(input, false));
+        List<String> result = dump(createDB(input, true));
+        assertEquals(expected, result);
+        return result;
+    }
+
+    private static String[] record(String set, int... typesAndValues) {
+        String[] record = new String[hashTypes.length + 1];
+        for (int i = 0; i < typesAndValues.length; i += 2) {
+            record[typesAndValues[i]] = hash(typesAndValues[i], typesAndValues[i + 1]);
+        }
+        record[hashTypes.length] = set;
+        return record;
+    }
+
+    @Test
+    public void testChainedRecords() throws Exception {
+        List<String[]> records = new ArrayList<>();
+        // chained by each hash type
+        records.add(record("a", 0, 1));
+        records.add(record("b", 0, 1, 1, 1));
+        records.add(record("c", 1, 1, 2, 1));
+        records.add(record("d", 2, 1, 3, 1));
+        records.add(record("e", 3, 1, 4, 1));
+        records.add(record("f", 4, 1));
+        // two records merged by a later one
+        records.add(record("g", 2, 2));
+        records.add(record("h", 4, 2));
+        records.add(record("i", 2, 2, 4, 2));
+        // not merged
+        records.add(record("j", 1, 3));
+        assertEquals(3, assertSameDB(records).size());
+    }
+
+    @Test
+    public void testConflictingHashes() throws Exception {
+        List<String[]> records = new ArrayList<>();
+        // same SHA1, different MD5s, the last one is kept
+        records.add(record("a", 0, 1, 1, 1));
+        records.add(record("b", 0, 2, 1, 1));
+        // same MD5, different SHA256s
+        records.add(record("c", 0, 3, 2, 3));
+        records.add(record("d", 0, 3, 2, 4));
+        records.add(record("e", 2, 4, 3, 4));
+        List<String> result = assertSameDB(records);
+        assertEquals(2, result.size());
+        String merged = "MD5=" + hash(0, 2).toUpperCase() + " SHA1=" + hash(1, 1).toUpperCase();
+        assertTrue(result.get(0).startsWith(merged));
+    }
+
+    @Test
+    public void testRandomRecords() throws Exception {
+        Random random = new Random(0);
+        List<String[]> records = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            // records of the same file have consistent hashes, some of them are present
+            int file = random.nextInt(1000);
+            String[] record = new String[hashTypes.length + 1];
+            boolean hasHash = false;
+            for (int type = 0; type < hashTypes.length; type++) {
+                if (random.nextInt(3) == 0) {
+                    record[type] = hash(type, file);
+                    hasHash = true;
+                }
+            }
+            if (!hasHash) {
+                int type = random.nextInt(hashTypes.length);
+                record[type] = hash(type, file);
+            }
+            record[hashTypes.length] = "set" + random.nextInt(5);
+            records.add(record);
+        }
+        assertSameDB(records);
+    }
+
+    @Test
+    public void testManyRuns() throws Exception {
+        Random random = new Random(1);
+        List<byte[][]> records = new ArrayList<>();
+        List<Map<Integer, Set<String>>> properties = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            int file = random.nextInt(2000);
+            byte[][] hashes = new byte[hashTypes.length][];
+            int first = random.nextInt(hashTypes.length);
+            for (int type = 0; type < hashTypes.length; type++) {
+                if (type == first || random.nextInt(3) == 0) {
+                    hashes[type] = HashDB.hashStrToBytes(hash(type, file), hashBytesLen[type]);
+                }
+            }
+            records.add(hashes);
+            properties.add(Map.of(random.nextInt(3), Set.of("value" + random.nextInt(5))));
+        }
+        // a small buffer writes many runs, merged in more than one level
+        List<String> expected = load(records, properties, Long.MAX_VALUE);
+        List<String> result = load(records, properties, 4096);
+        assertEquals(expected, result);
+    }
+
+    private List<String> load(List<byte[][]> records, List<Map<Integer, Set<String>>> properties, long bufferSize)
+            throws Exception {
+        List<String> result = new ArrayList<>();
+        try (HashDBBulkLoader loader = new HashDBBulkLoader(tmpDir, bufferSize)) {
+            for (int i = 0; i < records.size(); i++) {
+                loader.add(records.get(i), properties.get(i));
+            }
+            loader.load((hashes, props) -> {
+                StringBuilder sb = new StringBuilder();
+                for (byte[] hash : hashes) {
+                    sb.append(hash != null ? HashDB.hashBytesToStr(hash) : null).append(' ');
+                }
+                for (Map.Entry<Integer, Set<String>> entry : props.entrySet()) {
+                    sb.append(entry.getKey()).append('=').append(new TreeSet<>(entry.getValue()));
+                }
+                result.add(sb.toString());
+            });
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+}
@@ -0,0 +1,114 @@
+package iped.engine.hashdb;
+
+import static iped.engine.hashdb.HashDB.hashBytesLen;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HashDBIndexTest {
+
+    private File tmpDir;
+
+    @Before
+    public void setUp() throws IOException {
+        tmpDir = Files.createTempDirectory("hashdb-index-test").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private static String md5(int value) {
+        return String.format("%032x", value * 31L + 1);
+    }
+
+    private File createDB(String dirName, int numHashes, String... extraArgs) throws IOException {
+        File dir = new File(tmpDir, dirName);
+        dir.mkdirs();
+        File input = new File(dir, "input.csv");
+        try (PrintWriter out = new PrintWriter(input, StandardCharsets.UTF_8)) {
+            out.println("md5,set");
+            for (int i = 0; i < numHashes; i++) {
+                out.println(md5(i) + ",set" + (i % 3));
+            }
+        }
+        File db = new File(dir, "hashes.db");
+        String[] args = new String[4 + extraArgs.length];
+        args[0] = "-d";
+        args[1] = input.getPath();
+        args[2] = "-o";
+        args[3] = db.getPath();
+        System.arraycopy(extraArgs, 0, args, 4, extraArgs.length);
+        HashDBTool tool = new HashDBTool();
+        boolean success = tool.run(args);
+        tool.finish(success);
+        assertTrue(success);
+        return db;
+    }
+
+    private static int lookup(HashDBIndex index, int value) {
+        byte[][] hashes = new byte[HashDB.hashTypes.length][];
+        hashes[0] = HashDB.hashStrToBytes(md5(value), hashBytesLen[0]);
+        return index.lookup(hashes, new int[HashDBIndex.MAX_HITS]);
+    }
+
+    @Test
+    public void testBuildIndexNextToDB() throws Exception {
+        File db = createDB("db", 1000, "-buildIndex");
+        File indexFile = HashDBIndex.getIndexFileNextToDB(db);
+        assertTrue(indexFile.exists());
+        assertEquals(indexFile, HashDBIndex.getIndexFile(db));
+        indexFile.setLastModified(0);
+
+        // loaded by processing without rebuilding
+        HashDBDataSource dataSource = new HashDBDataSource(db);
+        HashDBIndex index = HashDBIndex.load(dataSource, db);
+        try {
+            assertEquals(0, indexFile.lastModified());
+            assertEquals(1000, index.size());
+            assertEquals(1, lookup(index, 10));
+            assertEquals(0, lookup(index, 1000));
+        } finally {
+            index.close();
+            dataSource.close();
+        }
+    }
+
+    @Test
+    public void testIndexPerDB() throws Exception {
+        File db1 = createDB("db1", 100);
+        File db2 = createDB("db2", 200);
+        assertTrue(!HashDBIndex.getIndexFile(db1).equals(HashDBIndex.getIndexFile(db2)));
+
+        HashDBDataSource dataSource1 = new HashDBDataSource(db1);
+        HashDBDataSource dataSource2 = new HashDBDataSource(db2);
+        HashDBIndex index1 = HashDBIndex.load(dataSource1, db1);
+        HashDBIndex index2 = HashDBIndex.load(dataSource2, db2);
+        try {
+            // each one is kept, not rebuilt when the other database is used
+            assertEquals(100, index1.size());
+            assertEquals(200, index2.size());
+            assertEquals(0, lookup(index1, 150));
+            assertEquals(1, lookup(index2, 150));
+            assertTrue(HashDBIndex.getIndexFileNextToDB(db1).exists());
+            assertTrue(HashDBIndex.getIndexFileNextToDB(db2).exists());
+        } finally {
+            index1.close();
+            index2.close();
+            dataSource1.close();
+            dataSource2.close();
+        }
+    }
+
+}
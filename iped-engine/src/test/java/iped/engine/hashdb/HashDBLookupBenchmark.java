@@ -0,0 +1,177 @@
+package iped.engine.hashdb;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.sqlite.SQLiteConfig;
+
+/**
+ * Measures hashes database lookups per second versus number of threads, using
+ * SQLite queries (one {@link HashDBDataSource} per thread, like
+ * HashDBLookupTask) and the memory mapped {@link HashDBIndex}. Lookups are 99%
+ * misses and 1% hits. Run it as a java application, optionally passing the
+ * number of hashes in the test database.
+ */
+public class HashDBLookupBenchmark {
+
+    private static final int[] THREADS = { 1, 2, 4, 8, 16 };
+
+    private static final int LOOKUPS_PER_THREAD = 200000;
+
+    private static final double HIT_RATIO = 0.01;
+
+    private interface Lookup {
+        int lookup(byte[][] hashes) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int numHashes = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        File dir = Files.createTempDirectory("hashdb-bench").toFile();
+        File dbFile = new File(dir, "hashes.db");
+        File indexFile = new File(dir, "hashes.index");
+        Random random = new Random(0);
+        List<byte[]> md5s = createDatabase(dbFile, numHashes, random);
+
+        HashDBDataSource dataSource = new HashDBDataSource(dbFile);
+        long t = System.currentTimeMillis();
+        HashDBIndex index = HashDBIndex.load(dataSource, dbFile, indexFile);
+        System.out.println("Index built in " + (System.currentTimeMillis() - t) + "ms, size "
+                + indexFile.length() / (1 << 20) + "MB");
+
+        int maxThreads = THREADS[THREADS.length - 1];
+        List<HashDBDataSource> dataSources = new ArrayList<>();
+        for (int i = 0; i < maxThreads; i++) {
+            dataSources.add(new HashDBDataSource(dbFile));
+        }
+
+        System.out.println("threads\tsqlite lookups/s\tindex lookups/s");
+        for (int threads : THREADS) {
+            double sqlite = run(threads, md5s, id -> {
+                HashDBDataSource ds = dataSources.get(id);
+                Map<String, String> properties = new HashMap<>();
+                return hashes -> {
+                    properties.clear();
+                    ds.lookup(hashes, properties);
+                    return properties.size();
+                };
+            });
+            double indexed = run(threads, md5s, id -> {
+                HashDBDataSource ds = dataSources.get(id);
+                Map<String, String> properties = new HashMap<>();
+                int[] hashIds = new int[HashDBIndex.MAX_HITS];
+                return hashes -> {
+                    properties.clear();
+                    int hits = index.lookup(hashes, hashIds);
+                    if (hits > 0) {
+                        ds.lookupProperties(hashIds, hits, properties);
+                    }
+                    return properties.size();
+                };
+            });
+            System.out.printf("%d\t%.0f\t%.0f%n", threads, sqlite, indexed);
+        }
+
+        index.close();
+        dataSource.close();
+        for (HashDBDataSource ds : dataSources) {
+            ds.close();
+        }
+        dbFile.delete();
+        indexFile.delete();
+        dir.delete();
+    }
+
+    private interface LookupFactory {
+        Lookup create(int threadId);
+    }
+
+    private static double run(int threads, List<byte[]> md5s, LookupFactory factory) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> futures = new ArrayList<>();
+        long t = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            Lookup lookup = factory.create(i);
+            int seed = i;
+            futures.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                byte[][] hashes = new byte[HashDB.hashTypes.length][];
+                int found = 0;
+                for (int j = 0; j < LOOKUPS_PER_THREAD; j++) {
+                    if (random.nextDouble() < HIT_RATIO) {
+                        hashes[0] = md5s.get(random.nextInt(md5s.size()));
+                    } else {
+                        hashes[0] = new byte[16];
+                        random.nextBytes(hashes[0]);
+                    }
+                    if (lookup.lookup(hashes) > 0) {
+                        found++;
+                    }
+                }
+                return found;
+            }));
+        }
+        for (Future<Integer> future : futures) {
+            future.get();
+        }
+        t = System.nanoTime() - t;
+        executor.shutdown();
+        return (double) threads * LOOKUPS_PER_THREAD * 1e9 / t;
+    }
+
+    private static List<byte[]> createDatabase(File dbFile, int numHashes, Random random) throws Exception {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setSynchronous(SQLiteConfig.SynchronousMode.OFF);
+        config.setJournalMode(SQLiteConfig.JournalMode.OFF);
+        List<byte[]> md5s = new ArrayList<>();
+        try (Connection conn = config.createConnection("jdbc:sqlite:" + dbFile.getAbsolutePath())) {
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                StringBuilder sb = new StringBuilder("create table HASHES (HASH_ID integer primary key");
+                for (String s : HashDB.hashTypes) {
+                    sb.append(", ").append(s).append(" blob");
+                }
+                stmt.executeUpdate(sb.append(")").toString());
+                stmt.executeUpdate("create table HASHES_PROPERTIES (HASH_ID integer, PROPERTY_ID integer, "
+                        + "VALUE text NOT NULL, primary key (HASH_ID, PROPERTY_ID))");
+                stmt.executeUpdate("create table PROPERTIES (PROPERTY_ID integer, PROPERTY_NAME text NOT NULL, "
+                        + "primary key (PROPERTY_ID))");
+                stmt.executeUpdate("insert into PROPERTIES values (1, 'status')");
+            }
+            try (PreparedStatement insHash = conn.prepareStatement("insert into HASHES (HASH_ID, MD5) values (?,?)");
+                    PreparedStatement insProp = conn.prepareStatement(
+                            "insert into HASHES_PROPERTIES values (?, 1, 'known')")) {
+                for (int i = 1; i <= numHashes; i++) {
+                    byte[] md5 = new byte[16];
+                    random.nextBytes(md5);
+                    insHash.setInt(1, i);
+                    insHash.setBytes(2, md5);
+                    insHash.executeUpdate();
+                    insProp.setInt(1, i);
+                    insProp.executeUpdate();
+                    if (i % 100 == 0) {
+                        md5s.add(md5);
+                    }
+                }
+            }
+            try (Statement stmt = conn.createStatement()) {
+                for (String s : HashDB.hashTypes) {
+                    stmt.executeUpdate("create unique index IDX_" + s + " on HASHES (" + s + ")");
+                }
+            }
+            conn.commit();
+        }
+        return md5s;
+    }
+
+}
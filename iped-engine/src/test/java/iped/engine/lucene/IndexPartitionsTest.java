@@ -0,0 +1,192 @@
+package iped.engine.lucene;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoDeletionPolicy;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IndexPartitionsTest {
+
+    private static final int NUM_PARTITIONS = 3;
+
+    private File caseDir;
+    private File indexDir;
+    private IndexWriter mainWriter;
+    private IndexWriter[] otherWriters;
+
+    @Before
+    public void setUp() throws IOException {
+        caseDir = Files.createTempDirectory("partitions").toFile();
+        indexDir = new File(caseDir, "index");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (mainWriter != null) {
+            IndexPartitions.unregister(mainWriter);
+            mainWriter.close();
+        }
+        if (otherWriters != null) {
+            for (IndexWriter writer : otherWriters) {
+                if (writer.isOpen()) {
+                    writer.close();
+                }
+            }
+        }
+        FileUtils.deleteDirectory(caseDir);
+    }
+
+    private static IndexWriterConfig newConfig() {
+        IndexWriterConfig config = new IndexWriterConfig();
+        // keeps the first commit, like processing does to be able to restart
+        config.setIndexDeletionPolicy(NoDeletionPolicy.INSTANCE);
+        return config;
+    }
+
+    private void open(int configuredPartitions, boolean restart) throws IOException {
+        int numPartitions = IndexPartitions.getNumPartitions(indexDir, configuredPartitions);
+        FSDirectory directory = FSDirectory.open(indexDir.toPath());
+        IndexWriterConfig config = newConfig();
+        if (restart) {
+            config.setIndexCommit(DirectoryReader.listCommits(directory).get(0));
+        }
+        boolean newIndex = !DirectoryReader.indexExists(directory);
+        mainWriter = new IndexWriter(directory, config);
+        if (newIndex) {
+            mainWriter.commit();
+        }
+        otherWriters = new IndexWriter[numPartitions - 1];
+        for (int i = 0; i < otherWriters.length; i++) {
+            FSDirectory partitionDir = FSDirectory.open(IndexPartitions.getPartitionDir(indexDir, i + 1).toPath());
+            otherWriters[i] = IndexPartitions.openWriter(partitionDir, newConfig(), restart);
+        }
+        IndexPartitions.register(mainWriter, otherWriters);
+    }
+
+    private void close() throws IOException {
+        IndexPartitions.unregister(mainWriter);
+        mainWriter.close();
+        mainWriter = null;
+        for (IndexWriter writer : otherWriters) {
+            writer.close();
+        }
+    }
+
+    private void addDocs(int first, int last) throws IOException {
+        for (int id = first; id < last; id++) {
+            Document doc = new Document();
+            doc.add(new StringField("id", Integer.toString(id), Store.YES));
+            IndexWriter writer = id % NUM_PARTITIONS == 0 ? mainWriter : otherWriters[id % NUM_PARTITIONS - 1];
+            writer.addDocument(doc);
+        }
+    }
+
+    private void commit() throws IOException {
+        mainWriter.commit();
+        for (IndexWriter writer : otherWriters) {
+            writer.commit();
+        }
+    }
+
+    private static List<Integer> getIds(IndexReader reader) throws IOException {
+        List<Integer> ids = new ArrayList<>();
+        for (int doc = 0; doc < reader.maxDoc(); doc++) {
+            ids.add(Integer.parseInt(reader.document(doc).get("id")));
+        }
+        return ids;
+    }
+
+    @Test
+    public void testOpenReader() throws IOException {
+        open(NUM_PARTITIONS, false);
+        addDocs(0, 30);
+        try (IndexReader reader = IndexPartitions.openReader(mainWriter, true, true)) {
+            assertEquals(30, reader.numDocs());
+            // documents of the main writer come first
+            List<Integer> ids = getIds(reader);
+            for (int doc = 0; doc < 10; doc++) {
+                assertEquals(0, ids.get(doc) % NUM_PARTITIONS);
+            }
+        }
+        IndexPartitions.unregister(mainWriter);
+        try (IndexReader reader = IndexPartitions.openReader(mainWriter, true, true)) {
+            assertEquals(10, reader.numDocs());
+        }
+    }
+
+    @Test
+    public void testRestartAndResume() throws IOException {
+        open(NUM_PARTITIONS, false);
+        assertEquals(NUM_PARTITIONS, IndexPartitions.getNumPartitions(indexDir, 1));
+        assertEquals(NUM_PARTITIONS, IndexPartitions.getNumPartitions(indexDir, 2));
+        assertEquals(NUM_PARTITIONS + 2, IndexPartitions.getNumPartitions(indexDir, NUM_PARTITIONS + 2));
+        addDocs(0, 30);
+        commit();
+        addDocs(30, 60);
+        commit();
+        close();
+
+        // resuming reopens the last commit of partitions, even if not configured
+        open(1, false);
+        assertEquals(NUM_PARTITIONS - 1, otherWriters.length);
+        try (IndexReader reader = IndexPartitions.openReader(mainWriter, true, true)) {
+            assertEquals(60, reader.numDocs());
+        }
+        close();
+
+        // restarting goes back to the first empty commit of all partitions
+        open(1, true);
+        assertEquals(NUM_PARTITIONS - 1, otherWriters.length);
+        try (IndexReader reader = IndexPartitions.openReader(mainWriter, true, true)) {
+            assertEquals(0, reader.numDocs());
+        }
+    }
+
+    @Test
+    public void testMerge() throws IOException {
+        open(NUM_PARTITIONS, false);
+        addDocs(0, 100);
+        commit();
+        addDocs(100, 200);
+        IndexPartitions.merge(mainWriter, otherWriters, indexDir);
+        for (IndexWriter writer : otherWriters) {
+            assertFalse(writer.isOpen());
+        }
+        assertFalse(IndexPartitions.getPartitionDir(indexDir, 1).getParentFile().exists());
+        assertEquals(1, IndexPartitions.getNumPartitions(indexDir, 1));
+
+        // merged index is committed and partitions are not registered anymore
+        try (DirectoryReader reader = DirectoryReader.open(mainWriter.getDirectory())) {
+            List<Integer> ids = getIds(reader);
+            assertEquals(200, ids.size());
+            ids.sort(null);
+            for (int id = 0; id < 200; id++) {
+                assertEquals(id, (int) ids.get(id));
+            }
+        }
+        try (IndexReader reader = IndexPartitions.openReader(mainWriter, true, true)) {
+            assertEquals(200, reader.numDocs());
+            assertTrue(reader instanceof DirectoryReader);
+        }
+    }
+
+}
@@ -0,0 +1,257 @@
+package iped.engine.lucene;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.OrdinalMap;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.packed.PackedInts;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SegmentDocValuesTest {
+
+    private static final String SORTED = "sorted";
+    private static final String SORTED_SET = "sortedSet";
+    private static final String NUMERIC = "numeric";
+
+    private File tmpDir;
+    private File cacheDir;
+    private Directory directory;
+    private IndexWriter writer;
+    private Random random = new Random(0);
+
+    @Before
+    public void setUp() throws IOException {
+        tmpDir = Files.createTempDirectory("segdocvalues").toFile();
+        cacheDir = new File(tmpDir, "ordinals");
+        directory = FSDirectory.open(new File(tmpDir, "index").toPath());
+        IndexWriterConfig config = new IndexWriterConfig();
+        // keeps segments, so there are many of them
+        config.setMergePolicy(NoMergePolicy.INSTANCE);
+        writer = new IndexWriter(directory, config);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        writer.close();
+        directory.close();
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    /**
+     * Adds a segment with random values, shared with other segments or not.
+     */
+    private void addSegment(int numDocs, boolean withValues) throws IOException {
+        for (int i = 0; i < numDocs; i++) {
+            Document doc = new Document();
+            doc.add(new NumericDocValuesField(NUMERIC, i));
+            if (withValues && random.nextInt(10) != 0) {
+                doc.add(new SortedDocValuesField(SORTED, new BytesRef("value" + random.nextInt(numDocs * 2))));
+                int numValues = random.nextInt(4);
+                for (int j = 0; j < numValues; j++) {
+                    doc.add(new SortedSetDocValuesField(SORTED_SET, new BytesRef("set" + random.nextInt(numDocs))));
+                }
+            }
+            writer.addDocument(doc);
+        }
+        writer.commit();
+    }
+
+    private void addSegments() throws IOException {
+        addSegment(1000, true);
+        addSegment(10, true);
+        // segment without the fields
+        addSegment(100, false);
+        addSegment(3000, true);
+        addSegment(1, true);
+    }
+
+    private static void assertSameOrdinals(OrdinalMap expected, long[] segmentValueCounts, GlobalOrdinals result) {
+        assertEquals(expected.getValueCount(), result.getValueCount());
+        assertEquals(segmentValueCounts.length, result.getNumSegments());
+        for (int seg = 0; seg < segmentValueCounts.length; seg++) {
+            for (long ord = 0; ord < segmentValueCounts[seg]; ord++) {
+                assertEquals(expected.getGlobalOrds(seg).get(ord), result.getGlobalOrd(seg, ord));
+            }
+        }
+        for (long ord = 0; ord < expected.getValueCount(); ord++) {
+            assertEquals(expected.getFirstSegmentNumber(ord), result.getFirstSegment(ord));
+            assertEquals(expected.getFirstSegmentOrd(ord), result.getFirstSegmentOrd(ord));
+        }
+    }
+
+    private static void assertSameAsOrdinalMap(DirectoryReader reader, GlobalOrdinals sorted, GlobalOrdinals sortedSet)
+            throws IOException {
+        int numLeaves = reader.leaves().size();
+        SortedDocValues[] sortedValues = new SortedDocValues[numLeaves];
+        SortedSetDocValues[] sortedSetValues = new SortedSetDocValues[numLeaves];
+        long[] sortedCounts = new long[numLeaves];
+        long[] sortedSetCounts = new long[numLeaves];
+        for (int i = 0; i < numLeaves; i++) {
+            sortedValues[i] = DocValues.getSorted(reader.leaves().get(i).reader(), SORTED);
+            sortedSetValues[i] = DocValues.getSortedSet(reader.leaves().get(i).reader(), SORTED_SET);
+            sortedCounts[i] = sortedValues[i].getValueCount();
+            sortedSetCounts[i] = sortedSetValues[i].getValueCount();
+        }
+        assertSameOrdinals(OrdinalMap.build(null, sortedValues, PackedInts.DEFAULT), sortedCounts, sorted);
+        assertSameOrdinals(OrdinalMap.build(null, sortedSetValues, PackedInts.DEFAULT), sortedSetCounts, sortedSet);
+    }
+
+    @Test
+    public void testSameAsOrdinalMap() throws IOException {
+        addSegments();
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertTrue(reader.leaves().size() > 1);
+            SegmentDocValues segmentDocValues = new SegmentDocValues(reader, null);
+            assertSameAsOrdinalMap(reader, segmentDocValues.getGlobalOrdinals(SORTED),
+                    segmentDocValues.getGlobalOrdinals(SORTED_SET));
+            assertNull(segmentDocValues.getGlobalOrdinals(NUMERIC));
+            assertNull(segmentDocValues.getGlobalOrdinals("missing"));
+            assertTrue(segmentDocValues.getGlobalOrdinals(SORTED_SET).ramBytesUsed() > 0);
+        }
+    }
+
+    @Test
+    public void testGlobalDocValues() throws IOException {
+        addSegments();
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            SegmentDocValues segmentDocValues = new SegmentDocValues(reader, null);
+
+            SortedDocValues expected = MultiDocValues.getSortedValues(reader, SORTED);
+            SortedDocValues sorted = segmentDocValues.getSortedDocValues(SORTED);
+            assertEquals(expected.getValueCount(), sorted.getValueCount());
+            for (int doc = expected.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = expected.nextDoc()) {
+                assertEquals(doc, sorted.nextDoc());
+                assertEquals(expected.ordValue(), sorted.ordValue());
+                assertEquals(expected.lookupOrd(expected.ordValue()), sorted.lookupOrd(sorted.ordValue()));
+            }
+            assertEquals(DocIdSetIterator.NO_MORE_DOCS, sorted.nextDoc());
+
+            SortedSetDocValues expectedSet = MultiDocValues.getSortedSetValues(reader, SORTED_SET);
+            SortedSetDocValues sortedSet = segmentDocValues.getSortedSetDocValues(SORTED_SET);
+            assertEquals(expectedSet.getValueCount(), sortedSet.getValueCount());
+            for (int doc = 0; doc < reader.maxDoc(); doc += 1 + random.nextInt(5)) {
+                boolean hasValue = expectedSet.advanceExact(doc);
+                assertEquals(hasValue, sortedSet.advanceExact(doc));
+                while (hasValue) {
+                    long ord = expectedSet.nextOrd();
+                    assertEquals(ord, sortedSet.nextOrd());
+                    if (ord == SortedSetDocValues.NO_MORE_ORDS) {
+                        break;
+                    }
+                    assertEquals(expectedSet.lookupOrd(ord), sortedSet.lookupOrd(ord));
+                }
+            }
+        }
+    }
+
+    private File getCacheFile() {
+        File[] files = cacheDir.listFiles();
+        assertEquals(1, files.length);
+        return files[0];
+    }
+
+    @Test
+    public void testPersistAndReload() throws IOException {
+        addSegments();
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            GlobalOrdinals built = new SegmentDocValues(reader, cacheDir).getGlobalOrdinals(SORTED_SET);
+            File file = getCacheFile();
+            file.setLastModified(0);
+
+            // same commit, loaded without rebuilding
+            GlobalOrdinals loaded = new SegmentDocValues(reader, cacheDir).getGlobalOrdinals(SORTED_SET);
+            assertEquals(0, file.lastModified());
+            assertEquals(built.getValueCount(), loaded.getValueCount());
+            for (int seg = 0; seg < reader.leaves().size(); seg++) {
+                SortedSetDocValues values = DocValues.getSortedSet(reader.leaves().get(seg).reader(), SORTED_SET);
+                for (long ord = 0; ord < values.getValueCount(); ord++) {
+                    assertEquals(built.getGlobalOrd(seg, ord), loaded.getGlobalOrd(seg, ord));
+                }
+            }
+            for (long ord = 0; ord < built.getValueCount(); ord++) {
+                assertEquals(built.getFirstSegment(ord), loaded.getFirstSegment(ord));
+                assertEquals(built.getFirstSegmentOrd(ord), loaded.getFirstSegmentOrd(ord));
+            }
+        }
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            SegmentDocValues segmentDocValues = new SegmentDocValues(reader, cacheDir);
+            assertSameAsOrdinalMap(reader, segmentDocValues.getGlobalOrdinals(SORTED),
+                    segmentDocValues.getGlobalOrdinals(SORTED_SET));
+        }
+    }
+
+    @Test
+    public void testStaleKeyRebuild() throws IOException {
+        addSegments();
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            new SegmentDocValues(reader, cacheDir).getGlobalOrdinals(SORTED_SET);
+        }
+        File file = getCacheFile();
+        file.setLastModified(0);
+
+        // a new commit with other segments
+        addSegment(500, true);
+        writer.forceMerge(1);
+        writer.commit();
+        addSegment(200, true);
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            SegmentDocValues segmentDocValues = new SegmentDocValues(reader, cacheDir);
+            assertSameAsOrdinalMap(reader, segmentDocValues.getGlobalOrdinals(SORTED),
+                    segmentDocValues.getGlobalOrdinals(SORTED_SET));
+            assertTrue(file.lastModified() != 0);
+        }
+    }
+
+    @Test
+    public void testTruncatedFileRebuild() throws IOException {
+        addSegments();
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            new SegmentDocValues(reader, cacheDir).getGlobalOrdinals(SORTED_SET);
+            File file = getCacheFile();
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(raf.length() / 2);
+            }
+            SegmentDocValues segmentDocValues = new SegmentDocValues(reader, cacheDir);
+            assertSameAsOrdinalMap(reader, segmentDocValues.getGlobalOrdinals(SORTED),
+                    segmentDocValues.getGlobalOrdinals(SORTED_SET));
+        }
+    }
+
+    @Test
+    public void testNoSegments() throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(writer)) {
+            SortedSetDocValues[] values = new SortedSetDocValues[0];
+            GlobalOrdinals globalOrds = GlobalOrdinals.build(values);
+            assertEquals(0, globalOrds.getValueCount());
+            assertEquals(0, globalOrds.getNumSegments());
+            assertEquals(0, reader.leaves().size());
+        }
+    }
+
+}
@@ -0,0 +1,131 @@
+package iped.engine.search;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.KnnVectorField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.VectorValues;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.roaringbitmap.RoaringBitmap;
+
+/**
+ * Compares recall and latency of {@link KnnVectorSearch} against the brute
+ * force scan of all vectors, previously used by similar faces search. Indexes
+ * random vectors with the dimension of face encodings, grouped in clusters like
+ * faces of the same person, and searches vectors within the default face
+ * distance of random indexed ones. Run it as a java application, optionally
+ * passing the number of vectors, the number of queries and the percentage of
+ * docs accepted by the filter.
+ */
+public class KnnVectorSearchBenchmark {
+
+    private static final String FIELD = "vector";
+
+    private static final int DIMENSION = 128;
+
+    private static final int VECTORS_PER_CLUSTER = 20;
+
+    private static final float MAX_SQUARED_DIST = 0.25f;
+
+    public static void main(String[] args) throws IOException {
+        int numVectors = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int numQueries = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int acceptedPercent = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+        Random random = new Random(0);
+        float[][] vectors = new float[numVectors][];
+        float[] center = null;
+        for (int i = 0; i < numVectors; i++) {
+            if (i % VECTORS_PER_CLUSTER == 0) {
+                center = randomVector(random, 0.1f, null);
+            }
+            vectors[i] = randomVector(random, 0.02f, center);
+        }
+        RoaringBitmap acceptDocs = new RoaringBitmap();
+        for (int i = 0; i < numVectors; i++) {
+            if (random.nextInt(100) < acceptedPercent) {
+                acceptDocs.add(i);
+            }
+        }
+
+        try (Directory dir = new ByteBuffersDirectory()) {
+            long t = System.currentTimeMillis();
+            try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig())) {
+                for (float[] vector : vectors) {
+                    Document doc = new Document();
+                    doc.add(new KnnVectorField(FIELD, vector));
+                    writer.addDocument(doc);
+                }
+            }
+            System.out.println("Indexed " + numVectors + " vectors in " + (System.currentTimeMillis() - t) + "ms");
+
+            try (DirectoryReader reader = DirectoryReader.open(dir)) {
+                System.out.println("Segments: " + reader.leaves().size());
+                long annTime = 0, bruteForceTime = 0;
+                long expectedHits = 0, foundHits = 0;
+                for (int q = 0; q < numQueries; q++) {
+                    float[] target = vectors[random.nextInt(numVectors)];
+
+                    t = System.nanoTime();
+                    Map<Integer, Float> expected = bruteForce(reader, target, acceptDocs);
+                    bruteForceTime += System.nanoTime() - t;
+
+                    t = System.nanoTime();
+                    Map<Integer, Float> hits = new HashMap<>();
+                    KnnVectorSearch.searchWithin(reader, FIELD, target, MAX_SQUARED_DIST, acceptDocs, hits);
+                    annTime += System.nanoTime() - t;
+
+                    expectedHits += expected.size();
+                    for (Integer doc : expected.keySet()) {
+                        if (hits.containsKey(doc)) {
+                            foundHits++;
+                        }
+                    }
+                    if (hits.size() > expected.size()) {
+                        throw new IllegalStateException("Found docs out of max distance");
+                    }
+                }
+                System.out.println("Avg hits per query: " + (float) expectedHits / numQueries);
+                System.out.println("Recall: " + (expectedHits == 0 ? 1 : (float) foundHits / expectedHits));
+                System.out.println("Brute force avg time: " + bruteForceTime / numQueries / 1000 + "us");
+                System.out.println("KNN search avg time: " + annTime / numQueries / 1000 + "us");
+            }
+        }
+    }
+
+    private static float[] randomVector(Random random, float scale, float[] center) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian() * scale + (center != null ? center[i] : 0);
+        }
+        return vector;
+    }
+
+    private static Map<Integer, Float> bruteForce(DirectoryReader reader, float[] target, RoaringBitmap acceptDocs)
+            throws IOException {
+        Map<Integer, Float> hits = new HashMap<>();
+        for (LeafReaderContext context : reader.leaves()) {
+            VectorValues values = context.reader().getVectorValues(FIELD);
+            int doc;
+            while ((doc = values.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                if (acceptDocs.contains(context.docBase + doc)) {
+                    float dist = KnnVectorSearch.squaredDistance(target, values.vectorValue(), MAX_SQUARED_DIST);
+                    if (dist <= MAX_SQUARED_DIST) {
+                        hits.put(context.docBase + doc, dist);
+                    }
+                }
+            }
+        }
+        return hits;
+    }
+
+}
@@ -0,0 +1,92 @@
+package iped.engine.search;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.KnnVectorField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+public class KnnVectorSearchTest {
+
+    private static final String FIELD = "vector";
+
+    private static final int DIMENSION = 8;
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = random.nextFloat();
+        }
+        return vector;
+    }
+
+    private static Map<Integer, Float> bruteForce(float[][] vectors, float[] target, float maxSquaredDist,
+            RoaringBitmap acceptDocs) {
+        Map<Integer, Float> hits = new HashMap<>();
+        for (int doc = 0; doc < vectors.length; doc++) {
+            if (vectors[doc] != null && acceptDocs.contains(doc)) {
+                float dist = KnnVectorSearch.squaredDistance(target, vectors[doc], Float.MAX_VALUE);
+                if (dist <= maxSquaredDist) {
+                    hits.put(doc, dist);
+                }
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Few accepted docs are searched exhaustively. Accepted docs without vectors
+     * must not hide the next accepted docs having them.
+     */
+    @Test
+    public void testExactSearchSkipsDocsWithoutVectors() throws IOException {
+        Random random = new Random(0);
+        float[][] vectors = new float[90][];
+        try (Directory dir = new ByteBuffersDirectory()) {
+            try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig())) {
+                for (int doc = 0; doc < vectors.length; doc++) {
+                    Document document = new Document();
+                    document.add(new StringField("id", Integer.toString(doc), Store.NO));
+                    if (doc % 3 != 0) {
+                        vectors[doc] = randomVector(random);
+                        document.add(new KnnVectorField(FIELD, vectors[doc]));
+                    }
+                    writer.addDocument(document);
+                }
+                writer.forceMerge(1);
+            }
+            try (DirectoryReader reader = DirectoryReader.open(dir)) {
+                RoaringBitmap allDocs = new RoaringBitmap();
+                allDocs.add(0L, vectors.length);
+                RoaringBitmap someDocs = new RoaringBitmap();
+                for (int doc = 0; doc < vectors.length; doc++) {
+                    if (doc % 5 != 2) {
+                        someDocs.add(doc);
+                    }
+                }
+                for (RoaringBitmap acceptDocs : new RoaringBitmap[] { allDocs, someDocs }) {
+                    for (float maxSquaredDist : new float[] { Float.MAX_VALUE, 0.5f }) {
+                        float[] target = vectors[1];
+                        Map<Integer, Float> hits = new HashMap<>();
+                        KnnVectorSearch.searchWithin(reader, FIELD, target, maxSquaredDist, acceptDocs, hits);
+                        assertEquals(bruteForce(vectors, target, maxSquaredDist, acceptDocs), hits);
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,228 @@
+package iped.engine.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import iped.data.IItemReader;
+import iped.engine.data.Item;
+import iped.engine.search.LiveItemRegistry.LongIntMultiMap;
+import iped.properties.BasicProps;
+import iped.search.IItemSearcher;
+
+public class LiveItemRegistryTest {
+
+    private static final String MD5 = "md5";
+
+    private static List<Integer> get(LongIntMultiMap map, long key) {
+        List<Integer> values = new ArrayList<>();
+        map.get(key, values::add);
+        Collections.sort(values);
+        return values;
+    }
+
+    @Test
+    public void testMultiMap() {
+        Random random = new Random(0);
+        LongIntMultiMap map = new LongIntMultiMap();
+        Map<Long, List<Integer>> expected = new HashMap<>();
+        List<Long> keys = new ArrayList<>();
+        for (int i = 0; i < 200000; i++) {
+            long key;
+            if (!keys.isEmpty() && random.nextInt(4) == 0) {
+                // more values of a key
+                key = keys.get(random.nextInt(keys.size()));
+            } else if (random.nextBoolean()) {
+                // keys with the same slot while the table is small
+                key = (long) random.nextInt(1 << 16) << 16;
+            } else {
+                key = random.nextLong();
+            }
+            int value = random.nextInt(1000);
+            map.put(key, value);
+            if (!expected.containsKey(key)) {
+                keys.add(key);
+            }
+            expected.computeIfAbsent(key, k -> new ArrayList<>()).add(value);
+        }
+        for (Map.Entry<Long, List<Integer>> entry : expected.entrySet()) {
+            List<Integer> values = entry.getValue();
+            Collections.sort(values);
+            assertEquals(values, get(map, entry.getKey()));
+        }
+        for (int i = 0; i < 1000; i++) {
+            long key = (long) (1 << 16 | i) << 16;
+            if (!expected.containsKey(key)) {
+                assertTrue(get(map, key).isEmpty());
+            }
+        }
+    }
+
+    private static Item newItem(int id, String name, String path, String hash) {
+        Item item = new Item();
+        item.setId(id);
+        item.setName(name);
+        item.setPath(path);
+        if (hash != null) {
+            item.setHash(hash.toUpperCase());
+            item.setExtraAttribute(MD5, hash.substring(0, 32));
+        }
+        return item;
+    }
+
+    /**
+     * Runs a query for each value, matching values like the index.
+     */
+    private static class QuerySearcher implements IItemSearcher {
+
+        private final Collection<IItemReader> items;
+
+        QuerySearcher(Collection<IItemReader> items) {
+            this.items = items;
+        }
+
+        @Override
+        public List<IItemReader> search(String luceneQuery) {
+            int idx = luceneQuery.indexOf(":\"");
+            String field = luceneQuery.substring(0, idx);
+            String value = LiveItemRegistry.normalize(field,
+                    luceneQuery.substring(idx + 2, luceneQuery.length() - 1));
+            List<IItemReader> result = new ArrayList<>();
+            for (IItemReader item : items) {
+                if (value.equals(LiveItemRegistry.getValue(item, field))) {
+                    result.add(item);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public Iterable<IItemReader> searchIterable(String luceneQuery) {
+            return search(luceneQuery);
+        }
+
+        @Override
+        public String escapeQuery(String string) {
+            return string;
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+
+    private static Map<String, List<Integer>> toIds(Map<String, List<IItemReader>> result) {
+        Map<String, List<Integer>> ids = new TreeMap<>();
+        for (Map.Entry<String, List<IItemReader>> entry : result.entrySet()) {
+            List<Integer> list = new ArrayList<>();
+            for (IItemReader item : entry.getValue()) {
+                list.add(item.getId());
+            }
+            Collections.sort(list);
+            ids.put(entry.getKey(), list);
+        }
+        return ids;
+    }
+
+    @Test
+    public void testSearchByValues() {
+        Random random = new Random(1);
+        LiveItemRegistry registry = new LiveItemRegistry(Arrays.asList(BasicProps.HASH, MD5), Long.MAX_VALUE);
+        Map<Integer, IItemReader> visibleItems = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
+        List<String> hashes = new ArrayList<>();
+        for (int id = 0; id < 5000; id++) {
+            String name = random.nextInt(3) == 0 && !names.isEmpty() ? names.get(random.nextInt(names.size()))
+                    : "File" + random.nextInt(100000) + ".txt";
+            String path = "/dir" + id % 7 + "/" + name;
+            String hash = null;
+            if (random.nextInt(5) != 0) {
+                hash = random.nextInt(5) == 0 && !hashes.isEmpty() ? hashes.get(random.nextInt(hashes.size()))
+                        : String.format("%016x%016x%016x", random.nextLong(), random.nextLong(), random.nextLong());
+                hashes.add(hash);
+            }
+            names.add(name);
+            paths.add(path);
+            Item item = newItem(id, name, path, hash);
+            registry.register(item);
+            // items indexed after the searcher was opened
+            if (id % 10 != 9) {
+                visibleItems.put(id, item);
+            }
+        }
+        QuerySearcher searcher = new QuerySearcher(visibleItems.values());
+
+        List<String> searchedNames = new ArrayList<>();
+        List<String> searchedPaths = new ArrayList<>();
+        List<String> searchedHashes = new ArrayList<>();
+        List<String> searchedMd5s = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            String name = names.get(random.nextInt(names.size()));
+            searchedNames.add(random.nextBoolean() ? name : name.toUpperCase());
+            String path = paths.get(random.nextInt(paths.size()));
+            searchedPaths.add(random.nextBoolean() ? path : path.toLowerCase());
+            String hash = hashes.get(random.nextInt(hashes.size()));
+            searchedHashes.add(random.nextBoolean() ? hash : hash.toUpperCase());
+            searchedMd5s.add(hash.substring(0, 32));
+        }
+        searchedNames.add("missing.txt");
+        searchedPaths.add("/missing/path");
+        searchedHashes.add("0123456789abcdef");
+        searchedMd5s.add("");
+
+        Map<String, List<String>> valuesByField = new HashMap<>();
+        valuesByField.put(BasicProps.NAME, searchedNames);
+        valuesByField.put(BasicProps.PATH, searchedPaths);
+        valuesByField.put(BasicProps.HASH, searchedHashes);
+        valuesByField.put(MD5, searchedMd5s);
+        for (Map.Entry<String, List<String>> entry : valuesByField.entrySet()) {
+            String field = entry.getKey();
+            assertTrue(registry.isSupported(field));
+            Map<String, List<IItemReader>> expected = searcher.searchByValues(field, entry.getValue());
+            Map<String, List<IItemReader>> result = ItemSearcher.searchInRegistry(registry, field, entry.getValue(),
+                    visibleItems::get);
+            assertTrue(expected.size() > 100);
+            assertEquals(toIds(expected), toIds(result));
+        }
+        assertTrue(!registry.isSupported("sha-512"));
+    }
+
+    @Test
+    public void testMemoryLimit() {
+        LiveItemRegistry registry = new LiveItemRegistry(Arrays.asList(BasicProps.HASH, MD5), 1 << 21);
+        Map<Integer, IItemReader> items = new HashMap<>();
+        int id = 0;
+        while (registry.isComplete()) {
+            // md5 is the same value of HASH
+            Item item = newItem(id, "File" + id, "/dir/File" + id, String.format("%032x", id));
+            items.put(id++, item);
+            registry.register(item);
+        }
+        // 3 keys by item, 64K entries are full after 21845 items and doubling them exceeds 2MB
+        assertEquals(21846, id);
+        List<Integer> ids = new ArrayList<>();
+        registry.lookup(BasicProps.NAME, "file1", ids::add);
+        assertTrue(ids.isEmpty());
+        assertTrue(ItemSearcher.searchInRegistry(registry, BasicProps.NAME, List.of("File1"), items::get).isEmpty());
+
+        registry.clear(true, 0);
+        assertFalse(registry.isComplete());
+        registry.clear(true, 1 << 21);
+        assertTrue(registry.isComplete());
+    }
+
+}
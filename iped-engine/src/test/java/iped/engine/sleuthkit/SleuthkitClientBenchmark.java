@@ -0,0 +1,93 @@
+package iped.engine.sleuthkit;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.SleuthkitCase;
+
+import iped.engine.config.Configuration;
+import iped.engine.config.ConfigurationManager;
+import iped.engine.datasource.SleuthkitReader;
+import iped.io.SeekableInputStream;
+
+/**
+ * Measures read throughput (MB/s) through {@link SleuthkitClient} versus
+ * number of worker threads. Each worker reads whole files of an existing case
+ * with 64 KB reads, like parsers using buffered streams. Run it as a java
+ * application passing the IPED root folder and the folder with the case
+ * sleuthkit database. The number of server processes is set by
+ * numImageReaders in FileSystemConfig.
+ */
+public class SleuthkitClientBenchmark {
+
+    private static final int[] THREADS = { 1, 2, 4, 8, 16 };
+
+    private static final long BYTES_PER_RUN = 2L << 30;
+
+    private static final int READ_SIZE = 64 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        String appRoot = args[0];
+        String dbDir = args[1];
+
+        Configuration.getInstance().loadConfigurables(appRoot, true);
+        ConfigurationManager.get().loadConfigs();
+
+        List<AbstractFile> files = new ArrayList<>();
+        SleuthkitCase sleuthCase = SleuthkitInputStreamFactory
+                .openSleuthkitCase(new File(dbDir, SleuthkitReader.DB_NAME).getAbsolutePath());
+        for (AbstractFile file : sleuthCase.findAllFilesWhere("meta_type = 1 AND size > 0")) { //$NON-NLS-1$
+            files.add(file);
+        }
+        System.out.println(files.size() + " files found.");
+
+        SleuthkitClient.initSleuthkitServers(dbDir);
+        try {
+            System.out.println("threads\tMB/s");
+            for (int threads : THREADS) {
+                System.out.printf("%d\t%.1f%n", threads, run(threads, files));
+            }
+        } finally {
+            SleuthkitClient.shutDownServers();
+            sleuthCase.close();
+        }
+    }
+
+    private static double run(int threads, List<AbstractFile> files) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        AtomicInteger nextFile = new AtomicInteger();
+        List<Future<Long>> futures = new ArrayList<>();
+        long t = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                byte[] buf = new byte[READ_SIZE];
+                long total = 0;
+                while (total < BYTES_PER_RUN / threads) {
+                    AbstractFile file = files.get(nextFile.getAndIncrement() % files.size());
+                    SleuthkitClient client = SleuthkitClient.get();
+                    try (SeekableInputStream is = client.getInputStream((int) file.getId(), file.getUniquePath())) {
+                        int read;
+                        while ((read = is.read(buf)) != -1) {
+                            total += read;
+                        }
+                    }
+                }
+                return total;
+            }));
+        }
+        long bytes = 0;
+        for (Future<Long> future : futures) {
+            bytes += future.get();
+        }
+        t = System.nanoTime() - t;
+        executor.shutdown();
+        return bytes / (1024.0 * 1024) * 1e9 / t;
+    }
+
+}
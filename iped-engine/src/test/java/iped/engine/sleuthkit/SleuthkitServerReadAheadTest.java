@@ -0,0 +1,97 @@
+package iped.engine.sleuthkit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import iped.engine.sleuthkit.SleuthkitServer.ReadAhead;
+import iped.utils.SeekableFileInputStream;
+
+public class SleuthkitServerReadAheadTest {
+
+    private static final int NUM_STREAMS = 20;
+
+    private File file;
+    private byte[] content;
+    private Map<Long, SeekableFileInputStream> streams = new HashMap<>();
+
+    @Before
+    public void setUp() throws IOException {
+        content = new byte[3 << 20];
+        new Random(0).nextBytes(content);
+        file = File.createTempFile("readahead", null);
+        Files.write(file.toPath(), content);
+        for (long id = 0; id < NUM_STREAMS; id++) {
+            streams.put(id, new SeekableFileInputStream(file));
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (SeekableFileInputStream sis : streams.values()) {
+            sis.close();
+        }
+        file.delete();
+    }
+
+    private byte[] read(Map<Long, ReadAhead> readAheads, long streamId, long pos, int len) throws IOException {
+        ReadAhead ra = SleuthkitServer.getReadAhead(readAheads, streamId, streams.get(streamId));
+        ByteBuffer data = ByteBuffer.allocate(SleuthkitServer.SLOT_SIZE);
+        int read = SleuthkitServer.readAt(ra, pos, len, data, SleuthkitServer.SLOT_HEADER_SIZE);
+        assertEquals(len, read);
+        return Arrays.copyOfRange(data.array(), SleuthkitServer.SLOT_HEADER_SIZE,
+                SleuthkitServer.SLOT_HEADER_SIZE + read);
+    }
+
+    private void assertContent(long pos, byte[] data) {
+        assertArrayEquals(Arrays.copyOfRange(content, (int) pos, (int) pos + data.length), data);
+    }
+
+    @Test
+    public void testRereadAfterEviction() throws IOException {
+        LinkedHashMap<Long, ReadAhead> readAheads = SleuthkitServer.createReadAheads();
+        assertContent(0, read(readAheads, 0, 0, 1000));
+        assertContent(1000, read(readAheads, 0, 1000, 200000));
+
+        // evicts the read ahead of stream 0, its stream is kept open
+        for (long id = 1; id < NUM_STREAMS; id++) {
+            assertContent(5000, read(readAheads, id, 5000, 1000));
+        }
+        assertEquals(false, readAheads.containsKey(0L));
+
+        assertContent(0, read(readAheads, 0, 0, 1000));
+        assertContent(1000, read(readAheads, 0, 1000, 100000));
+    }
+
+    @Test
+    public void testRandomReads() throws IOException {
+        LinkedHashMap<Long, ReadAhead> readAheads = SleuthkitServer.createReadAheads();
+        Random random = new Random(1);
+        long[] positions = new long[NUM_STREAMS];
+        for (int i = 0; i < 2000; i++) {
+            int id = random.nextInt(NUM_STREAMS);
+            long pos = random.nextInt(4) == 0 ? random.nextInt(content.length - 70000) : positions[id];
+            int len = Math.min(1 + random.nextInt(65536), content.length - (int) pos);
+            if (len == 0) {
+                pos = 0;
+                len = 1;
+            }
+            assertContent(pos, read(readAheads, id, pos, len));
+            positions[id] = pos + len;
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+package iped.engine.task;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.tika.metadata.Metadata;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import iped.engine.task.ParseResultCache.CachedResult;
+
+public class ParseResultCacheTest {
+
+    private static final String HASH = "0123456789ABCDEF0123456789ABCDEF";
+    private static final String MEDIA_TYPE = "application/pdf";
+    private static final String CONFIG_KEY = "config1";
+
+    private File tmpDir;
+    private File dbFile;
+    private ParseResultCache cache;
+    private Random random = new Random(0);
+
+    @Before
+    public void setUp() throws IOException, SQLException {
+        tmpDir = Files.createTempDirectory("parsecache").toFile();
+        dbFile = new File(tmpDir, ParseResultCache.DEFAULT_FILE_NAME);
+        cache = new ParseResultCache(dbFile, 1 << 30, CONFIG_KEY);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        cache.close();
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private String randomText(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) (' ' + random.nextInt(95)));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testMetadataRoundTrip() throws IOException {
+        Metadata metadata = new Metadata();
+        metadata.add("dc:title", "Relatório de análise – 日本語 текст");
+        metadata.add("dc:creator", "first");
+        metadata.add("dc:creator", "second");
+        metadata.add("dc:creator", "");
+        metadata.add("Größe", "ünïcödé 🙂");
+        // longer than the 64KB limit of writeUTF()
+        String longValue = randomText(100000);
+        metadata.add("long", longValue);
+        cache.put(HASH, MEDIA_TYPE, "text", metadata);
+
+        Metadata result = cache.get(HASH, MEDIA_TYPE).getMetadata();
+        assertEquals(metadata.names().length, result.names().length);
+        for (String name : metadata.names()) {
+            assertArrayEquals(name, metadata.getValues(name), result.getValues(name));
+        }
+        assertEquals(longValue, result.get("long"));
+    }
+
+    @Test
+    public void testEmptyMetadata() throws IOException {
+        cache.put(HASH, MEDIA_TYPE, "text", new Metadata());
+        assertEquals(0, cache.get(HASH, MEDIA_TYPE).getMetadata().names().length);
+    }
+
+    @Test
+    public void testTextRoundTrip() throws IOException {
+        String[] texts = { "", "short text", "açúcar, 漢字 and emoji 🙂 " + randomText(1000),
+                // spans many compression blocks
+                randomText(3 << 20), "repeated ".repeat(500000) };
+        for (int i = 0; i < texts.length; i++) {
+            cache.put(HASH + i, MEDIA_TYPE, texts[i], new Metadata());
+        }
+        for (int i = 0; i < texts.length; i++) {
+            assertEquals(texts[i], cache.get(HASH + i, MEDIA_TYPE).getText());
+        }
+    }
+
+    @Test
+    public void testPersistedBetweenInstances() throws IOException, SQLException {
+        cache.put(HASH, MEDIA_TYPE, "persisted text", new Metadata());
+        cache.close();
+        cache = new ParseResultCache(dbFile, 1 << 30, CONFIG_KEY);
+        assertEquals("persisted text", cache.get(HASH, MEDIA_TYPE).getText());
+    }
+
+    @Test
+    public void testMissOnOtherKey() throws IOException, SQLException {
+        cache.put(HASH, MEDIA_TYPE, "text", new Metadata());
+        assertNotNull(cache.get(HASH, MEDIA_TYPE));
+        assertNull(cache.get(HASH, "application/msword"));
+        assertNull(cache.get(HASH.replace('0', '1'), MEDIA_TYPE));
+
+        cache.close();
+        cache = new ParseResultCache(dbFile, 1 << 30, "config2");
+        assertNull(cache.get(HASH, MEDIA_TYPE));
+
+        // results of both configurations are kept
+        cache.put(HASH, MEDIA_TYPE, "other text", new Metadata());
+        assertEquals("other text", cache.get(HASH, MEDIA_TYPE).getText());
+        cache.close();
+        cache = new ParseResultCache(dbFile, 1 << 30, CONFIG_KEY);
+        assertEquals("text", cache.get(HASH, MEDIA_TYPE).getText());
+    }
+
+    @Test
+    public void testFirstResultKept() throws IOException {
+        cache.put(HASH, MEDIA_TYPE, "first", new Metadata());
+        cache.put(HASH, MEDIA_TYPE, "second", new Metadata());
+        assertEquals("first", cache.get(HASH, MEDIA_TYPE).getText());
+    }
+
+    @Test
+    public void testEvictsOldest() throws IOException, SQLException {
+        cache.close();
+        long maxBytes = 1 << 20;
+        cache = new ParseResultCache(dbFile, maxBytes, CONFIG_KEY);
+        // size is checked each 1000 puts
+        int numEntries = 3000;
+        String text = randomText(2000);
+        for (int i = 0; i < numEntries; i++) {
+            cache.put(HASH + i, MEDIA_TYPE, text + i, new Metadata());
+        }
+        assertNull(cache.get(HASH + 0, MEDIA_TYPE));
+        assertNull(cache.get(HASH + 999, MEDIA_TYPE));
+        assertEquals(text + (numEntries - 1), cache.get(HASH + (numEntries - 1), MEDIA_TYPE).getText());
+
+        int kept = 0;
+        for (int i = 0; i < numEntries; i++) {
+            if (cache.get(HASH + i, MEDIA_TYPE) != null) {
+                kept++;
+            } else {
+                // just the oldest ones are removed
+                assertEquals(0, kept);
+            }
+        }
+        assertTrue(kept < numEntries);
+        // entries added after the last check plus the ones kept by it
+        assertTrue(kept * 2000L < maxBytes + 1000 * 2100L);
+    }
+}
@@ -0,0 +1,219 @@
+package iped.engine.task.carver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.apache.commons.codec.DecoderException;
+import org.arabidopsis.ahocorasick.AhoCorasick;
+import org.arabidopsis.ahocorasick.SearchResult;
+import org.junit.Before;
+import org.junit.Test;
+
+import iped.carvers.api.CarverType;
+import iped.carvers.api.Signature;
+
+public class SignatureScannerTest {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private CarverType[] carverTypes;
+    private List<Signature> signatures = new ArrayList<>();
+    private Random random = new Random(0);
+
+    private CarverType newCarverType(String name, String... headers) throws DecoderException {
+        CarverType ct = new CarverType();
+        ct.setName(name);
+        for (String header : headers) {
+            ct.addHeader(header);
+        }
+        signatures.addAll(ct.getSignatures());
+        return ct;
+    }
+
+    @Before
+    public void setUp() throws DecoderException {
+        CarverType jpg = newCarverType("jpg", "\\FF\\D8\\FF");
+        jpg.addFooter("\\FF\\D9");
+        signatures.add(jpg.getSignatures().get(1));
+        carverTypes = new CarverType[] { jpg, newCarverType("zip", "PK\\03\\04"),
+                // overlapping with itself and with other signatures
+                newCarverType("abab", "ABAB", "BABA"),
+                // wildcard signatures, split in many sequences
+                newCarverType("riff", "RIFF????WAVE"), newCarverType("wild", "AB?CD??EF"),
+                newCarverType("lead", "??XYZ?Q") };
+    }
+
+    /**
+     * Hits found by the previous implementation, an AhoCorasick tree searched over
+     * the whole data, with partial matches of signatures with wildcards kept in
+     * TreeMaps.
+     */
+    private List<String> getAhoCorasickHits(byte[] data, long startOffset) {
+        AhoCorasick tree = new AhoCorasick();
+        for (CarverType ct : carverTypes) {
+            for (Signature sig : ct.getSignatures()) {
+                for (int k = 0; k < sig.seqs.length; k++) {
+                    tree.add(sig.seqs[k], new Object[] { sig, k });
+                }
+            }
+        }
+        tree.prepare();
+        Map<Signature, TreeMap<Long, Integer>> map = new HashMap<>();
+        List<String> hits = new ArrayList<>();
+        Iterator<SearchResult> searcher = tree.search(data);
+        while (searcher.hasNext()) {
+            SearchResult result = searcher.next();
+            for (Object out : result.getOutputs()) {
+                Object[] oarray = (Object[]) out;
+                Signature sig = (Signature) oarray[0];
+                int seq = (int) oarray[1];
+                long offset = startOffset + result.getLastIndex() - sig.seqEndPos[seq];
+                if (sig.seqs.length > 1) {
+                    TreeMap<Long, Integer> partial = map.computeIfAbsent(sig, s -> new TreeMap<>());
+                    Integer found = partial.getOrDefault(offset, 0);
+                    if (found != seq) {
+                        continue;
+                    }
+                    partial.put(offset, ++found);
+                    if (found < sig.seqs.length) {
+                        continue;
+                    }
+                }
+                hits.add(toString(sig, offset));
+            }
+        }
+        return hits;
+    }
+
+    private String toString(Signature sig, long offset) {
+        return offset + ":" + signatures.indexOf(sig) + ":" + sig.getSigString();
+    }
+
+    /**
+     * Returns a stream giving data in small random chunks.
+     */
+    private InputStream chunked(byte[] data) {
+        return new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1 + random.nextInt(100000)));
+            }
+        };
+    }
+
+    private List<String> getScannerHits(byte[] data, long startOffset) throws IOException {
+        List<String> hits = new ArrayList<>();
+        long[] lastOffset = { Long.MIN_VALUE };
+        SignatureScanner scanner = new SignatureScanner(new SignatureScanner.Signatures(carverTypes));
+        scanner.scan(chunked(data), startOffset, (sig, offset) -> {
+            // hits are reported in offset order
+            assertTrue(offset >= lastOffset[0]);
+            lastOffset[0] = offset;
+            hits.add(toString(sig, offset));
+        });
+        return hits;
+    }
+
+    /**
+     * Writes a signature string in the data, keeping random bytes in wildcards.
+     */
+    private void put(byte[] data, int pos, String sigString) {
+        for (int i = 0; i < sigString.length() && pos < data.length; i++, pos++) {
+            char c = sigString.charAt(i);
+            if (c == '\\') {
+                data[pos] = (byte) Integer.parseInt(sigString.substring(i + 1, i + 3), 16);
+                i += 2;
+            } else if (c != '?') {
+                data[pos] = (byte) c;
+            }
+        }
+    }
+
+    private byte[] newData(int length) {
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+        String[] sigStrings = { "\\FF\\D8\\FF", "\\FF\\D9", "PK\\03\\04", "ABABABA", "RIFF????WAVE", "AB?CD??EF",
+                "AB?CD?AB?CD??EF", "??XYZ?Q", "RIFF1234WAV" };
+        // signatures around each buffer boundary, some crossing it
+        for (int boundary = BUFFER_SIZE; boundary < length; boundary += BUFFER_SIZE) {
+            for (String sigString : sigStrings) {
+                for (int shift = 0; shift <= 16; shift += 1 + random.nextInt(3)) {
+                    put(data, boundary - shift, sigString);
+                    put(data, boundary - 2 * BUFFER_SIZE / 3 + shift * 20, sigString);
+                }
+            }
+        }
+        for (int i = 0; i < 2000; i++) {
+            put(data, random.nextInt(length), sigStrings[random.nextInt(sigStrings.length)]);
+        }
+        return data;
+    }
+
+    private void assertSameHits(byte[] data, long startOffset) throws IOException {
+        List<String> expected = getAhoCorasickHits(data, startOffset);
+        List<String> result = getScannerHits(data, startOffset);
+        // the old search reported hits by end offset, the scanner by start offset
+        List<String> sortedExpected = new ArrayList<>(expected);
+        List<String> sortedResult = new ArrayList<>(result);
+        Collections.sort(sortedExpected);
+        Collections.sort(sortedResult);
+        assertEquals(sortedExpected, sortedResult);
+    }
+
+    @Test
+    public void testSameHitsAsAhoCorasick() throws IOException {
+        byte[] data = newData(3 * BUFFER_SIZE + 12345);
+        List<String> hits = getScannerHits(data, 0);
+        // signatures of all types were found
+        for (CarverType ct : carverTypes) {
+            for (Signature sig : ct.getSignatures()) {
+                assertTrue(sig.getSigString(), hits.stream().anyMatch(hit -> hit.endsWith(":" + sig.getSigString())));
+            }
+        }
+        assertSameHits(data, 0);
+    }
+
+    @Test
+    public void testStartOffset() throws IOException {
+        assertSameHits(newData(BUFFER_SIZE + 100), 1000);
+    }
+
+    @Test
+    public void testSmallAndEmptyData() throws IOException {
+        byte[] data = new byte[20];
+        put(data, 0, "RIFF????WAVE");
+        put(data, 12, "ABABAB");
+        assertEquals(List.of("0:5:RIFF????WAVE", "12:3:ABAB", "13:4:BABA", "14:3:ABAB"), getScannerHits(data, 0));
+        assertSameHits(data, 0);
+        assertEquals(0, getScannerHits(new byte[0], 0).size());
+    }
+
+    @Test
+    public void testScannerReuse() throws IOException {
+        byte[] data = newData(BUFFER_SIZE + 5000);
+        SignatureScanner scanner = new SignatureScanner(new SignatureScanner.Signatures(carverTypes));
+        // a partial match at the end of the first item must not complete in the next
+        byte[] first = new byte[100];
+        put(first, 96, "RIFF");
+        List<String> hits = new ArrayList<>();
+        scanner.scan(new ByteArrayInputStream(first), 0, (sig, offset) -> hits.add(toString(sig, offset)));
+        assertEquals(0, hits.size());
+        scanner.scan(chunked(data), 0, (sig, offset) -> hits.add(toString(sig, offset)));
+        Collections.sort(hits);
+        List<String> expected = getAhoCorasickHits(data, 0);
+        Collections.sort(expected);
+        assertEquals(expected, hits);
+    }
+}
@@ -0,0 +1,141 @@
+package iped.engine.task.hash;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+/**
+ * Compares the hashing throughput per file size of the previous HashTask
+ * implementation (one executor task per algorithm per buffer), inline hashing
+ * and the {@link HashPipeline}. Run it as a java application.
+ */
+public class HashBenchmark {
+
+    private static final String[] ALGORITHMS = { "md5", "sha-1", "sha-256", "edonkey" };
+
+    private static final int[] FILE_SIZES = { 4 * 1024, 64 * 1024, 1024 * 1024, 16 * 1024 * 1024,
+            128 * 1024 * 1024 };
+
+    private static final long BYTES_PER_BUCKET = 512L * 1024 * 1024;
+
+    private static final int BUFFER_LEN = 1024 * 1024;
+
+    private static final ExecutorService executorService = Executors.newCachedThreadPool();
+
+    private interface Hasher {
+        void digest(InputStream in) throws Exception;
+    }
+
+    private static List<MessageDigest> createDigests() throws Exception {
+        List<MessageDigest> digests = new ArrayList<>();
+        for (String algorithm : ALGORITHMS) {
+            if (algorithm.equals("edonkey")) {
+                digests.add(new Ed2kMessageDigest());
+            } else {
+                digests.add(MessageDigest.getInstance(algorithm.toUpperCase()));
+            }
+        }
+        return digests;
+    }
+
+    /**
+     * Previous HashTask approach, two swapped buffers and one latch per buffer.
+     */
+    private static Hasher legacyHasher(List<MessageDigest> digests) {
+        return in -> {
+            byte[] readBuf = new byte[BUFFER_LEN];
+            byte[] hashBuf = new byte[BUFFER_LEN];
+            byte[] tempBuf;
+            int len;
+            AtomicReference<CountDownLatch> countDown = new AtomicReference<>(null);
+            while ((len = in.read(readBuf)) >= 0) {
+                if (countDown.get() != null) {
+                    countDown.get().await();
+                }
+                countDown.set(new CountDownLatch(digests.size()));
+                tempBuf = hashBuf;
+                hashBuf = readBuf;
+                readBuf = tempBuf;
+                final int currLen = len;
+                final byte[] currHashBuf = hashBuf;
+                for (MessageDigest digest : digests) {
+                    executorService.execute(() -> {
+                        try {
+                            digest.update(currHashBuf, 0, currLen);
+                        } finally {
+                            countDown.get().countDown();
+                        }
+                    });
+                }
+            }
+            if (countDown.get() != null) {
+                countDown.get().await();
+            }
+            for (MessageDigest digest : digests) {
+                digest.digest();
+            }
+        };
+    }
+
+    private static Hasher inlineHasher(List<MessageDigest> digests) {
+        byte[] buffer = new byte[BUFFER_LEN];
+        return in -> {
+            int len;
+            while ((len = in.read(buffer)) >= 0) {
+                for (MessageDigest digest : digests) {
+                    digest.update(buffer, 0, len);
+                }
+            }
+            for (MessageDigest digest : digests) {
+                digest.digest();
+            }
+        };
+    }
+
+    private static double run(Hasher hasher, byte[] data, int fileSize) throws Exception {
+        long files = Math.max(1, BYTES_PER_BUCKET / fileSize);
+        long start = System.nanoTime();
+        for (long i = 0; i < files; i++) {
+            hasher.digest(new ByteArrayInputStream(data, 0, fileSize));
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return files * fileSize / (1024 * 1024 * seconds);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+
+        byte[] data = new byte[FILE_SIZES[FILE_SIZES.length - 1]];
+        new Random(0).nextBytes(data);
+
+        Hasher legacy = legacyHasher(createDigests());
+        Hasher inline = inlineHasher(createDigests());
+        HashPipeline pipeline = new HashPipeline(createDigests(), BUFFER_LEN, 4, "HashBenchmark");
+        Hasher piped = in -> pipeline.digest(in);
+
+        // warm up
+        for (Hasher hasher : new Hasher[] { legacy, inline, piped }) {
+            run(hasher, data, FILE_SIZES[2]);
+        }
+
+        System.out.println(String.format("%12s %14s %14s %14s", "SIZE", "LEGACY MB/s", "INLINE MB/s", "PIPELINE MB/s"));
+        for (int size : FILE_SIZES) {
+            System.out.println(String.format("%12d %14.1f %14.1f %14.1f", size, run(legacy, data, size),
+                    run(inline, data, size), run(piped, data, size)));
+        }
+
+        pipeline.close();
+        executorService.shutdown();
+    }
+
+}
@@ -0,0 +1,89 @@
+package iped.engine.task.regex;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import dk.brics.automaton.DatatypesAutomatonProvider;
+import dk.brics.automaton.RegExp;
+import dk.brics.automaton.RunAutomaton;
+
+public class TaggedRunAutomatonTest {
+
+    private static final String[] REGEXES = { "[0-9]{3}\\.[0-9]{3}", "[0-9]{3}\\.[0-9]{3}-[0-9]{2}", "ab+c?",
+            "[a-z]+@[a-z]+\\.com", "abc" };
+
+    private static List<RunAutomaton> automata() {
+        List<RunAutomaton> list = new ArrayList<>();
+        for (String regex : REGEXES) {
+            list.add(new RunAutomaton(new RegExp(regex).toAutomaton(new DatatypesAutomatonProvider())));
+        }
+        return list;
+    }
+
+    private static int[] tagsOf(TaggedRunAutomaton automaton, String text) {
+        int state = automaton.getInitialState();
+        for (int i = 0; i < text.length() && state != -1; i++) {
+            state = automaton.step(state, text.charAt(i));
+        }
+        if (state == -1) {
+            return new int[0];
+        }
+        return Arrays.copyOfRange(automaton.getTags(), automaton.getTagStart(state), automaton.getTagEnd(state));
+    }
+
+    @Test
+    public void testTagsOfOverlappingRegexes() {
+        TaggedRunAutomaton automaton = new TaggedRunAutomaton(automata());
+        assertArrayEquals(new int[] { 0 }, tagsOf(automaton, "123.456"));
+        assertArrayEquals(new int[] { 1 }, tagsOf(automaton, "123.456-78"));
+        assertArrayEquals(new int[] { 2, 4 }, tagsOf(automaton, "abc"));
+        assertArrayEquals(new int[] { 2 }, tagsOf(automaton, "abbb"));
+        assertArrayEquals(new int[0], tagsOf(automaton, "123.456-7"));
+        assertArrayEquals(new int[0], tagsOf(automaton, "x"));
+    }
+
+    @Test
+    public void testSameTagsAsEachRegex() {
+        List<RunAutomaton> list = automata();
+        TaggedRunAutomaton automaton = new TaggedRunAutomaton(list);
+        Random random = new Random(0);
+        String alphabet = "0123456789.-abcx@om";
+        for (int n = 0; n < 10000; n++) {
+            StringBuilder sb = new StringBuilder();
+            int len = random.nextInt(12);
+            for (int i = 0; i < len; i++) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String text = sb.toString();
+            int[] tags = tagsOf(automaton, text);
+            int t = 0;
+            for (int i = 0; i < list.size(); i++) {
+                if (list.get(i).run(text)) {
+                    assertTrue(t < tags.length);
+                    assertEquals(i, tags[t++]);
+                }
+            }
+            assertEquals(tags.length, t);
+        }
+    }
+
+    @Test
+    public void testMinimized() {
+        List<RunAutomaton> list = new ArrayList<>();
+        list.add(new RunAutomaton(new RegExp("(ab)+").toAutomaton()));
+        list.add(new RunAutomaton(new RegExp("(ab)+").toAutomaton()));
+        TaggedRunAutomaton automaton = new TaggedRunAutomaton(list);
+        assertEquals(list.get(0).getSize(), automaton.getSize());
+        assertFalse(automaton.isAccept(automaton.getInitialState()));
+    }
+
+}
@@ -0,0 +1,192 @@
+package iped.engine.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares heap usage and write/read throughput of {@link TextCache} against
+ * the previous storage, which kept up to 10M chars in a StringBuilder and
+ * spilled larger texts to an UTF-8 temp file. Simulates a number of workers
+ * each holding the text of one item, which is read 3 times, like by index,
+ * regex and language detection tasks. Run it as a java application, optionally
+ * passing the number of workers and the text size in chars.
+ */
+public class TextCacheBenchmark {
+
+    private static final int READS = 3;
+
+    private interface Cache {
+        void write(char[] buf, int off, int len) throws IOException;
+
+        Reader getTextReader() throws IOException;
+
+        void close() throws IOException;
+    }
+
+    private static class LegacyCache implements Cache {
+
+        private static final int MAX_MEMORY_CHARS = 10000000;
+
+        private StringBuilder sb = new StringBuilder();
+        private File tmp;
+        private Writer writer;
+
+        @Override
+        public void write(char[] buf, int off, int len) throws IOException {
+            if (tmp == null && sb.length() + len > MAX_MEMORY_CHARS) {
+                tmp = File.createTempFile("text", null);
+                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8));
+                writer.write(sb.toString());
+                sb = null;
+            }
+            if (sb != null) {
+                sb.append(buf, off, len);
+            } else {
+                writer.write(buf, off, len);
+            }
+        }
+
+        @Override
+        public Reader getTextReader() throws IOException {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+            return sb != null ? new StringReader(sb.toString()) : Files.newBufferedReader(tmp.toPath());
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    private static class CurrentCache implements Cache {
+
+        private TextCache textCache = new TextCache();
+
+        @Override
+        public void write(char[] buf, int off, int len) throws IOException {
+            textCache.write(buf, off, len);
+        }
+
+        @Override
+        public Reader getTextReader() throws IOException {
+            return textCache.getTextReader();
+        }
+
+        @Override
+        public void close() throws IOException {
+            textCache.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int workers = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int textChars = args.length > 1 ? Integer.parseInt(args[1]) : 8_000_000;
+
+        char[] text = randomText(textChars);
+        System.out.println("workers=" + workers + " chars/item=" + textChars);
+        System.out.println("storage\theap MB\twrite MB/s\tread MB/s");
+        for (int round = 0; round < 2; round++) {
+            run("legacy", workers, text, LegacyCache::new);
+            run("current", workers, text, CurrentCache::new);
+        }
+    }
+
+    private interface CacheFactory {
+        Cache create();
+    }
+
+    private static void run(String name, int workers, char[] text, CacheFactory factory) throws IOException {
+        long baseHeap = usedHeap();
+        List<Cache> caches = new ArrayList<>();
+        long t = System.nanoTime();
+        for (int i = 0; i < workers; i++) {
+            Cache cache = factory.create();
+            for (int off = 0; off < text.length; off += 128 * 1024) {
+                cache.write(text, off, Math.min(128 * 1024, text.length - off));
+            }
+            caches.add(cache);
+        }
+        long writeNanos = System.nanoTime() - t;
+        long heap = usedHeap() - baseHeap;
+
+        char[] cbuf = new char[64 * 1024];
+        long chars = 0;
+        t = System.nanoTime();
+        for (int r = 0; r < READS; r++) {
+            for (Cache cache : caches) {
+                try (Reader reader = cache.getTextReader()) {
+                    int len;
+                    while ((len = reader.read(cbuf)) != -1) {
+                        chars += len;
+                    }
+                }
+            }
+        }
+        long readNanos = System.nanoTime() - t;
+        if (chars != (long) READS * workers * text.length) {
+            throw new IllegalStateException("Wrong number of chars read: " + chars);
+        }
+        for (Cache cache : caches) {
+            cache.close();
+        }
+
+        double mb = 2.0 * workers * text.length / (1 << 20);
+        System.out.printf("%s\t%.1f\t%.1f\t%.1f%n", name, heap / (double) (1 << 20), mb * 1e9 / writeNanos,
+                mb * READS * 1e9 / readNanos);
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    /**
+     * Words of latin letters with some accented ones, to look like extracted
+     * document text.
+     */
+    private static char[] randomText(int len) {
+        Random random = new Random(0);
+        String letters = "abcdefghijklmnopqrstuvwxyzáéíóúãõç";
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder word = new StringBuilder();
+            int wordLen = 2 + random.nextInt(10);
+            for (int j = 0; j < wordLen; j++) {
+                word.append(letters.charAt(random.nextInt(letters.length())));
+            }
+            words.add(word.toString());
+        }
+        char[] text = new char[len];
+        int pos = 0;
+        while (pos < len) {
+            String word = words.get((int) Math.abs(random.nextGaussian() * 2000) % words.size());
+            for (int i = 0; i < word.length() && pos < len; i++) {
+                text[pos++] = word.charAt(i);
+            }
+            if (pos < len) {
+                text[pos++] = random.nextInt(12) == 0 ? '\n' : ' ';
+            }
+        }
+        return text;
+    }
+
+}
@@ -0,0 +1,219 @@
+package iped.engine.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class TextCacheTest {
+
+    /**
+     * Text with latin1 and UTF-16 segments, random enough not to be compressed
+     * much.
+     */
+    private static String randomText(Random random, int len) {
+        StringBuilder sb = new StringBuilder(len);
+        while (sb.length() < len) {
+            int n = Math.min(len - sb.length(), TextCache.SEGMENT_CHARS / 2 + random.nextInt(TextCache.SEGMENT_CHARS));
+            boolean latin1 = random.nextBoolean();
+            for (int i = 0; i < n; i++) {
+                sb.append(latin1 ? (char) random.nextInt(256) : (char) (0x4E00 + random.nextInt(0x5000)));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static TextCache write(String text, boolean diskCacheEnabled) throws IOException {
+        TextCache textCache = new TextCache();
+        textCache.setEnableDiskCache(diskCacheEnabled);
+        Random random = new Random(text.length());
+        char[] chars = text.toCharArray();
+        for (int off = 0; off < chars.length;) {
+            int len = Math.min(chars.length - off, 1 + random.nextInt(100000));
+            textCache.write(chars, off, len);
+            off += len;
+        }
+        return textCache;
+    }
+
+    private static String read(TextCache textCache) throws IOException {
+        try (Reader reader = textCache.getTextReader()) {
+            StringBuilder sb = new StringBuilder();
+            char[] buf = new char[7919];
+            int read;
+            while ((read = reader.read(buf)) != -1) {
+                sb.append(buf, 0, read);
+            }
+            if (reader instanceof TextCache.KnownSizeReader) {
+                assertEquals(sb.length(), ((TextCache.KnownSizeReader) reader).getSize());
+            }
+            return sb.toString();
+        }
+    }
+
+    @Test
+    public void testSmallText() throws IOException {
+        try (TextCache textCache = new TextCache()) {
+            textCache.write("small ");
+            textCache.write("text ção");
+            assertEquals(14, textCache.getSize());
+            assertEquals("small text ção", read(textCache));
+            // reading again
+            assertEquals("small text ção", read(textCache));
+            assertNull(textCache.getTempFile());
+        }
+        try (TextCache textCache = new TextCache()) {
+            assertEquals("", read(textCache));
+        }
+    }
+
+    @Test
+    public void testLatin1AndUTF16Segments() throws IOException {
+        String text = randomText(new Random(0), plainChars() + 30 * TextCache.SEGMENT_CHARS);
+        try (TextCache textCache = write(text, true)) {
+            assertEquals(text.length(), textCache.getSize());
+            // last segments are compressed, still in heap
+            assertNull(textCache.getTempFile());
+            assertEquals(text, read(textCache));
+        }
+    }
+
+    @Test
+    public void testTextBounds() throws IOException {
+        Random random = new Random(1);
+        String text = randomText(random, plainChars() + 40 * TextCache.SEGMENT_CHARS);
+        try (TextCache textCache = write(text, true)) {
+            int[][] bounds = {
+                    // in the first segment
+                    { 0, 10 }, { 5, 100 },
+                    // starting at and ending in the middle of plain segments
+                    { TextCache.SEGMENT_CHARS, 3 * TextCache.SEGMENT_CHARS + 7 },
+                    { TextCache.SEGMENT_CHARS - 1, 2 },
+                    // from plain to compressed segments
+                    { plainChars() - 100, 5 * TextCache.SEGMENT_CHARS },
+                    // starting in the middle of a compressed segment
+                    { plainChars() + 20 * TextCache.SEGMENT_CHARS + 12345, 1000 },
+                    // up to the end
+                    { text.length() - 1000, 1000 }, { text.length(), 0 } };
+            for (int[] bound : bounds) {
+                try (TextCache chunk = textCache.clone()) {
+                    chunk.setTextBounds(bound[0], bound[1]);
+                    assertEquals(bound[1], chunk.getSize());
+                    assertEquals(text.substring(bound[0], bound[0] + bound[1]), read(chunk));
+
+                    // bounds of a chunk are relative to it
+                    if (bound[1] > 20) {
+                        try (TextCache subChunk = chunk.clone()) {
+                            subChunk.setTextBounds(10, bound[1] - 20);
+                            assertEquals(text.substring(bound[0] + 10, bound[0] + bound[1] - 10), read(subChunk));
+                        }
+                    }
+                }
+            }
+            for (int i = 0; i < 100; i++) {
+                int offset = random.nextInt(text.length());
+                int size = random.nextInt(Math.min(text.length() - offset, 3 * TextCache.SEGMENT_CHARS) + 1);
+                try (TextCache chunk = textCache.clone()) {
+                    chunk.setTextBounds(offset, size);
+                    assertEquals(text.substring(offset, offset + size), read(chunk));
+                }
+            }
+            // the whole text is still readable after chunks were closed
+            assertEquals(text, read(textCache));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTextBoundsOutOfText() throws IOException {
+        try (TextCache textCache = new TextCache()) {
+            textCache.write("some text");
+            textCache.setTextBounds(5, 5);
+        }
+    }
+
+    private static int plainChars() {
+        // random text is half latin1 and half UTF-16
+        return TextCache.MAX_UNCOMPRESSED_BYTES * 2 / 3;
+    }
+
+    private static int compressedChars() {
+        // random UTF-16 chars are not compressed, each takes 2 bytes
+        return TextCache.MAX_MEMORY_BYTES / 2;
+    }
+
+    @Test
+    public void testSpillToDisk() throws Exception {
+        String text = randomText(new Random(2), plainChars() + compressedChars() * 2);
+        TextCache textCache = write(text, true);
+        File tmp = textCache.getTempFile();
+        assertNotNull(tmp);
+        assertTrue(tmp.exists());
+        assertEquals(text, read(textCache));
+
+        // clones read the same segments at the same time
+        List<TextCache> clones = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                TextCache clone = textCache.clone();
+                clones.add(clone);
+                futures.add(executor.submit(() -> read(clone)));
+            }
+            for (Future<String> future : futures) {
+                assertEquals(text, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // temp file is deleted when the last clone is closed
+        textCache.close();
+        for (TextCache clone : clones) {
+            assertTrue(tmp.exists());
+            assertEquals(text.substring(100, 200), readBounds(clone, 100, 100));
+            clone.close();
+        }
+        assertFalse(tmp.exists());
+    }
+
+    private static String readBounds(TextCache textCache, long offset, int size) throws IOException {
+        try (TextCache chunk = textCache.clone()) {
+            chunk.setTextBounds(offset, size);
+            return read(chunk);
+        }
+    }
+
+    @Test
+    public void testDiskCacheDisabled() throws IOException {
+        String text = randomText(new Random(3), plainChars() + compressedChars() * 2);
+        try (TextCache textCache = write(text, false)) {
+            assertNull(textCache.getTempFile());
+            assertEquals(text, read(textCache));
+        }
+    }
+
+    @Test
+    public void testDeletedTempFile() throws IOException {
+        String text = randomText(new Random(4), plainChars() + compressedChars() * 2);
+        try (TextCache textCache = write(text, true)) {
+            // like deleted by antivirus
+            assertTrue(textCache.getTempFile().delete());
+            assertEquals("", read(textCache));
+        }
+    }
+
+}
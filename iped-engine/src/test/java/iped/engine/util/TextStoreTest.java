@@ -0,0 +1,116 @@
+package iped.engine.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TextStoreTest {
+
+    private File moduleDir;
+
+    @Before
+    public void setUp() throws IOException {
+        moduleDir = Files.createTempDirectory("textstore").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        TextStore.close(moduleDir);
+        FileUtils.deleteDirectory(moduleDir);
+    }
+
+    private static String randomText(Random random, int len, boolean latin1) {
+        StringBuilder sb = new StringBuilder(len);
+        for (int i = 0; i < len; i++) {
+            if (!latin1 && random.nextInt(100) == 0) {
+                sb.append((char) (0x400 + random.nextInt(256)));
+            } else {
+                sb.append((char) ('a' + random.nextInt(26)));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String readAll(Reader reader) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        char[] buf = new char[7919];
+        int read;
+        while ((read = reader.read(buf)) != -1) {
+            sb.append(buf, 0, read);
+        }
+        reader.close();
+        return sb.toString();
+    }
+
+    private static void store(TextStore store, int id, String text) throws IOException {
+        try (Reader reader = store.storingReader(id, new StringReader(text))) {
+            readAll(reader);
+        }
+    }
+
+    @Test
+    public void testRandomAccess() throws IOException {
+        Random random = new Random(0);
+        int chunk = TextStore.CHUNK_CHARS;
+        String[] texts = { "", "short text", randomText(random, chunk, true), randomText(random, 3 * chunk + 123, true),
+                randomText(random, 2 * chunk + 5, false) };
+        TextStore writer = TextStore.getWriter(moduleDir);
+        for (int id = 0; id < texts.length; id++) {
+            store(writer, id, texts[id]);
+        }
+        TextStore.close(moduleDir);
+
+        try (TextStore store = TextStore.open(moduleDir)) {
+            for (int id = 0; id < texts.length; id++) {
+                String text = texts[id];
+                assertEquals(text.length(), store.getTextSize(id));
+                assertEquals(text, readAll(store.getTextReader(id)));
+                for (int i = 0; i < 20; i++) {
+                    int offset = random.nextInt(text.length() + 1);
+                    assertEquals(text.substring(offset), readAll(store.getTextReader(id, offset)));
+                }
+                assertEquals("", readAll(store.getTextReader(id, text.length() + chunk)));
+            }
+            assertNull(store.getTextReader(texts.length));
+            assertEquals(-1, store.getTextSize(texts.length));
+        }
+    }
+
+    @Test
+    public void testPartialTextDiscarded() throws IOException {
+        Random random = new Random(1);
+        String text = randomText(random, 3 * TextStore.CHUNK_CHARS, true);
+        TextStore writer = TextStore.getWriter(moduleDir);
+        store(writer, 1, "old text");
+        try (Reader reader = writer.storingReader(1, new StringReader(text))) {
+            reader.read(new char[2 * TextStore.CHUNK_CHARS]);
+        }
+        store(writer, 2, "first");
+        store(writer, 2, "second");
+        // aborted before the first chunk was stored
+        store(writer, 3, "old text");
+        try (Reader reader = writer.storingReader(3, new StringReader(text))) {
+            reader.read(new char[100]);
+        }
+        TextStore.close(moduleDir);
+
+        try (TextStore store = TextStore.open(moduleDir)) {
+            assertNull(store.getTextReader(1));
+            assertEquals("second", readAll(store.getTextReader(2)));
+            assertNull(store.getTextReader(3));
+            assertEquals(-1, store.getTextSize(3));
+        }
+    }
+
+}
@@ -0,0 +1,339 @@
+package iped.parsers.sqlite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import iped.parsers.sqlite.SQLitePageReader.Table;
+
+/**
+ * Extracts column names, declared types and default values from the CREATE
+ * TABLE statements stored in sqlite_master, needed to decode table records by
+ * {@link SQLitePageReader}.
+ */
+class CreateTableParser {
+
+    private static final Set<String> TABLE_CONSTRAINTS = new HashSet<>(
+            Arrays.asList("CONSTRAINT", "PRIMARY", "UNIQUE", "CHECK", "FOREIGN")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+
+    private static final Set<String> COLUMN_CONSTRAINTS = new HashSet<>(
+            Arrays.asList("CONSTRAINT", "PRIMARY", "NOT", "NULL", "UNIQUE", "CHECK", "DEFAULT", "COLLATE", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+                    "REFERENCES", "GENERATED", "AS")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+    /**
+     * Default value that is not a literal, like CURRENT_TIMESTAMP or (1), which
+     * would need to be evaluated by SQLite.
+     */
+    private static final Object EXPRESSION = new Object();
+
+    private enum Kind {
+        WORD, IDENTIFIER, STRING, SYMBOL
+    }
+
+    private static class Token {
+
+        final Kind kind;
+        final String text;
+
+        Token(Kind kind, String text) {
+            this.kind = kind;
+            this.text = text;
+        }
+
+        boolean isWord(String word) {
+            return kind == Kind.WORD && text.equalsIgnoreCase(word);
+        }
+
+        boolean isSymbol(char c) {
+            return kind == Kind.SYMBOL && text.charAt(0) == c;
+        }
+    }
+
+    /**
+     * Fills the columns of the table. It is kept unsupported if the statement
+     * could not be parsed, or if its records can not be decoded without
+     * evaluating SQL expressions, like generated columns or non literal
+     * defaults.
+     */
+    static void parse(String sql, Table table) {
+        List<Token> tokens = tokenize(sql);
+        int start = 0;
+        while (start < tokens.size() && !tokens.get(start).isSymbol('(')) {
+            start++;
+        }
+        List<List<Token>> definitions = new ArrayList<>();
+        List<Token> definition = new ArrayList<>();
+        int depth = 0, end = -1;
+        for (int i = start; i < tokens.size() && end == -1; i++) {
+            Token token = tokens.get(i);
+            if (token.isSymbol('(')) {
+                if (depth++ == 0) {
+                    continue;
+                }
+            } else if (token.isSymbol(')')) {
+                if (--depth == 0) {
+                    definitions.add(definition);
+                    end = i;
+                    continue;
+                }
+            } else if (token.isSymbol(',') && depth == 1) {
+                definitions.add(definition);
+                definition = new ArrayList<>();
+                continue;
+            }
+            definition.add(token);
+        }
+        if (end == -1) {
+            return;
+        }
+        for (int i = end + 1; i < tokens.size(); i++) {
+            if (tokens.get(i).isWord("WITHOUT")) { //$NON-NLS-1$
+                return;
+            }
+        }
+
+        List<Object> defaults = new ArrayList<>();
+        String primaryKey = null;
+        boolean generated = false, expressionDefault = false;
+        for (List<Token> def : definitions) {
+            if (def.isEmpty()) {
+                return;
+            }
+            Token first = def.get(0);
+            if (first.kind == Kind.WORD && TABLE_CONSTRAINTS.contains(first.text.toUpperCase(Locale.ROOT))) {
+                List<String> keyColumns = getPrimaryKeyColumns(def);
+                if (keyColumns != null) {
+                    primaryKey = keyColumns.size() == 1 ? keyColumns.get(0) : null;
+                }
+                continue;
+            }
+            table.columns.add(first.text);
+
+            StringBuilder type = new StringBuilder();
+            int i = 1;
+            for (; i < def.size(); i++) {
+                Token token = def.get(i);
+                if (token.kind == Kind.WORD && COLUMN_CONSTRAINTS.contains(token.text.toUpperCase(Locale.ROOT))) {
+                    break;
+                }
+                if (type.length() > 0 && token.kind != Kind.SYMBOL && !endsWith(type, '(')) {
+                    type.append(' ');
+                }
+                type.append(token.text);
+            }
+            table.declaredTypes.add(type.toString());
+
+            Object defaultValue = null;
+            int exprDepth = 0;
+            for (; i < def.size(); i++) {
+                Token token = def.get(i);
+                if (token.isSymbol('(')) {
+                    exprDepth++;
+                } else if (token.isSymbol(')')) {
+                    exprDepth--;
+                } else if (exprDepth > 0) {
+                    // CHECK, DEFAULT or GENERATED expression
+                    continue;
+                } else if (token.isWord("PRIMARY") && i + 1 < def.size() && def.get(i + 1).isWord("KEY")) { //$NON-NLS-1$ //$NON-NLS-2$
+                    boolean desc = i + 2 < def.size() && def.get(i + 2).isWord("DESC"); //$NON-NLS-1$
+                    if (!desc && "INTEGER".equalsIgnoreCase(type.toString())) { //$NON-NLS-1$
+                        table.rowidAlias = table.columns.size() - 1;
+                    }
+                } else if (token.isWord("DEFAULT") && i + 1 < def.size()) { //$NON-NLS-1$
+                    defaultValue = parseLiteral(def, i + 1);
+                    if (defaultValue == EXPRESSION) {
+                        expressionDefault = true;
+                        defaultValue = null;
+                    }
+                } else if (token.isWord("GENERATED") || token.isWord("AS")) { //$NON-NLS-1$ //$NON-NLS-2$
+                    // virtual generated columns are not stored in records
+                    generated = true;
+                }
+            }
+            defaults.add(defaultValue);
+        }
+        if (primaryKey != null && table.rowidAlias == -1) {
+            for (int col = 0; col < table.columns.size(); col++) {
+                if (table.columns.get(col).equalsIgnoreCase(primaryKey)
+                        && "INTEGER".equalsIgnoreCase(table.declaredTypes.get(col))) { //$NON-NLS-1$
+                    table.rowidAlias = col;
+                }
+            }
+        }
+        table.defaults = defaults.toArray();
+        table.realColumns = new boolean[table.columns.size()];
+        for (int col = 0; col < table.columns.size(); col++) {
+            table.realColumns[col] = hasRealAffinity(table.declaredTypes.get(col));
+        }
+        table.supported = !generated && !expressionDefault && !table.columns.isEmpty();
+    }
+
+    /**
+     * @return true if the column has REAL affinity, see "Determination Of Column
+     *         Affinity" in SQLite documentation
+     */
+    private static boolean hasRealAffinity(String declaredType) {
+        String type = declaredType.toUpperCase(Locale.ROOT);
+        if (type.contains("INT") || type.contains("CHAR") || type.contains("CLOB") || type.contains("TEXT") //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+                || type.contains("BLOB")) { //$NON-NLS-1$
+            return false;
+        }
+        return type.contains("REAL") || type.contains("FLOA") || type.contains("DOUB"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+
+    private static boolean endsWith(StringBuilder sb, char c) {
+        return sb.length() > 0 && sb.charAt(sb.length() - 1) == c;
+    }
+
+    /**
+     * @return columns of a PRIMARY KEY table constraint, null if it is another
+     *         constraint
+     */
+    private static List<String> getPrimaryKeyColumns(List<Token> def) {
+        int i = 0;
+        while (i < def.size() && !def.get(i).isWord("PRIMARY")) { //$NON-NLS-1$
+            i++;
+        }
+        if (i + 2 >= def.size() || !def.get(i + 1).isWord("KEY") || !def.get(i + 2).isSymbol('(')) { //$NON-NLS-1$
+            return null;
+        }
+        List<String> columns = new ArrayList<>();
+        boolean expectColumn = true;
+        int depth = 0;
+        for (i = i + 3; i < def.size(); i++) {
+            Token token = def.get(i);
+            if (token.isSymbol('(')) {
+                depth++;
+            } else if (token.isSymbol(')')) {
+                if (depth-- == 0) {
+                    break;
+                }
+            } else if (token.isSymbol(',') && depth == 0) {
+                expectColumn = true;
+            } else if (expectColumn && depth == 0) {
+                columns.add(token.text);
+                expectColumn = false;
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * @return the literal value, null for NULL or {@link #EXPRESSION} if it is
+     *         not a literal
+     */
+    private static Object parseLiteral(List<Token> def, int i) {
+        Token token = def.get(i);
+        boolean negative = false;
+        if ((token.isSymbol('-') || token.isSymbol('+')) && i + 1 < def.size()) {
+            negative = token.isSymbol('-');
+            token = def.get(i + 1);
+        }
+        if (token.kind == Kind.STRING) {
+            return token.text;
+        }
+        if (token.kind != Kind.WORD) {
+            return EXPRESSION;
+        }
+        String text = token.text;
+        if (text.equalsIgnoreCase("NULL") && !negative) { //$NON-NLS-1$
+            return null;
+        }
+        if (text.equalsIgnoreCase("TRUE")) { //$NON-NLS-1$
+            return 1L;
+        }
+        if (text.equalsIgnoreCase("FALSE")) { //$NON-NLS-1$
+            return 0L;
+        }
+        if (text.equalsIgnoreCase("X") && i + 1 < def.size() && def.get(i + 1).kind == Kind.STRING) { //$NON-NLS-1$
+            String hex = def.get(i + 1).text;
+            byte[] bytes = new byte[hex.length() / 2];
+            try {
+                for (int j = 0; j < bytes.length; j++) {
+                    bytes[j] = (byte) Integer.parseInt(hex.substring(2 * j, 2 * j + 2), 16);
+                }
+            } catch (NumberFormatException e) {
+                return EXPRESSION;
+            }
+            return bytes;
+        }
+        try {
+            if (text.startsWith("0x") || text.startsWith("0X")) { //$NON-NLS-1$ //$NON-NLS-2$
+                long value = Long.parseUnsignedLong(text.substring(2), 16);
+                return negative ? -value : value;
+            }
+            if (text.indexOf('.') != -1 || text.indexOf('e') != -1 || text.indexOf('E') != -1) {
+                double value = Double.parseDouble(text);
+                return negative ? -value : value;
+            }
+            long value = Long.parseLong(text);
+            return negative ? -value : value;
+        } catch (NumberFormatException e) {
+            // CURRENT_TIMESTAMP or another expression
+            return EXPRESSION;
+        }
+    }
+
+    private static List<Token> tokenize(String sql) {
+        List<Token> tokens = new ArrayList<>();
+        int len = sql.length();
+        int i = 0;
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '-' && i + 1 < len && sql.charAt(i + 1) == '-') {
+                while (i < len && sql.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < len && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2); //$NON-NLS-1$
+                i = end == -1 ? len : end + 2;
+            } else if (c == '"' || c == '`' || c == '\'' || c == '[') {
+                char close = c == '[' ? ']' : c;
+                StringBuilder sb = new StringBuilder();
+                i++;
+                while (i < len) {
+                    char d = sql.charAt(i++);
+                    if (d == close) {
+                        // quotes are escaped by doubling them
+                        if (close != ']' && i < len && sql.charAt(i) == close) {
+                            sb.append(d);
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        sb.append(d);
+                    }
+                }
+                tokens.add(new Token(c == '\'' ? Kind.STRING : Kind.IDENTIFIER, sb.toString()));
+            } else if (Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '.' && i + 1 < len
+                    && Character.isDigit(sql.charAt(i + 1))) {
+                int start = i;
+                while (i < len) {
+                    char d = sql.charAt(i);
+                    if (Character.isLetterOrDigit(d) || d == '_' || d == '$' || d == '.'
+                            && Character.isDigit(sql.charAt(start))) {
+                        i++;
+                    } else if ((d == '-' || d == '+') && Character.isDigit(sql.charAt(start))
+                            && (sql.charAt(i - 1) == 'e' || sql.charAt(i - 1) == 'E')) {
+                        // exponent sign
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                tokens.add(new Token(Kind.WORD, sql.substring(start, i)));
+            } else {
+                tokens.add(new Token(Kind.SYMBOL, String.valueOf(c)));
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+}
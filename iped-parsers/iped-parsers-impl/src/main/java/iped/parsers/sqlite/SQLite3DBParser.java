@@ -27,23 +27,29 @@
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.tika.io.TemporaryResources;
 import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.mime.MediaType;
 import org.apache.tika.parser.ParseContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sqlite.SQLiteConfig;
 
 import iped.data.IItemReader;
+import iped.io.SeekableInputStream;
 import iped.parsers.jdbc.AbstractDBParser;
 import iped.parsers.jdbc.JDBCTableReader;
 import iped.parsers.util.DelegatingConnection;
 import iped.properties.BasicProps;
 import iped.search.IItemSearcher;
 import iped.utils.IOUtil;
+import iped.utils.SeekableFileInputStream;
 
 /**
  * This is the implementation of the db parser for SQLite.
@@ -56,6 +62,24 @@ public class SQLite3DBParser extends AbstractDBParser {
 
     protected static final String SQLITE_CLASS_NAME = "org.sqlite.JDBC"; //$NON-NLS-1$
 
+    private static Logger LOGGER = LoggerFactory.getLogger(SQLite3DBParser.class);
+
+    private boolean usePageReader = false;
+
+    private SQLitePageReader pageReader;
+
+    private TemporaryResources pageReaderTmp;
+
+    /**
+     * If enabled, tables are read by {@link SQLitePageReader} directly from the
+     * item stream, without copying the database to a temporary file. The JDBC
+     * driver is still used if the database has tables not supported by it, or a
+     * rollback journal.
+     */
+    public void setUsePageReader(boolean usePageReader) {
+        this.usePageReader = usePageReader;
+    }
+
     /**
      *
      * @param context
@@ -69,6 +93,15 @@ public Set<MediaType> getSupportedTypes(ParseContext context) {
 
     @Override
     protected Connection getConnection(InputStream stream, Metadata metadata, ParseContext context) throws IOException {
+        if (usePageReader) {
+            // kept until parser is closed, the stream could be spooled to a file used below
+            pageReaderTmp = new TemporaryResources();
+            stream = TikaInputStream.get(stream, pageReaderTmp);
+            pageReader = openPageReader((TikaInputStream) stream, context);
+            if (pageReader != null) {
+                return null;
+            }
+        }
         Connection connection = null;
         try {
             Class.forName(getJDBCClassName());
@@ -122,6 +155,80 @@ public void close() throws SQLException {
         return connection;
     }
 
+    /**
+     * @return the page reader, or null if the database must be opened by the
+     *         JDBC driver
+     */
+    private static SQLitePageReader openPageReader(TikaInputStream tis, ParseContext context) {
+        SeekableInputStream db = null, wal = null;
+        try {
+            if (findRelatedItem(context, "-journal") != null) { //$NON-NLS-1$
+                // a hot journal could need to be rolled back
+                return null;
+            }
+            IItemReader item = context.get(IItemReader.class);
+            if (!tis.hasFile() && item != null) {
+                db = item.getSeekableInputStream();
+                if (!isSameContent(tis, db)) {
+                    IOUtil.closeQuietly(db);
+                    db = null;
+                }
+            }
+            if (db == null) {
+                db = new SeekableFileInputStream(tis.getFile());
+            }
+            IItemReader walItem = findRelatedItem(context, "-wal"); //$NON-NLS-1$
+            if (walItem != null) {
+                wal = walItem.getSeekableInputStream();
+            }
+            SQLitePageReader reader = new SQLitePageReader(db, wal);
+            if (!reader.isAllSupported()) {
+                reader.close();
+                return null;
+            }
+            return reader;
+
+        } catch (IOException e) {
+            LOGGER.debug("Error opening SQLite page reader, using JDBC driver", e); //$NON-NLS-1$
+            IOUtil.closeQuietly(db);
+            IOUtil.closeQuietly(wal);
+            return null;
+        }
+    }
+
+    /**
+     * Checks if the item in the context is the one being parsed, comparing the
+     * database header.
+     */
+    private static boolean isSameContent(TikaInputStream tis, SeekableInputStream sis) throws IOException {
+        if (tis.hasLength() && tis.getLength() != sis.size()) {
+            return false;
+        }
+        byte[] header = new byte[100];
+        tis.mark(header.length);
+        int read = IOUtils.read(tis, header);
+        tis.reset();
+        byte[] itemHeader = new byte[header.length];
+        int itemRead = IOUtils.read(sis, itemHeader);
+        sis.seek(0);
+        return read == itemRead && Arrays.equals(header, itemHeader);
+    }
+
+    @Override
+    protected void close() throws SQLException, IOException {
+        try {
+            if (pageReader != null) {
+                pageReader.close();
+            } else {
+                super.close();
+            }
+        } finally {
+            if (pageReaderTmp != null) {
+                pageReaderTmp.close();
+            }
+        }
+    }
+
     public static File exportWalLog(File dbFile, ParseContext context, TemporaryResources tmp) {
         return exportRelatedFile(dbFile, "-wal", context, tmp);
     }
@@ -131,6 +238,25 @@ public static File exportRollbackJournal(File dbFile, ParseContext context, Temp
     }
     
     private static File exportRelatedFile(File theFile, String suffix, ParseContext context, TemporaryResources tmp) {
+        IItemReader relatedItem = findRelatedItem(context, suffix);
+        if (relatedItem != null) {
+            File relatedFileTemp = new File(theFile.getAbsolutePath() + suffix);
+            try (InputStream in = relatedItem.getBufferedInputStream()) {
+                Files.copy(in, relatedFileTemp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (null != tmp) {
+                tmp.addResource(() -> {
+                    relatedFileTemp.delete();
+                });
+            }
+            return relatedFileTemp;
+        }
+        return null;
+    }
+
+    private static IItemReader findRelatedItem(ParseContext context, String suffix) {
         IItemSearcher searcher = context.get(IItemSearcher.class);
         if (searcher != null) {
             IItemReader parsingItem = context.get(IItemReader.class);
@@ -139,33 +265,18 @@ private static File exportRelatedFile(File theFile, String suffix, ParseContext
                 String relatedFileName = parsingItem.getName() + suffix;
                 String relatedFileQuery = BasicProps.PATH + ":\"" + searcher.escapeQuery(parsingFilePath + suffix) + "\"";
                 List<IItemReader> items = searcher.search(relatedFileQuery);
-                if (items.size() > 0) {
-                    IItemReader relatedItem = null;
-                    // Pick the journal/wal, prioritizing the same deleted status.
-                    for (IItemReader item : items) {
-                        if (item.isDir() || !relatedFileName.equalsIgnoreCase(item.getName())) {
-                            // Ignore folders or items with name that doesn't match SQLite name (see #1791)
-                            continue;
-                        }
-                        if (relatedItem == null || item.isDeleted() == parsingItem.isDeleted()) {
-                            relatedItem = item;
-                        }
+                IItemReader relatedItem = null;
+                // Pick the journal/wal, prioritizing the same deleted status.
+                for (IItemReader item : items) {
+                    if (item.isDir() || !relatedFileName.equalsIgnoreCase(item.getName())) {
+                        // Ignore folders or items with name that doesn't match SQLite name (see #1791)
+                        continue;
                     }
-                    if (relatedItem != null) {
-                        File relatedFileTemp = new File(theFile.getAbsolutePath() + suffix);
-                        try (InputStream in = relatedItem.getBufferedInputStream()) {
-                            Files.copy(in, relatedFileTemp.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                        }
-                        if (null != tmp) {
-                            tmp.addResource(() -> {
-                                relatedFileTemp.delete();
-                            });
-                        }
-                        return relatedFileTemp;
+                    if (relatedItem == null || item.isDeleted() == parsingItem.isDeleted()) {
+                        relatedItem = item;
                     }
                 }
+                return relatedItem;
             }
         }
         return null;
@@ -189,6 +300,9 @@ protected String getJDBCClassName() {
     @Override
     protected List<String> getTableNames(Connection connection, Metadata metadata, ParseContext context)
             throws SQLException {
+        if (pageReader != null) {
+            return pageReader.getTableNames();
+        }
         List<String> tableNames = new ArrayList<String>();
 
         Statement st = null;
@@ -209,6 +323,9 @@ protected List<String> getTableNames(Connection connection, Metadata metadata, P
 
     @Override
     public JDBCTableReader getTableReader(Connection connection, String tableName, ParseContext context) {
+        if (pageReader != null) {
+            return new SQLite3TableReader(pageReader, tableName, context);
+        }
         return new SQLite3TableReader(connection, tableName, context);
     }
 
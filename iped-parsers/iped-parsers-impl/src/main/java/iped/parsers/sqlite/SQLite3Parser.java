@@ -22,6 +22,7 @@
 import java.util.Properties;
 import java.util.Set;
 
+import org.apache.tika.config.Field;
 import org.apache.tika.exception.TikaException;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.mime.MediaType;
@@ -53,6 +54,8 @@ public class SQLite3Parser extends AbstractParser {
 
     private final Set<MediaType> SUPPORTED_TYPES;
 
+    private boolean usePageReader = true;
+
     /**
      * Checks to see if class is available for org.sqlite.JDBC.
      * <p>
@@ -74,10 +77,20 @@ public Set<MediaType> getSupportedTypes(ParseContext context) {
         return SUPPORTED_TYPES;
     }
 
+    /**
+     * Reads tables directly from the database pages, without copying the
+     * database to a temporary file, see {@link SQLitePageReader}.
+     */
+    @Field
+    public void setUsePageReader(boolean usePageReader) {
+        this.usePageReader = usePageReader;
+    }
+
     @Override
     public void parse(InputStream stream, ContentHandler handler, Metadata metadata, ParseContext context)
             throws IOException, SAXException, TikaException {
         SQLite3DBParser p = new SQLite3DBParser();
+        p.setUsePageReader(usePageReader);
         p.parse(stream, handler, metadata, context);
     }
 
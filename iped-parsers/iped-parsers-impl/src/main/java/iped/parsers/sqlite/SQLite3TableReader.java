@@ -56,11 +56,33 @@ class SQLite3TableReader extends JDBCTableReader {
 
     private boolean dateGuessed = false;
 
+    private SQLitePageReader pageReader;
+
     public SQLite3TableReader(Connection connection, String tableName, ParseContext context) {
         super(connection, tableName, context);
         df.setTimeZone(TimeZone.getTimeZone("UTC")); //$NON-NLS-1$
     }
 
+    /**
+     * Reads the table from the database pages, without a JDBC connection.
+     */
+    public SQLite3TableReader(SQLitePageReader pageReader, String tableName, ParseContext context) {
+        this((Connection) null, tableName, context);
+        this.pageReader = pageReader;
+    }
+
+    @Override
+    protected ResultSet getTableData() {
+        if (pageReader == null) {
+            return super.getTableData();
+        }
+        try {
+            return new SQLitePageResultSet(pageReader, getTableName());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
     /**
      * No-op for now in {@link SQLite3TableReader}.
      *
@@ -111,7 +133,7 @@ protected TikaInputStream getInputStreamFromBlob(ResultSet resultSet, int column
 
     private void detectDateFormat() throws SQLException {
 
-        ResultSet results = super.getTableData();
+        ResultSet results = getTableData();
         ResultSetMetaData meta = results.getMetaData();
         if (dateFormats == null) {
             dateFormats = new int[meta.getColumnCount() + 1];
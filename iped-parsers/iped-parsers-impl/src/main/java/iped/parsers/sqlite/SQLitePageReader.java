@@ -0,0 +1,661 @@
+package iped.parsers.sqlite;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import iped.io.SeekableInputStream;
+import iped.utils.IOUtil;
+
+/**
+ * Read-only SQLite reader that decodes table b-tree pages directly from a
+ * {@link SeekableInputStream}, so databases can be read without copying them
+ * to a temporary file to be opened by the JDBC driver. Committed frames of the
+ * write ahead log, if provided, are overlaid on the database pages, like SQLite
+ * does when opening a database in WAL mode.
+ * <p>
+ * Only ordinary rowid tables are supported, virtual tables, tables WITHOUT
+ * ROWID and tables with generated columns are not, see
+ * {@link #isSupported(String)}. Rollback journals are not applied. This class
+ * is not thread safe.
+ */
+public class SQLitePageReader implements Closeable {
+
+    private static final byte[] HEADER_MAGIC = "SQLite format 3\0".getBytes(StandardCharsets.US_ASCII); //$NON-NLS-1$
+
+    private static final int HEADER_SIZE = 100;
+
+    private static final int WAL_HEADER_SIZE = 32;
+
+    private static final int WAL_FRAME_HEADER_SIZE = 24;
+
+    private static final int WAL_MAGIC = 0x377f0682;
+
+    private static final int INTERIOR_TABLE_PAGE = 0x05;
+
+    private static final int LEAF_TABLE_PAGE = 0x0D;
+
+    private static final int MAX_TREE_DEPTH = 64;
+
+    private static final int PAGE_CACHE_SIZE = 64;
+
+    private static final String SCHEMA_TABLE = "sqlite_master"; //$NON-NLS-1$
+
+    private final SeekableInputStream db;
+
+    private final SeekableInputStream wal;
+
+    private int pageSize;
+
+    private int usableSize;
+
+    private long numPages;
+
+    private Charset charset = StandardCharsets.UTF_8;
+
+    // page number -> offset of the page content of its last committed frame
+    private final Map<Integer, Long> walFrames = new HashMap<>();
+
+    private final Map<Integer, byte[]> pageCache = new LinkedHashMap<Integer, byte[]>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+            return size() > PAGE_CACHE_SIZE;
+        }
+    };
+
+    // lower case name -> table
+    private final Map<String, Table> tables = new LinkedHashMap<>();
+
+    // length of the last varint read
+    private int varintLength;
+
+    /**
+     * @param db
+     *            the database stream
+     * @param wal
+     *            the write ahead log stream, could be null
+     * @throws IOException
+     *             if the database header or schema can not be read
+     */
+    public SQLitePageReader(SeekableInputStream db, SeekableInputStream wal) throws IOException {
+        this.db = db;
+        this.wal = wal;
+        readHeader();
+        if (wal != null) {
+            readWal();
+        }
+        readSchema();
+    }
+
+    private void readHeader() throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        readFully(db, 0, header, 0, HEADER_SIZE);
+        if (!Arrays.equals(Arrays.copyOf(header, HEADER_MAGIC.length), HEADER_MAGIC)) {
+            throw new IOException("Not a SQLite database"); //$NON-NLS-1$
+        }
+        pageSize = getU16(header, 16);
+        if (pageSize == 1) {
+            pageSize = 65536;
+        }
+        if (pageSize < 512 || pageSize > 65536 || (pageSize & (pageSize - 1)) != 0) {
+            throw new IOException("Invalid page size " + pageSize); //$NON-NLS-1$
+        }
+        if ((header[19] & 0xFF) > 2) {
+            throw new IOException("Unsupported file format read version " + (header[19] & 0xFF)); //$NON-NLS-1$
+        }
+        usableSize = pageSize - (header[20] & 0xFF);
+        if (usableSize < 480) {
+            throw new IOException("Invalid usable page size " + usableSize); //$NON-NLS-1$
+        }
+        switch (getInt(header, 56)) {
+            case 0:
+            case 1:
+                charset = StandardCharsets.UTF_8;
+                break;
+            case 2:
+                charset = StandardCharsets.UTF_16LE;
+                break;
+            case 3:
+                charset = StandardCharsets.UTF_16BE;
+                break;
+            default:
+                throw new IOException("Invalid text encoding " + getInt(header, 56)); //$NON-NLS-1$
+        }
+        numPages = getInt(header, 28) & 0xFFFFFFFFL;
+        // in-header database size is valid only if written by versions that update it
+        if (numPages == 0 || getInt(header, 24) != getInt(header, 92)) {
+            numPages = db.size() / pageSize;
+        }
+    }
+
+    /**
+     * Maps pages to their last frame of committed transactions. Frames are valid
+     * while their salts match the WAL header and their cumulative checksums are
+     * right. Invalid WAL files are ignored, as SQLite does.
+     */
+    private void readWal() throws IOException {
+        long walSize = wal.size();
+        if (walSize < WAL_HEADER_SIZE) {
+            return;
+        }
+        byte[] header = new byte[WAL_HEADER_SIZE];
+        readFully(wal, 0, header, 0, WAL_HEADER_SIZE);
+        int magic = getInt(header, 0);
+        if ((magic & 0xFFFFFFFE) != WAL_MAGIC || getInt(header, 8) != pageSize) {
+            return;
+        }
+        boolean bigEndian = (magic & 1) != 0;
+        int[] checksum = new int[2];
+        walChecksum(bigEndian, header, 0, 24, checksum);
+        if (checksum[0] != getInt(header, 24) || checksum[1] != getInt(header, 28)) {
+            return;
+        }
+        int salt1 = getInt(header, 16);
+        int salt2 = getInt(header, 20);
+
+        Map<Integer, Long> uncommitted = new HashMap<>();
+        byte[] frame = new byte[WAL_FRAME_HEADER_SIZE + pageSize];
+        for (long offset = WAL_HEADER_SIZE; offset + frame.length <= walSize; offset += frame.length) {
+            readFully(wal, offset, frame, 0, frame.length);
+            int pageNum = getInt(frame, 0);
+            if (pageNum == 0 || getInt(frame, 8) != salt1 || getInt(frame, 12) != salt2) {
+                break;
+            }
+            walChecksum(bigEndian, frame, 0, 8, checksum);
+            walChecksum(bigEndian, frame, WAL_FRAME_HEADER_SIZE, pageSize, checksum);
+            if (checksum[0] != getInt(frame, 16) || checksum[1] != getInt(frame, 20)) {
+                break;
+            }
+            uncommitted.put(pageNum, offset + WAL_FRAME_HEADER_SIZE);
+            long dbSizeAfterCommit = getInt(frame, 4) & 0xFFFFFFFFL;
+            if (dbSizeAfterCommit != 0) {
+                walFrames.putAll(uncommitted);
+                uncommitted.clear();
+                numPages = dbSizeAfterCommit;
+            }
+        }
+    }
+
+    private static void walChecksum(boolean bigEndian, byte[] b, int off, int len, int[] checksum) {
+        int s0 = checksum[0], s1 = checksum[1];
+        for (int i = off; i < off + len; i += 8) {
+            s0 += getInt(b, i, bigEndian) + s1;
+            s1 += getInt(b, i + 4, bigEndian) + s0;
+        }
+        checksum[0] = s0;
+        checksum[1] = s1;
+    }
+
+    private void readSchema() throws IOException {
+        Table schema = new Table(SCHEMA_TABLE, 1);
+        schema.columns.addAll(Arrays.asList("type", "name", "tbl_name", "rootpage", "sql")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+        schema.declaredTypes.addAll(Arrays.asList("text", "text", "text", "int", "text")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+        schema.defaults = new Object[schema.columns.size()];
+        schema.realColumns = new boolean[schema.columns.size()];
+        schema.supported = true;
+
+        TableCursor cursor = new TableCursor(schema);
+        while (cursor.next()) {
+            Object[] values = cursor.getValues();
+            if (!"table".equals(values[0]) || !(values[1] instanceof String)) { //$NON-NLS-1$
+                continue;
+            }
+            String name = (String) values[1];
+            int rootPage = values[3] instanceof Long ? (int) (long) (Long) values[3] : 0;
+            Table table = new Table(name, rootPage);
+            if (rootPage > 0 && values[4] instanceof String) {
+                CreateTableParser.parse((String) values[4], table);
+            }
+            tables.putIfAbsent(name.toLowerCase(Locale.ROOT), table);
+        }
+    }
+
+    /**
+     * @return names of the tables in the schema, in the order returned by
+     *         "SELECT name FROM sqlite_master WHERE type='table'"
+     */
+    public List<String> getTableNames() {
+        List<String> names = new ArrayList<>();
+        for (Table table : tables.values()) {
+            names.add(table.name);
+        }
+        return names;
+    }
+
+    /**
+     * @return true if rows of the table can be decoded by this reader
+     */
+    public boolean isSupported(String tableName) {
+        Table table = tables.get(tableName.toLowerCase(Locale.ROOT));
+        return table != null && table.supported;
+    }
+
+    /**
+     * @return true if rows of all tables can be decoded by this reader
+     */
+    public boolean isAllSupported() {
+        for (Table table : tables.values()) {
+            if (!table.supported) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public List<String> getColumnNames(String tableName) throws IOException {
+        return Collections.unmodifiableList(getTable(tableName).columns);
+    }
+
+    /**
+     * @return declared types of the columns, empty strings if not declared
+     */
+    public List<String> getColumnTypes(String tableName) throws IOException {
+        return Collections.unmodifiableList(getTable(tableName).declaredTypes);
+    }
+
+    /**
+     * @return a cursor over all rows of the table, in rowid order
+     */
+    public TableCursor openCursor(String tableName) throws IOException {
+        return new TableCursor(getTable(tableName));
+    }
+
+    /**
+     * @return values of the row with the rowid, null if not found
+     */
+    public Object[] getRow(String tableName, long rowid) throws IOException {
+        Table table = getTable(tableName);
+        int pageNum = table.rootPage;
+        try {
+            for (int depth = 0; depth < MAX_TREE_DEPTH; depth++) {
+                byte[] page = getPage(pageNum);
+                int header = pageNum == 1 ? HEADER_SIZE : 0;
+                int type = page[header] & 0xFF;
+                int numCells = getU16(page, header + 3);
+                if (type == LEAF_TABLE_PAGE) {
+                    int lo = 0, hi = numCells - 1;
+                    while (lo <= hi) {
+                        int mid = (lo + hi) >>> 1;
+                        int cell = getCellOffset(page, header, 8, mid);
+                        readVarint(page, cell);
+                        long key = readVarint(page, cell + varintLength);
+                        if (key < rowid) {
+                            lo = mid + 1;
+                        } else if (key > rowid) {
+                            hi = mid - 1;
+                        } else {
+                            return decodeLeafCell(table, page, cell, null);
+                        }
+                    }
+                    return null;
+
+                } else if (type == INTERIOR_TABLE_PAGE) {
+                    // left child of the first cell with key >= rowid, else right most child
+                    int lo = 0, hi = numCells;
+                    while (lo < hi) {
+                        int mid = (lo + hi) >>> 1;
+                        long key = readVarint(page, getCellOffset(page, header, 12, mid) + 4);
+                        if (key < rowid) {
+                            lo = mid + 1;
+                        } else {
+                            hi = mid;
+                        }
+                    }
+                    pageNum = lo < numCells ? getInt(page, getCellOffset(page, header, 12, lo))
+                            : getInt(page, header + 8);
+                } else {
+                    throw new IOException("Invalid table page " + pageNum); //$NON-NLS-1$
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Corrupted page " + pageNum, e); //$NON-NLS-1$
+        }
+        throw new IOException("Table b-tree too deep " + tableName); //$NON-NLS-1$
+    }
+
+    private Table getTable(String tableName) throws IOException {
+        Table table = tables.get(tableName.toLowerCase(Locale.ROOT));
+        if (table == null) {
+            throw new IOException("No such table: " + tableName); //$NON-NLS-1$
+        }
+        if (!table.supported) {
+            throw new IOException("Unsupported table: " + tableName); //$NON-NLS-1$
+        }
+        return table;
+    }
+
+    private byte[] getPage(int pageNum) throws IOException {
+        byte[] page = pageCache.get(pageNum);
+        if (page == null) {
+            page = readPage(pageNum);
+            pageCache.put(pageNum, page);
+        }
+        return page;
+    }
+
+    private byte[] readPage(int pageNum) throws IOException {
+        if (pageNum < 1 || pageNum > numPages) {
+            throw new IOException("Invalid page number " + (pageNum & 0xFFFFFFFFL)); //$NON-NLS-1$
+        }
+        byte[] page = new byte[pageSize];
+        Long walOffset = walFrames.get(pageNum);
+        if (walOffset != null) {
+            readFully(wal, walOffset, page, 0, pageSize);
+        } else {
+            readFully(db, (long) (pageNum - 1) * pageSize, page, 0, pageSize);
+        }
+        return page;
+    }
+
+    private static int getCellOffset(byte[] page, int header, int headerSize, int cell) {
+        return getU16(page, header + headerSize + 2 * cell);
+    }
+
+    /**
+     * Decodes a cell of a leaf table page into the table row.
+     *
+     * @param rowidHolder
+     *            array to return the rowid of the cell, could be null
+     */
+    private Object[] decodeLeafCell(Table table, byte[] page, int cell, long[] rowidHolder) throws IOException {
+        long payloadSize = readVarint(page, cell);
+        int pos = cell + varintLength;
+        long rowid = readVarint(page, pos);
+        pos += varintLength;
+        if (rowidHolder != null) {
+            rowidHolder[0] = rowid;
+        }
+        byte[] payload = readPayload(page, pos, payloadSize);
+        return decodeRecord(table, payload, rowid);
+    }
+
+    private byte[] readPayload(byte[] page, int offset, long payloadSize) throws IOException {
+        if (payloadSize < 0 || payloadSize > (numPages + 1) * usableSize) {
+            throw new IOException("Invalid payload size " + payloadSize); //$NON-NLS-1$
+        }
+        int size = (int) payloadSize;
+        int local = getLocalPayloadSize(size);
+        byte[] payload = new byte[size];
+        System.arraycopy(page, offset, payload, 0, local);
+        int pos = local;
+        int overflowPage = local < size ? getInt(page, offset + local) : 0;
+        long overflowPages = 0;
+        while (pos < size) {
+            if (overflowPage == 0 || ++overflowPages > numPages) {
+                throw new IOException("Invalid overflow page chain"); //$NON-NLS-1$
+            }
+            // not cached, overflow pages are read once
+            byte[] overflow = readPage(overflowPage);
+            int len = Math.min(size - pos, usableSize - 4);
+            System.arraycopy(overflow, 4, payload, pos, len);
+            pos += len;
+            overflowPage = getInt(overflow, 0);
+        }
+        return payload;
+    }
+
+    /**
+     * @return bytes of the payload stored in a table leaf page, see "Cell Payload
+     *         Overflow Pages" in SQLite file format documentation
+     */
+    private int getLocalPayloadSize(int payloadSize) {
+        int maxLocal = usableSize - 35;
+        if (payloadSize <= maxLocal) {
+            return payloadSize;
+        }
+        int minLocal = (usableSize - 12) * 32 / 255 - 23;
+        int local = minLocal + (payloadSize - minLocal) % (usableSize - 4);
+        return local <= maxLocal ? local : minLocal;
+    }
+
+    private Object[] decodeRecord(Table table, byte[] payload, long rowid) throws IOException {
+        int numColumns = table.columns.size();
+        Object[] values = new Object[numColumns];
+        long headerSize = readVarint(payload, 0);
+        if (headerSize > payload.length) {
+            throw new IOException("Invalid record header size " + headerSize); //$NON-NLS-1$
+        }
+        int headerPos = varintLength;
+        int dataPos = (int) headerSize;
+        int col = 0;
+        while (headerPos < headerSize && col < numColumns) {
+            long serialType = readVarint(payload, headerPos);
+            headerPos += varintLength;
+            int len = getValueLength(serialType);
+            if (dataPos + len > payload.length) {
+                throw new IOException("Invalid record value length"); //$NON-NLS-1$
+            }
+            Object value = decodeValue(serialType, payload, dataPos, len);
+            if (value instanceof Long && table.realColumns[col]) {
+                // integral values of REAL columns are stored as integers
+                value = (double) (Long) value;
+            }
+            values[col++] = value;
+            dataPos += len;
+        }
+        // columns added by ALTER TABLE after the row was written
+        for (; col < numColumns; col++) {
+            values[col] = table.defaults[col];
+        }
+        if (table.rowidAlias != -1) {
+            values[table.rowidAlias] = rowid;
+        }
+        return values;
+    }
+
+    private static int getValueLength(long serialType) throws IOException {
+        if (serialType >= 12) {
+            return (int) ((serialType - 12) / 2);
+        }
+        switch ((int) serialType) {
+            case 0:
+            case 8:
+            case 9:
+                return 0;
+            case 1:
+                return 1;
+            case 2:
+                return 2;
+            case 3:
+                return 3;
+            case 4:
+                return 4;
+            case 5:
+                return 6;
+            case 6:
+            case 7:
+                return 8;
+            default:
+                throw new IOException("Invalid serial type " + serialType); //$NON-NLS-1$
+        }
+    }
+
+    private Object decodeValue(long serialType, byte[] b, int off, int len) {
+        if (serialType >= 12) {
+            if ((serialType & 1) == 0) {
+                return Arrays.copyOfRange(b, off, off + len);
+            }
+            return new String(b, off, len, charset);
+        }
+        switch ((int) serialType) {
+            case 0:
+                return null;
+            case 7:
+                return Double.longBitsToDouble(getSignedLong(b, off, len));
+            case 8:
+                return 0L;
+            case 9:
+                return 1L;
+            default:
+                return getSignedLong(b, off, len);
+        }
+    }
+
+    private static long getSignedLong(byte[] b, int off, int len) {
+        long value = b[off];
+        for (int i = 1; i < len; i++) {
+            value = (value << 8) | (b[off + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private long readVarint(byte[] b, int off) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            int c = b[off + i] & 0xFF;
+            value = (value << 7) | (c & 0x7F);
+            if ((c & 0x80) == 0) {
+                varintLength = i + 1;
+                return value;
+            }
+        }
+        varintLength = 9;
+        return (value << 8) | (b[off + 8] & 0xFF);
+    }
+
+    private static int getU16(byte[] b, int off) {
+        return ((b[off] & 0xFF) << 8) | (b[off + 1] & 0xFF);
+    }
+
+    private static int getInt(byte[] b, int off) {
+        return getInt(b, off, true);
+    }
+
+    private static int getInt(byte[] b, int off, boolean bigEndian) {
+        if (bigEndian) {
+            return ((b[off] & 0xFF) << 24) | ((b[off + 1] & 0xFF) << 16) | ((b[off + 2] & 0xFF) << 8)
+                    | (b[off + 3] & 0xFF);
+        }
+        return ((b[off + 3] & 0xFF) << 24) | ((b[off + 2] & 0xFF) << 16) | ((b[off + 1] & 0xFF) << 8)
+                | (b[off] & 0xFF);
+    }
+
+    private static void readFully(SeekableInputStream in, long pos, byte[] b, int off, int len) throws IOException {
+        in.seek(pos);
+        while (len > 0) {
+            int read = in.read(b, off, len);
+            if (read == -1) {
+                throw new EOFException("Unexpected end of file at " + in.position()); //$NON-NLS-1$
+            }
+            off += read;
+            len -= read;
+        }
+    }
+
+    /**
+     * Closes the database and WAL streams.
+     */
+    @Override
+    public void close() throws IOException {
+        IOUtil.closeQuietly(db);
+        IOUtil.closeQuietly(wal);
+    }
+
+    /**
+     * Forward only cursor over the rows of a table, traversing its b-tree in
+     * rowid order.
+     */
+    public class TableCursor {
+
+        private final Table table;
+
+        // page numbers and next cell index of the pages being traversed
+        private final int[] pages = new int[MAX_TREE_DEPTH];
+        private final int[] cells = new int[MAX_TREE_DEPTH];
+        private int depth;
+
+        private final long[] rowid = new long[1];
+        private Object[] values;
+
+        private TableCursor(Table table) {
+            this.table = table;
+            pages[0] = table.rootPage;
+            depth = 1;
+        }
+
+        /**
+         * Moves to the next row.
+         *
+         * @return false if there are no more rows
+         */
+        public boolean next() throws IOException {
+            values = null;
+            while (depth > 0) {
+                int pageNum = pages[depth - 1];
+                try {
+                    byte[] page = getPage(pageNum);
+                    int header = pageNum == 1 ? HEADER_SIZE : 0;
+                    int type = page[header] & 0xFF;
+                    int numCells = getU16(page, header + 3);
+                    int cell = cells[depth - 1]++;
+                    if (type == LEAF_TABLE_PAGE) {
+                        if (cell < numCells) {
+                            values = decodeLeafCell(table, page, getCellOffset(page, header, 8, cell), rowid);
+                            return true;
+                        }
+                        depth--;
+                    } else if (type == INTERIOR_TABLE_PAGE) {
+                        if (cell > numCells) {
+                            depth--;
+                            continue;
+                        }
+                        if (depth == MAX_TREE_DEPTH) {
+                            throw new IOException("Table b-tree too deep " + table.name); //$NON-NLS-1$
+                        }
+                        pages[depth] = cell < numCells ? getInt(page, getCellOffset(page, header, 12, cell))
+                                : getInt(page, header + 8);
+                        cells[depth] = 0;
+                        depth++;
+                    } else {
+                        throw new IOException("Invalid table page " + pageNum); //$NON-NLS-1$
+                    }
+                } catch (IndexOutOfBoundsException e) {
+                    throw new IOException("Corrupted page " + pageNum, e); //$NON-NLS-1$
+                }
+            }
+            return false;
+        }
+
+        public long getRowId() {
+            return rowid[0];
+        }
+
+        /**
+         * @return values of the current row, in column order. Integers are returned
+         *         as Long, floats as Double, texts as String and blobs as byte[].
+         */
+        public Object[] getValues() {
+            return values;
+        }
+    }
+
+    static class Table {
+
+        final String name;
+        final int rootPage;
+        final List<String> columns = new ArrayList<>();
+        final List<String> declaredTypes = new ArrayList<>();
+        Object[] defaults;
+        boolean[] realColumns;
+        int rowidAlias = -1;
+        boolean supported = false;
+
+        Table(String name, int rootPage) {
+            this.name = name;
+            this.rootPage = rootPage;
+        }
+    }
+
+}
@@ -36,6 +36,7 @@
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
@@ -1539,20 +1540,12 @@ private List<Future<?>> searchMediaFilesForMessages(List<Message> messages, IIte
         }
 
         if (!hashesToSearchFor.isEmpty()) {
-            StringBuilder allHashesQueryBuilder = new StringBuilder();
-            allHashesQueryBuilder.append("sha-256:("); //$NON-NLS-1$
-            for (String h : hashesToSearchFor.keySet()) {
-                allHashesQueryBuilder.append(h).append(" "); //$NON-NLS-1$
-            }
-            allHashesQueryBuilder.append(")"); //$NON-NLS-1$
-            String allHashesQuery = allHashesQueryBuilder.toString();
-            List<IItemReader> result = iped.parsers.util.Util.getItems(allHashesQuery, searcher);
-            for (IItemReader item : result) {
-                String hash = (String) item.getExtraAttribute("sha-256"); //$NON-NLS-1$
+            Map<String, List<IItemReader>> result = searcher.searchByValues("sha-256", //$NON-NLS-1$
+                    new ArrayList<>(hashesToSearchFor.keySet()));
+            for (Entry<String, List<IItemReader>> entry : result.entrySet()) {
+                String hash = entry.getKey();
                 List<Message> messageList = hashesToSearchFor.remove(hash);
-
-                setItemToMessage(item, messageList, "sha-256:" + hash, true, saveItemRef);
-
+                setItemToMessage(entry.getValue().get(0), messageList, "sha-256:" + hash, true, saveItemRef); //$NON-NLS-1$
             }
         }
 
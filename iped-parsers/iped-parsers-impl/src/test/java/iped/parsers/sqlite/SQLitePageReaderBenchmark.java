@@ -0,0 +1,248 @@
+package iped.parsers.sqlite;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+
+import iped.utils.SeekableFileInputStream;
+
+/**
+ * Compares reading tables with {@link SQLitePageReader} against the JDBC path
+ * used by SQLite parsers, which copies the database and its WAL to a temporary
+ * file before opening it. Creates databases in WAL mode with part of the rows
+ * still in the WAL, then measures full table scans of many small databases,
+ * like app databases found in mobile extractions, scans of one large database
+ * and random rowid lookups. Run it as a java application, optionally passing
+ * the number of small databases, the rows of the large one and the number of
+ * lookups.
+ */
+public class SQLitePageReaderBenchmark {
+
+    private static final String TABLE = "messages";
+
+    private static final int SMALL_DB_ROWS = 200;
+
+    public static void main(String[] args) throws Exception {
+        int numSmallDbs = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int largeDbRows = args.length > 1 ? Integer.parseInt(args[1]) : 300000;
+        int numLookups = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+
+        Path dir = Files.createTempDirectory("sqlite-benchmark");
+        try {
+            Random random = new Random(0);
+            File[] smallDbs = new File[numSmallDbs];
+            for (int i = 0; i < numSmallDbs; i++) {
+                smallDbs[i] = createDatabase(dir, "small" + i, SMALL_DB_ROWS, random);
+            }
+            File largeDb = createDatabase(dir, "large", largeDbRows, random);
+
+            // warm up
+            for (int i = 0; i < 3; i++) {
+                scanWithJdbc(smallDbs[i]);
+                scanWithPageReader(smallDbs[i]);
+            }
+
+            long t = System.nanoTime();
+            long jdbcRows = 0;
+            for (File db : smallDbs) {
+                jdbcRows += scanWithJdbc(db);
+            }
+            long jdbcTime = System.nanoTime() - t;
+            t = System.nanoTime();
+            long pageRows = 0;
+            for (File db : smallDbs) {
+                pageRows += scanWithPageReader(db);
+            }
+            long pageTime = System.nanoTime() - t;
+            checkRows(jdbcRows, pageRows);
+            System.out.println("Small DBs: " + numSmallDbs + " x " + SMALL_DB_ROWS + " rows");
+            System.out.println("  JDBC (temp copy) time: " + jdbcTime / 1000000 + "ms");
+            System.out.println("  Page reader time: " + pageTime / 1000000 + "ms");
+            long copiedBytes = 0;
+            for (File db : smallDbs) {
+                copiedBytes += db.length() + new File(db + "-wal").length();
+            }
+            System.out.println("  Temp bytes avoided: " + copiedBytes);
+
+            t = System.nanoTime();
+            jdbcRows = scanWithJdbc(largeDb);
+            jdbcTime = System.nanoTime() - t;
+            t = System.nanoTime();
+            pageRows = scanWithPageReader(largeDb);
+            pageTime = System.nanoTime() - t;
+            checkRows(jdbcRows, pageRows);
+            System.out.println("Large DB: " + largeDbRows + " rows");
+            System.out.println("  JDBC (temp copy) time: " + jdbcTime / 1000000 + "ms");
+            System.out.println("  Page reader time: " + pageTime / 1000000 + "ms");
+
+            long[] rowids = new long[numLookups];
+            for (int i = 0; i < numLookups; i++) {
+                rowids[i] = 1 + random.nextInt(largeDbRows + largeDbRows / 10);
+            }
+            t = System.nanoTime();
+            long jdbcFound = lookupWithJdbc(largeDb, rowids);
+            jdbcTime = System.nanoTime() - t;
+            t = System.nanoTime();
+            long pageFound = lookupWithPageReader(largeDb, rowids);
+            pageTime = System.nanoTime() - t;
+            checkRows(jdbcFound, pageFound);
+            System.out.println("Rowid lookups: " + numLookups + ", found " + pageFound);
+            System.out.println("  JDBC (temp copy) time: " + jdbcTime / 1000000 + "ms");
+            System.out.println("  Page reader time: " + pageTime / 1000000 + "ms");
+
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    private static void checkRows(long jdbcRows, long pageRows) {
+        if (jdbcRows != pageRows) {
+            throw new IllegalStateException("Different rows read: JDBC " + jdbcRows + " page reader " + pageRows);
+        }
+    }
+
+    /**
+     * Creates a database in WAL mode. A tenth of the rows is inserted after a
+     * checkpoint, and the WAL is copied before the connection is closed, so
+     * those rows are just in the WAL.
+     */
+    private static File createDatabase(Path dir, String name, int rows, Random random) throws SQLException, IOException {
+        File tmpDb = dir.resolve(name + "_tmp.db").toFile();
+        File db = dir.resolve(name + ".db").toFile();
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + tmpDb.getAbsolutePath())) {
+            try (Statement st = conn.createStatement()) {
+                st.execute("PRAGMA journal_mode=WAL");
+                st.execute("PRAGMA wal_autocheckpoint=0");
+                st.execute("CREATE TABLE " + TABLE
+                        + " (id INTEGER PRIMARY KEY, chat_id INTEGER, sender TEXT, body TEXT, timestamp INTEGER, media BLOB, lat REAL)");
+            }
+            conn.setAutoCommit(false);
+            int checkpointRows = rows - rows / 10;
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO " + TABLE
+                    + " (chat_id, sender, body, timestamp, media, lat) VALUES (?, ?, ?, ?, ?, ?)")) {
+                for (int i = 0; i < rows; i++) {
+                    ps.setInt(1, random.nextInt(100));
+                    ps.setString(2, "user" + random.nextInt(1000) + "@s.whatsapp.net");
+                    StringBuilder body = new StringBuilder();
+                    int words = random.nextInt(i % 100 == 0 ? 2000 : 30);
+                    for (int w = 0; w < words; w++) {
+                        body.append("word").append(random.nextInt(5000)).append(' ');
+                    }
+                    ps.setString(3, body.toString());
+                    ps.setLong(4, 1600000000000L + random.nextInt(1000000000));
+                    byte[] media = new byte[i % 10 == 0 ? 64 : 0];
+                    random.nextBytes(media);
+                    ps.setBytes(5, media.length > 0 ? media : null);
+                    ps.setDouble(6, random.nextDouble() * 180 - 90);
+                    ps.execute();
+                    if (i == checkpointRows) {
+                        conn.commit();
+                        try (Statement st = conn.createStatement()) {
+                            st.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+                        }
+                    }
+                }
+            }
+            conn.commit();
+            Files.copy(tmpDb.toPath(), db.toPath());
+            Files.copy(new File(tmpDb + "-wal").toPath(), new File(db + "-wal").toPath());
+        }
+        tmpDb.delete();
+        return db;
+    }
+
+    /**
+     * Copies the database and WAL to a temp file, like SQLite3DBParser does,
+     * then reads all columns of all rows.
+     */
+    private static long scanWithJdbc(File db) throws SQLException, IOException {
+        File tmp = copyToTemp(db);
+        long rows = 0;
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + tmp.getAbsolutePath());
+                Statement st = conn.createStatement();
+                ResultSet rs = st.executeQuery("SELECT * FROM " + TABLE)) {
+            int cols = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                for (int col = 1; col <= cols; col++) {
+                    rs.getObject(col);
+                }
+                rows++;
+            }
+        } finally {
+            deleteTemp(tmp);
+        }
+        return rows;
+    }
+
+    private static long scanWithPageReader(File db) throws IOException {
+        long rows = 0;
+        try (SQLitePageReader reader = new SQLitePageReader(new SeekableFileInputStream(db),
+                new SeekableFileInputStream(new File(db + "-wal")))) {
+            SQLitePageReader.TableCursor cursor = reader.openCursor(TABLE);
+            while (cursor.next()) {
+                cursor.getValues();
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    private static long lookupWithJdbc(File db, long[] rowids) throws SQLException, IOException {
+        File tmp = copyToTemp(db);
+        long found = 0;
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + tmp.getAbsolutePath());
+                PreparedStatement ps = conn.prepareStatement("SELECT * FROM " + TABLE + " WHERE id = ?")) {
+            for (long rowid : rowids) {
+                ps.setLong(1, rowid);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        rs.getObject(4);
+                        found++;
+                    }
+                }
+            }
+        } finally {
+            deleteTemp(tmp);
+        }
+        return found;
+    }
+
+    private static long lookupWithPageReader(File db, long[] rowids) throws IOException {
+        long found = 0;
+        try (SQLitePageReader reader = new SQLitePageReader(new SeekableFileInputStream(db),
+                new SeekableFileInputStream(new File(db + "-wal")))) {
+            for (long rowid : rowids) {
+                if (reader.getRow(TABLE, rowid) != null) {
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    private static File copyToTemp(File db) throws IOException {
+        File tmp = Files.createTempFile("sqlite_tmp", ".db").toFile();
+        Files.copy(db.toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(new File(db + "-wal").toPath(), new File(tmp + "-wal").toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        return tmp;
+    }
+
+    private static void deleteTemp(File tmp) {
+        tmp.delete();
+        new File(tmp + "-wal").delete();
+        new File(tmp + "-shm").delete();
+    }
+
+}
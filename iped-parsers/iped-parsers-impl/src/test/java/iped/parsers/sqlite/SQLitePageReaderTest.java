@@ -0,0 +1,218 @@
+package iped.parsers.sqlite;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import iped.utils.SeekableFileInputStream;
+import junit.framework.TestCase;
+
+public class SQLitePageReaderTest extends TestCase {
+
+    private File tmpDir;
+
+    @Override
+    protected void setUp() throws IOException {
+        tmpDir = Files.createTempDirectory("sqlite-test").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private File copyResource(String name) throws IOException {
+        File file = new File(tmpDir, name);
+        try (InputStream is = Thread.currentThread().getContextClassLoader()
+                .getResourceAsStream("test-files/" + name)) {
+            Files.copy(is, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+
+    private static List<String> readWithJdbc(File db, String table) throws SQLException {
+        List<String> rows = new ArrayList<>();
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + db.getAbsolutePath());
+                Statement st = conn.createStatement();
+                ResultSet rs = st.executeQuery("SELECT * FROM " + table)) {
+            rows.addAll(readRows(rs));
+        }
+        return rows;
+    }
+
+    private static List<String> readRows(ResultSet rs) throws SQLException {
+        List<String> rows = new ArrayList<>();
+        int cols = rs.getMetaData().getColumnCount();
+        while (rs.next()) {
+            StringBuilder row = new StringBuilder();
+            for (int col = 1; col <= cols; col++) {
+                row.append(rs.getMetaData().getColumnName(col)).append('=').append(rs.getString(col)).append('|');
+            }
+            rows.add(row.toString());
+        }
+        return rows;
+    }
+
+    /**
+     * Compares tables read from db and wal with the page reader to tables read
+     * with JDBC from jdbcDb, which must have the same content.
+     */
+    private static void assertSameContent(File jdbcDb, File db, File wal) throws Exception {
+        List<String> jdbcTables = new ArrayList<>();
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + jdbcDb.getAbsolutePath());
+                Statement st = conn.createStatement();
+                ResultSet rs = st.executeQuery("SELECT name FROM sqlite_master WHERE type='table'")) {
+            while (rs.next()) {
+                jdbcTables.add(rs.getString(1));
+            }
+        }
+        try (SQLitePageReader reader = new SQLitePageReader(new SeekableFileInputStream(db),
+                wal != null ? new SeekableFileInputStream(wal) : null)) {
+            assertEquals(jdbcTables, reader.getTableNames());
+            for (String table : reader.getTableNames()) {
+                if (!reader.isSupported(table)) {
+                    continue;
+                }
+                try (ResultSet rs = new SQLitePageResultSet(reader, table)) {
+                    assertEquals(table, readWithJdbc(jdbcDb, table), readRows(rs));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testWhatsAppDb() throws Exception {
+        File db = copyResource("test_whatsApp.db");
+        assertSameContent(db, db, null);
+    }
+
+    @Test
+    public void testWhatsAppMsgStore() throws Exception {
+        File db = copyResource("test_whatsAppMsgStore.db");
+        assertSameContent(db, db, null);
+    }
+
+    @Test
+    public void testGlobalDb() throws Exception {
+        File db = copyResource("test_global.db");
+        try (SQLitePageReader reader = new SQLitePageReader(new SeekableFileInputStream(db), null)) {
+            assertTrue(reader.isAllSupported());
+            assertEquals("username_mapping", reader.getTableNames().get(0));
+            assertEquals("global_preferences", reader.getTableNames().get(1));
+        }
+        assertSameContent(db, db, null);
+    }
+
+    @Test
+    public void testWalAndRowLookup() throws Exception {
+        File tmpDb = new File(tmpDir, "wal_tmp.db");
+        File db = new File(tmpDir, "wal.db");
+        File wal = new File(tmpDir, "wal.db-wal");
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + tmpDb.getAbsolutePath());
+                Statement st = conn.createStatement()) {
+            st.execute("PRAGMA page_size=512");
+            st.execute("PRAGMA journal_mode=WAL");
+            st.execute("PRAGMA wal_autocheckpoint=0");
+            st.execute("CREATE TABLE t (id INTEGER PRIMARY KEY, name TEXT, value REAL, data BLOB)");
+            for (int i = 1; i <= 1000; i++) {
+                st.execute("INSERT INTO t (name, value, data) VALUES ('name" + i + "', " + i + ", randomblob(" + (i % 7 == 0 ? 2000 : 10) + "))");
+            }
+            st.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+            // changes kept just in the WAL
+            st.execute("DELETE FROM t WHERE id % 10 = 0");
+            st.execute("UPDATE t SET name = 'updated' WHERE id = 501");
+            st.execute("ALTER TABLE t ADD COLUMN extra TEXT DEFAULT 'default'");
+            st.execute("INSERT INTO t (name, value, extra) VALUES ('last', 1.5, 'set')");
+            Files.copy(tmpDb.toPath(), db.toPath());
+            Files.copy(new File(tmpDb + "-wal").toPath(), wal.toPath());
+        }
+
+        try (SQLitePageReader reader = new SQLitePageReader(new SeekableFileInputStream(db), null)) {
+            // just checkpointed content
+            SQLitePageReader.TableCursor cursor = reader.openCursor("t");
+            int rows = 0;
+            while (cursor.next()) {
+                rows++;
+            }
+            assertEquals(1000, rows);
+        }
+
+        try (SQLitePageReader reader = new SQLitePageReader(new SeekableFileInputStream(db),
+                new SeekableFileInputStream(wal))) {
+            assertEquals(5, reader.getColumnNames("t").size());
+            Object[] row = reader.getRow("t", 501);
+            assertEquals(501L, row[0]);
+            assertEquals("updated", row[1]);
+            assertEquals(501.0, row[2]);
+            assertEquals("default", row[4]);
+            assertNull(reader.getRow("t", 500));
+            assertNull(reader.getRow("t", 5000));
+            // rowid 1000 was deleted, so it was reused
+            row = reader.getRow("t", 1000);
+            assertEquals("last", row[1]);
+            assertEquals("set", row[4]);
+            assertEquals(2000, ((byte[]) reader.getRow("t", 7)[3]).length);
+        }
+
+        File jdbcDb = new File(tmpDir, "jdbc.db");
+        Files.copy(db.toPath(), jdbcDb.toPath());
+        Files.copy(wal.toPath(), new File(jdbcDb + "-wal").toPath());
+        assertSameContent(jdbcDb, db, wal);
+    }
+
+    @Test
+    public void testAddedColumnDefaults() throws Exception {
+        File db = new File(tmpDir, "defaults.db");
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + db.getAbsolutePath());
+                Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE literals (id INTEGER PRIMARY KEY, name TEXT)");
+            st.execute("CREATE TABLE expression (id INTEGER PRIMARY KEY, name TEXT)");
+            st.execute("CREATE TABLE timestamps (id INTEGER PRIMARY KEY, ts TEXT DEFAULT CURRENT_TIMESTAMP)");
+            for (int i = 1; i <= 10; i++) {
+                st.execute("INSERT INTO literals (name) VALUES ('name" + i + "')");
+                st.execute("INSERT INTO expression (name) VALUES ('name" + i + "')");
+            }
+            // old records do not have the added columns, their defaults are returned
+            st.execute("ALTER TABLE literals ADD COLUMN text TEXT DEFAULT 'it''s'");
+            st.execute("ALTER TABLE literals ADD COLUMN negative INTEGER DEFAULT -5");
+            st.execute("ALTER TABLE literals ADD COLUMN real REAL DEFAULT 1.5e2");
+            st.execute("ALTER TABLE literals ADD COLUMN hex INTEGER DEFAULT 0x10");
+            st.execute("ALTER TABLE literals ADD COLUMN blob BLOB DEFAULT x'0102'");
+            st.execute("ALTER TABLE literals ADD COLUMN bool INTEGER DEFAULT TRUE");
+            st.execute("ALTER TABLE literals ADD COLUMN empty TEXT DEFAULT NULL");
+            st.execute("ALTER TABLE expression ADD COLUMN value INTEGER DEFAULT (1)");
+            st.execute("INSERT INTO literals (name, text) VALUES ('last', 'set')");
+        }
+
+        try (SQLitePageReader reader = new SQLitePageReader(new SeekableFileInputStream(db), null)) {
+            assertTrue(reader.isSupported("literals"));
+            assertFalse(reader.isSupported("expression"));
+            assertFalse(reader.isSupported("timestamps"));
+            assertFalse(reader.isAllSupported());
+            Object[] row = reader.getRow("literals", 1);
+            assertEquals("it's", row[2]);
+            assertEquals(-5L, row[3]);
+            assertEquals(150.0, row[4]);
+            assertEquals(16L, row[5]);
+            assertEquals(2, ((byte[]) row[6]).length);
+            assertEquals(1L, row[7]);
+            assertNull(row[8]);
+        }
+        File jdbcDb = new File(tmpDir, "jdbc.db");
+        Files.copy(db.toPath(), jdbcDb.toPath());
+        assertSameContent(jdbcDb, db, null);
+    }
+
+}
@@ -30,6 +30,7 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -407,6 +408,20 @@ public static void writeIntArray(DataOutputStream os, int[] arr) throws Exceptio
         os.write(buf);
     }
 
+    public static long[] readLongArray(DataInputStream is, int len) throws Exception {
+        byte[] arr = readByteArray(is, len << 3);
+        if (arr == null) return null;
+        long[] ret = new long[len];
+        ByteBuffer.wrap(arr).asLongBuffer().get(ret);
+        return ret;
+    }
+
+    public static void writeLongArray(DataOutputStream os, long[] arr) throws Exception {
+        byte[] buf = new byte[arr.length << 3];
+        ByteBuffer.wrap(buf).asLongBuffer().put(arr);
+        os.write(buf);
+    }
+
     public static boolean hasFile(IItemReader item) {
         return item.getInputStreamFactory() instanceof FileInputStreamFactory
                 && (!(item instanceof IItem) || ((IItem) item).getFileOffset() == -1);